@@ -0,0 +1,140 @@
+package org.simplefix.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.simplefix.message.MessageEncoder;
+import org.simplefix.util.ByteScanner;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static org.simplefix.message.MessageDecoder.SOH;
+
+/**
+ * Compares the word at a time {@link ByteScanner} with plain byte loops, for finding every SOH in a
+ * buffer of messages and for summing it (the checksum).
+ * <br>
+ * The messages are a heartbeat, a NewOrderSingle, a market data snapshot with 100 entries, and a
+ * mix of the three in roughly the proportions of a market data session.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ByteScannerBenchmark {
+
+    @Param({"heartbeat", "order", "marketData", "mix"})
+    public String messages;
+
+    @Param({"heap", "direct"})
+    public String bufferType;
+
+    private ByteBuffer buffer;
+    private int length;
+
+    @Setup
+    public void setup() {
+        buffer = "direct".equals(bufferType) ? ByteBuffer.allocateDirect(1 << 20) : ByteBuffer.allocate(1 << 20);
+        MessageEncoder encoder = new MessageEncoder(Dictionaries.parse("FIX44"), "FIX.4.4");
+        if ("heartbeat".equals(messages)) {
+            heartbeat(encoder);
+        } else if ("order".equals(messages)) {
+            order(encoder);
+        } else if ("marketData".equals(messages)) {
+            marketData(encoder, 100);
+        } else {
+            for (int i = 0; i < 10; i++) {
+                marketData(encoder, 5 + i * 10);
+                order(encoder);
+                order(encoder);
+                heartbeat(encoder);
+            }
+        }
+        length = buffer.position();
+        buffer.clear();
+    }
+
+    private void header(MessageEncoder encoder, String msgType) {
+        encoder.begin(buffer, msgType.getBytes());
+        encoder.add(49, "MARKETDATA");
+        encoder.add(56, "CLIENT123");
+        encoder.add(34, 1234567);
+        encoder.addUtcTimestamp(52, 1358431200000L);
+    }
+
+    private void heartbeat(MessageEncoder encoder) {
+        header(encoder, "0");
+        encoder.finish();
+    }
+
+    private void order(MessageEncoder encoder) {
+        header(encoder, "D");
+        encoder.add(11, "ORD-20130117-000042");
+        encoder.add(1, "ACCOUNT-7");
+        encoder.add(55, "EUR/USD");
+        encoder.add(54, '1');
+        encoder.addUtcTimestamp(60, 1358431200123L);
+        encoder.addDecimal(38, 1000000, 0);
+        encoder.add(40, '2');
+        encoder.addDecimal(44, 130245, 5);
+        encoder.add(59, '0');
+        encoder.finish();
+    }
+
+    private void marketData(MessageEncoder encoder, int entries) {
+        header(encoder, "W");
+        encoder.add(262, "MDREQ-1");
+        encoder.add(55, "EUR/USD");
+        encoder.add(268, entries);
+        for (int i = 0; i < entries; i++) {
+            encoder.add(269, i % 2 == 0 ? '0' : '1');
+            encoder.addDecimal(270, 130245 + (i % 2 == 0 ? -i : i), 5);
+            encoder.addDecimal(271, 1000000 + i * 250000, 0);
+            encoder.add(278, "ENTRY-" + i);
+            encoder.add(290, i / 2 + 1);
+        }
+        encoder.finish();
+    }
+
+    /**
+     * The loop the decoder used to find the end of each value.
+     */
+    private static int indexOfNaive(ByteBuffer buffer, int from, int to, byte value) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == value)
+                return i;
+        }
+        return -1;
+    }
+
+    @Benchmark
+    public int sohNaive() {
+        int count = 0;
+        for (int i = indexOfNaive(buffer, 0, length, SOH); i >= 0; i = indexOfNaive(buffer, i + 1, length, SOH))
+            count++;
+        return count;
+    }
+
+    @Benchmark
+    public int sohScanner() {
+        int count = 0;
+        for (int i = ByteScanner.indexOf(buffer, 0, length, SOH); i >= 0;
+             i = ByteScanner.indexOf(buffer, i + 1, length, SOH))
+            count++;
+        return count;
+    }
+
+    @Benchmark
+    public int sumNaive() {
+        int sum = 0;
+        for (int i = 0; i < length; i++)
+            sum += buffer.get(i);
+        return sum & 0xFF;
+    }
+
+    @Benchmark
+    public int sumScanner() {
+        return ByteScanner.sum(buffer, 0, length) & 0xFF;
+    }
+}
@@ -0,0 +1,74 @@
+package org.simplefix.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.simplefix.message.DecodedMessage;
+import org.simplefix.message.MessageDecoder;
+import org.simplefix.messages.fix44.ExecutionReport;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures decoding an ExecutionReport with about 50 fields (including a Parties group) and reading
+ * the five fields a router looks at (MsgType, ClOrdID, Symbol, Side, OrderQty), with full and lazy
+ * decoding, by tag and with the generated flyweight.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+    private static final String EXECUTION_REPORT = "8=FIX.4.4|9=600|35=8|34=1024|49=BROKER|56=CLIENT|"
+            + "52=20130125-09:20:00.123|115=ONBEHALF|128=DELIVERTO|37=O-12345|198=S-12345|11=ORD-000123|"
+            + "41=ORD-000122|17=E-98765|150=F|39=1|1=ACCOUNT1|581=1|55=IBM|48=459200101|22=1|207=XNYS|"
+            + "54=1|38=10000|40=2|44=195.25|59=0|18=G|32=500|31=195.24|30=XNYS|151=9500|14=500|6=195.24|"
+            + "60=20130125-09:20:00.120|453=3|448=P1|447=D|452=1|448=P2|447=D|452=3|448=P3|447=D|452=12|"
+            + "15=USD|120=USD|75=20130125|64=20130130|29=1|851=1|58=partial fill|10=123|";
+
+    private static final int[] ROUTER_TAGS = {35, 11, 55, 54, 38};
+
+    @Param({"false", "true"})
+    public boolean lazy;
+
+    private MessageDecoder decoder;
+    private ByteBuffer buffer;
+    private final ExecutionReport report = new ExecutionReport();
+
+    @Setup
+    public void setup() {
+        decoder = new MessageDecoder(Dictionaries.parse("FIX44"));
+        decoder.setLazy(lazy);
+        byte[] bytes = EXECUTION_REPORT.replace('|', '\u0001').getBytes();
+        buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+    }
+
+    @Benchmark
+    public DecodedMessage decode() {
+        return decoder.decode(buffer, 0, buffer.capacity());
+    }
+
+    @Benchmark
+    public void decodeAndRoute(Blackhole bh) {
+        DecodedMessage msg = decoder.decode(buffer, 0, buffer.capacity());
+        bh.consume(msg.getEnumOrdinal(msg.getMsgTypeIndex()));
+        for (int i = 1; i < ROUTER_TAGS.length; i++) {
+            int index = msg.indexOf(ROUTER_TAGS[i]);
+            bh.consume(msg.getValueLength(index));
+        }
+        bh.consume(msg.getLong(msg.indexOf(38)));
+        bh.consume(msg.getEnumOrdinal(msg.indexOf(54)));
+    }
+
+    @Benchmark
+    public void decodeAndRouteFlyweight(Blackhole bh) {
+        ExecutionReport er = report.wrap(decoder.decode(buffer, 0, buffer.capacity()));
+        bh.consume(er.getMessage().getValueLength(er.indexOfClOrdID()));
+        bh.consume(er.getMessage().getValueLength(er.indexOfSymbol()));
+        bh.consume(er.getOrderQty());
+        bh.consume(er.getSide());
+    }
+}
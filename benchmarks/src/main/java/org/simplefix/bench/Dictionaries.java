@@ -0,0 +1,29 @@
+package org.simplefix.bench;
+
+import org.simplefix.dictionary.Dictionary;
+import org.simplefix.dictionary.xml.DictionaryParser;
+
+import java.net.URL;
+
+/**
+ * Access to the dictionaries in /dictionary, which the build copies onto the classpath.
+ */
+public class Dictionaries {
+    private Dictionaries() {
+    }
+
+    /**
+     * @param name the dictionary name, e.g. "FIX44"
+     * @return the URL of the XML dictionary
+     */
+    public static URL source(String name) {
+        URL url = Dictionaries.class.getClassLoader().getResource("dictionary/" + name + ".xml");
+        if (url == null)
+            throw new IllegalArgumentException("No such dictionary: " + name);
+        return url;
+    }
+
+    public static Dictionary parse(String name) {
+        return DictionaryParser.parseXML(source(name));
+    }
+}
@@ -0,0 +1,122 @@
+package org.simplefix.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.simplefix.dictionary.Dictionary;
+import org.simplefix.dictionary.FieldDef;
+import org.simplefix.dictionary.MessageType;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the dictionary lookups used on the decode path.   Each invocation looks up a batch of
+ * keys in random order, so the result isn't just one well predicted branch.
+ * <br>
+ * The enum benchmarks look up values of the enum fields in nearly every message (MsgType, Side,
+ * OrdType, TimeInForce, ExecType, OrdStatus) from raw bytes, compared with making a String and
+ * looking it up in the value map.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DictionaryLookupBenchmark {
+    private static final int BATCH = 1024;
+
+    @Param({"FIX44", "FIX50"})
+    public String dictionaryName;
+
+    private Dictionary dictionary;
+    private int[] tags;
+    private String[] names;
+    private String[] msgTypes;
+
+    private static final int[] ENUM_TAGS = {35, 54, 40, 59, 150, 39};
+    private FieldDef[] enumFields;
+    private ByteBuffer enumBuffer;
+    private int[] enumOffsets;
+    private int[] enumLengths;
+
+    @Setup
+    public void setup() {
+        dictionary = Dictionaries.parse(dictionaryName);
+        FieldDef[] fieldDefs = dictionary.getFieldDefs().toArray(new FieldDef[0]);
+        MessageType[] messageTypes = dictionary.getMessageTypes().toArray(new MessageType[0]);
+        Random random = new Random(42);
+        tags = new int[BATCH];
+        names = new String[BATCH];
+        msgTypes = new String[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            FieldDef fieldDef = fieldDefs[random.nextInt(fieldDefs.length)];
+            tags[i] = fieldDef.getTag();
+            // Copy the strings so the lookups can't short cut on identity.
+            names[i] = new String(fieldDef.getName());
+            msgTypes[i] = new String(messageTypes[random.nextInt(messageTypes.length)].getMsgType());
+        }
+
+        List<FieldDef> withValues = new ArrayList<FieldDef>();
+        for (int tag : ENUM_TAGS) {
+            FieldDef fieldDef = dictionary.getFieldDef(tag);
+            if (fieldDef != null && !fieldDef.getValues().isEmpty())
+                withValues.add(fieldDef);
+        }
+        enumFields = new FieldDef[BATCH];
+        enumBuffer = ByteBuffer.allocate(BATCH * 8);
+        enumOffsets = new int[BATCH];
+        enumLengths = new int[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            FieldDef fieldDef = withValues.get(random.nextInt(withValues.size()));
+            String[] values = fieldDef.getValues().keySet().toArray(new String[0]);
+            String value = values[random.nextInt(values.length)];
+            enumFields[i] = fieldDef;
+            enumOffsets[i] = enumBuffer.position();
+            enumLengths[i] = value.length();
+            enumBuffer.put(value.getBytes());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void fieldDefByTag(Blackhole bh) {
+        for (int tag : tags)
+            bh.consume(dictionary.getFieldDef(tag));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void fieldDefByName(Blackhole bh) {
+        for (String name : names)
+            bh.consume(dictionary.getFieldDef(name));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void messageType(Blackhole bh) {
+        for (String msgType : msgTypes)
+            bh.consume(dictionary.getMessageType(msgType));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void enumOrdinal(Blackhole bh) {
+        for (int i = 0; i < BATCH; i++)
+            bh.consume(enumFields[i].getEnumValues().ordinal(enumBuffer, enumOffsets[i], enumLengths[i]));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void enumByString(Blackhole bh) {
+        for (int i = 0; i < BATCH; i++) {
+            char[] chars = new char[enumLengths[i]];
+            for (int j = 0; j < chars.length; j++)
+                chars[j] = (char) enumBuffer.get(enumOffsets[i] + j);
+            bh.consume(enumFields[i].getValues().get(new String(chars)));
+        }
+    }
+}
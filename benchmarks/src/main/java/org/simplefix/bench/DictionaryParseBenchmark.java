@@ -0,0 +1,58 @@
+package org.simplefix.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.simplefix.dictionary.Dictionary;
+import org.simplefix.dictionary.snapshot.DictionarySnapshot;
+import org.simplefix.dictionary.xml.DictionaryParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing each of the XML dictionaries in /dictionary, and loading the same dictionary
+ * from a snapshot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DictionaryParseBenchmark {
+
+    @Param({"FIX40", "FIX41", "FIX42", "FIX43", "FIX44", "FIX50", "FIXT11"})
+    public String dictionary;
+
+    private URL source;
+    private File snapshot;
+
+    @Setup
+    public void setup() throws IOException {
+        source = Dictionaries.source(dictionary);
+        snapshot = File.createTempFile(dictionary, DictionarySnapshot.EXTENSION);
+        snapshot.deleteOnExit();
+        DictionarySnapshot.compile(source, snapshot);
+    }
+
+    @TearDown
+    public void tearDown() {
+        snapshot.delete();
+    }
+
+    @Benchmark
+    public Dictionary parseXML() {
+        return DictionaryParser.parseXML(source);
+    }
+
+    @Benchmark
+    public Dictionary loadSnapshot() {
+        return DictionarySnapshot.load(snapshot, null);
+    }
+
+    @Benchmark
+    public Dictionary loadSnapshotWithStaleCheck() {
+        return DictionarySnapshot.load(snapshot, source);
+    }
+}
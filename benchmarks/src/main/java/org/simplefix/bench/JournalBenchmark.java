@@ -0,0 +1,75 @@
+package org.simplefix.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.simplefix.journal.Journal;
+import org.simplefix.message.MessageEncoder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures appending a NewOrderSingle to the memory mapped journal, and looking one up by
+ * sequence number.   The journal is reset before each iteration, so the disk doesn't fill up.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JournalBenchmark {
+    private File directory;
+    private Journal journal;
+    private ByteBuffer message;
+    private int length;
+    private int seqNum;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = File.createTempFile("journal", "");
+        directory.delete();
+        journal = new Journal(directory, "bench");
+        message = ByteBuffer.allocate(1024);
+        MessageEncoder encoder = new MessageEncoder(Dictionaries.parse("FIX44"), "FIX.4.4");
+        encoder.begin(message, "D".getBytes());
+        encoder.add(49, "CLIENT");
+        encoder.add(56, "SERVER");
+        encoder.add(34, 1234567);
+        encoder.addUtcTimestamp(52, 1358431200000L);
+        encoder.add(11, "ORD-20130117-000042");
+        encoder.add(55, "EUR/USD");
+        encoder.add(54, '1');
+        encoder.addDecimal(38, 1000000, 0);
+        encoder.add(40, '2');
+        encoder.addDecimal(44, 130245, 5);
+        length = encoder.finish();
+    }
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        journal.reset();
+        seqNum = 0;
+        // Something to look up.
+        journal.append(++seqNum, message, 0, length);
+    }
+
+    @TearDown
+    public void tearDown() {
+        journal.reset();
+        journal.close();
+        directory.delete();
+    }
+
+    @Benchmark
+    public int append() {
+        journal.append(++seqNum, message, 0, length);
+        return seqNum;
+    }
+
+    @Benchmark
+    public ByteBuffer get() {
+        return journal.get(1);
+    }
+}
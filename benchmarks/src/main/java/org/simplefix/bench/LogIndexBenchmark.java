@@ -0,0 +1,90 @@
+package org.simplefix.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.simplefix.log.LogIndex;
+import org.simplefix.message.MessageEncoder;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures finding the messages of an order by ClOrdID in the {@link LogIndex} of a log of a million
+ * orders and execution reports.   The time to build the index is printed by the setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogIndexBenchmark {
+    private static final int ORDERS = 500000;
+
+    private File directory;
+    private LogIndex index;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = File.createTempFile("index", "");
+        directory.delete();
+        directory.mkdirs();
+        File log = new File(directory, "FIX.20130127.log");
+        MessageEncoder encoder = new MessageEncoder(Dictionaries.parse("FIX44"), "FIX.4.4");
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(log), 1024 * 1024);
+        try {
+            for (int i = 0; i < ORDERS * 2; i++) {
+                buffer.clear();
+                encoder.begin(buffer, (i % 2 == 0 ? "D" : "8").getBytes("ISO-8859-1"));
+                encoder.add(49, "CLIENT");
+                encoder.add(56, "BROKER");
+                encoder.add(34, i + 1);
+                encoder.addUtcTimestamp(52, 1359279000000L + i);
+                encoder.add(11, "ORD-20130127-" + i / 2);
+                if (i % 2 == 1) {
+                    encoder.add(37, "O-" + i / 2);
+                    encoder.add(17, "E-" + i / 2);
+                }
+                encoder.add(55, "EUR/USD");
+                encoder.add(54, '1');
+                encoder.addDecimal(38, 1000000, 0);
+                encoder.add(40, '2');
+                encoder.addDecimal(44, 130245, 5);
+                int length = encoder.finish();
+                out.write(buffer.array(), 0, length);
+                out.write('\n');
+            }
+        } finally {
+            out.close();
+        }
+        index = new LogIndex(new File(directory, "index"), Dictionaries.parse("FIX44"));
+        index.add(log);
+        long start = System.nanoTime();
+        long messages = index.update();
+        System.out.println("Indexed " + messages + " messages (" + log.length() / 1000000 + "MB) in "
+                + (System.nanoTime() - start) / 1000000 + "ms");
+    }
+
+    @TearDown
+    public void tearDown() {
+        index.close();
+        for (File file : new File(directory, "index").listFiles())
+            file.delete();
+        new File(directory, "index").delete();
+        for (File file : directory.listFiles())
+            file.delete();
+        directory.delete();
+    }
+
+    @Benchmark
+    public int find() throws IOException {
+        next = (next + 7919) % ORDERS;
+        return index.find(11, "ORD-20130127-" + next, null);
+    }
+}
@@ -0,0 +1,100 @@
+package org.simplefix.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.simplefix.log.LogFilter;
+import org.simplefix.log.LogScanner;
+import org.simplefix.message.MessageEncoder;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the scan rate of the {@link LogScanner} over a 256 MB log of orders and execution reports,
+ * which is in the page cache after it is written.   Each operation is a byte, so ops/us is MB/s.
+ * <br>
+ * "type" filters on a MsgType that isn't there, so it is the rate of framing messages with their
+ * BodyLength.   "tag" filters on a ClOrdID that isn't there, so every message is decoded.
+ * threads = 0 is one thread per processor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@OperationsPerInvocation(LogScanBenchmark.LOG_SIZE)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogScanBenchmark {
+    static final int LOG_SIZE = 256 * 1024 * 1024;
+
+    @Param({"1", "0"})
+    public int threads;
+
+    private File log;
+    private LogScanner scanner;
+    private LogFilter typeFilter;
+    private LogFilter tagFilter;
+
+    @Setup
+    public void setup() throws IOException {
+        MessageEncoder encoder = new MessageEncoder(Dictionaries.parse("FIX44"), "FIX.4.4");
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        byte[] prefix = "20130127-09:30:00.000 <- ".getBytes("ISO-8859-1");
+        log = File.createTempFile("bench", ".log");
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(log), 1024 * 1024);
+        try {
+            long written = 0;
+            for (int i = 0; ; i++) {
+                buffer.clear();
+                encoder.begin(buffer, (i % 3 == 0 ? "8" : "D").getBytes("ISO-8859-1"));
+                encoder.add(49, "CLIENT");
+                encoder.add(56, "BROKER");
+                encoder.add(34, i + 1);
+                encoder.addUtcTimestamp(52, 1359279000000L + i);
+                encoder.add(11, "ORD-20130127-" + i);
+                encoder.add(55, "EUR/USD");
+                encoder.add(54, '1');
+                encoder.addDecimal(38, 1000000, 0);
+                encoder.add(40, '2');
+                encoder.addDecimal(44, 130245, 5);
+                int length = encoder.finish();
+                if (written + prefix.length + length + 1 > LOG_SIZE)
+                    break;
+                out.write(prefix);
+                out.write(buffer.array(), 0, length);
+                out.write('\n');
+                written += prefix.length + length + 1;
+            }
+            for (; written < LOG_SIZE; written++)
+                out.write('\n');
+        } finally {
+            out.close();
+        }
+        scanner = new LogScanner(Dictionaries.parse("FIX44"),
+                threads == 0 ? Runtime.getRuntime().availableProcessors() : threads);
+        typeFilter = new LogFilter();
+        typeFilter.addMsgType("F");
+        tagFilter = new LogFilter();
+        tagFilter.addTagValue(11, "NOT-THERE");
+    }
+
+    @TearDown
+    public void tearDown() {
+        scanner.close();
+        log.delete();
+    }
+
+    @Benchmark
+    public long type() throws IOException {
+        return scanner.scan(typeFilter, null, log).getMessageCount();
+    }
+
+    @Benchmark
+    public long tag() throws IOException {
+        return scanner.scan(tagFilter, null, log).getMessageCount();
+    }
+}
@@ -0,0 +1,61 @@
+package org.simplefix.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.simplefix.metrics.Histogram;
+import org.simplefix.metrics.MessageMetrics;
+import org.simplefix.metrics.SessionMetrics;
+import org.simplefix.metrics.Stage;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of one metrics sample: recording into a histogram on its own, and the whole
+ * sample as the decoder takes it (two System.nanoTime() calls, finding the message type from the
+ * MsgType bytes, counting the message and recording the latency).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+    private Histogram histogram;
+    private SessionMetrics metrics;
+    private ByteBuffer msgType;
+    private long value;
+
+    @Setup
+    public void setup() {
+        histogram = new Histogram();
+        metrics = new SessionMetrics("bench", Dictionaries.parse("FIX44"));
+        msgType = ByteBuffer.wrap("35=AE".getBytes());
+        metrics.forType(msgType, 3, 2);
+    }
+
+    @Benchmark
+    public void record() {
+        // Spread over the buckets, like real latencies.
+        value = (value + 7919) & 0xFFFFF;
+        histogram.record(value);
+    }
+
+    /**
+     * The two clock reads on their own, which depend on the clock source of the machine.
+     */
+    @Benchmark
+    public long clock() {
+        final long start = System.nanoTime();
+        return System.nanoTime() - start;
+    }
+
+    @Benchmark
+    public void sample() {
+        final long start = System.nanoTime();
+        final long nanos = System.nanoTime() - start;
+        final MessageMetrics type = metrics.forType(msgType, 3, 2);
+        type.received(100);
+        type.record(Stage.DECODE, nanos);
+    }
+}
@@ -0,0 +1,55 @@
+package org.simplefix.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.simplefix.message.DecodedMessage;
+import org.simplefix.message.MessageDecoder;
+import org.simplefix.message.MessagePool;
+import org.simplefix.message.PooledMessage;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures keeping a copy of a decoded message: from a {@link MessagePool} (copy the bytes and the
+ * decoded fields, then release), compared with a new buffer and DecodedMessage decoded again each time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PoolBenchmark {
+    private static final String ORDER = "8=FIX.4.4|9=100|35=D|49=CLIENT|56=BROKER|34=12|52=20130126-09:30:00.000|"
+            + "11=ORD-000123|1=ACCOUNT|21=1|55=IBM|54=1|60=20130126-09:30:00.000|38=1000|40=2|44=195.25|59=0|10=123|";
+
+    private MessageDecoder decoder;
+    private MessagePool pool;
+    private DecodedMessage msg;
+
+    @Setup
+    public void setup() {
+        decoder = new MessageDecoder(Dictionaries.parse("FIX44"));
+        pool = new MessagePool(16, 16);
+        byte[] bytes = ORDER.replace('|', '\u0001').getBytes();
+        msg = decoder.decode(bytes, 0, bytes.length);
+    }
+
+    @Benchmark
+    public void pooled(Blackhole bh) {
+        PooledMessage copy = pool.copyOf(msg);
+        bh.consume(copy.getMessage().getFieldCount());
+        copy.release();
+    }
+
+    @Benchmark
+    public void allocate(Blackhole bh) {
+        ByteBuffer buffer = ByteBuffer.allocate(msg.getLength());
+        for (int i = 0; i < msg.getLength(); i++)
+            buffer.put(i, msg.getBuffer().get(msg.getOffset() + i));
+        DecodedMessage copy = new DecodedMessage();
+        decoder.decode(buffer, 0, msg.getLength(), copy);
+        bh.consume(copy.getFieldCount());
+    }
+}
@@ -0,0 +1,57 @@
+package org.simplefix.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.simplefix.message.DecodedMessage;
+import org.simplefix.message.MessageDecoder;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading the prices and quantities of a fill (Price, LastPx, AvgPx, LastQty, CumQty,
+ * LeavesQty) as fixed point decimals, compared with making a String and calling
+ * Double.parseDouble().   The message is decoded again for each invocation, so nothing is cached.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PriceBenchmark {
+    private static final String FILL = "8=FIX.4.4|9=100|35=8|11=ORD-000123|55=IBM|54=1|44=195.25|"
+            + "31=195.2437|6=195.243712|32=500|14=1500|151=8500|10=123|";
+
+    private static final int[] TAGS = {44, 31, 6, 32, 14, 151};
+
+    private MessageDecoder decoder;
+    private ByteBuffer buffer;
+    private int[] indexes;
+
+    @Setup
+    public void setup() {
+        decoder = new MessageDecoder(Dictionaries.parse("FIX44"));
+        decoder.setLazy(true);
+        byte[] bytes = FILL.replace('|', '\u0001').getBytes();
+        buffer = ByteBuffer.wrap(bytes);
+        DecodedMessage msg = decoder.decode(buffer, 0, bytes.length);
+        indexes = new int[TAGS.length];
+        for (int i = 0; i < TAGS.length; i++)
+            indexes[i] = msg.indexOf(TAGS[i]);
+    }
+
+    @Benchmark
+    public void decimal(Blackhole bh) {
+        DecodedMessage msg = decoder.decode(buffer, 0, buffer.limit());
+        for (int index : indexes)
+            bh.consume(msg.getDecimal(index));
+    }
+
+    @Benchmark
+    public void parseDouble(Blackhole bh) {
+        DecodedMessage msg = decoder.decode(buffer, 0, buffer.limit());
+        for (int index : indexes)
+            bh.consume(Double.parseDouble(msg.getString(index)));
+    }
+}
@@ -0,0 +1,47 @@
+package org.simplefix.bench.load;
+
+import org.simplefix.message.DecodedMessage;
+import org.simplefix.message.MessageEncoder;
+import org.simplefix.session.Session;
+import org.simplefix.session.SessionListener;
+
+/**
+ * The acceptor side of a load test: sends every application message back with the same body, so
+ * each message makes a round trip through the decoder, the session and the encoder on both sides.
+ */
+class EchoListener implements SessionListener {
+    /** The header and trailer tags, which the session writes itself. **/
+    private static final boolean[] SESSION_TAGS = new boolean[256];
+
+    static {
+        for (int tag : new int[]{8, 9, 10, 34, 35, 43, 49, 52, 56, 97, 122})
+            SESSION_TAGS[tag] = true;
+    }
+
+    private final MessageMix mix;
+
+    EchoListener(MessageMix mix) {
+        this.mix = mix;
+    }
+
+    public void onLogon(Session session) {
+    }
+
+    public void onMessage(Session session, DecodedMessage msg) {
+        final byte[] type = mix.typeOf(msg);
+        if (type == null)
+            return;
+        final MessageEncoder encoder = session.begin(type);
+        final int count = msg.getFieldCount();
+        for (int i = 0; i < count; i++) {
+            final int tag = msg.getTag(i);
+            if (tag < SESSION_TAGS.length && SESSION_TAGS[tag])
+                continue;
+            encoder.add(tag, msg.getBuffer(), msg.getValueOffset(i), msg.getValueLength(i));
+        }
+        session.end();
+    }
+
+    public void onLogout(Session session) {
+    }
+}
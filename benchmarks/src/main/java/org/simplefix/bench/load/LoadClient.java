@@ -0,0 +1,163 @@
+package org.simplefix.bench.load;
+
+import org.simplefix.message.DecodedMessage;
+import org.simplefix.metrics.Histogram;
+import org.simplefix.metrics.MessageMetrics;
+import org.simplefix.metrics.SessionMetrics;
+import org.simplefix.session.Session;
+import org.simplefix.session.SessionListener;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * One initiator session of a load test.   It sends messages and times how long each one takes to
+ * come back from the {@link EchoListener}.   The echoes come back in order, so the send times are
+ * kept in a FIFO.
+ * <br>
+ * Everything but the counters runs on the I/O thread of the session.
+ */
+class LoadClient implements SessionListener {
+    private final MessageMix mix;
+    private final int window;
+    private final CountDownLatch loggedOn;
+    private final Histogram latency = new Histogram();
+    private Session session;
+
+    /** The time each message in flight was due to be sent, in System.nanoTime(). **/
+    private long[] sendTimes = new long[1024];
+    private int head;
+    private int tail;
+
+    private long sequence;
+    private volatile long sent;
+    private volatile long received;
+    private volatile int inFlight;
+    private volatile boolean sending;
+
+    /**
+     * @param window the number of messages to keep in flight when there is no fixed rate, or 0
+     */
+    LoadClient(MessageMix mix, int window, CountDownLatch loggedOn) {
+        this.mix = mix;
+        this.window = window;
+        this.loggedOn = loggedOn;
+    }
+
+    void setSession(Session session) {
+        this.session = session;
+    }
+
+    Session getSession() {
+        return session;
+    }
+
+    long getSent() {
+        return sent;
+    }
+
+    long getReceived() {
+        return received;
+    }
+
+    /**
+     * @return the number of messages that haven't come back yet
+     */
+    int getInFlight() {
+        return inFlight;
+    }
+
+    public void onLogon(Session session) {
+        loggedOn.countDown();
+    }
+
+    public void onMessage(Session session, DecodedMessage msg) {
+        final long now = System.nanoTime();
+        if (head == tail)
+            return;
+        latency.record(now - sendTimes[head]);
+        head = (head + 1) & (sendTimes.length - 1);
+        received++;
+        inFlight--;
+        // Without a fixed rate, each echo makes room for another message.
+        if (window > 0 && sending)
+            send(now);
+    }
+
+    public void onLogout(Session session) {
+    }
+
+    /**
+     * Sends messages from another thread, that were due at first, first + interval, ...
+     */
+    void sendLater(final long first, final long interval, final int count) {
+        session.execute(new Runnable() {
+            public void run() {
+                if (!sending)
+                    return;
+                for (int i = 0; i < count; i++)
+                    send(first + i * interval);
+            }
+        });
+    }
+
+    /**
+     * Starts sending: fills the window, if there is one.
+     */
+    void start() {
+        sending = true;
+        if (window > 0) {
+            session.execute(new Runnable() {
+                public void run() {
+                    final long now = System.nanoTime();
+                    for (int i = 0; i < window; i++)
+                        send(now);
+                }
+            });
+        }
+    }
+
+    void stop() {
+        sending = false;
+    }
+
+    private void send(long due) {
+        mix.send(session, sequence++);
+        if (((tail + 1) & (sendTimes.length - 1)) == head)
+            grow();
+        sendTimes[tail] = due;
+        tail = (tail + 1) & (sendTimes.length - 1);
+        sent++;
+        inFlight++;
+    }
+
+    private void grow() {
+        final long[] bigger = new long[sendTimes.length * 2];
+        int n = 0;
+        for (int i = head; i != tail; i = (i + 1) & (sendTimes.length - 1))
+            bigger[n++] = sendTimes[i];
+        sendTimes = bigger;
+        head = 0;
+        tail = n;
+    }
+
+    /**
+     * Clears the latencies and counters at the end of the warm up.   Call on the I/O thread.
+     */
+    void reset() {
+        latency.reset();
+        sent = 0;
+        received = 0;
+        final SessionMetrics metrics = session.getMetrics();
+        if (metrics != null) {
+            for (MessageMetrics type : metrics.getMessageTypes())
+                type.reset();
+        }
+    }
+
+    /**
+     * @return a copy of the latencies, in nanoseconds.   Call on the I/O thread.
+     */
+    Histogram copyLatency() {
+        return latency.copy();
+    }
+}
@@ -0,0 +1,287 @@
+package org.simplefix.bench.load;
+
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.channel.ChannelFactory;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.simplefix.dictionary.Dictionary;
+import org.simplefix.dictionary.DictionaryRegistry;
+import org.simplefix.metrics.Histogram;
+import org.simplefix.metrics.MessageMetrics;
+import org.simplefix.metrics.SessionMetrics;
+import org.simplefix.session.Session;
+import org.simplefix.session.SessionID;
+import org.simplefix.session.netty.SessionAcceptor;
+import org.simplefix.session.netty.SessionHandler;
+import org.slf4j.Logger;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Runs a server and a number of clients in one JVM, over loopback, and measures throughput and
+ * round trip latency.   The server is a {@link SessionAcceptor} that echoes every application message,
+ * and each client is an initiator {@link Session} that sends a {@link MessageMix}.
+ * <br>
+ * With a fixed rate, each message has a time it is due to be sent, and its latency is measured
+ * from then, not from when it was actually sent.   So when the clients (or the server) stall, the
+ * messages that should have been sent during the stall count the wait, and the percentiles are
+ * corrected for coordinated omission.   With a rate of 0 the clients send as fast as the echoes
+ * come back, keeping a window of messages in flight, to find the maximum throughput.
+ * <br>
+ * Run it with e.g.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar org.simplefix.bench.load.LoadHarness -clients 4 -rate 20000 -seconds 10
+ * </pre>
+ */
+public class LoadHarness {
+    private static final Logger log = getLogger(LoadHarness.class);
+
+    private int clients = 4;
+    private int rate = 10000;
+    private int window = 100;
+    private int warmupSeconds = 5;
+    private int seconds = 10;
+    private int workers = 2;
+    private MessageMix mix = new MessageMix(MessageMix.DEFAULT);
+
+    /**
+     * @param clients the number of client sessions
+     */
+    public void setClients(int clients) {
+        if (clients <= 0) throw new IllegalArgumentException("Invalid clients " + clients);
+        this.clients = clients;
+    }
+
+    /**
+     * @param rate the total messages per second sent by all the clients, or 0 to send as fast as possible
+     */
+    public void setRate(int rate) {
+        if (rate < 0) throw new IllegalArgumentException("Invalid rate " + rate);
+        this.rate = rate;
+    }
+
+    /**
+     * @param window the messages each client keeps in flight when there is no fixed rate
+     */
+    public void setWindow(int window) {
+        if (window <= 0) throw new IllegalArgumentException("Invalid window " + window);
+        this.window = window;
+    }
+
+    public void setWarmupSeconds(int warmupSeconds) {
+        this.warmupSeconds = warmupSeconds;
+    }
+
+    public void setSeconds(int seconds) {
+        if (seconds <= 0) throw new IllegalArgumentException("Invalid seconds " + seconds);
+        this.seconds = seconds;
+    }
+
+    /**
+     * @param workers the number of server I/O threads
+     */
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    public void setMix(MessageMix mix) {
+        this.mix = mix;
+    }
+
+    /**
+     * Runs the test.
+     * @return the results of the measurement period, after the warm up
+     */
+    public LoadReport run() throws InterruptedException {
+        final DictionaryRegistry registry = new DictionaryRegistry();
+        registry.loadBundled("FIX44");
+        final Dictionary dictionary = registry.get("FIX.4.4");
+        final HashedWheelTimer timer = new HashedWheelTimer();
+        final SessionAcceptor acceptor = new SessionAcceptor(dictionary, workers);
+        final ChannelFactory clientFactory = new NioClientSocketChannelFactory(
+                Executors.newCachedThreadPool(), Executors.newCachedThreadPool());
+        try {
+            final EchoListener echo = new EchoListener(mix);
+            for (int i = 0; i < clients; i++)
+                acceptor.addSession(new Session(new SessionID("FIX.4.4", "SERVER", "CLIENT" + i), dictionary, false, echo));
+            acceptor.bind(new InetSocketAddress("127.0.0.1", 0));
+
+            final CountDownLatch loggedOn = new CountDownLatch(clients);
+            final LoadClient[] loadClients = new LoadClient[clients];
+            for (int i = 0; i < clients; i++) {
+                final LoadClient client = new LoadClient(mix, rate == 0 ? window : 0, loggedOn);
+                final Session session = new Session(new SessionID("FIX.4.4", "CLIENT" + i, "SERVER"), dictionary, true, client);
+                session.setMetrics(new SessionMetrics(session.getSessionID().toString(), dictionary));
+                client.setSession(session);
+                connect(clientFactory, acceptor, session, dictionary, timer);
+                loadClients[i] = client;
+            }
+            if (!loggedOn.await(10, TimeUnit.SECONDS))
+                throw new IllegalStateException("Clients did not log on");
+
+            log.info("Running " + describe() + ", warming up for " + warmupSeconds + " s");
+            for (LoadClient client : loadClients)
+                client.start();
+            final long start = System.nanoTime();
+            final long measureStart = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+            final long end = measureStart + TimeUnit.SECONDS.toNanos(seconds);
+            if (rate > 0) {
+                drive(loadClients, start, measureStart);
+            } else {
+                LockSupport.parkNanos(measureStart - System.nanoTime());
+            }
+            for (final LoadClient client : loadClients) {
+                onIOThread(client, new Callable<Object>() {
+                    public Object call() {
+                        client.reset();
+                        return null;
+                    }
+                });
+            }
+            if (rate > 0) {
+                drive(loadClients, measureStart, end);
+            } else {
+                LockSupport.parkNanos(end - System.nanoTime());
+            }
+            final double elapsed = (System.nanoTime() - measureStart) / 1e9;
+            for (LoadClient client : loadClients)
+                client.stop();
+            drain(loadClients);
+            return report(loadClients, elapsed);
+        } finally {
+            acceptor.close();
+            clientFactory.releaseExternalResources();
+            timer.stop();
+        }
+    }
+
+    private String describe() {
+        return clients + " clients, " + (rate > 0 ? rate + " msg/s" : "open loop with a window of " + window)
+                + ", mix " + mix;
+    }
+
+    private static void connect(ChannelFactory factory, SessionAcceptor acceptor, final Session session,
+                                final Dictionary dictionary, final HashedWheelTimer timer) {
+        ClientBootstrap bootstrap = new ClientBootstrap(factory);
+        bootstrap.setOption("tcpNoDelay", true);
+        bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+            public ChannelPipeline getPipeline() throws Exception {
+                return SessionHandler.pipeline(session, dictionary, timer);
+            }
+        });
+        ChannelFuture future = bootstrap.connect(acceptor.getLocalAddress()).awaitUninterruptibly();
+        if (!future.isSuccess())
+            throw new IllegalStateException("Unable to connect " + session.getSessionID(), future.getCause());
+    }
+
+    /**
+     * Sends the messages due between from and to at the fixed rate.   Each client sends at its share
+     * of the rate, offset from the others, and the messages that are due are handed to its I/O
+     * thread in one batch.
+     */
+    private void drive(LoadClient[] loadClients, long from, long to) {
+        final long interval = Math.max(1, TimeUnit.SECONDS.toNanos(clients) / rate);
+        final long[] next = new long[clients];
+        for (int i = 0; i < clients; i++)
+            next[i] = from + interval * i / clients;
+        while (true) {
+            final long now = System.nanoTime();
+            if (now >= to)
+                return;
+            long earliest = Long.MAX_VALUE;
+            for (int i = 0; i < clients; i++) {
+                if (now >= next[i]) {
+                    final int count = (int) ((now - next[i]) / interval) + 1;
+                    loadClients[i].sendLater(next[i], interval, count);
+                    next[i] += count * interval;
+                }
+                earliest = Math.min(earliest, next[i]);
+            }
+            final long wait = Math.min(earliest, to) - System.nanoTime();
+            if (wait > 0)
+                LockSupport.parkNanos(wait);
+        }
+    }
+
+    private static void drain(LoadClient[] loadClients) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10000;
+        for (LoadClient client : loadClients) {
+            while (client.getInFlight() > 0 && System.currentTimeMillis() < deadline)
+                Thread.sleep(10);
+        }
+    }
+
+    private LoadReport report(LoadClient[] loadClients, double elapsed) throws InterruptedException {
+        final Histogram latency = new Histogram();
+        long sent = 0;
+        long received = 0;
+        long bytes = 0;
+        for (final LoadClient client : loadClients) {
+            latency.add(onIOThread(client, new Callable<Histogram>() {
+                public Histogram call() {
+                    return client.copyLatency();
+                }
+            }));
+            sent += client.getSent();
+            received += client.getReceived();
+            for (MessageMetrics type : client.getSession().getMetrics().snapshot().getMessageTypes())
+                bytes += type.getSentBytes() + type.getReceivedBytes();
+        }
+        return new LoadReport(describe(), elapsed, sent, received, bytes, latency);
+    }
+
+    /**
+     * Runs a task on the I/O thread of a client, and waits for the result.
+     */
+    private static <T> T onIOThread(LoadClient client, Callable<T> task) throws InterruptedException {
+        final FutureTask<T> future = new FutureTask<T>(task);
+        client.getSession().execute(future);
+        try {
+            return future.get(10, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to run on the I/O thread of " + client.getSession(), e);
+        }
+    }
+
+    /**
+     * Options: -clients N, -rate msg/s (0 for open loop), -window N, -warmup seconds, -seconds N,
+     * -workers N and -mix e.g. D=50,8=30,X=20.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        final LoadHarness harness = new LoadHarness();
+        for (int i = 0; i < args.length; i++) {
+            final String option = args[i];
+            if (i + 1 >= args.length)
+                throw new IllegalArgumentException("Missing value for " + option);
+            final String value = args[++i];
+            if (option.equals("-clients"))
+                harness.setClients(Integer.parseInt(value));
+            else if (option.equals("-rate"))
+                harness.setRate(Integer.parseInt(value));
+            else if (option.equals("-window"))
+                harness.setWindow(Integer.parseInt(value));
+            else if (option.equals("-warmup"))
+                harness.setWarmupSeconds(Integer.parseInt(value));
+            else if (option.equals("-seconds"))
+                harness.setSeconds(Integer.parseInt(value));
+            else if (option.equals("-workers"))
+                harness.setWorkers(Integer.parseInt(value));
+            else if (option.equals("-mix"))
+                harness.setMix(new MessageMix(value));
+            else
+                throw new IllegalArgumentException("Unknown option " + option);
+        }
+        System.out.println(harness.run());
+    }
+}
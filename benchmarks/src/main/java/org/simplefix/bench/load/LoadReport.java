@@ -0,0 +1,69 @@
+package org.simplefix.bench.load;
+
+import org.simplefix.metrics.Histogram;
+
+/**
+ * The results of a load test: throughput over the measurement period, and the round trip latency of
+ * every message sent in it.
+ */
+public class LoadReport {
+    private final String description;
+    private final double seconds;
+    private final long sent;
+    private final long received;
+    private final long bytes;
+    private final Histogram latency;
+
+    LoadReport(String description, double seconds, long sent, long received, long bytes, Histogram latency) {
+        this.description = description;
+        this.seconds = seconds;
+        this.sent = sent;
+        this.received = received;
+        this.bytes = bytes;
+        this.latency = latency;
+    }
+
+    /**
+     * @return the messages the clients sent, per second
+     */
+    public double getMessagesPerSecond() {
+        return sent / seconds;
+    }
+
+    /**
+     * @return the bytes the clients sent and received, per second
+     */
+    public double getBytesPerSecond() {
+        return bytes / seconds;
+    }
+
+    public long getSent() {
+        return sent;
+    }
+
+    public long getReceived() {
+        return received;
+    }
+
+    /**
+     * @return the round trip latencies in nanoseconds, from when each message was due to be sent
+     */
+    public Histogram getLatency() {
+        return latency;
+    }
+
+    private static String micros(long nanos) {
+        return String.format("%.1f", nanos / 1000.0);
+    }
+
+    @Override
+    public String toString() {
+        return description + '\n'
+                + String.format("sent %d, received %d in %.1f s: %.0f msg/s, %.2f MB/s%n",
+                sent, received, seconds, getMessagesPerSecond(), getBytesPerSecond() / (1024 * 1024))
+                + "round trip latency (us): p50=" + micros(latency.getValueAtPercentile(50))
+                + " p99=" + micros(latency.getValueAtPercentile(99))
+                + " p99.9=" + micros(latency.getValueAtPercentile(99.9))
+                + " max=" + micros(latency.getMax());
+    }
+}
@@ -0,0 +1,163 @@
+package org.simplefix.bench.load;
+
+import org.simplefix.message.DecodedMessage;
+import org.simplefix.message.MessageEncoder;
+import org.simplefix.session.Session;
+import org.simplefix.util.Decimal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The message types a load test sends, with their weights, e.g. "D=50,8=30,X=20" for half
+ * NewOrderSingle, 30% ExecutionReport and 20% MarketDataIncrementalRefresh.   The types are sent
+ * in a fixed, interleaved order, so every run sends the same messages.
+ */
+public class MessageMix {
+    public static final String DEFAULT = "D=50,8=30,X=20";
+
+    private static final String[] SYMBOLS = {"IBM", "MSFT", "EUR/USD", "VOD.L"};
+
+    // Tags.
+    private static final int AVG_PX = 6;
+    private static final int CL_ORD_ID = 11;
+    private static final int CUM_QTY = 14;
+    private static final int EXEC_ID = 17;
+    private static final int LAST_PX = 31;
+    private static final int LAST_QTY = 32;
+    private static final int ORDER_ID = 37;
+    private static final int ORDER_QTY = 38;
+    private static final int ORD_STATUS = 39;
+    private static final int ORD_TYPE = 40;
+    private static final int PRICE = 44;
+    private static final int SIDE = 54;
+    private static final int SYMBOL = 55;
+    private static final int TRANSACT_TIME = 60;
+    private static final int EXEC_TYPE = 150;
+    private static final int LEAVES_QTY = 151;
+    private static final int NO_MD_ENTRIES = 268;
+    private static final int MD_ENTRY_TYPE = 269;
+    private static final int MD_ENTRY_PX = 270;
+    private static final int MD_ENTRY_SIZE = 271;
+    private static final int MD_UPDATE_ACTION = 279;
+
+    private final String description;
+    private final byte[][] types;
+    /** The type of each message in the cycle. **/
+    private final byte[][] cycle;
+
+    /**
+     * @param description e.g. "D=50,8=30,X=20".  The supported types are D, 8 and X.
+     */
+    public MessageMix(String description) {
+        this.description = description;
+        List<byte[]> typeList = new ArrayList<byte[]>();
+        List<Integer> weights = new ArrayList<Integer>();
+        int total = 0;
+        for (String part : description.split(",")) {
+            String[] typeAndWeight = part.trim().split("=");
+            if (typeAndWeight.length != 2)
+                throw new IllegalArgumentException("Invalid message mix " + description);
+            String type = typeAndWeight[0].trim();
+            if (!type.equals("D") && !type.equals("8") && !type.equals("X"))
+                throw new IllegalArgumentException("Unsupported MsgType " + type + ", use D, 8 or X");
+            int weight = Integer.parseInt(typeAndWeight[1].trim());
+            if (weight <= 0)
+                throw new IllegalArgumentException("Invalid weight " + weight + " for " + type);
+            typeList.add(type.getBytes());
+            weights.add(weight);
+            total += weight;
+        }
+        types = typeList.toArray(new byte[typeList.size()][]);
+        // Spread each type evenly over the cycle: always pick the type that is furthest behind its share.
+        cycle = new byte[total][];
+        int[] counts = new int[types.length];
+        for (int i = 0; i < total; i++) {
+            int best = 0;
+            double bestDeficit = -Double.MAX_VALUE;
+            for (int t = 0; t < types.length; t++) {
+                double deficit = (double) weights.get(t) * (i + 1) / total - counts[t];
+                if (deficit > bestDeficit) {
+                    bestDeficit = deficit;
+                    best = t;
+                }
+            }
+            counts[best]++;
+            cycle[i] = types[best];
+        }
+    }
+
+    /**
+     * @return the MsgType of the nth message
+     */
+    public byte[] typeOf(long n) {
+        return cycle[(int) (n % cycle.length)];
+    }
+
+    /**
+     * @return the MsgType bytes of a message, without allocating, or null if it isn't in the mix
+     */
+    public byte[] typeOf(DecodedMessage msg) {
+        final int index = msg.getMsgTypeIndex();
+        if (index < 0)
+            return null;
+        for (byte[] type : types) {
+            if (msg.valueEquals(index, type))
+                return type;
+        }
+        return null;
+    }
+
+    /**
+     * Encodes and sends the nth message.   Must be called on the I/O thread of the session.
+     */
+    public void send(Session session, long n) {
+        final byte[] type = typeOf(n);
+        final MessageEncoder encoder = session.begin(type);
+        final String symbol = SYMBOLS[(int) (n % SYMBOLS.length)];
+        final long mantissa = 19525 + n % 100;
+        final long px = Decimal.pack(mantissa, 2);
+        switch (type[0]) {
+            case 'D':
+                encoder.add(CL_ORD_ID, n);
+                encoder.add(SYMBOL, symbol);
+                encoder.add(SIDE, '1');
+                encoder.addUtcTimestamp(TRANSACT_TIME, System.currentTimeMillis());
+                encoder.add(ORDER_QTY, 1000);
+                encoder.add(ORD_TYPE, '2');
+                encoder.addDecimal(PRICE, px);
+                break;
+            case '8':
+                encoder.add(ORDER_ID, n);
+                encoder.add(EXEC_ID, n);
+                encoder.add(EXEC_TYPE, 'F');
+                encoder.add(ORD_STATUS, '1');
+                encoder.add(SYMBOL, symbol);
+                encoder.add(SIDE, '1');
+                encoder.add(ORDER_QTY, 1000);
+                encoder.add(LAST_QTY, 100);
+                encoder.addDecimal(LAST_PX, px);
+                encoder.add(LEAVES_QTY, 900);
+                encoder.add(CUM_QTY, 100);
+                encoder.addDecimal(AVG_PX, px);
+                encoder.addUtcTimestamp(TRANSACT_TIME, System.currentTimeMillis());
+                break;
+            default:
+                encoder.add(NO_MD_ENTRIES, 2);
+                for (int side = 0; side < 2; side++) {
+                    encoder.add(MD_UPDATE_ACTION, '1');
+                    encoder.add(MD_ENTRY_TYPE, side == 0 ? '0' : '1');
+                    encoder.add(SYMBOL, symbol);
+                    encoder.addDecimal(MD_ENTRY_PX, Decimal.pack(mantissa + side, 2));
+                    encoder.add(MD_ENTRY_SIZE, 1000000);
+                }
+                break;
+        }
+        session.end();
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
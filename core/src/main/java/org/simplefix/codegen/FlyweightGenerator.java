@@ -0,0 +1,478 @@
+package org.simplefix.codegen;
+
+import org.simplefix.dictionary.Dictionary;
+import org.simplefix.dictionary.FieldDef;
+import org.simplefix.dictionary.MessageLayout;
+import org.simplefix.dictionary.MessageType;
+import org.simplefix.dictionary.xml.DictionaryParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Build time tool that generates a flyweight class for each message type in a dictionary, see
+ * {@link org.simplefix.message.Flyweight}.   Each class has a constant for each tag, a fixed slot for
+ * each field, a typed accessor for each field, and a nested class to iterate over each repeating
+ * group.   The slot of a field is the index of its {@link MessageLayout.Entry}, which the decoder has
+ * already found, so the classes find their fields with one array load each.   A message decoded in
+ * lazy mode has no entries, and is found with a switch on the tag instead, so there are no generic
+ * tag lookups left for the JIT to see through.
+ * <br>
+ * Accessors return the type of the field's {@link org.simplefix.dictionary.ValueType}: int, long (a
+ * packed {@link org.simplefix.util.Decimal} for prices, quantities and amounts), char, boolean or
+ * String.   indexOf&lt;Field&gt;() gives the index of a field in the message, to read it without copying.
+ * A NumInGroup field has an accessor for its group instead of its count.
+ * <br>
+ * Usage: FlyweightGenerator &lt;XML dictionary&gt; &lt;package&gt; &lt;output directory&gt;
+ */
+public class FlyweightGenerator {
+    private static final Logger log = LoggerFactory.getLogger(FlyweightGenerator.class);
+
+    /** Names that the generated classes already use. **/
+    private static final Set<String> RESERVED = new HashSet<String>(Arrays.asList(
+            "TYPE", "TYPE_BYTES", "FIRST_ENTRY", "SLOT_COUNT", "SLOT_TAGS", "getMessage", "getClass", "hasNext", "next", "size", "wrap"));
+
+    private final Dictionary dictionary;
+    private final String packageName;
+
+    private StringBuilder out;
+    private int indent;
+
+    public FlyweightGenerator(Dictionary dictionary, String packageName) {
+        this.dictionary = dictionary;
+        this.packageName = packageName;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: FlyweightGenerator <XML dictionary> <package> <output directory>");
+            System.exit(1);
+        }
+        final long start = System.currentTimeMillis();
+        final Dictionary dictionary = DictionaryParser.parseXML(new File(args[0]).toURI().toURL());
+        final int count = new FlyweightGenerator(dictionary, args[1]).generateAll(new File(args[2]));
+        log.info("Generated " + count + " flyweights from " + args[0] + " in "
+                + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Writes a source file for each message type that has a name.
+     * @param sourceRoot the source root, the package directories are created under it
+     * @return the number of classes written
+     * @throws IOException if a file could not be written
+     */
+    public int generateAll(File sourceRoot) throws IOException {
+        final File dir = new File(sourceRoot, packageName.replace('.', File.separatorChar));
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Unable to create " + dir);
+        int count = 0;
+        for (MessageType messageType : dictionary.getMessageTypes()) {
+            if (messageType.getName() == null)
+                continue;
+            final String className = identifier(messageType.getName());
+            final Writer writer = new OutputStreamWriter(new FileOutputStream(new File(dir, className + ".java")), "UTF-8");
+            try {
+                writer.write(generate(messageType));
+            } finally {
+                writer.close();
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @param messageType a message type with a name
+     * @return the source of the flyweight class
+     */
+    public String generate(MessageType messageType) {
+        final MessageLayout layout = dictionary.getLayout(messageType.getMsgType());
+        final String className = identifier(messageType.getName());
+        out = new StringBuilder(16384);
+        indent = 0;
+
+        line("package " + packageName + ";");
+        line("");
+        line("import org.simplefix.message.DecodedMessage;");
+        line("import org.simplefix.message.Flyweight;");
+        line("import org.simplefix.message.GroupFlyweight;");
+        line("");
+        line("/**");
+        line(" * " + messageType.getName() + " (MsgType " + messageType.getMsgType() + ")"
+                + (dictionary.getVersion() == null ? "" : " of " + dictionary.getVersion())
+                + ", generated by FlyweightGenerator.   Do not edit.");
+        line(" */");
+        line("@SuppressWarnings(\"unused\")");
+        line("public final class " + className + " extends Flyweight {");
+        indent++;
+        line("public static final String TYPE = \"" + escape(messageType.getMsgType()) + "\";");
+        line("private static final byte[] TYPE_BYTES = TYPE.getBytes();");
+        line("");
+
+        // Tag constants for every field in the message, including the groups.
+        final Names names = new Names(RESERVED);
+        final String[] tagConstants = new String[layout.getEntryCount()];
+        final Set<Integer> declared = new HashSet<Integer>();
+        for (int i = 0; i < layout.getEntryCount(); i++) {
+            final FieldDef fieldDef = layout.getEntryByIndex(i).getFieldRef().getFieldDef();
+            if (declared.add(fieldDef.getTag())) {
+                tagConstants[i] = names.unique(constantName(fieldDef.getName()), fieldDef.getTag());
+                line("public static final int " + tagConstants[i] + " = " + fieldDef.getTag() + ";");
+            } else {
+                tagConstants[i] = tagConstant(layout, tagConstants, fieldDef.getTag());
+            }
+        }
+        line("");
+
+        final Set<String> enclosing = new HashSet<String>();
+        enclosing.add(className);
+        body(className, members(layout, null, 0, layout.getEntryCount()), tagConstants, layout, enclosing, null,
+                0, layout.getEntryCount());
+
+        indent--;
+        line("}");
+        final String source = out.toString();
+        out = null;
+        return source;
+    }
+
+    /**
+     * Generates the slots, accessors and nested groups of a message or group class.   There is a slot
+     * for each layout entry from first to end, including the entries of nested groups, which stay empty.
+     */
+    private void body(String className, List<MessageLayout.Entry> entries, String[] tagConstants,
+                      MessageLayout layout, Set<String> enclosing, MessageLayout.Group group,
+                      int first, int end) {
+        final Names names = new Names(RESERVED);
+        for (String tag : tagConstants) {
+            if (tag != null)
+                names.used.add(tag);
+        }
+        final String[] slots = new String[entries.size()];
+        final String[] groupClasses = new String[entries.size()];
+        final String[] groupFields = new String[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            final FieldDef fieldDef = entries.get(i).getFieldRef().getFieldDef();
+            slots[i] = names.unique(constantName(fieldDef.getName()) + "_SLOT", fieldDef.getTag());
+            line("private static final int " + slots[i] + " = " + (entries.get(i).getIndex() - first) + ";");
+        }
+        line("private static final int FIRST_ENTRY = " + first + ";");
+        line("private static final int SLOT_COUNT = " + (end - first) + ";");
+        slotTags(entries, first, end);
+        line("");
+        for (int i = 0; i < entries.size(); i++) {
+            final MessageLayout.Group nested = entries.get(i).getNestedGroup();
+            if (nested == null)
+                continue;
+            String name = identifier(entries.get(i).getFieldRef().getFieldDef().getName());
+            if (enclosing.contains(name) || names.used.contains(name))
+                name = name + "Group";
+            names.used.add(name);
+            groupClasses[i] = name;
+            groupFields[i] = Character.toLowerCase(name.charAt(0)) + name.substring(1);
+            line("private final " + name + " " + groupFields[i] + " = new " + name + "();");
+        }
+        line("");
+        line("public " + className + "() {");
+        line("    super(SLOT_COUNT);");
+        line("}");
+        line("");
+
+        if (group == null) {
+            line("/**");
+            line(" * Finds the fields of a decoded message.   The flyweight is valid until the message is decoded again.");
+            line(" * @param msg a decoded message of this type");
+            line(" * @return this");
+            line(" */");
+            line("public " + className + " wrap(DecodedMessage msg) {");
+            indent++;
+            line("final int msgType = msg.getMsgTypeIndex();");
+            line("if (msgType < 0 || !msg.valueEquals(msgType, TYPE_BYTES))");
+            line("    throw new IllegalArgumentException(\"Not a " + escape(className) + ": \" + msg);");
+            line("this.msg = msg;");
+            line("clearSlots();");
+            line("final int count = msg.getFieldCount();");
+            line("for (int i = 0; i < count; i = skip(i)) {");
+            line("    final int slot = slot(msg, i);");
+            line("    if (slot >= 0 && slots[slot] < 0)");
+            line("        slots[slot] = i;");
+            line("}");
+            line("return this;");
+            indent--;
+            line("}");
+        } else {
+            final String delimiter = tagConstant(layout, tagConstants, group.getDelimiterTag());
+            line("/**");
+            line(" * Moves to the next instance of the group.");
+            line(" * @return false if there are no more instances");
+            line(" */");
+            line("public boolean next() {");
+            indent++;
+            line("if (next >= end)");
+            line("    return false;");
+            line("clearSlots();");
+            line("int i = next;");
+            line("do {");
+            line("    final int slot = slot(msg, i);");
+            line("    if (slot >= 0 && slots[slot] < 0)");
+            line("        slots[slot] = i;");
+            line("    i = skip(i);");
+            line("} while (i < end && msg.getTag(i) != " + delimiter + ");");
+            line("next = i;");
+            line("return true;");
+            indent--;
+            line("}");
+        }
+
+        line("");
+        slotOfField();
+        line("");
+        slotOfTag(entries, tagConstants, slots);
+
+        for (int i = 0; i < entries.size(); i++) {
+            final FieldDef fieldDef = entries.get(i).getFieldRef().getFieldDef();
+            final String tag = tagConstant(layout, tagConstants, fieldDef.getTag());
+            String property = identifier(fieldDef.getName());
+            if (RESERVED.contains("get" + property) || RESERVED.contains("has" + property)
+                    || RESERVED.contains("indexOf" + property))
+                property = property + "Field";
+            line("");
+            if (groupClasses[i] != null) {
+                line("public " + groupClasses[i] + " get" + property + "() {");
+                line("    " + groupFields[i] + ".wrap(msg, slots[" + slots[i] + "]);");
+                line("    return " + groupFields[i] + ";");
+                line("}");
+                continue;
+            }
+            line("public boolean has" + property + "() {");
+            line("    return has(" + slots[i] + ");");
+            line("}");
+            line("");
+            line("/**");
+            line(" * @return the index of the field in the message, or -1, for access without copying");
+            line(" */");
+            line("public int indexOf" + property + "() {");
+            line("    return slots[" + slots[i] + "];");
+            line("}");
+            line("");
+            final String index = "required(" + slots[i] + ", " + tag + ")";
+            switch (fieldDef.getValueType()) {
+                case INTEGER:
+                    line("public int get" + property + "() {");
+                    line("    return msg.getInt(" + index + ");");
+                    break;
+                case DECIMAL:
+                    line("/**");
+                    line(" * @return the value as a packed {@link org.simplefix.util.Decimal}");
+                    line(" */");
+                    line("public long get" + property + "() {");
+                    line("    return msg.getDecimal(" + index + ");");
+                    break;
+                case DOUBLE:
+                    line("public double get" + property + "() {");
+                    line("    return msg.getDouble(" + index + ");");
+                    break;
+                case CHARACTER:
+                    line("public char get" + property + "() {");
+                    line("    return msg.getChar(" + index + ");");
+                    break;
+                case BOOLEAN:
+                    line("public boolean get" + property + "() {");
+                    line("    return msg.getBoolean(" + index + ");");
+                    break;
+                default:
+                    line("public String get" + property + "() {");
+                    line("    return msg.getString(" + index + ");");
+                    break;
+            }
+            line("}");
+        }
+
+        for (int i = 0; i < entries.size(); i++) {
+            if (groupClasses[i] == null)
+                continue;
+            final MessageLayout.Group nested = entries.get(i).getNestedGroup();
+            line("");
+            line("public static final class " + groupClasses[i] + " extends GroupFlyweight {");
+            indent++;
+            final Set<String> inner = new HashSet<String>(enclosing);
+            inner.add(groupClasses[i]);
+            body(groupClasses[i], members(layout, nested, nested.getFirstEntry(), nested.getEndEntry()),
+                    tagConstants, layout, inner, nested, nested.getFirstEntry(), nested.getEndEntry());
+            indent--;
+            line("}");
+        }
+    }
+
+    /**
+     * Generates the tag of each slot, to check the entry of a field against: a message decoded with
+     * another version of the dictionary can have different entries.
+     */
+    private void slotTags(List<MessageLayout.Entry> entries, int first, int end) {
+        final int[] tags = new int[end - first];
+        for (MessageLayout.Entry entry : entries)
+            tags[entry.getIndex() - first] = entry.getTag();
+        line("/** The tag of each slot, or 0 if it has no accessor. **/");
+        line("private static final int[] SLOT_TAGS = {");
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < tags.length; i++) {
+            sb.append(tags[i]).append(i + 1 < tags.length ? "," : "");
+            if (sb.length() > 100 || i + 1 == tags.length) {
+                line("    " + sb);
+                sb.setLength(0);
+            } else {
+                sb.append(' ');
+            }
+        }
+        line("};");
+    }
+
+    /**
+     * Generates the lookup of the slot of a field, from the index of its layout entry.
+     */
+    private void slotOfField() {
+        line("/**");
+        line(" * @return the slot of the field at index, or -1 if it has none.   The slot is found by tag if the");
+        line(" *         message was decoded in lazy mode, or with another version of the dictionary.");
+        line(" */");
+        line("private static int slot(DecodedMessage msg, int index) {");
+        indent++;
+        line("final int tag = msg.getTag(index);");
+        line("final org.simplefix.dictionary.MessageLayout.Entry entry = msg.getEntry(index);");
+        line("if (entry != null) {");
+        line("    final int slot = entry.getIndex() - FIRST_ENTRY;");
+        line("    if (slot >= 0 && slot < SLOT_COUNT && SLOT_TAGS[slot] == tag)");
+        line("        return slot;");
+        line("}");
+        line("return slot(tag);");
+        indent--;
+        line("}");
+    }
+
+    /**
+     * Generates the switch from tag to slot.   It is a method of its own, returning the slot, so that
+     * messages with hundreds of fields stay well under the size the JIT will compile.
+     */
+    private void slotOfTag(List<MessageLayout.Entry> entries, String[] tagConstants, String[] slots) {
+        line("private static int slot(int tag) {");
+        indent++;
+        line("switch (tag) {");
+        indent++;
+        for (int i = 0; i < entries.size(); i++) {
+            line("case " + tagConstants[entries.get(i).getIndex()] + ":");
+            line("    return " + slots[i] + ";");
+        }
+        line("default:");
+        line("    return -1;");
+        indent--;
+        line("}");
+        indent--;
+        line("}");
+    }
+
+    /**
+     * @return the entries directly in a group (or at the top level if group is null), one per tag
+     */
+    private static List<MessageLayout.Entry> members(MessageLayout layout, MessageLayout.Group group,
+                                                     int first, int end) {
+        final List<MessageLayout.Entry> members = new ArrayList<MessageLayout.Entry>();
+        final Set<Integer> tags = new HashSet<Integer>();
+        for (int i = first; i < end; i++) {
+            final MessageLayout.Entry entry = layout.getEntryByIndex(i);
+            if (entry.getGroup() == group && tags.add(entry.getTag()))
+                members.add(entry);
+        }
+        return members;
+    }
+
+    /**
+     * @return the constant for a tag, which was declared for its first entry
+     */
+    private static String tagConstant(MessageLayout layout, String[] tagConstants, int tag) {
+        for (int i = 0; i < tagConstants.length; i++) {
+            if (tagConstants[i] != null && layout.getEntryByIndex(i).getTag() == tag)
+                return tagConstants[i];
+        }
+        throw new IllegalStateException("No constant for tag " + tag);
+    }
+
+    private void line(String s) {
+        if (s.length() > 0) {
+            for (int i = 0; i < indent; i++)
+                out.append("    ");
+        }
+        out.append(s).append('\n');
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    /**
+     * @param name a name from the dictionary
+     * @return a Java identifier, starting with an upper case letter
+     */
+    static String identifier(String name) {
+        final StringBuilder sb = new StringBuilder(name.length() + 1);
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            sb.append(Character.isJavaIdentifierPart(c) ? c : '_');
+        }
+        if (sb.length() == 0 || !Character.isJavaIdentifierStart(sb.charAt(0)))
+            sb.insert(0, '_');
+        sb.setCharAt(0, Character.toUpperCase(sb.charAt(0)));
+        return sb.toString();
+    }
+
+    /**
+     * @param name a field name, e.g. "ClOrdID" or "NoPartyIDs"
+     * @return the name of a constant, e.g. "CL_ORD_ID" or "NO_PARTY_IDS"
+     */
+    static String constantName(String name) {
+        final String id = identifier(name);
+        final int len = id.length();
+        final StringBuilder sb = new StringBuilder(len + 8);
+        for (int i = 0; i < len; i++) {
+            final char c = id.charAt(i);
+            if (i > 0 && Character.isUpperCase(c)) {
+                final char prev = id.charAt(i - 1);
+                final boolean nextLower = i + 1 < len && Character.isLowerCase(id.charAt(i + 1));
+                // A plural acronym, e.g. the "IDs" of "NoPartyIDs", stays together.
+                final boolean plural = nextLower && id.charAt(i + 1) == 's'
+                        && (i + 2 == len || !Character.isLowerCase(id.charAt(i + 2)));
+                if (Character.isLowerCase(prev) || Character.isDigit(prev)
+                        || (Character.isUpperCase(prev) && nextLower && !plural))
+                    sb.append('_');
+            }
+            sb.append(Character.toUpperCase(c));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Makes names unique within a class.
+     */
+    private static class Names {
+        private final Set<String> used;
+
+        private Names(Set<String> reserved) {
+            used = new HashSet<String>(reserved);
+        }
+
+        private String unique(String name, int tag) {
+            final String unique = used.contains(name) ? name + "_" + tag : name;
+            used.add(unique);
+            return unique;
+        }
+    }
+}
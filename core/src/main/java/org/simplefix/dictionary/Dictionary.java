@@ -2,41 +2,153 @@ package org.simplefix.dictionary;
 
 import com.google.common.collect.Maps;
 
+import java.nio.ByteBuffer;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
  * A FIX message / field dictionary.
  * <br>
+ * Dictionaries are immutable once created, so one instance can be shared by all the sessions (and
+ * threads) that use the same version of FIX.
+ * <br>
  * User: josh
  * Date: 9/12/12
  * Time: 4:02 PM
  */
 public class Dictionary {
+    private final String version;
     private final Map<String,FieldDef> fieldsByName;
-    private final Map<Integer, FieldDef> fieldsByTag;
+    private final TagIndex<FieldDef> fieldsByTag;
     private final Map<String, MessageType> messageTypes;
+    private final FieldRefGroup header;
+    private final FieldRefGroup trailer;
+    private final Map<String, MessageLayout> layouts;
+    /** Layouts by MsgType, with the bytes of the MsgType packed into an int. **/
+    private final TagIndex<MessageLayout> layoutsByPackedType;
+    private final MessageLayout defaultLayout;
 
     /**
-     * Creates the dictionary.
+     * Creates a dictionary without header and trailer fields.
      * @param fieldsByName Map of fields by their name.  Tags should be unique as well, but that
      *                     should be checked by the caller.
      * @param messageTypes Map of message types by their names.
      */
     public Dictionary(Map<String, FieldDef> fieldsByName, Map<String, MessageType> messageTypes) {
+        this(fieldsByName, messageTypes, emptyGroup(), emptyGroup());
+    }
+
+    /**
+     * Creates the dictionary.
+     * @param fieldsByName Map of fields by their name.  Tags should be unique as well, but that
+     *                     should be checked by the caller.
+     * @param messageTypes Map of message types by their names.
+     * @param header       the standard header fields
+     * @param trailer      the standard trailer fields
+     */
+    public Dictionary(Map<String, FieldDef> fieldsByName, Map<String, MessageType> messageTypes,
+                      FieldRefGroup header, FieldRefGroup trailer) {
+        this(null, fieldsByName, messageTypes, header, trailer);
+    }
+
+    /**
+     * Creates the dictionary.
+     * @param version      the FIX version, e.g. "FIX.4.4", "FIXT.1.1" or "FIX.5.0SP2", or null if
+     *                     it isn't known
+     * @param fieldsByName Map of fields by their name.  Tags should be unique as well, but that
+     *                     should be checked by the caller.
+     * @param messageTypes Map of message types by their names.
+     * @param header       the standard header fields
+     * @param trailer      the standard trailer fields
+     */
+    public Dictionary(String version, Map<String, FieldDef> fieldsByName, Map<String, MessageType> messageTypes,
+                      FieldRefGroup header, FieldRefGroup trailer) {
+        this.version = version;
         this.fieldsByName = Collections.unmodifiableMap(fieldsByName);
-        Map<Integer,FieldDef> byTag = Maps.newHashMapWithExpectedSize(fieldsByName.size());
+        int maxTag = 0;
+        for (FieldDef fieldDef : fieldsByName.values()) {
+            if (fieldDef.getTag() <= TagIndex.MAX_DENSE_TAG)
+                maxTag = Math.max(maxTag, fieldDef.getTag());
+        }
+        TagIndex<FieldDef> byTag = new TagIndex<FieldDef>(maxTag);
         for (FieldDef fieldDef : fieldsByName.values()) {
             byTag.put(fieldDef.getTag(),fieldDef);
         }
-        this.fieldsByTag = Collections.unmodifiableMap(byTag);
+        this.fieldsByTag = byTag;
         this.messageTypes = Collections.unmodifiableMap(messageTypes);
+        this.header = header;
+        this.trailer = trailer;
+        Map<String, MessageLayout> layoutMap = Maps.newHashMapWithExpectedSize(messageTypes.size());
+        layoutsByPackedType = new TagIndex<MessageLayout>();
+        for (MessageType messageType : messageTypes.values()) {
+            MessageLayout layout = new MessageLayout(messageType, header, trailer);
+            layoutMap.put(messageType.getMsgType(), layout);
+            byte[] bytes = messageType.getMsgTypeBytes();
+            int packed = pack(bytes, 0, bytes.length);
+            if (packed > 0)
+                layoutsByPackedType.put(packed, layout);
+        }
+        this.layouts = layoutMap;
+        this.defaultLayout = new MessageLayout(null, header, trailer);
+    }
+
+    /**
+     * Combines a transport dictionary (e.g. FIXT.1.1, with the header, trailer and session messages)
+     * with an application dictionary (e.g. FIX.5.0, with the application messages), for sessions
+     * that separate the two.
+     * @param transport   the transport dictionary
+     * @param application the application dictionary
+     * @return a dictionary with the fields and message types of both, the header and trailer of the
+     *         transport, and the version of the application
+     */
+    public static Dictionary compose(Dictionary transport, Dictionary application) {
+        // Where both define a tag or a message type, the transport wins.
+        Map<Integer, FieldDef> byTag = new LinkedHashMap<Integer, FieldDef>();
+        for (FieldDef fieldDef : application.getFieldDefs())
+            byTag.put(fieldDef.getTag(), fieldDef);
+        for (FieldDef fieldDef : transport.getFieldDefs())
+            byTag.put(fieldDef.getTag(), fieldDef);
+        Map<String, FieldDef> byName = Maps.newHashMapWithExpectedSize(byTag.size());
+        for (FieldDef fieldDef : byTag.values())
+            byName.put(fieldDef.getName(), fieldDef);
+        Map<String, MessageType> types = Maps.newHashMap(application.messageTypes);
+        types.putAll(transport.messageTypes);
+        return new Dictionary(application.getVersion(), byName, types, transport.getHeader(), transport.getTrailer());
+    }
+
+    private static FieldRefGroup emptyGroup() {
+        return new FieldRefGroup(new LinkedHashMap<Integer, FieldRef>());
+    }
+
+    /**
+     * @return the bytes packed into an int, or -1 if they won't fit (more than four bytes, or not ASCII)
+     */
+    private static int pack(byte[] bytes, int offset, int length) {
+        if (length == 0 || length > 4)
+            return -1;
+        int packed = 0;
+        for (int i = offset; i < offset + length; i++) {
+            if (bytes[i] <= 0)
+                return -1;
+            packed = (packed << 8) | bytes[i];
+        }
+        return packed;
+    }
+
+    /**
+     * @return the FIX version, e.g. "FIX.4.4", "FIXT.1.1" or "FIX.5.0SP2", or null if it isn't known
+     */
+    public String getVersion() {
+        return version;
     }
 
     /**
-     * Returns the field definition by it's tag.
+     * Returns the field definition by it's tag.  This doesn't box the tag, for standard tags it is
+     * just an array load.
      * @param tag the tag
-     * @return field definition
+     * @return field definition, or null if the tag is not in the dictionary
      */
     public FieldDef getFieldDef(int tag) {
         return fieldsByTag.get(tag);
@@ -54,4 +166,72 @@ public class Dictionary {
     public MessageType getMessageType(String msgType) {
         return messageTypes.get(msgType);
     }
+
+    /**
+     * @return all the field definitions
+     */
+    public Collection<FieldDef> getFieldDefs() {
+        return fieldsByName.values();
+    }
+
+    /**
+     * @return all the message types
+     */
+    public Collection<MessageType> getMessageTypes() {
+        return messageTypes.values();
+    }
+
+    /**
+     * @return the standard header fields
+     */
+    public FieldRefGroup getHeader() {
+        return header;
+    }
+
+    /**
+     * @return the standard trailer fields
+     */
+    public FieldRefGroup getTrailer() {
+        return trailer;
+    }
+
+    /**
+     * @param msgType the MsgType
+     * @return the layout of the message type, or null if it is not in the dictionary
+     */
+    public MessageLayout getLayout(String msgType) {
+        return layouts.get(msgType);
+    }
+
+    /**
+     * Looks up a layout by the MsgType value in a buffer, without allocating for the usual one or
+     * two character message types.
+     * @param buffer the buffer
+     * @param offset absolute offset of the MsgType value
+     * @param length length of the MsgType value
+     * @return the layout of the message type, or null if it is not in the dictionary
+     */
+    public MessageLayout getLayout(ByteBuffer buffer, int offset, int length) {
+        if (length > 0 && length <= 4) {
+            int packed = 0;
+            for (int i = offset; i < offset + length; i++) {
+                byte b = buffer.get(i);
+                if (b <= 0)
+                    return null;
+                packed = (packed << 8) | b;
+            }
+            return layoutsByPackedType.get(packed);
+        }
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++)
+            chars[i] = (char) (buffer.get(offset + i) & 0xFF);
+        return layouts.get(new String(chars));
+    }
+
+    /**
+     * @return the layout with just the header and trailer, for messages of an unknown type
+     */
+    public MessageLayout getDefaultLayout() {
+        return defaultLayout;
+    }
 }
@@ -7,6 +7,7 @@ import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.events.StartElement;
 import javax.xml.stream.events.XMLEvent;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
@@ -18,13 +19,16 @@ import java.util.Map;
  */
 public class DictionaryBuilder {
     private final Map<String, FieldDef> fieldsByName;
-    private final Map<Integer, FieldDef> fieldsByTag;
+    private final TagIndex<FieldDef> fieldsByTag;
     private final Map<String, ValueType> valueTypeMap;
     private final Map<String, MessageType> messageTypes;
+    private FieldRefGroup header;
+    private FieldRefGroup trailer;
+    private String version;
 
     public DictionaryBuilder(Map<String,ValueType> valueTypeMap) {
         fieldsByName = Maps.newHashMap();
-        fieldsByTag = Maps.newHashMap();
+        fieldsByTag = new TagIndex<FieldDef>();
         this.valueTypeMap = valueTypeMap;
         messageTypes = Maps.newHashMap();
     }
@@ -43,7 +47,25 @@ public class DictionaryBuilder {
     }
 
     public Dictionary create() {
-        return new Dictionary(fieldsByName,messageTypes);
+        if (header == null || trailer == null)
+            return new Dictionary(version,fieldsByName,messageTypes,emptyGroup(),emptyGroup());
+        return new Dictionary(version,fieldsByName,messageTypes,header,trailer);
+    }
+
+    private static FieldRefGroup emptyGroup() {
+        return new FieldRefGroup(new LinkedHashMap<Integer, FieldRef>());
+    }
+
+    public void setVersion(String version) {
+        this.version = version;
+    }
+
+    public void setHeader(FieldRefGroup header) {
+        this.header = header;
+    }
+
+    public void setTrailer(FieldRefGroup trailer) {
+        this.trailer = trailer;
     }
 
     public ValueType mapToValueType(String typeString) {
@@ -0,0 +1,186 @@
+package org.simplefix.dictionary;
+
+import org.simplefix.dictionary.snapshot.DictionarySnapshot;
+import org.simplefix.dictionary.xml.DictionaryParser;
+import org.slf4j.Logger;
+
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Loads the dictionaries an application needs once, in parallel, and shares them: sessions get the
+ * same immutable instance for the same version of FIX.
+ * <br>
+ * Dictionaries are found by their version (the BeginString, e.g. "FIX.4.4" or "FIXT.1.1").   For
+ * FIXT.1.1 sessions, each application version is also found by its ApplVerID (tag 1128, or 1137 on
+ * the Logon), as the transport dictionary combined with the application dictionary (see
+ * {@link Dictionary#compose(Dictionary, Dictionary)}).   ApplVerID values are one character, so
+ * finding the dictionary for a message is one array load, straight from the message bytes.
+ * <br>
+ * Load everything at startup; lookups are thread safe and don't lock.
+ */
+public class DictionaryRegistry {
+    private static final Logger log = getLogger(DictionaryRegistry.class);
+
+    public static final String FIXT_1_1 = "FIXT.1.1";
+
+    /** The version of each ApplVerID value, indexed by the value - '0'. **/
+    private static final String[] APPL_VER_IDS = {
+            "FIX.2.7", "FIX.3.0", "FIX.4.0", "FIX.4.1", "FIX.4.2", "FIX.4.3", "FIX.4.4",
+            "FIX.5.0", "FIX.5.0SP1", "FIX.5.0SP2"
+    };
+
+    private final Map<String, Dictionary> byVersion = new HashMap<String, Dictionary>();
+
+    /** The composed dictionaries, indexed by ApplVerID byte.  Replaced, never modified. **/
+    private volatile Dictionary[] byApplVerID = new Dictionary[128];
+
+    /** Read without locking, replaced when a dictionary is added. **/
+    private volatile Map<String, Dictionary> versions = Collections.emptyMap();
+
+    /**
+     * Loads dictionaries that are bundled on the classpath, in parallel.   The build compiles the
+     * bundled dictionaries into snapshots, which are loaded if they are there; otherwise the XML
+     * resource (e.g. "FIX44.xml") is parsed.
+     * @param names the names, e.g. "FIX44", "FIXT11", "FIX50"
+     * @throws DictionaryParseException if a dictionary isn't there, or can't be loaded
+     */
+    public void loadBundled(String... names) {
+        List<Callable<Dictionary>> tasks = new ArrayList<Callable<Dictionary>>(names.length);
+        for (final String name : names) {
+            tasks.add(new Callable<Dictionary>() {
+                public Dictionary call() {
+                    final URL snapshot = DictionarySnapshot.getSnapshotResource(name);
+                    final URL source = Thread.currentThread().getContextClassLoader().getResource(name + ".xml");
+                    if (snapshot == null && source == null)
+                        throw new DictionaryParseException("No bundled dictionary " + name);
+                    return source == null ? DictionarySnapshot.load(snapshot, null)
+                            : DictionarySnapshot.loadOrParse(snapshot, source);
+                }
+            });
+        }
+        loadAll(tasks);
+    }
+
+    /**
+     * Parses XML dictionaries, in parallel.
+     * @param sources the XML dictionaries
+     * @throws DictionaryParseException if a dictionary can't be parsed
+     */
+    public void load(URL... sources) {
+        List<Callable<Dictionary>> tasks = new ArrayList<Callable<Dictionary>>(sources.length);
+        for (final URL source : sources) {
+            tasks.add(new Callable<Dictionary>() {
+                public Dictionary call() {
+                    return DictionaryParser.parseXML(source);
+                }
+            });
+        }
+        loadAll(tasks);
+    }
+
+    private void loadAll(List<Callable<Dictionary>> tasks) {
+        if (tasks.isEmpty())
+            return;
+        final long start = System.currentTimeMillis();
+        final int threads = Math.min(tasks.size(), Runtime.getRuntime().availableProcessors());
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final List<Dictionary> loaded = new ArrayList<Dictionary>(tasks.size());
+        try {
+            for (Future<Dictionary> future : executor.invokeAll(tasks))
+                loaded.add(future.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DictionaryParseException("Interrupted while loading dictionaries", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof DictionaryParseException)
+                throw (DictionaryParseException) e.getCause();
+            throw new DictionaryParseException("Unable to load dictionary due to " + e.getCause(), e);
+        } finally {
+            executor.shutdownNow();
+        }
+        for (Dictionary dictionary : loaded)
+            add(dictionary);
+        log.info("Loaded " + loaded.size() + " dictionaries in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Adds a dictionary.   Replaces any dictionary with the same version.
+     * @param dictionary a dictionary with a version
+     */
+    public synchronized void add(Dictionary dictionary) {
+        if (dictionary.getVersion() == null)
+            throw new IllegalArgumentException("The dictionary has no version");
+        byVersion.put(dictionary.getVersion(), dictionary);
+        versions = Collections.unmodifiableMap(new HashMap<String, Dictionary>(byVersion));
+
+        // Combine every application version with the transport.
+        final Dictionary[] table = new Dictionary[byApplVerID.length];
+        final Dictionary transport = byVersion.get(FIXT_1_1);
+        final Dictionary[] old = byApplVerID;
+        for (int i = 0; i < APPL_VER_IDS.length; i++) {
+            final Dictionary application = byVersion.get(APPL_VER_IDS[i]);
+            if (transport == null || application == null)
+                continue;
+            // Re-use the ones that haven't changed.
+            final Dictionary previous = old['0' + i];
+            final boolean same = previous != null && transport != dictionary && application != dictionary;
+            table['0' + i] = same ? previous : Dictionary.compose(transport, application);
+        }
+        byApplVerID = table;
+    }
+
+    /**
+     * @param version the version (BeginString), e.g. "FIX.4.4" or "FIXT.1.1"
+     * @return the dictionary, or null if it hasn't been loaded
+     */
+    public Dictionary get(String version) {
+        return versions.get(version);
+    }
+
+    /**
+     * @return all the dictionaries that have been loaded, but not the composed ones
+     */
+    public Collection<Dictionary> getDictionaries() {
+        return versions.values();
+    }
+
+    /**
+     * @param applVerID the ApplVerID value, e.g. "9" for FIX.5.0SP2
+     * @return the transport and application dictionary for the ApplVerID, or null if either hasn't
+     *         been loaded
+     */
+    public Dictionary getByApplVerID(String applVerID) {
+        return applVerID.length() == 1 ? getByApplVerID(applVerID.charAt(0)) : null;
+    }
+
+    /**
+     * Finds the dictionary for an ApplVerID value in a buffer (e.g. a decoded message), without
+     * allocating.
+     * @param buffer the buffer
+     * @param offset absolute offset of the ApplVerID value
+     * @param length length of the ApplVerID value
+     * @return the transport and application dictionary for the ApplVerID, or null if either hasn't
+     *         been loaded
+     */
+    public Dictionary getByApplVerID(ByteBuffer buffer, int offset, int length) {
+        return length == 1 ? getByApplVerID((char) buffer.get(offset)) : null;
+    }
+
+    private Dictionary getByApplVerID(char c) {
+        return c < 128 ? byApplVerID[c] : null;
+    }
+}
@@ -0,0 +1,177 @@
+package org.simplefix.dictionary;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * The enumerated values of a field, compiled so that a raw value can be looked up straight from the
+ * message bytes, without making a String.   Each value has an ordinal (its position in the
+ * dictionary), which can be switched on or used to index an array.
+ * <br>
+ * Single character values (Side, OrdType, ExecType, ...) are found with one array load.   Longer
+ * values are packed into a long (up to eight bytes, which covers nearly all of them) and found in a
+ * small open addressing hash table, comparing the packed longs.   Values longer than eight bytes are
+ * compared byte by byte after the packed prefix matches.
+ * <br>
+ * Immutable, and safe to share between threads.
+ */
+public class EnumValues {
+    public static final EnumValues EMPTY = new EnumValues(null);
+
+    /** The most bytes that fit in a packed key. **/
+    private static final int MAX_PACKED = 8;
+
+    private final byte[][] values;
+    private final String[] strings;
+    private final String[] descriptions;
+
+    /** The ordinal for each single byte ASCII value, or -1. **/
+    private final int[] singleByte;
+
+    private final long[] keys;
+    private final int[] ordinals;
+    private final int shift;
+
+    /**
+     * @param values the values and their descriptions, in dictionary order
+     */
+    public EnumValues(Map<String, String> values) {
+        final int size = values == null ? 0 : values.size();
+        this.values = new byte[size][];
+        this.strings = new String[size];
+        this.descriptions = new String[size];
+        this.singleByte = new int[128];
+        Arrays.fill(singleByte, -1);
+        int bits = 1;
+        while ((1 << bits) < size * 2)
+            bits++;
+        this.keys = new long[1 << bits];
+        this.ordinals = new int[1 << bits];
+        Arrays.fill(ordinals, -1);
+        this.shift = 64 - bits;
+        if (values == null)
+            return;
+
+        int ordinal = 0;
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            final byte[] bytes = FieldDef.asciiBytes(entry.getKey());
+            this.values[ordinal] = bytes;
+            this.strings[ordinal] = entry.getKey();
+            this.descriptions[ordinal] = entry.getValue();
+            if (bytes.length == 1 && bytes[0] >= 0)
+                singleByte[bytes[0]] = ordinal;
+            final long key = pack(bytes, 0, bytes.length);
+            int slot = slot(key);
+            while (ordinals[slot] >= 0)
+                slot = (slot + 1) & (keys.length - 1);
+            keys[slot] = key;
+            ordinals[slot] = ordinal;
+            ordinal++;
+        }
+    }
+
+    /**
+     * @return the number of values
+     */
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * @param buffer the buffer
+     * @param offset the offset of the value
+     * @param length the length of the value
+     * @return the ordinal of the value, or -1 if it is not one of the enumerated values
+     */
+    public int ordinal(ByteBuffer buffer, int offset, int length) {
+        if (length == 1) {
+            final byte b = buffer.get(offset);
+            return b >= 0 ? singleByte[b] : -1;
+        }
+        if (length == 0 || values.length == 0)
+            return -1;
+        long key = 0;
+        final int packed = Math.min(length, MAX_PACKED);
+        for (int i = 0; i < packed; i++)
+            key = (key << 8) | (buffer.get(offset + i) & 0xFF);
+        for (int slot = slot(key); ordinals[slot] >= 0; slot = (slot + 1) & (keys.length - 1)) {
+            if (keys[slot] != key)
+                continue;
+            final byte[] value = values[ordinals[slot]];
+            if (value.length != length)
+                continue;
+            int i = MAX_PACKED;
+            while (i < length && value[i] == buffer.get(offset + i))
+                i++;
+            if (i >= length)
+                return ordinals[slot];
+        }
+        return -1;
+    }
+
+    /**
+     * @param bytes  the array
+     * @param offset the offset of the value
+     * @param length the length of the value
+     * @return the ordinal of the value, or -1 if it is not one of the enumerated values
+     */
+    public int ordinal(byte[] bytes, int offset, int length) {
+        if (length == 1) {
+            final byte b = bytes[offset];
+            return b >= 0 ? singleByte[b] : -1;
+        }
+        if (length == 0 || values.length == 0)
+            return -1;
+        final long key = pack(bytes, offset, length);
+        for (int slot = slot(key); ordinals[slot] >= 0; slot = (slot + 1) & (keys.length - 1)) {
+            if (keys[slot] != key)
+                continue;
+            final byte[] value = values[ordinals[slot]];
+            if (value.length != length)
+                continue;
+            int i = MAX_PACKED;
+            while (i < length && value[i] == bytes[offset + i])
+                i++;
+            if (i >= length)
+                return ordinals[slot];
+        }
+        return -1;
+    }
+
+    /**
+     * @param ordinal the ordinal
+     * @return the value, e.g. "1" for Side=Buy
+     */
+    public String getValue(int ordinal) {
+        return strings[ordinal];
+    }
+
+    /**
+     * @param ordinal the ordinal
+     * @return the value as ASCII bytes.  The array is shared, and must not be modified.
+     */
+    public byte[] getValueBytes(int ordinal) {
+        return values[ordinal];
+    }
+
+    /**
+     * @param ordinal the ordinal
+     * @return the description, e.g. "BUY" for Side=1
+     */
+    public String getDescription(int ordinal) {
+        return descriptions[ordinal];
+    }
+
+    private static long pack(byte[] bytes, int offset, int length) {
+        long key = 0;
+        final int packed = Math.min(length, MAX_PACKED);
+        for (int i = 0; i < packed; i++)
+            key = (key << 8) | (bytes[offset + i] & 0xFF);
+        return key;
+    }
+
+    private int slot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+}
@@ -16,13 +16,24 @@ public class FieldDef {
     private final String type;
     private final ValueType valueType;
     private final Map<String, String> values;
+    private final byte[] tagPrefix;
+    private final EnumValues enumValues;
 
     public FieldDef(int tag, String name, String type, ValueType valueType, Map<String, String> values) {
         this.tag = tag;
         this.name = name;
         this.type = type;
         this.valueType = valueType;
-        this.values = values != null ? Collections.unmodifiableMap(values) : null;
+        this.values = values != null ? Collections.unmodifiableMap(values) : Collections.<String, String>emptyMap();
+        this.tagPrefix = asciiBytes(tag + "=");
+        this.enumValues = this.values.isEmpty() ? EnumValues.EMPTY : new EnumValues(this.values);
+    }
+
+    static byte[] asciiBytes(String s) {
+        byte[] bytes = new byte[s.length()];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) s.charAt(i);
+        return bytes;
     }
 
     public int getTag() {
@@ -33,6 +44,47 @@ public class FieldDef {
         return name;
     }
 
+    /**
+     * @return the ASCII bytes of "tag=", computed once so encoders don't have to format the tag.
+     * The array is shared, and must not be modified.
+     */
+    public byte[] getTagPrefix() {
+        return tagPrefix;
+    }
+
+    /**
+     * @return the type name from the dictionary (e.g. "PRICE", "LENGTH").
+     */
+    public String getType() {
+        return type;
+    }
+
+    public ValueType getValueType() {
+        return valueType;
+    }
+
+    /**
+     * @return true if this is a DATA field, whose value length is given by the preceding LENGTH field.
+     * DATA values may contain SOH.
+     */
+    public boolean isData() {
+        return valueType == ValueType.DATA;
+    }
+
+    /**
+     * @return the enumerated values (value to description), never null.
+     */
+    public Map<String, String> getValues() {
+        return values;
+    }
+
+    /**
+     * @return the enumerated values compiled for lookups from raw bytes, never null.
+     */
+    public EnumValues getEnumValues() {
+        return enumValues;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -10,11 +10,22 @@ package org.simplefix.dictionary;
 public class FieldRef {
     private final FieldDef fieldDef;
     private final boolean required;
+    private final RepeatingGroupDef group;
 
     public FieldRef(FieldDef fieldDef, boolean required) {
+        this(fieldDef, required, null);
+    }
+
+    /**
+     * @param fieldDef the field
+     * @param required true if the field is required
+     * @param group    the repeating group, if the field is the NumInGroup count of a group
+     */
+    public FieldRef(FieldDef fieldDef, boolean required, RepeatingGroupDef group) {
         if (fieldDef == null) throw new IllegalArgumentException("fieldDef cannot be null!");
         this.fieldDef = fieldDef;
         this.required = required;
+        this.group = group;
     }
 
     public FieldDef getFieldDef() {
@@ -25,6 +36,13 @@ public class FieldRef {
         return required;
     }
 
+    /**
+     * @return the repeating group that this field counts, or null if it is not a NumInGroup field
+     */
+    public RepeatingGroupDef getGroup() {
+        return group;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -48,6 +66,7 @@ public class FieldRef {
         return "FieldRef{" +
                 "fieldDef=" + fieldDef +
                 ", required=" + required +
+                (group != null ? ", group=" + group : "") +
                 '}';
     }
 }
@@ -0,0 +1,328 @@
+package org.simplefix.dictionary;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The fields of a message type (including the header and trailer) flattened into a table indexed by
+ * tag, so a decoder can place each field in its repeating group with one lookup instead of walking
+ * the nested group definitions.
+ * <br>
+ * Each {@link Entry} says which group the field belongs to (null at the top level), how deep that
+ * group is, and the position of the field in it.   A tag can be in more than one group (e.g. when
+ * the same component is used at two levels), so entries for the same tag are chained.
+ * <br>
+ * The required fields of the top level and of each group are compiled into bitsets over the entry
+ * indexes, so a validator can check a message (or a group instance) with a few word operations.
+ * The entries of a group and its nested groups have consecutive indexes, so a group's bitset only
+ * covers the words for its own range.
+ * <br>
+ * Layouts are immutable, and are built by the {@link Dictionary}.
+ */
+public class MessageLayout {
+    private final MessageType messageType;
+    private final TagIndex<Entry> entries;
+    private final Entry[] entriesByIndex;
+    private final long[] required;
+    private int entryCount;
+    private int groupCount;
+
+    /**
+     * @param messageType the message type, or null for a layout of just the header and trailer
+     * @param header      the header fields
+     * @param trailer     the trailer fields
+     */
+    MessageLayout(MessageType messageType, FieldRefGroup header, FieldRefGroup trailer) {
+        this.messageType = messageType;
+        int maxTag = maxTag(header.fieldRefs(), 0);
+        if (messageType != null)
+            maxTag = maxTag(messageType.fieldRefs(), maxTag);
+        this.entries = new TagIndex<Entry>(maxTag(trailer.fieldRefs(), maxTag));
+        List<Entry> entryList = new ArrayList<Entry>();
+        int position = add(header.fieldRefs(), null, 0, entryList);
+        if (messageType != null)
+            position = add(messageType.fieldRefs(), null, position, entryList);
+        add(trailer.fieldRefs(), null, position, entryList);
+        entriesByIndex = entryList.toArray(new Entry[entryList.size()]);
+        required = new long[words(entryCount)];
+        for (Entry entry : entriesByIndex) {
+            if (!entry.fieldRef.isRequired())
+                continue;
+            final int index = entry.index;
+            if (entry.group == null)
+                required[index >>> 6] |= 1L << index;
+            else
+                entry.group.required[(index >>> 6) - entry.group.firstWord] |= 1L << index;
+        }
+    }
+
+    /**
+     * @param bits the number of bits
+     * @return the number of longs needed for a bitset
+     */
+    public static int words(int bits) {
+        return (bits + 63) >>> 6;
+    }
+
+    /**
+     * @return the largest tag of the fields and the fields of their groups, or max if that is larger
+     */
+    private static int maxTag(Iterator<FieldRef> refs, int max) {
+        while (refs.hasNext()) {
+            FieldRef ref = refs.next();
+            max = Math.max(max, ref.getFieldDef().getTag());
+            if (ref.getGroup() != null)
+                max = maxTag(ref.getGroup().fieldRefs(), max);
+        }
+        return max;
+    }
+
+    private int add(Iterator<FieldRef> refs, Group group, int position, List<Entry> entryList) {
+        while (refs.hasNext()) {
+            FieldRef ref = refs.next();
+            Entry entry = new Entry(entryCount++, ref, group, position++);
+            entryList.add(entry);
+            Entry existing = entries.get(entry.getTag());
+            if (existing == null) {
+                entries.put(entry.getTag(), entry);
+            } else {
+                while (existing.next != null)
+                    existing = existing.next;
+                existing.next = entry;
+            }
+            if (ref.getGroup() != null) {
+                entry.nested = new Group(groupCount++, ref.getGroup(), group, entry);
+                add(ref.getGroup().fieldRefs(), entry.nested, 0, entryList);
+                entry.nested.end(entryCount);
+            }
+        }
+        return position;
+    }
+
+    /**
+     * @return the message type, or null if this is the layout for unknown message types
+     */
+    public MessageType getMessageType() {
+        return messageType;
+    }
+
+    /**
+     * @param tag the tag
+     * @return the first entry for the tag, or null if the tag is not in the message.  Use
+     *         {@link Entry#getNext()} for the entries of the same tag in other groups.
+     */
+    public Entry getEntry(int tag) {
+        return entries.get(tag);
+    }
+
+    /**
+     * @return the number of entries, each entry has an index from zero to this
+     */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @param index the entry index
+     * @return the entry
+     */
+    public Entry getEntryByIndex(int index) {
+        return entriesByIndex[index];
+    }
+
+    /**
+     * @return the bitset of the required top level entries (including the header and trailer),
+     *         indexed by entry index.  The array is shared, and must not be modified.
+     */
+    public long[] getRequired() {
+        return required;
+    }
+
+    /**
+     * @return the number of groups, each group has an index from zero to this
+     */
+    public int getGroupCount() {
+        return groupCount;
+    }
+
+    /**
+     * Where a field goes in a message.
+     */
+    public static class Entry {
+        private final int index;
+        private final FieldRef fieldRef;
+        private final Group group;
+        private final int position;
+        private Group nested;
+        private Entry next;
+
+        private Entry(int index, FieldRef fieldRef, Group group, int position) {
+            this.index = index;
+            this.fieldRef = fieldRef;
+            this.group = group;
+            this.position = position;
+        }
+
+        /**
+         * @return the index of this entry in the layout
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public FieldRef getFieldRef() {
+            return fieldRef;
+        }
+
+        public int getTag() {
+            return fieldRef.getFieldDef().getTag();
+        }
+
+        /**
+         * @return the group this field belongs to, or null if it is at the top level
+         */
+        public Group getGroup() {
+            return group;
+        }
+
+        /**
+         * @return the depth of the group, zero at the top level
+         */
+        public int getDepth() {
+            return group == null ? 0 : group.depth;
+        }
+
+        /**
+         * @return the position of the field in its group (or in the message, at the top level)
+         */
+        public int getPosition() {
+            return position;
+        }
+
+        /**
+         * @return the group this field counts, or null if it is not a NumInGroup field
+         */
+        public Group getNestedGroup() {
+            return nested;
+        }
+
+        /**
+         * @return the entry for the same tag in another group, or null
+         */
+        public Entry getNext() {
+            return next;
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{tag=" + getTag() + ", depth=" + getDepth() + ", position=" + position + '}';
+        }
+    }
+
+    /**
+     * A repeating group at a particular place in the message.
+     */
+    public static class Group {
+        private final int index;
+        private final RepeatingGroupDef def;
+        private final Group parent;
+        private final Entry countEntry;
+        private final int depth;
+        private final int delimiterTag;
+        private final int firstEntry;
+        private final int firstWord;
+        private int endEntry;
+        private long[] required;
+
+        private Group(int index, RepeatingGroupDef def, Group parent, Entry countEntry) {
+            this.index = index;
+            this.def = def;
+            this.parent = parent;
+            this.countEntry = countEntry;
+            this.depth = parent == null ? 1 : parent.depth + 1;
+            this.delimiterTag = def.getDelimiter().getFieldDef().getTag();
+            this.firstEntry = countEntry.index + 1;
+            this.firstWord = firstEntry >>> 6;
+        }
+
+        private void end(int endEntry) {
+            this.endEntry = endEntry;
+            this.required = new long[((endEntry - 1) >>> 6) - firstWord + 1];
+        }
+
+        /**
+         * @return the index of the first entry in the group
+         */
+        public int getFirstEntry() {
+            return firstEntry;
+        }
+
+        /**
+         * @return the index after the last entry in the group, including the entries of nested groups
+         */
+        public int getEndEntry() {
+            return endEntry;
+        }
+
+        /**
+         * @return the index of the first word of the layout's bitsets that the group covers
+         */
+        public int getFirstWord() {
+            return firstWord;
+        }
+
+        /**
+         * @return the bitset of the required entries in each instance of the group (not including
+         *         nested groups), starting at {@link #getFirstWord()}.  The array is shared, and must
+         *         not be modified.
+         */
+        public long[] getRequired() {
+            return required;
+        }
+
+        /**
+         * @return the index of this group in the layout
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public RepeatingGroupDef getDef() {
+            return def;
+        }
+
+        /**
+         * @return the enclosing group, or null if the group is at the top level
+         */
+        public Group getParent() {
+            return parent;
+        }
+
+        /**
+         * @return the entry of the NumInGroup field
+         */
+        public Entry getCountEntry() {
+            return countEntry;
+        }
+
+        /**
+         * @return the depth, one for a group at the top level
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        /**
+         * @return the tag of the first field, which starts each instance of the group
+         */
+        public int getDelimiterTag() {
+            return delimiterTag;
+        }
+
+        @Override
+        public String toString() {
+            return "Group{countTag=" + countEntry.getTag() + ", depth=" + depth + '}';
+        }
+    }
+}
@@ -12,18 +12,48 @@ import java.util.LinkedHashMap;
  */
 public class MessageType extends FieldRefGroup {
     private final boolean applicationMessage;
+    private final String name;
     private final String msgType;
+    private final byte[] msgTypeBytes;
 
     public MessageType(String msgType, boolean applicationMessage, LinkedHashMap<Integer, FieldRef> fieldRefsByTag) {
+        this(null, msgType, applicationMessage, fieldRefsByTag);
+    }
+
+    /**
+     * @param name               the name, e.g. "NewOrderSingle", or null
+     * @param msgType            the MsgType, e.g. "D"
+     * @param applicationMessage true for an application (not admin) message
+     * @param fieldRefsByTag     the fields
+     */
+    public MessageType(String name, String msgType, boolean applicationMessage,
+                       LinkedHashMap<Integer, FieldRef> fieldRefsByTag) {
         super(fieldRefsByTag);
+        this.name = name;
         this.msgType = msgType;
+        this.msgTypeBytes = FieldDef.asciiBytes(msgType);
         this.applicationMessage = applicationMessage;
     }
 
+    /**
+     * @return the name of the message type, e.g. "NewOrderSingle", or null if the dictionary doesn't
+     *         have one
+     */
+    public String getName() {
+        return name;
+    }
+
     public String getMsgType() {
         return msgType;
     }
 
+    /**
+     * @return the MsgType as ASCII bytes.  The array is shared, and must not be modified.
+     */
+    public byte[] getMsgTypeBytes() {
+        return msgTypeBytes;
+    }
+
     public boolean isApplicationMessage() {
         return applicationMessage;
     }
@@ -48,7 +78,8 @@ public class MessageType extends FieldRefGroup {
     @Override
     public String toString() {
         return "MessageType{" +
-                "msgType='" + msgType + '\'' +
+                "name='" + name + '\'' +
+                ", msgType='" + msgType + '\'' +
                 "," + super.toString() +
                 '}';
     }
@@ -0,0 +1,143 @@
+package org.simplefix.dictionary;
+
+import org.simplefix.dictionary.xml.DictionaryParser;
+import org.slf4j.Logger;
+
+import java.io.Closeable;
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Holds the current version of a dictionary, which can be replaced while sessions are running, e.g.
+ * when a counterparty adds custom tags to their spec.
+ * <br>
+ * {@link #reload(URL)} parses the new version on a background thread, and only then swaps it in, so
+ * readers never see a half built dictionary and never wait for a parse.   {@link #get()} is one
+ * volatile read.   A decoder that reads the dictionary once per message (see
+ * {@link org.simplefix.message.MessageDecoder#MessageDecoder(ReloadableDictionary)}) finishes the
+ * message it is decoding with the old dictionary, and decodes the next one with the new dictionary.
+ * Dictionaries are immutable, so the old one stays valid for as long as anything refers to it.
+ * <br>
+ * Reloads are parsed one at a time, in the order they were asked for.   If a reload fails, the
+ * current dictionary stays.   {@link #close()} stops the reload thread.
+ */
+public class ReloadableDictionary implements Closeable {
+    private static final Logger log = getLogger(ReloadableDictionary.class);
+
+    private volatile Dictionary current;
+
+    private URL source;
+
+    /** Created by the first reload. **/
+    private ExecutorService executor;
+    private boolean closed;
+
+    /**
+     * @param dictionary the initial dictionary
+     */
+    public ReloadableDictionary(Dictionary dictionary) {
+        if (dictionary == null) throw new IllegalArgumentException("dictionary cannot be null!");
+        this.current = dictionary;
+    }
+
+    /**
+     * Parses the initial dictionary, on the calling thread.
+     * @param source the XML dictionary
+     * @throws DictionaryParseException if the dictionary can't be parsed
+     */
+    public ReloadableDictionary(URL source) {
+        this(DictionaryParser.parseXML(source));
+        this.source = source;
+    }
+
+    /**
+     * @return the current dictionary
+     */
+    public Dictionary get() {
+        return current;
+    }
+
+    /**
+     * Parses the dictionary again, from the URL it was last loaded from.
+     * @return the new dictionary, when it has been parsed and swapped in
+     * @throws IllegalStateException if the dictionary wasn't loaded from a URL, or has been closed
+     */
+    public synchronized Future<Dictionary> reload() {
+        if (source == null)
+            throw new IllegalStateException("The dictionary wasn't loaded from a URL");
+        return reload(source);
+    }
+
+    /**
+     * Parses a new version of the dictionary on a background thread, then swaps it in.
+     * @param source the XML dictionary
+     * @return the new dictionary, when it has been parsed and swapped in.   If it can't be parsed,
+     *         or is for a different version of FIX, get() throws an ExecutionException caused by a
+     *         {@link DictionaryParseException}.
+     * @throws IllegalStateException if the dictionary has been closed
+     */
+    public synchronized Future<Dictionary> reload(final URL source) {
+        if (source == null) throw new IllegalArgumentException("source cannot be null!");
+        if (closed)
+            throw new IllegalStateException("Closed");
+        if (executor == null)
+            executor = Executors.newSingleThreadExecutor(new ReloadThreadFactory());
+        return executor.submit(new Callable<Dictionary>() {
+            public Dictionary call() {
+                final long start = System.currentTimeMillis();
+                final Dictionary dictionary;
+                try {
+                    dictionary = DictionaryParser.parseXML(source);
+                    set(dictionary);
+                } catch (DictionaryParseException e) {
+                    log.warn("Unable to reload dictionary from " + source + ", keeping the current one: "
+                            + e.getMessage());
+                    throw e;
+                }
+                synchronized (ReloadableDictionary.this) {
+                    ReloadableDictionary.this.source = source;
+                }
+                log.info("Reloaded dictionary " + dictionary.getVersion() + " from " + source + " in "
+                        + (System.currentTimeMillis() - start) + "ms");
+                return dictionary;
+            }
+        });
+    }
+
+    /**
+     * Swaps in a dictionary that has already been built.
+     * @param dictionary the new dictionary, for the same version of FIX
+     * @throws DictionaryParseException if the dictionary is for a different version of FIX
+     */
+    public void set(Dictionary dictionary) {
+        if (dictionary == null) throw new IllegalArgumentException("dictionary cannot be null!");
+        final String version = current.getVersion();
+        if (version != null && dictionary.getVersion() != null && !version.equals(dictionary.getVersion()))
+            throw new DictionaryParseException("Can't replace " + version + " with " + dictionary.getVersion());
+        current = dictionary;
+    }
+
+    /**
+     * Stops the reload thread once the reloads that have been asked for are done.   The dictionary
+     * can still be read, and {@link #set(Dictionary)}, but not reloaded.
+     */
+    public synchronized void close() {
+        closed = true;
+        if (executor != null)
+            executor.shutdown();
+    }
+
+    private static class ReloadThreadFactory implements ThreadFactory {
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "dictionary-reload");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
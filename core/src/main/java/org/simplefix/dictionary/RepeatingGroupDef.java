@@ -3,17 +3,46 @@ package org.simplefix.dictionary;
 import java.util.LinkedHashMap;
 
 /**
- * FIX repeating group definition.
+ * FIX repeating group definition.   The fields are in order, the first one is the delimiter that
+ * starts each instance of the group.   Fields that are NumInGroup counts of nested groups refer to
+ * the nested group definition.
  * <br>
  * User: josh
  * Date: 1/6/13
  * Time: 11:05 AM
  */
 public class RepeatingGroupDef extends FieldRefGroup {
-    private final FieldRef countField;
+    private final FieldDef countField;
+    private final FieldRef delimiter;
 
-    public RepeatingGroupDef(LinkedHashMap<Integer, FieldRef> fieldRefsByTag, FieldRef countField) {
+    public RepeatingGroupDef(LinkedHashMap<Integer, FieldRef> fieldRefsByTag, FieldDef countField) {
         super(fieldRefsByTag);
+        if (countField == null) throw new IllegalArgumentException("countField cannot be null!");
+        if (fieldRefsByTag.isEmpty())
+            throw new IllegalArgumentException("Group " + countField.getName() + " has no fields!");
         this.countField = countField;
+        this.delimiter = fieldRefs().next();
+    }
+
+    /**
+     * @return the NumInGroup field
+     */
+    public FieldDef getCountField() {
+        return countField;
+    }
+
+    /**
+     * @return the first field in the group, which starts each instance
+     */
+    public FieldRef getDelimiter() {
+        return delimiter;
+    }
+
+    @Override
+    public String toString() {
+        return "RepeatingGroupDef{" +
+                "countField=" + countField.getTag() +
+                "," + super.toString() +
+                '}';
     }
 }
@@ -0,0 +1,146 @@
+package org.simplefix.dictionary;
+
+/**
+ * Maps FIX tags to objects without boxing.  Standard tags (below 5000) index directly into an
+ * array, so a lookup is a bounds check and an array load.   User defined tags (5000 and up) are
+ * kept in a small open addressing hash table with linear probing.
+ * <br>
+ * Not thread safe while being modified.   Once built, concurrent lookups are fine as long as the
+ * index is safely published (e.g. via a final field).
+ */
+public class TagIndex<T> {
+    /** The largest tag that goes in the dense array.  User defined tags start at 5000. **/
+    public static final int MAX_DENSE_TAG = 4999;
+
+    private static final int MIN_SPARSE_CAPACITY = 8;
+
+    /** Zero is never a valid tag, so it marks an empty slot in the sparse table. **/
+    private static final int EMPTY = 0;
+
+    private Object[] dense;
+
+    private int[] sparseTags;
+    private Object[] sparseValues;
+    private int sparseSize;
+
+    private int size;
+
+    public TagIndex() {
+        this(0);
+    }
+
+    /**
+     * @param maxTag the largest standard tag expected, used to size the dense array
+     */
+    public TagIndex(int maxTag) {
+        dense = new Object[Math.min(maxTag, MAX_DENSE_TAG) + 1];
+    }
+
+    /**
+     * @param tag the tag
+     * @return the value for the tag, or null if there isn't one
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int tag) {
+        if (tag >= 0 && tag < dense.length)
+            return (T) dense[tag];
+        return tag > MAX_DENSE_TAG ? getSparse(tag) : null;
+    }
+
+    public boolean containsKey(int tag) {
+        return get(tag) != null;
+    }
+
+    /**
+     * @param tag   the tag, must be positive
+     * @param value the value, must not be null
+     * @return the previous value for the tag, or null
+     */
+    public T put(int tag, T value) {
+        if (tag <= 0) throw new IllegalArgumentException("Invalid tag " + tag);
+        if (value == null) throw new IllegalArgumentException("value cannot be null!");
+        T previous;
+        if (tag <= MAX_DENSE_TAG) {
+            if (tag >= dense.length)
+                growDense(tag);
+            previous = get(tag);
+            dense[tag] = value;
+        } else {
+            previous = putSparse(tag, value);
+        }
+        if (previous == null)
+            size++;
+        return previous;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T getSparse(int tag) {
+        if (sparseTags == null)
+            return null;
+        final int mask = sparseTags.length - 1;
+        for (int i = hash(tag) & mask; ; i = (i + 1) & mask) {
+            int t = sparseTags[i];
+            if (t == tag)
+                return (T) sparseValues[i];
+            if (t == EMPTY)
+                return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T putSparse(int tag, T value) {
+        // Keep the load factor at or below 1/2 so probe sequences stay short.
+        if (sparseTags == null || (sparseSize + 1) * 2 > sparseTags.length)
+            rehash(sparseTags == null ? MIN_SPARSE_CAPACITY : sparseTags.length * 2);
+        final int mask = sparseTags.length - 1;
+        int i = hash(tag) & mask;
+        while (sparseTags[i] != EMPTY) {
+            if (sparseTags[i] == tag) {
+                T previous = (T) sparseValues[i];
+                sparseValues[i] = value;
+                return previous;
+            }
+            i = (i + 1) & mask;
+        }
+        sparseTags[i] = tag;
+        sparseValues[i] = value;
+        sparseSize++;
+        return null;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldTags = sparseTags;
+        Object[] oldValues = sparseValues;
+        sparseTags = new int[capacity];
+        sparseValues = new Object[capacity];
+        if (oldTags == null)
+            return;
+        final int mask = capacity - 1;
+        for (int j = 0; j < oldTags.length; j++) {
+            int tag = oldTags[j];
+            if (tag == EMPTY)
+                continue;
+            int i = hash(tag) & mask;
+            while (sparseTags[i] != EMPTY)
+                i = (i + 1) & mask;
+            sparseTags[i] = tag;
+            sparseValues[i] = oldValues[j];
+        }
+    }
+
+    private void growDense(int tag) {
+        int length = Math.min(Math.max(tag + 1, dense.length * 2), MAX_DENSE_TAG + 1);
+        Object[] a = new Object[length];
+        System.arraycopy(dense, 0, a, 0, dense.length);
+        dense = a;
+    }
+
+    private static int hash(int tag) {
+        int h = tag * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -17,4 +17,10 @@ public enum ValueType {
     CHARACTER,
     DOUBLE,
     BOOLEAN,
+
+    /** Fixed point decimal (e.g. PRICE, QTY, AMT), read exactly as a {@link org.simplefix.util.Decimal}. **/
+    DECIMAL,
+
+    /** Raw data, which may contain SOH.  The length is in the preceding LENGTH field. **/
+    DATA,
 }
@@ -0,0 +1,340 @@
+package org.simplefix.dictionary.snapshot;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import org.simplefix.dictionary.*;
+import org.simplefix.dictionary.xml.DictionaryParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Reads and writes a compact binary form of a {@link Dictionary}, which loads much faster than
+ * parsing the XML.
+ * <br>
+ * The snapshot starts with a header that has the format version, a checksum of the XML source
+ * (and the value type mapping) that it was compiled from, and a checksum of the payload.   Loading
+ * a snapshot whose source has changed since it was compiled fails, so a stale snapshot can't be
+ * used by accident.
+ */
+public class DictionarySnapshot {
+    private static final Logger log = LoggerFactory.getLogger(DictionarySnapshot.class);
+
+    /** File name extension for snapshots. **/
+    public static final String EXTENSION = ".sfd";
+
+    /** Where the build puts the snapshots of the bundled dictionaries on the classpath. **/
+    public static final String RESOURCE_PATH = "org/simplefix/dictionary/snapshot/";
+
+    /** "SFDX" **/
+    static final int MAGIC = 0x53464458;
+
+    /**
+     * Version 2 added the header, trailer and repeating groups, version 3 the FIX version, version 4
+     * the message type names.
+     */
+    static final short FORMAT_VERSION = 4;
+
+    /** magic, version, source checksum, payload length, payload checksum **/
+    private static final int HEADER_LENGTH = 4 + 2 + 8 + 4 + 4;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private DictionarySnapshot() {
+    }
+
+    /**
+     * Computes the checksum of the XML source of a dictionary.   This includes the value type
+     * mapping, as that changes the dictionary too.
+     * @param source the XML dictionary
+     * @return the checksum
+     */
+    public static long sourceChecksum(URL source) {
+        CRC32 crc = new CRC32();
+        URL valueTypes = Thread.currentThread().getContextClassLoader().getResource(
+                DictionaryParser.VALUE_TYPES_RESOURCE);
+        update(crc, valueTypes);
+        update(crc, source);
+        return crc.getValue();
+    }
+
+    private static void update(CRC32 crc, URL url) {
+        try {
+            InputStream in = url.openStream();
+            try {
+                byte[] buf = new byte[BUFFER_SIZE];
+                int n;
+                while ((n = in.read(buf)) > 0)
+                    crc.update(buf, 0, n);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new DictionaryParseException("Unable to read " + url + " due to " + e, e);
+        }
+    }
+
+    /**
+     * @param name the dictionary name, e.g. "FIX44"
+     * @return the bundled snapshot of the dictionary, or null if there isn't one
+     */
+    public static URL getSnapshotResource(String name) {
+        return Thread.currentThread().getContextClassLoader().getResource(RESOURCE_PATH + name + EXTENSION);
+    }
+
+    /**
+     * Compiles an XML dictionary into a snapshot file.
+     * @param source the XML dictionary
+     * @param file   the snapshot file to write
+     * @return the dictionary
+     * @throws IOException if the file could not be written
+     */
+    public static Dictionary compile(URL source, File file) throws IOException {
+        Dictionary dictionary = DictionaryParser.parseXML(source);
+        write(dictionary, sourceChecksum(source), file);
+        return dictionary;
+    }
+
+    /**
+     * Writes a snapshot of the dictionary.
+     * @param dictionary     the dictionary
+     * @param sourceChecksum the checksum of the source, from {@link #sourceChecksum(java.net.URL)}
+     * @param file           the snapshot file
+     * @throws IOException if the file could not be written
+     */
+    public static void write(Dictionary dictionary, long sourceChecksum, File file) throws IOException {
+        byte[] payload = encodePayload(dictionary);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeShort(FORMAT_VERSION);
+            out.writeLong(sourceChecksum);
+            out.writeInt(payload.length);
+            out.writeInt((int) crc.getValue());
+            out.write(payload);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static byte[] encodePayload(Dictionary dictionary) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeString(out, dictionary.getVersion() == null ? "" : dictionary.getVersion());
+        out.writeInt(dictionary.getFieldDefs().size());
+        for (FieldDef fieldDef : dictionary.getFieldDefs()) {
+            out.writeInt(fieldDef.getTag());
+            writeString(out, fieldDef.getName());
+            writeString(out, fieldDef.getType());
+            writeString(out, fieldDef.getValueType().name());
+            Map<String, String> values = fieldDef.getValues();
+            out.writeInt(values.size());
+            for (Map.Entry<String, String> entry : values.entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue());
+            }
+        }
+        writeRefs(out, dictionary.getHeader());
+        writeRefs(out, dictionary.getTrailer());
+        out.writeInt(dictionary.getMessageTypes().size());
+        for (MessageType messageType : dictionary.getMessageTypes()) {
+            writeString(out, messageType.getMsgType());
+            writeString(out, messageType.getName() == null ? "" : messageType.getName());
+            out.writeBoolean(messageType.isApplicationMessage());
+            writeRefs(out, messageType);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes the count, then the tag and required flag of each reference.   A NumInGroup field is
+     * followed by the references of its group.
+     */
+    private static void writeRefs(DataOutputStream out, FieldRefGroup group) throws IOException {
+        out.writeInt(group.getNumberOfTags());
+        for (Iterator<FieldRef> refs = group.fieldRefs(); refs.hasNext(); ) {
+            FieldRef ref = refs.next();
+            out.writeInt(ref.getFieldDef().getTag());
+            out.writeBoolean(ref.isRequired());
+            out.writeBoolean(ref.getGroup() != null);
+            if (ref.getGroup() != null)
+                writeRefs(out, ref.getGroup());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(Charsets.UTF_8);
+        out.writeShort(b.length);
+        out.write(b);
+    }
+
+    /**
+     * Loads a snapshot file by memory mapping it.
+     * @param file   the snapshot file
+     * @param source the XML source the snapshot was compiled from, to check that the snapshot is not
+     *               stale.  If null, the check is skipped.
+     * @return the dictionary
+     * @throws DictionaryParseException if the snapshot is stale, corrupt or can't be read
+     */
+    public static Dictionary load(File file, URL source) throws DictionaryParseException {
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                // The mapping stays valid after the channel is closed.
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                return read(buffer, source, file.toString());
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            throw new DictionaryParseException("Unable to read " + file + " due to " + e, e);
+        }
+    }
+
+    /**
+     * Loads a snapshot.  Files are memory mapped, other URLs (e.g. in a jar) are read into memory.
+     * @param snapshot the snapshot
+     * @param source   the XML source the snapshot was compiled from, or null to skip the check
+     * @return the dictionary
+     * @throws DictionaryParseException if the snapshot is stale, corrupt or can't be read
+     */
+    public static Dictionary load(URL snapshot, URL source) throws DictionaryParseException {
+        if ("file".equals(snapshot.getProtocol())) {
+            try {
+                return load(new File(snapshot.toURI()), source);
+            } catch (java.net.URISyntaxException e) {
+                throw new DictionaryParseException("Invalid URL " + snapshot, e);
+            }
+        }
+        try {
+            InputStream in = snapshot.openStream();
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+                byte[] buf = new byte[BUFFER_SIZE];
+                int n;
+                while ((n = in.read(buf)) > 0)
+                    bytes.write(buf, 0, n);
+                return read(ByteBuffer.wrap(bytes.toByteArray()), source, snapshot.toString());
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new DictionaryParseException("Unable to read " + snapshot + " due to " + e, e);
+        }
+    }
+
+    /**
+     * Loads the snapshot if it exists and is up to date, otherwise parses the XML.
+     * @param snapshot the snapshot, may be null
+     * @param source   the XML dictionary
+     * @return the dictionary
+     */
+    public static Dictionary loadOrParse(URL snapshot, URL source) {
+        if (snapshot != null) {
+            try {
+                return load(snapshot, source);
+            } catch (DictionaryParseException e) {
+                log.warn("Unable to use snapshot, parsing " + source + " instead: " + e.getMessage());
+            }
+        }
+        return DictionaryParser.parseXML(source);
+    }
+
+    static Dictionary read(ByteBuffer buffer, URL source, String name) {
+        if (buffer.remaining() < HEADER_LENGTH || buffer.getInt() != MAGIC)
+            throw new DictionaryParseException(name + " is not a dictionary snapshot");
+        short version = buffer.getShort();
+        if (version != FORMAT_VERSION)
+            throw new DictionaryParseException(name + " has format version " + version
+                    + ", expected " + FORMAT_VERSION);
+        long sourceChecksum = buffer.getLong();
+        int payloadLength = buffer.getInt();
+        int payloadChecksum = buffer.getInt();
+        if (payloadLength != buffer.remaining())
+            throw new DictionaryParseException(name + " is truncated");
+        if (source != null && sourceChecksum(source) != sourceChecksum)
+            throw new DictionaryParseException(name + " is stale, " + source + " has changed");
+
+        byte[] scratch = new byte[BUFFER_SIZE];
+        CRC32 crc = new CRC32();
+        ByteBuffer payload = buffer.slice();
+        while (payload.hasRemaining()) {
+            int n = Math.min(scratch.length, payload.remaining());
+            payload.get(scratch, 0, n);
+            crc.update(scratch, 0, n);
+        }
+        if ((int) crc.getValue() != payloadChecksum)
+            throw new DictionaryParseException(name + " is corrupt, checksum mismatch");
+
+        try {
+            return readPayload(buffer, scratch);
+        } catch (RuntimeException e) {
+            throw new DictionaryParseException("Unable to read " + name + " due to " + e, e);
+        }
+    }
+
+    private static Dictionary readPayload(ByteBuffer buffer, byte[] scratch) {
+        final String version = readString(buffer, scratch);
+        final int fieldCount = buffer.getInt();
+        Map<String, FieldDef> fieldsByName = Maps.newHashMapWithExpectedSize(fieldCount);
+        TagIndex<FieldDef> fieldsByTag = new TagIndex<FieldDef>();
+        for (int i = 0; i < fieldCount; i++) {
+            int tag = buffer.getInt();
+            String name = readString(buffer, scratch);
+            String type = readString(buffer, scratch);
+            ValueType valueType = ValueType.valueOf(readString(buffer, scratch));
+            int valueCount = buffer.getInt();
+            Map<String, String> values = new LinkedHashMap<String, String>(valueCount * 2);
+            for (int j = 0; j < valueCount; j++)
+                values.put(readString(buffer, scratch), readString(buffer, scratch));
+            FieldDef fieldDef = new FieldDef(tag, name, type, valueType, values);
+            fieldsByName.put(name, fieldDef);
+            fieldsByTag.put(tag, fieldDef);
+        }
+        FieldRefGroup header = new FieldRefGroup(readRefs(buffer, fieldsByTag));
+        FieldRefGroup trailer = new FieldRefGroup(readRefs(buffer, fieldsByTag));
+        final int messageCount = buffer.getInt();
+        Map<String, MessageType> messageTypes = Maps.newHashMapWithExpectedSize(messageCount);
+        for (int i = 0; i < messageCount; i++) {
+            String msgType = readString(buffer, scratch);
+            String name = readString(buffer, scratch);
+            boolean applicationMessage = buffer.get() != 0;
+            messageTypes.put(msgType, new MessageType(name.length() == 0 ? null : name, msgType,
+                    applicationMessage, readRefs(buffer, fieldsByTag)));
+        }
+        return new Dictionary(version.length() == 0 ? null : version, fieldsByName, messageTypes, header, trailer);
+    }
+
+    private static LinkedHashMap<Integer, FieldRef> readRefs(ByteBuffer buffer, TagIndex<FieldDef> fieldsByTag) {
+        int refCount = buffer.getInt();
+        LinkedHashMap<Integer, FieldRef> refs = new LinkedHashMap<Integer, FieldRef>(refCount * 2);
+        for (int j = 0; j < refCount; j++) {
+            int tag = buffer.getInt();
+            boolean required = buffer.get() != 0;
+            boolean hasGroup = buffer.get() != 0;
+            FieldDef fieldDef = fieldsByTag.get(tag);
+            RepeatingGroupDef group = hasGroup ? new RepeatingGroupDef(readRefs(buffer, fieldsByTag), fieldDef) : null;
+            refs.put(tag, new FieldRef(fieldDef, required, group));
+        }
+        return refs;
+    }
+
+    private static String readString(ByteBuffer buffer, byte[] scratch) {
+        int length = buffer.getShort() & 0xFFFF;
+        byte[] b = length <= scratch.length ? scratch : new byte[length];
+        buffer.get(b, 0, length);
+        return new String(b, 0, length, Charsets.UTF_8);
+    }
+}
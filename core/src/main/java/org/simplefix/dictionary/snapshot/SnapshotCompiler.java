@@ -0,0 +1,78 @@
+package org.simplefix.dictionary.snapshot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Build time tool that compiles every XML dictionary in one or more directories into a snapshot.
+ * A dictionary in a later directory replaces one with the same name in an earlier directory, so
+ * the snapshot of a dictionary that is also a classpath resource is compiled from that resource,
+ * which is what {@link org.simplefix.dictionary.DictionaryRegistry#loadBundled(String...)} checks
+ * the snapshot against.
+ * <br>
+ * Usage: SnapshotCompiler &lt;dictionary directory&gt;... &lt;output directory&gt;
+ */
+public class SnapshotCompiler {
+    private static final Logger log = LoggerFactory.getLogger(SnapshotCompiler.class);
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: SnapshotCompiler <dictionary directory>... <output directory>");
+            System.exit(1);
+        }
+        File[] sourceDirs = new File[args.length - 1];
+        for (int i = 0; i < sourceDirs.length; i++)
+            sourceDirs[i] = new File(args[i]);
+        compileAll(sourceDirs, new File(args[args.length - 1]));
+    }
+
+    /**
+     * Compiles all the XML dictionaries in a directory.
+     * @param sourceDir the directory with the XML dictionaries
+     * @param outputDir where to write the snapshots
+     * @return the number of snapshots written
+     * @throws IOException if a snapshot could not be written
+     */
+    public static int compileAll(File sourceDir, File outputDir) throws IOException {
+        return compileAll(new File[]{sourceDir}, outputDir);
+    }
+
+    /**
+     * Compiles all the XML dictionaries in some directories.
+     * @param sourceDirs the directories with the XML dictionaries.   A dictionary replaces one with
+     *                   the same file name in an earlier directory.
+     * @param outputDir  where to write the snapshots
+     * @return the number of snapshots written
+     * @throws IOException if a snapshot could not be written
+     */
+    public static int compileAll(File[] sourceDirs, File outputDir) throws IOException {
+        Map<String, File> byName = new TreeMap<String, File>();
+        for (File sourceDir : sourceDirs) {
+            File[] sources = sourceDir.listFiles(new FilenameFilter() {
+                public boolean accept(File dir, String name) {
+                    return name.endsWith(".xml");
+                }
+            });
+            if (sources == null)
+                throw new IOException(sourceDir + " is not a directory");
+            for (File source : sources)
+                byName.put(source.getName(), source);
+        }
+        if (!outputDir.isDirectory() && !outputDir.mkdirs())
+            throw new IOException("Unable to create " + outputDir);
+        for (File source : byName.values()) {
+            String name = source.getName();
+            File snapshot = new File(outputDir, name.substring(0, name.length() - 4) + DictionarySnapshot.EXTENSION);
+            long start = System.currentTimeMillis();
+            DictionarySnapshot.compile(source.toURI().toURL(), snapshot);
+            log.info("Compiled " + source + " to " + snapshot + " in " + (System.currentTimeMillis() - start) + "ms");
+        }
+        return byName.size();
+    }
+}
@@ -5,19 +5,31 @@ import org.simplefix.dictionary.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.events.EndElement;
-import javax.xml.stream.events.StartElement;
-import javax.xml.stream.events.XMLEvent;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Parses QFJ data dictionary XML files.
  * <br/>
+ * Components are resolved and flattened into the message types (and the header and trailer) that
+ * refer to them.   Fields inside a component that isn't required are not required.  Repeating
+ * groups become NumInGroup field references that point at the group definition.
+ * <br/>
+ * The parser runs on an {@link XMLStreamReader}, so it doesn't create an event object per element.
+ * Element names are mapped to int ids, and where the parser is in the document is a stack of int
+ * states (one per open element), so there are no path strings to build or compare.
+ * <br/>
  * Created by IntelliJ IDEA.
  * User: josh
  * Date: 9/7/12
@@ -27,61 +39,126 @@ public class DictionaryParser {
 
     private static final Logger log = LoggerFactory.getLogger(DictionaryParser.class);
 
+    /**
+     * Resource that maps the dictionary type names to value types.
+     */
+    public static final String VALUE_TYPES_RESOURCE = "org/simplefix/value-types.xml";
+
+    // Element ids.
+    private static final int OTHER = 0;
+    private static final int FIX = 1;
+    private static final int HEADER = 2;
+    private static final int TRAILER = 3;
+    private static final int MESSAGES = 4;
+    private static final int COMPONENTS = 5;
+    private static final int FIELDS = 6;
+    private static final int MESSAGE = 7;
+    private static final int COMPONENT = 8;
+    private static final int FIELD = 9;
+    private static final int GROUP = 10;
+    private static final int VALUE = 11;
+
+    private static final Map<String, Integer> ELEMENT_IDS = new HashMap<String, Integer>();
+
+    static {
+        ELEMENT_IDS.put("fix", FIX);
+        ELEMENT_IDS.put("header", HEADER);
+        ELEMENT_IDS.put("trailer", TRAILER);
+        ELEMENT_IDS.put("messages", MESSAGES);
+        ELEMENT_IDS.put("components", COMPONENTS);
+        ELEMENT_IDS.put("fields", FIELDS);
+        ELEMENT_IDS.put("message", MESSAGE);
+        ELEMENT_IDS.put("component", COMPONENT);
+        ELEMENT_IDS.put("field", FIELD);
+        ELEMENT_IDS.put("group", GROUP);
+        ELEMENT_IDS.put("value", VALUE);
+    }
+
+    // States: what the open element is, as far as the parser is concerned.
+    private static final int S_DOCUMENT = 0;
+    private static final int S_SKIP = 1;
+    private static final int S_FIX = 2;
+    private static final int S_FIELDS = 3;
+    private static final int S_FIELD = 4;
+    private static final int S_MESSAGES = 5;
+    private static final int S_COMPONENTS = 6;
+    /** Inside a message type, component, group, header or trailer: field, component and group references. **/
+    private static final int S_REFS = 7;
+    private static final int S_HEADER = 8;
+    private static final int S_TRAILER = 9;
+    private static final int S_MESSAGE = 10;
+    private static final int S_COMPONENT = 11;
+    private static final int S_GROUP = 12;
+
+    /** The state of each open element, the innermost one last. **/
+    private int[] states = new int[16];
+    private int depth;
+
+    private XMLStreamReader reader;
+
     /**
      * Builder for the current field definition.
      */
     private FieldDefBuilder currentField;
 
     /**
-     * The current message type.
+     * The message type, component, header or trailer (and any groups inside it) being parsed.
+     * The innermost one is at the end.
      */
-    private MessageTypeBuilder currentMessage;
+    private final List<FieldRefsBuilder> stack;
 
     private final Map<String, MessageTypeBuilder> messageTypes;
 
+    private final Map<String, FieldRefsBuilder> components;
+
+    private FieldRefsBuilder header;
+
+    private FieldRefsBuilder trailer;
+
     private final DictionaryBuilder builder;
 
     private Map<String, ValueType> readValueTypeMap() {
+        URL url = Thread.currentThread().getContextClassLoader().getResource(VALUE_TYPES_RESOURCE);
+        InputStream in = StAXHelper.openStream(url);
         try {
             Map<String, ValueType> valueTypeMap = Maps.newHashMap();
-            XMLEventReader eventReader = StAXHelper.createXMLEventReaderForResource("org/simplefix/value-types.xml");
-            while (eventReader.hasNext()) {
-                XMLEvent event = eventReader.nextEvent();
-                switch (event.getEventType()) {
-                    case XMLStreamConstants.START_ELEMENT:
-                        StartElement startElement = event.asStartElement();
-                        if ("value-type".equals(startElement.getName().getLocalPart())) {
-                            String type = StAXHelper.stringAttribute(startElement, "type");
-                            ValueType valueType = ValueType.valueOf(
-                                    StAXHelper.stringAttribute(startElement, "valueType"));
-                            valueTypeMap.put(type, valueType);
-                        }
-                        break;
-                    default:
-                        break;
+            XMLStreamReader r = StAXHelper.createXMLStreamReader(in, url);
+            while (r.hasNext()) {
+                if (r.next() == XMLStreamConstants.START_ELEMENT && "value-type".equals(r.getLocalName())) {
+                    String type = StAXHelper.stringAttribute(r, "type");
+                    ValueType valueType = ValueType.valueOf(StAXHelper.stringAttribute(r, "valueType"));
+                    valueTypeMap.put(type, valueType);
                 }
             }
+            r.close();
             return valueTypeMap;
         } catch (XMLStreamException e) {
             throw new RuntimeException(e);
+        } finally {
+            StAXHelper.close(in);
         }
     }
 
     public DictionaryParser() {
         builder = new DictionaryBuilder(readValueTypeMap());
         currentField = null;
+        stack = new ArrayList<FieldRefsBuilder>();
         messageTypes = Maps.newHashMap();
+        components = Maps.newHashMap();
     }
 
     public static Dictionary parseXML(URL url) throws DictionaryParseException {
-        XMLEventReader eventReader = StAXHelper.createXMLEventReader(url);
+        InputStream in = StAXHelper.openStream(url);
         try {
-            return new DictionaryParser().doParse(eventReader);
+            XMLStreamReader reader = StAXHelper.createXMLStreamReader(in, url);
+            return new DictionaryParser().doParse(reader);
         } catch (XMLStreamException e) {
             throw new DictionaryParseException(parseError(url, e), e);
         } catch (DictionaryParseException dpe) {
             parseError(url, dpe);
             throw dpe;
+        } finally {
+            StAXHelper.close(in);
         }
     }
 
@@ -91,207 +168,392 @@ public class DictionaryParser {
         return s;
     }
 
-    private String getErrorLocation(XMLEvent event) {
-        return StAXHelper.getLocationString(event);
+    /**
+     * @return the location of the current element, for error messages
+     */
+    private String getErrorLocation() {
+        return StAXHelper.getLocationString(reader);
     }
 
     private class FieldDefBuilder {
         private final int tag;
         private final String name;
         private final String type;
-        private final Map<String, String> values = Maps.newHashMap();
+        private final Map<String, String> values = Maps.newLinkedHashMap();
         private final ValueType valueType;
+        private final String location;
 
-        private FieldDefBuilder(StartElement startElement) {
-            tag = StAXHelper.intAttribute(startElement, "number");
-            name = StAXHelper.stringAttribute(startElement, "name");
-            type = StAXHelper.stringAttribute(startElement, "type");
+        private FieldDefBuilder() {
+            tag = StAXHelper.intAttribute(reader, "number");
+            name = StAXHelper.stringAttribute(reader, "name");
+            type = StAXHelper.stringAttribute(reader, "type");
             valueType = builder.mapToValueType(type);
+            location = getErrorLocation();
         }
 
         public FieldDef createFieldDef() {
             return new FieldDef(tag, name, type, valueType, values);
         }
 
-        public void addValue(StartElement startElement) {
-            String key = StAXHelper.stringAttribute(startElement, "enum");
-            String name = StAXHelper.stringAttribute(startElement, "description");
+        public void addValue() {
+            String key = StAXHelper.stringAttribute(reader, "enum");
+            String name = StAXHelper.stringAttribute(reader, "description");
             if (values.containsKey(key))
-                throw new DictionaryParseException("Duplicate value " + startElement +
-                        getErrorLocation(startElement));
+                throw new DictionaryParseException("Duplicate value " + StAXHelper.describe(reader) +
+                        getErrorLocation());
             values.put(key, name);
         }
     }
 
-    private Dictionary doParse(XMLEventReader eventReader) throws XMLStreamException {
-        PathAwareXMLEventReader pathReader = new PathAwareXMLEventReader(eventReader);
-        while (pathReader.hasNext()) {
-            PathEvent event = pathReader.nextEvent();
-            switch (event.getEventType()) {
+    private Dictionary doParse(XMLStreamReader reader) throws XMLStreamException {
+        this.reader = reader;
+        depth = 0;
+        states[0] = S_DOCUMENT;
+        while (reader.hasNext()) {
+            switch (reader.next()) {
                 case XMLStreamConstants.START_ELEMENT:
-                    startElement(event);
+                    startElement();
                     break;
                 case XMLStreamConstants.END_ELEMENT:
-                    endElement(event);
+                    endElement();
                     break;
             }
         }
+        reader.close();
 
         resolveReferences();
         // Parse all the message types link the fields up by name.
         return builder.create();
     }
 
-    private Section section;
+    private static int elementId(String localName) {
+        final Integer id = ELEMENT_IDS.get(localName);
+        return id == null ? OTHER : id;
+    }
 
-    private void startElement(PathEvent event) {
-        final String pathString = event.getPath();
-        if (section == null)
-            section = Section.getSection(pathString);
-        else {
-            switch (section) {
-                case FIELDS:
-                    fieldsStartElement(event);
-                    break;
-                case MESSAGES:
-                    messagesStartElement(event);
-                    break;
-                default:
-                    break;
-            }
+    private void startElement() {
+        final int element = elementId(reader.getLocalName());
+        final int state;
+        switch (states[depth]) {
+            case S_DOCUMENT:
+                if (element == FIX) {
+                    builder.setVersion(version());
+                    state = S_FIX;
+                } else {
+                    state = S_SKIP;
+                }
+                break;
+            case S_FIX:
+                state = sectionStart(element);
+                break;
+            case S_FIELDS:
+                if (element == FIELD) {
+                    currentField = new FieldDefBuilder();
+                    state = S_FIELD;
+                } else {
+                    state = S_SKIP;
+                }
+                break;
+            case S_FIELD:
+                if (element == VALUE)
+                    valueDef();
+                state = S_SKIP;
+                break;
+            case S_MESSAGES:
+                if (element == MESSAGE) {
+                    stack.add(new MessageTypeBuilder());
+                    state = S_MESSAGE;
+                } else {
+                    state = refStart(element);
+                }
+                break;
+            case S_COMPONENTS:
+                if (element == COMPONENT) {
+                    stack.add(new FieldRefsBuilder());
+                    state = S_COMPONENT;
+                } else {
+                    state = refStart(element);
+                }
+                break;
+            case S_REFS:
+            case S_HEADER:
+            case S_TRAILER:
+            case S_MESSAGE:
+            case S_COMPONENT:
+            case S_GROUP:
+                state = refStart(element);
+                break;
+            default:
+                state = S_SKIP;
+                break;
         }
+        push(state);
     }
 
-    private void endElement(PathEvent event) {
-        final String pathString = event.getPath();
-        if (section != null) {
-            switch (section) {
-                case FIELDS:
-                    fieldsEndElement(event);
-                    break;
-                case MESSAGES:
-                    messagesEndElement(event);
-                    break;
-                default:
-                    break;
-            }
-            if (section.getPath().equals(pathString))
-                section = null;
+    private void endElement() {
+        final int state = states[depth--];
+        switch (state) {
+            case S_FIELD:
+                fieldDef();
+                break;
+            case S_MESSAGE:
+                messageDef();
+                break;
+            case S_COMPONENT:
+                componentDef();
+                break;
+            case S_HEADER:
+            case S_TRAILER:
+            case S_GROUP:
+                stack.remove(stack.size() - 1);
+                break;
+            default:
+                break;
         }
     }
 
-
-    private void fieldsStartElement(PathEvent event) {
-        StartElement startElement = event.asStartElement();
-        final String pathString = event.getPath();
-        if ("fix/fields/field".equals(pathString)) {
-            currentField = new FieldDefBuilder(startElement);
-        } else if ("fix/fields/field/value".equals(pathString)) {
-            valueDef(startElement);
+    private void push(int state) {
+        if (++depth == states.length) {
+            int[] a = new int[states.length * 2];
+            System.arraycopy(states, 0, a, 0, states.length);
+            states = a;
         }
+        states[depth] = state;
     }
 
-    private void fieldsEndElement(PathEvent event) {
-        EndElement endElement = event.asEndElement();
-        final String pathString = event.getPath();
-        if ("fix/fields/field".equals(pathString)) {
-            fieldDef(endElement, event);
+    /**
+     * A section (header, trailer, messages, components or fields) inside the root element.
+     */
+    private int sectionStart(int element) {
+        switch (element) {
+            case HEADER:
+                header = new FieldRefsBuilder();
+                stack.add(header);
+                return S_HEADER;
+            case TRAILER:
+                trailer = new FieldRefsBuilder();
+                stack.add(trailer);
+                return S_TRAILER;
+            case MESSAGES:
+                return S_MESSAGES;
+            case COMPONENTS:
+                return S_COMPONENTS;
+            case FIELDS:
+                return S_FIELDS;
+            default:
+                return S_SKIP;
         }
     }
 
-    private void messagesStartElement(PathEvent event) {
-        StartElement startElement = event.asStartElement();
-        final String pathString = event.getPath();
-        if ("fix/messages/message".equals(pathString)) {
-            currentMessage = new MessageTypeBuilder(startElement);
-        } else if ("fix/messages/message/field".equals(pathString)) {
-            fieldRef(currentMessage, startElement);
-        }
+    /**
+     * @return the version from the root element, e.g. "FIX.4.4", "FIXT.1.1" or "FIX.5.0SP2"
+     */
+    private String version() {
+        final String type = StAXHelper.getAttributeValue(reader, "type");
+        final String servicePack = StAXHelper.getAttributeValue(reader, "servicepack");
+        StringBuilder sb = new StringBuilder(type == null ? "FIX" : type);
+        sb.append('.').append(StAXHelper.stringAttribute(reader, "major"));
+        sb.append('.').append(StAXHelper.stringAttribute(reader, "minor"));
+        if (servicePack != null && !"0".equals(servicePack))
+            sb.append("SP").append(servicePack);
+        return sb.toString();
     }
 
-    private void messagesEndElement(PathEvent event) {
-        final String pathString = event.getPath();
-        if ("fix/messages/message".equals(pathString)) {
-            messageDef(event);
+    /**
+     * A field, component or group reference inside a message type, component, header or trailer.
+     */
+    private int refStart(int element) {
+        if (element == FIELD || element == COMPONENT) {
+            fieldRef(top(), element == COMPONENT);
+            return S_SKIP;
+        } else if (element == GROUP) {
+            FieldRefsBuilder group = new FieldRefsBuilder();
+            fieldRef(top(), false).group = group;
+            stack.add(group);
+            return S_GROUP;
         }
+        return S_REFS;
     }
 
+    private FieldRefsBuilder top() {
+        return stack.isEmpty() ? null : stack.get(stack.size() - 1);
+    }
 
     private void resolveReferences() {
-        // Resolve field references in the message types.
+        // Resolve field, component and group references in the message types.
+        Set<String> resolving = new HashSet<String>();
         for (MessageTypeBuilder messageTypeBuilder : messageTypes.values()) {
-            final LinkedHashMap<String, StartElement> fieldRefs = messageTypeBuilder.fieldRefs;
-            LinkedHashMap<Integer, FieldRef> refMap = new LinkedHashMap<Integer, FieldRef>(fieldRefs.size());
-            for (StartElement fieldRef : fieldRefs.values()) {
-                String fieldName = StAXHelper.stringAttribute(fieldRef, "name");
-                FieldDef fieldDef = builder.getFieldDef(fieldName);
-                if (fieldDef == null) {
-                    throw new DictionaryParseException("Undefined field '" + fieldName + "' " +
-                            getErrorLocation(fieldRef));
-                }
-                boolean required = StAXHelper.booleanAttribute(fieldRef, "required");
-                FieldRef ref = new FieldRef(fieldDef, required);
-                refMap.put(fieldDef.getTag(), ref);
-            }
+            LinkedHashMap<Integer, FieldRef> refMap = new LinkedHashMap<Integer, FieldRef>();
+            resolve(messageTypeBuilder, true, refMap, resolving);
             String msgType = messageTypeBuilder.getMsgType();
-            boolean applicationMessage = !"admin".equalsIgnoreCase(
-                    StAXHelper.stringAttribute(messageTypeBuilder.startElement, "msgcat"));
-            MessageType messageType = new MessageType(msgType, applicationMessage, refMap);
+            boolean applicationMessage = !"admin".equalsIgnoreCase(messageTypeBuilder.msgCat);
+            MessageType messageType = new MessageType(messageTypeBuilder.name, msgType, applicationMessage, refMap);
             builder.addMessageType(messageType);
         }
+        builder.setHeader(resolveGroup(header, resolving));
+        builder.setTrailer(resolveGroup(trailer, resolving));
     }
 
-    private void messageDef(PathEvent e) {
+    private FieldRefGroup resolveGroup(FieldRefsBuilder refsBuilder, Set<String> resolving) {
+        LinkedHashMap<Integer, FieldRef> refMap = new LinkedHashMap<Integer, FieldRef>();
+        if (refsBuilder != null)
+            resolve(refsBuilder, true, refMap, resolving);
+        return new FieldRefGroup(refMap);
+    }
+
+    /**
+     * Resolves the references in a message type, component or group, flattening components.
+     * @param refsBuilder the references
+     * @param required    false if the references are inside a component that isn't required
+     * @param refMap      the resolved references
+     * @param resolving   the components being resolved, to catch circular references
+     */
+    private void resolve(FieldRefsBuilder refsBuilder, boolean required,
+                         LinkedHashMap<Integer, FieldRef> refMap, Set<String> resolving) {
+        for (Ref ref : refsBuilder.refs) {
+            final String name = ref.name;
+            final boolean refRequired = required && ref.required;
+            if (ref.component) {
+                FieldRefsBuilder component = components.get(name);
+                if (component == null) {
+                    throw new DictionaryParseException("Undefined component '" + name + "' " +
+                            ref.location);
+                }
+                if (!resolving.add(name)) {
+                    throw new DictionaryParseException("Circular reference to component '" + name + "' " +
+                            ref.location);
+                }
+                resolve(component, refRequired, refMap, resolving);
+                resolving.remove(name);
+                continue;
+            }
+            FieldDef fieldDef = builder.getFieldDef(name);
+            if (fieldDef == null) {
+                throw new DictionaryParseException("Undefined field '" + name + "' " +
+                        ref.location);
+            }
+            RepeatingGroupDef group = null;
+            if (ref.group != null) {
+                // Fields inside a group are required in each instance, whether or not the group is.
+                LinkedHashMap<Integer, FieldRef> groupRefs = new LinkedHashMap<Integer, FieldRef>();
+                resolve(ref.group, true, groupRefs, resolving);
+                if (groupRefs.isEmpty()) {
+                    throw new DictionaryParseException("Group '" + name + "' has no fields " +
+                            ref.location);
+                }
+                group = new RepeatingGroupDef(groupRefs, fieldDef);
+            }
+            if (refMap.containsKey(fieldDef.getTag())) {
+                throw new DictionaryParseException("Field '" + name + "' already referenced! " +
+                        ref.location);
+            }
+            refMap.put(fieldDef.getTag(), new FieldRef(fieldDef, refRequired, group));
+        }
+    }
+
+    private void messageDef() {
+        MessageTypeBuilder currentMessage = (MessageTypeBuilder) stack.remove(stack.size() - 1);
         if (messageTypes.containsKey(currentMessage.getMsgType())) {
             throw new DictionaryParseException("Duplicate message type '" + currentMessage.getMsgType() + "' " +
-                    getErrorLocation(e.getStart()));
+                    currentMessage.location);
         }
         messageTypes.put(currentMessage.getMsgType(), currentMessage);
     }
 
-    private void fieldDef(EndElement endElement, PathEvent e) {
+    private void componentDef() {
+        FieldRefsBuilder component = stack.remove(stack.size() - 1);
+        String name = component.name;
+        if (name == null)
+            throw new DictionaryParseException("Required attribute 'name' missing on <component>" + component.location);
+        if (components.containsKey(name)) {
+            throw new DictionaryParseException("Duplicate component '" + name + "' " +
+                    component.location);
+        }
+        components.put(name, component);
+    }
+
+    private void fieldDef() {
         // We're done with a field definition.
         if (currentField == null)
-            throw new DictionaryParseException("No field definition! at " + endElement.getLocation());
+            throw new DictionaryParseException("No field definition!" + getErrorLocation());
         FieldDef fieldDef = currentField.createFieldDef();
         if (builder.containsFieldName(fieldDef.getName())) {
             throw new DictionaryParseException("Duplicate field '" + fieldDef.getName() + "' " +
-                    getErrorLocation(e.getStart()));
+                    currentField.location);
         }
         if (builder.containsTag(fieldDef.getTag())) {
             throw new DictionaryParseException("Duplicate tag '" + fieldDef.getTag() + "' at " +
-                    getErrorLocation(e.getStart()));
+                    currentField.location);
         }
         builder.addFieldDef(fieldDef);
         currentField = null;
     }
 
-    private void fieldRef(MessageTypeBuilder defBuilder, StartElement fieldRefElement) {
+    private Ref fieldRef(FieldRefsBuilder defBuilder, boolean component) {
         if (defBuilder == null) {
             throw new DictionaryParseException("Field reference is not inside a group! " +
-                    getErrorLocation(fieldRefElement));
+                    getErrorLocation());
         }
-        defBuilder.addFieldRef(fieldRefElement);
+        return defBuilder.addFieldRef(component);
     }
 
-    private class MessageTypeBuilder {
-        private final StartElement startElement;
-        private final LinkedHashMap<String, StartElement> fieldRefs = new LinkedHashMap<String, StartElement>();
-        private final String msgType;
+    /**
+     * An unresolved field, component or group reference.
+     */
+    private static class Ref {
+        private final String name;
+        private final boolean required;
+        private final boolean component;
+        private final String location;
+        private FieldRefsBuilder group;
+
+        private Ref(String name, boolean required, boolean component, String location) {
+            this.name = name;
+            this.required = required;
+            this.component = component;
+            this.location = location;
+        }
+    }
 
-        private MessageTypeBuilder(StartElement startElement) {
-            this.startElement = startElement;
-            msgType = StAXHelper.stringAttribute(startElement, "msgtype");
+    /**
+     * The unresolved references of a message type, component, group, header or trailer.
+     */
+    private class FieldRefsBuilder {
+        /** The name attribute, if there is one. **/
+        protected final String name;
+        protected final String location;
+        private final List<Ref> refs = new ArrayList<Ref>();
+        private final Set<String> names = new HashSet<String>();
+
+        private FieldRefsBuilder() {
+            name = StAXHelper.getAttributeValue(reader, "name");
+            location = getErrorLocation();
         }
 
-        void addFieldRef(StartElement fieldRef) {
-            String fieldName = StAXHelper.stringAttribute(fieldRef, "name");
-            if (fieldRefs.containsKey(fieldName)) {
-                throw new DictionaryParseException("Field '" + fieldName + "' already referenced! "
-                        + getErrorLocation(fieldRef));
+        Ref addFieldRef(boolean component) {
+            String name = StAXHelper.stringAttribute(reader, "name");
+            // Components and fields are in different namespaces.
+            if (!names.add(component ? "component:" + name : name)) {
+                throw new DictionaryParseException((component ? "Component '" : "Field '")
+                        + name + "' already referenced! " + getErrorLocation());
             }
             // NOTE: This will be resolved later.
-            fieldRefs.put(fieldName, fieldRef);
+            Ref ref = new Ref(name, StAXHelper.booleanAttribute(reader, "required"), component,
+                    getErrorLocation());
+            refs.add(ref);
+            return ref;
+        }
+    }
+
+    private class MessageTypeBuilder extends FieldRefsBuilder {
+        private final String name;
+        private final String msgType;
+        private final String msgCat;
+
+        private MessageTypeBuilder() {
+            name = StAXHelper.getAttributeValue(reader, "name");
+            msgType = StAXHelper.stringAttribute(reader, "msgtype");
+            msgCat = StAXHelper.stringAttribute(reader, "msgcat");
         }
 
         public String getMsgType() {
@@ -299,15 +561,15 @@ public class DictionaryParser {
         }
     }
 
-    private void valueDef(StartElement startElement) {
+    private void valueDef() {
         // Add the value to the current set of values.
         if (currentField == null)
-            throw new DictionaryParseException("No field definition! " + getErrorLocation(startElement));
+            throw new DictionaryParseException("No field definition! " + getErrorLocation());
         try {
-            currentField.addValue(startElement);
+            currentField.addValue();
         } catch (Exception e) {
             throw new DictionaryParseException("Unexpected error " +
-                    e.getMessage() + " " + getErrorLocation(startElement));
+                    e.getMessage() + " " + getErrorLocation());
         }
     }
 }
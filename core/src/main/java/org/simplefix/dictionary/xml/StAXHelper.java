@@ -6,13 +6,17 @@ import javax.xml.namespace.QName;
 import javax.xml.stream.Location;
 import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.stream.events.Attribute;
 import javax.xml.stream.events.StartElement;
 import javax.xml.stream.events.XMLEvent;
 import javax.xml.transform.stream.StreamSource;
 import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
+import java.util.Arrays;
 
 /**
  * StAX helper methods.
@@ -35,6 +39,36 @@ public class StAXHelper {
         }
     }
 
+    static InputStream openStream(URL url) {
+        try {
+            return url.openStream();
+        } catch (Exception e) {
+            throw new DictionaryParseException("Unable to read " + url + " due to " + e, e);
+        }
+    }
+
+    /**
+     * @param in  the XML, which the caller closes
+     * @param url where the XML came from, for errors
+     */
+    static XMLStreamReader createXMLStreamReader(InputStream in, URL url) {
+        try {
+            XMLInputFactory f = XMLInputFactory.newInstance();
+            f.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+            return f.createXMLStreamReader(in);
+        } catch (Exception e) {
+            throw new DictionaryParseException("Unable to read " + url + " due to " + e, e);
+        }
+    }
+
+    static void close(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException ignore) {
+            // Nothing more to read.
+        }
+    }
+
     public static XMLEventReader createXMLEventReaderForResource(String name) {
         URL url = Thread.currentThread().getContextClassLoader().getResource(name);
         return createXMLEventReader(url);
@@ -79,4 +113,47 @@ public class StAXHelper {
         String value = getAttributeValue(element, name);
         return "Y".equalsIgnoreCase(value) || "true".equals(value);
     }
+
+    // The same, for the current start element of an XMLStreamReader.
+
+    static int intAttribute(XMLStreamReader reader, String attributeName) {
+        return Integer.parseInt(stringAttribute(reader, attributeName));
+    }
+
+    static String stringAttribute(XMLStreamReader reader, String attributeName) {
+        String value = reader.getAttributeValue(null, attributeName);
+        if (value == null)
+            throw new DictionaryParseException("Required attribute '" + attributeName +
+                    "' missing on " + describe(reader) + getLocationString(reader));
+        return value;
+    }
+
+    static String getAttributeValue(XMLStreamReader reader, String attributeName) {
+        return reader.getAttributeValue(null, attributeName);
+    }
+
+    static boolean booleanAttribute(XMLStreamReader reader, String name) {
+        String value = reader.getAttributeValue(null, name);
+        return "Y".equalsIgnoreCase(value) || "true".equals(value);
+    }
+
+    static String getLocationString(XMLStreamReader reader) {
+        final Location location = reader.getLocation();
+        return " at line " + location.getLineNumber() +
+                ", column " + location.getColumnNumber();
+    }
+
+    /**
+     * @return the current start element, e.g. &lt;field name='Side' number='54'&gt;
+     */
+    static String describe(XMLStreamReader reader) {
+        final String[] attributes = new String[reader.getAttributeCount()];
+        for (int i = 0; i < attributes.length; i++)
+            attributes[i] = reader.getAttributeLocalName(i) + "='" + reader.getAttributeValue(i) + "'";
+        Arrays.sort(attributes);
+        StringBuilder sb = new StringBuilder("<").append(reader.getLocalName());
+        for (String attribute : attributes)
+            sb.append(' ').append(attribute);
+        return sb.append('>').toString();
+    }
 }
@@ -0,0 +1,278 @@
+package org.simplefix.journal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static org.simplefix.util.MappedBuffers.unmap;
+
+/**
+ * An append-only journal of messages, indexed by sequence number, in memory mapped files.
+ * <br>
+ * Messages are copied into data segments ("name-00000000.log", ...) of a fixed size, and a new
+ * segment is started when a message doesn't fit in the current one.   Each sequence number has a
+ * fixed width entry (segment, offset, length) in the index files ("name-00000000.idx", ...), which
+ * each hold a fixed number of entries, so finding any message is two array calculations: no search.
+ * <br>
+ * Appending is a memory copy into the mapped files, so the writer doesn't wait for the disk; the
+ * operating system writes the pages back on its own, and survives the process crashing.
+ * Call {@link #force()} to wait for the disk (e.g. to survive the machine crashing).
+ * <br>
+ * Opening an existing journal maps the index and finds the last entry, instead of reading the
+ * messages.
+ * <br>
+ * Not thread safe: there must be one writer, and reads must be on the same thread (e.g. the I/O
+ * thread of a session).
+ */
+public class Journal implements Closeable {
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    public static final int DEFAULT_INDEX_ENTRIES = 1024 * 1024;
+
+    /** Segment, offset, length and a spare int. **/
+    static final int ENTRY_SIZE = 16;
+
+    private static final String DATA_SUFFIX = ".log";
+    private static final String INDEX_SUFFIX = ".idx";
+
+    private final File directory;
+    private final String name;
+    private final int segmentSize;
+    private final int indexEntries;
+
+    private MappedByteBuffer[] segments = new MappedByteBuffer[4];
+    private MappedByteBuffer[] indexes = new MappedByteBuffer[4];
+
+    private int segment;
+    private int position;
+    private int lastSeqNum;
+    private boolean closed;
+
+    /**
+     * Opens (or creates) a journal with the default segment and index sizes.
+     * @param directory the directory for the files
+     * @param name      the journal name, which is the prefix of the file names
+     */
+    public Journal(File directory, String name) {
+        this(directory, name, DEFAULT_SEGMENT_SIZE, DEFAULT_INDEX_ENTRIES);
+    }
+
+    /**
+     * @param directory    the directory for the files
+     * @param name         the journal name, which is the prefix of the file names
+     * @param segmentSize  the size of each data segment, which is the largest message that can be stored
+     * @param indexEntries the number of sequence numbers in each index file
+     */
+    public Journal(File directory, String name, int segmentSize, int indexEntries) {
+        if (segmentSize <= 0 || indexEntries <= 0)
+            throw new IllegalArgumentException("segmentSize and indexEntries must be positive!");
+        if ((long) indexEntries * ENTRY_SIZE > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Too many index entries: " + indexEntries);
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new JournalException("Unable to create " + directory);
+        this.directory = directory;
+        this.name = name;
+        this.segmentSize = segmentSize;
+        this.indexEntries = indexEntries;
+        recover();
+    }
+
+    /**
+     * Finds the last entry in the last index file, and carries on writing after it.
+     */
+    private void recover() {
+        int lastIndex = -1;
+        while (file(lastIndex + 1, INDEX_SUFFIX).exists())
+            lastIndex++;
+        for (int i = lastIndex; i >= 0 && lastSeqNum == 0; i--) {
+            final ByteBuffer index = index(i);
+            for (int slot = indexEntries - 1; slot >= 0; slot--) {
+                final int length = index.getInt(slot * ENTRY_SIZE + 8);
+                if (length > 0) {
+                    lastSeqNum = i * indexEntries + slot + 1;
+                    segment = index.getInt(slot * ENTRY_SIZE);
+                    position = index.getInt(slot * ENTRY_SIZE + 4) + length;
+                    break;
+                }
+            }
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the last sequence number appended, or zero if the journal is empty
+     */
+    public int getLastSeqNum() {
+        return lastSeqNum;
+    }
+
+    /**
+     * Appends a message.
+     * @param seqNum the sequence number, which must be more than the last one.  Sequence numbers
+     *               that are skipped have no entry.
+     * @param src    the buffer containing the message
+     * @param offset the offset of the message in the buffer
+     * @param length the length of the message
+     * @throws JournalException if a new segment or index file can't be created
+     */
+    public void append(int seqNum, ByteBuffer src, int offset, int length) {
+        checkOpen();
+        if (seqNum <= lastSeqNum)
+            throw new IllegalArgumentException("Sequence number " + seqNum + " is not after " + lastSeqNum);
+        if (length <= 0 || length > segmentSize)
+            throw new IllegalArgumentException("Invalid length " + length + ", the segment size is " + segmentSize);
+        if (position + length > segmentSize) {
+            segment++;
+            position = 0;
+        }
+        final ByteBuffer data = segment(segment);
+        if (src.hasArray()) {
+            final ByteBuffer dst = data.duplicate();
+            dst.position(position);
+            dst.put(src.array(), src.arrayOffset() + offset, length);
+        } else {
+            for (int i = 0; i < length; i++)
+                data.put(position + i, src.get(offset + i));
+        }
+
+        // Write the length last: an entry with a length is complete.
+        final ByteBuffer index = index((seqNum - 1) / indexEntries);
+        final int entry = ((seqNum - 1) % indexEntries) * ENTRY_SIZE;
+        index.putInt(entry, segment);
+        index.putInt(entry + 4, position);
+        index.putInt(entry + 8, length);
+        position += length;
+        lastSeqNum = seqNum;
+    }
+
+    /**
+     * @param seqNum the sequence number
+     * @return a read only view of the message, or null if there is no message with the sequence
+     *         number.   The view is only valid until the journal is reset or closed.
+     */
+    public ByteBuffer get(int seqNum) {
+        checkOpen();
+        if (seqNum <= 0 || seqNum > lastSeqNum)
+            return null;
+        final ByteBuffer index = index((seqNum - 1) / indexEntries);
+        final int entry = ((seqNum - 1) % indexEntries) * ENTRY_SIZE;
+        final int length = index.getInt(entry + 8);
+        if (length == 0)
+            return null;
+        final int offset = index.getInt(entry + 4);
+        final ByteBuffer view = segment(index.getInt(entry)).asReadOnlyBuffer();
+        view.limit(offset + length).position(offset);
+        return view.slice();
+    }
+
+    /**
+     * Waits for everything appended so far to be written to the disk.
+     */
+    public void force() {
+        checkOpen();
+        for (MappedByteBuffer buffer : indexes) {
+            if (buffer != null)
+                buffer.force();
+        }
+        for (MappedByteBuffer buffer : segments) {
+            if (buffer != null)
+                buffer.force();
+        }
+    }
+
+    /**
+     * Deletes all the messages, e.g. when the session sequence numbers are reset.
+     */
+    public void reset() {
+        checkOpen();
+        unmapAll();
+        for (int i = 0; file(i, DATA_SUFFIX).exists(); i++)
+            delete(file(i, DATA_SUFFIX));
+        for (int i = 0; file(i, INDEX_SUFFIX).exists(); i++)
+            delete(file(i, INDEX_SUFFIX));
+        segment = 0;
+        position = 0;
+        lastSeqNum = 0;
+    }
+
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        unmapAll();
+    }
+
+    private void checkOpen() {
+        if (closed)
+            throw new IllegalStateException("Journal " + name + " is closed");
+    }
+
+    private ByteBuffer segment(int i) {
+        if (i >= segments.length)
+            segments = grow(segments, i);
+        if (segments[i] == null)
+            segments[i] = map(file(i, DATA_SUFFIX), segmentSize);
+        return segments[i];
+    }
+
+    private ByteBuffer index(int i) {
+        if (i >= indexes.length)
+            indexes = grow(indexes, i);
+        if (indexes[i] == null)
+            indexes[i] = map(file(i, INDEX_SUFFIX), indexEntries * ENTRY_SIZE);
+        return indexes[i];
+    }
+
+    private File file(int i, String suffix) {
+        return new File(directory, String.format("%s-%08d%s", name, i, suffix));
+    }
+
+    private static MappedByteBuffer[] grow(MappedByteBuffer[] buffers, int i) {
+        MappedByteBuffer[] a = new MappedByteBuffer[Math.max(i + 1, buffers.length * 2)];
+        System.arraycopy(buffers, 0, a, 0, buffers.length);
+        return a;
+    }
+
+    private static MappedByteBuffer map(File file, int size) {
+        try {
+            final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                // New files are extended with zeros, so missing index entries have no length.
+                if (raf.length() < size)
+                    raf.setLength(size);
+                return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            } finally {
+                // The mapping stays valid after the file is closed.
+                raf.close();
+            }
+        } catch (IOException e) {
+            throw new JournalException("Unable to map " + file + " due to " + e, e);
+        }
+    }
+
+    private static void delete(File file) {
+        if (!file.delete())
+            throw new JournalException("Unable to delete " + file);
+    }
+
+    private void unmapAll() {
+        for (int i = 0; i < segments.length; i++) {
+            unmap(segments[i]);
+            segments[i] = null;
+        }
+        for (int i = 0; i < indexes.length; i++) {
+            unmap(indexes[i]);
+            indexes[i] = null;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package org.simplefix.journal;
+
+/**
+ * Thrown when the journal files cannot be created, mapped or deleted.
+ */
+public class JournalException extends RuntimeException {
+    public JournalException(String message) {
+        super(message);
+    }
+
+    public JournalException(String msg, Exception e) {
+        super(msg, e);
+    }
+}
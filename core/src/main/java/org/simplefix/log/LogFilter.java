@@ -0,0 +1,158 @@
+package org.simplefix.log;
+
+import org.simplefix.message.DecodedMessage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Selects the messages a {@link LogScanner} reports: by MsgType, by tag values, and by SendingTime.
+ * Every kind of condition that has been added must match.   Values for the same tag are
+ * alternatives, so adding 55=IBM and 55=MSFT finds messages for either symbol, and a tag matches if
+ * any field in the message has the value, including the fields of repeating groups (e.g. 448=P1
+ * finds any party).
+ * <br>
+ * The MsgType is checked on the raw bytes before a message is decoded, so filtering by type skips
+ * the other messages without looking at their fields.   An empty filter matches every message.
+ * <br>
+ * A filter is shared by the scanning threads: don't change it while a scan is running.
+ */
+public class LogFilter {
+    /** SendingTime. **/
+    public static final int SENDING_TIME = 52;
+
+    private byte[][] msgTypes = new byte[0][];
+
+    // The distinct tags, and the values each one may have.
+    private int[] tags = new int[0];
+    private byte[][][] values = new byte[0][][];
+
+    private long from = Long.MIN_VALUE;
+    private long to = Long.MAX_VALUE;
+    private boolean timeRange;
+
+    /**
+     * Matches messages of the type (or any of the types, if there is more than one).
+     * @param msgType the MsgType, e.g. "D"
+     */
+    public void addMsgType(String msgType) {
+        if (msgType == null || msgType.length() == 0)
+            throw new IllegalArgumentException("msgType cannot be empty!");
+        msgTypes = append(msgTypes, ascii(msgType));
+    }
+
+    /**
+     * Matches messages with a field that has the value.
+     * @param tag   the tag
+     * @param value the value, e.g. a ClOrdID
+     */
+    public void addTagValue(int tag, String value) {
+        if (tag <= 0)
+            throw new IllegalArgumentException("Invalid tag " + tag);
+        if (value == null)
+            throw new IllegalArgumentException("value cannot be null!");
+        for (int i = 0; i < tags.length; i++) {
+            if (tags[i] == tag) {
+                values[i] = append(values[i], ascii(value));
+                return;
+            }
+        }
+        int[] t = new int[tags.length + 1];
+        System.arraycopy(tags, 0, t, 0, tags.length);
+        t[tags.length] = tag;
+        byte[][][] v = new byte[values.length + 1][][];
+        System.arraycopy(values, 0, v, 0, values.length);
+        v[values.length] = new byte[][]{ascii(value)};
+        tags = t;
+        values = v;
+    }
+
+    /**
+     * Matches messages with a SendingTime in the range.   Messages without a SendingTime (or with
+     * one that isn't a timestamp) don't match.
+     * @param from the start of the range, in milliseconds since the epoch (inclusive)
+     * @param to   the end of the range (exclusive)
+     */
+    public void setTimeRange(long from, long to) {
+        if (to < from)
+            throw new IllegalArgumentException("Invalid time range " + from + " to " + to);
+        this.from = from;
+        this.to = to;
+        timeRange = true;
+    }
+
+    /**
+     * @return true if the filter has conditions on fields other than the MsgType, so the messages
+     *         have to be decoded
+     */
+    public boolean hasFieldConditions() {
+        return tags.length > 0 || timeRange;
+    }
+
+    /**
+     * @param buffer the buffer
+     * @param offset absolute offset of the MsgType value
+     * @param length length of the MsgType value
+     * @return true if the filter has no MsgType conditions, or the MsgType is one of them
+     */
+    public boolean matchesType(ByteBuffer buffer, int offset, int length) {
+        if (msgTypes.length == 0)
+            return true;
+        for (byte[] msgType : msgTypes) {
+            if (msgType.length != length)
+                continue;
+            int i = 0;
+            while (i < length && buffer.get(offset + i) == msgType[i])
+                i++;
+            if (i == length)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks the tag value and time range conditions (but not the MsgType, see
+     * {@link #matchesType(ByteBuffer, int, int)}).   The message may be decoded in lazy mode.
+     * @param msg the message
+     * @return true if the message matches
+     */
+    public boolean matches(DecodedMessage msg) {
+        for (int t = 0; t < tags.length; t++) {
+            if (!matchesTag(msg, tags[t], values[t]))
+                return false;
+        }
+        if (timeRange) {
+            final int index = msg.indexOf(SENDING_TIME);
+            if (index < 0)
+                return false;
+            final long time = DecodedMessage.parseUtcTimestamp(msg.getBuffer(),
+                    msg.getValueOffset(index), msg.getValueLength(index));
+            if (time == Long.MIN_VALUE || time < from || time >= to)
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean matchesTag(DecodedMessage msg, int tag, byte[][] values) {
+        for (int i = msg.indexOf(tag); i >= 0; i = msg.indexOf(tag, i + 1)) {
+            for (byte[] value : values) {
+                if (msg.valueEquals(i, value))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[][] append(byte[][] a, byte[] b) {
+        byte[][] result = new byte[a.length + 1][];
+        System.arraycopy(a, 0, result, 0, a.length);
+        result[a.length] = b;
+        return result;
+    }
+
+    private static byte[] ascii(String s) {
+        byte[] bytes = new byte[s.length()];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) s.charAt(i);
+        return bytes;
+    }
+}
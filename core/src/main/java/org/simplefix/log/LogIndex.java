@@ -0,0 +1,831 @@
+package org.simplefix.log;
+
+import org.simplefix.dictionary.Dictionary;
+import org.simplefix.message.DecodedMessage;
+import org.simplefix.message.MessageDecoder;
+import org.simplefix.message.MessageFormatException;
+import org.slf4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static org.simplefix.util.MappedBuffers.unmap;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * A secondary index over FIX logs, to find every message with a ClOrdID, OrderID, OrigClOrdID or
+ * ExecID (or other tags) across weeks of logs without scanning them.
+ * <br>
+ * Each log has an index file in the index directory, which is a list of blocks.   A block covers a
+ * range of the log: it has an entry for each indexed field of each message in the range, which is a
+ * 64 bit hash of the tag and value, and the position and length of the message, sorted by hash.
+ * {@link #update()} indexes what has been written to the logs since the last update and appends a
+ * block, so the active log can be indexed while it is written (e.g. every few seconds), and a log that
+ * has rolled just needs {@link #add(File)}.   The last message of a log may still be being written,
+ * so it is left for the next update if it isn't complete.   When the last block is at least half the
+ * size of the one before it, they are merged, so the number of blocks grows with the log of the number
+ * of entries.
+ * <br>
+ * A lookup binary searches each block, then reads just the bytes of the matching messages, and checks
+ * their values (hashes can collide).
+ * <br>
+ * If the process stops during an update, the index files are cut back to the last whole block when
+ * they are opened, and the rest of the log is indexed again by the next update.
+ * <br>
+ * Thread safe: updates are serialized, and lookups run alongside an update.   A lookup only waits while
+ * an update adds a block it has written, or replaces the blocks it has merged.
+ */
+public class LogIndex implements Closeable {
+    private static final Logger log = getLogger(LogIndex.class);
+
+    /** ClOrdID, OrderID, OrigClOrdID and ExecID. **/
+    public static final int[] DEFAULT_TAGS = {11, 37, 41, 17};
+
+    /** 64MB of entries: the most an update keeps in memory before it writes a block. **/
+    public static final int MAX_ENTRIES_PER_UPDATE = 4 * 1024 * 1024;
+
+    private static final int MAGIC = 0x46495831;
+    private static final int BLOCK_MAGIC = 0x424c4b31;
+    private static final int BLOCK_HEADER_SIZE = 24;
+    private static final int ENTRY_SIZE = 16;
+    private static final String SUFFIX = ".idx";
+
+    /** Merged blocks are mapped for lookups, so they must be smaller than 2GB. **/
+    private static final int MAX_BLOCK_ENTRIES = 64 * 1024 * 1024;
+
+    private static final int REGION_SIZE = 64 * 1024 * 1024;
+    private static final int MAX_MESSAGE_LENGTH = LogScanner.DEFAULT_MAX_MESSAGE_LENGTH;
+
+    // A location is the position of the message in the log and its length.
+    private static final int LENGTH_BITS = 24;
+    private static final long MAX_POSITION = (1L << (64 - LENGTH_BITS)) - 1;
+
+    private final File directory;
+    private final Dictionary dictionary;
+    private final int[] tags;
+
+    /** Sorted by log file name. **/
+    private final List<IndexFile> files = new ArrayList<IndexFile>();
+
+    /**
+     * Held to read the files and their blocks, and to change them.   Updates are also synchronized on
+     * the index, so only one thread changes them.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Indexes the logs in parallel, created by the first update of more than one log. **/
+    private ExecutorService executor;
+
+    /**
+     * Opens (or creates) an index of ClOrdID, OrderID, OrigClOrdID and ExecID.
+     * @param directory  the directory for the index files
+     * @param dictionary the dictionary of the logs
+     * @throws IOException if the directory can't be created or an index file can't be read
+     */
+    public LogIndex(File directory, Dictionary dictionary) throws IOException {
+        this(directory, dictionary, DEFAULT_TAGS);
+    }
+
+    /**
+     * Opens (or creates) an index.   The logs that are already in the index are found from the index
+     * files in the directory.
+     * @param directory  the directory for the index files
+     * @param dictionary the dictionary of the logs
+     * @param tags       the tags to index, which must be the same each time the index is opened
+     * @throws IOException if the directory can't be created or an index file can't be read
+     */
+    public LogIndex(File directory, Dictionary dictionary, int... tags) throws IOException {
+        if (dictionary == null) throw new IllegalArgumentException("dictionary cannot be null!");
+        if (tags.length == 0) throw new IllegalArgumentException("No tags to index");
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Unable to create " + directory);
+        this.directory = directory;
+        this.dictionary = dictionary;
+        this.tags = tags.clone();
+        File[] indexFiles = directory.listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SUFFIX);
+            }
+        });
+        if (indexFiles == null)
+            throw new IOException(directory + " is not a directory");
+        try {
+            for (File indexFile : indexFiles)
+                insert(new IndexFile(indexFile));
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public int[] getTags() {
+        return tags.clone();
+    }
+
+    /**
+     * @return the logs in the index, sorted by name
+     */
+    public List<File> getLogs() {
+        lock.readLock().lock();
+        try {
+            List<File> logs = new ArrayList<File>(files.size());
+            for (IndexFile file : files)
+                logs.add(file.logFile);
+            return logs;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a log, e.g. when the logs roll.   It is indexed by the next {@link #update()}.
+     * @param logFile the log file
+     * @throws IOException if the index file can't be created
+     */
+    public synchronized void add(File logFile) throws IOException {
+        final File absolute = logFile.getAbsoluteFile();
+        for (IndexFile file : files) {
+            if (file.logFile.equals(absolute))
+                return;
+        }
+        final IndexFile file = new IndexFile(absolute, new File(directory, absolute.getName() + "-"
+                + Integer.toHexString(absolute.getPath().hashCode()) + SUFFIX));
+        lock.writeLock().lock();
+        try {
+            insert(file);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void insert(IndexFile file) {
+        int i = files.size();
+        while (i > 0 && files.get(i - 1).logFile.getName().compareTo(file.logFile.getName()) > 0)
+            i--;
+        files.add(i, file);
+    }
+
+    /**
+     * @param logFile a log in the index
+     * @return how much of the log has been indexed: the end of the last complete message
+     */
+    public long getIndexedLength(File logFile) {
+        lock.readLock().lock();
+        try {
+            for (IndexFile file : files) {
+                if (file.logFile.equals(logFile.getAbsoluteFile()))
+                    return file.indexedLength;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        throw new IllegalArgumentException(logFile + " is not in the index");
+    }
+
+    /**
+     * Indexes what has been added to the logs since the last update.   Logs are indexed in parallel.
+     * @return the number of messages indexed
+     * @throws IOException if a log can't be read or an index file can't be written
+     */
+    public synchronized long update() throws IOException {
+        final List<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+        IndexFile stale = null;
+        for (final IndexFile file : files) {
+            if (file.logFile.length() != file.indexedLength) {
+                stale = file;
+                tasks.add(new Callable<Long>() {
+                    public Long call() throws IOException {
+                        return file.update();
+                    }
+                });
+            }
+        }
+        if (tasks.isEmpty())
+            return 0;
+        if (tasks.size() == 1)
+            return stale.update();
+        if (executor == null)
+            executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new IndexThreadFactory());
+        long messages = 0;
+        try {
+            for (Future<Long> future : executor.invokeAll(tasks))
+                messages += future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while indexing");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw (RuntimeException) e.getCause();
+        }
+        return messages;
+    }
+
+    /**
+     * Finds the messages with a value in one of the indexed fields.
+     * @param tag      an indexed tag, e.g. 11 for ClOrdID
+     * @param value    the value
+     * @param listener gets the messages, in file order, or null to just count them
+     * @return the number of messages found
+     * @throws IOException if a log or an index file can't be read
+     */
+    public int find(int tag, String value, LogListener listener) throws IOException {
+        return find(new int[]{tag}, value, listener);
+    }
+
+    /**
+     * Finds the messages that have a value in any of the indexed fields, e.g. an order ID that is used
+     * as the ClOrdID of one message and the OrigClOrdID of the next.
+     * @param value    the value
+     * @param listener gets the messages, in file order, or null to just count them
+     * @return the number of messages found
+     * @throws IOException if a log or an index file can't be read
+     */
+    public int find(String value, LogListener listener) throws IOException {
+        return find(tags, value, listener);
+    }
+
+    private int find(int[] queryTags, String value, LogListener listener) throws IOException {
+        final byte[] bytes = new byte[value.length()];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) value.charAt(i);
+        final long[] keys = new long[queryTags.length];
+        for (int t = 0; t < queryTags.length; t++) {
+            if (!isIndexed(queryTags[t]))
+                throw new IllegalArgumentException("Tag " + queryTags[t] + " is not indexed");
+            keys[t] = key(queryTags[t], ByteBuffer.wrap(bytes), 0, bytes.length);
+        }
+        lock.readLock().lock();
+        try {
+            return find(queryTags, keys, bytes, listener);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int find(int[] queryTags, long[] keys, byte[] bytes, LogListener listener) throws IOException {
+        final MessageDecoder decoder = new MessageDecoder(dictionary);
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        int found = 0;
+        for (IndexFile file : files) {
+            final long[] locations = file.find(keys);
+            if (locations.length == 0)
+                continue;
+            final RandomAccessFile raf = new RandomAccessFile(file.logFile, "r");
+            try {
+                final FileChannel channel = raf.getChannel();
+                for (long location : locations) {
+                    final long position = location >>> LENGTH_BITS;
+                    final int length = (int) (location & ((1 << LENGTH_BITS) - 1));
+                    if (buffer.capacity() < length)
+                        buffer = ByteBuffer.allocate(Math.max(length, buffer.capacity() * 2));
+                    buffer.clear();
+                    buffer.limit(length);
+                    while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) >= 0) {
+                        // Read the rest.
+                    }
+                    if (buffer.hasRemaining())
+                        continue;
+                    final DecodedMessage msg;
+                    try {
+                        msg = decoder.decode(buffer, 0, length);
+                    } catch (MessageFormatException e) {
+                        continue;
+                    }
+                    if (!hasValue(msg, queryTags, bytes))
+                        continue;
+                    found++;
+                    if (listener != null)
+                        listener.onMessage(file.logFile, position, msg);
+                }
+            } finally {
+                raf.close();
+            }
+        }
+        return found;
+    }
+
+    private static boolean hasValue(DecodedMessage msg, int[] queryTags, byte[] value) {
+        for (int tag : queryTags) {
+            for (int i = msg.indexOf(tag); i >= 0; i = msg.indexOf(tag, i + 1)) {
+                if (msg.valueEquals(i, value))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isIndexed(int tag) {
+        for (int t : tags) {
+            if (t == tag)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Closes the index files, and stops the indexing threads.
+     */
+    public synchronized void close() {
+        lock.writeLock().lock();
+        try {
+            for (IndexFile file : files)
+                file.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (executor != null)
+            executor.shutdownNow();
+    }
+
+    /**
+     * @return a 64 bit hash (FNV-1a, with the MurmurHash3 finalizer) of the tag and value
+     */
+    static long key(int tag, ByteBuffer buffer, int offset, int length) {
+        long h = 0xcbf29ce484222325L;
+        h = (h ^ tag) * 0x100000001b3L;
+        for (int i = offset; i < offset + length; i++)
+            h = (h ^ (buffer.get(i) & 0xFF)) * 0x100000001b3L;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static long[] grow(long[] a, int length) {
+        long[] b = new long[length];
+        System.arraycopy(a, 0, b, 0, Math.min(a.length, length));
+        return b;
+    }
+
+    /**
+     * Sorts the entries by key.
+     */
+    private static void sort(long[] keys, long[] locations, int from, int to) {
+        while (to - from > 16) {
+            final int mid = (from + to) >>> 1;
+            final long pivot = median(keys[from], keys[mid], keys[to - 1]);
+            int i = from;
+            int j = to - 1;
+            while (i <= j) {
+                while (keys[i] < pivot)
+                    i++;
+                while (keys[j] > pivot)
+                    j--;
+                if (i <= j)
+                    swap(keys, locations, i++, j--);
+            }
+            // Recurse into the smaller half.
+            if (j + 1 - from < to - i) {
+                sort(keys, locations, from, j + 1);
+                from = i;
+            } else {
+                sort(keys, locations, i, to);
+                to = j + 1;
+            }
+        }
+        for (int i = from + 1; i < to; i++) {
+            for (int j = i; j > from && keys[j - 1] > keys[j]; j--)
+                swap(keys, locations, j - 1, j);
+        }
+    }
+
+    private static long median(long a, long b, long c) {
+        return a < b ? (b < c ? b : Math.max(a, c)) : (a < c ? a : Math.max(b, c));
+    }
+
+    private static void swap(long[] keys, long[] locations, int i, int j) {
+        long k = keys[i];
+        keys[i] = keys[j];
+        keys[j] = k;
+        long l = locations[i];
+        locations[i] = locations[j];
+        locations[j] = l;
+    }
+
+    /**
+     * The index file of one log: a header (magic, log path, tags), then the blocks.   Each block is
+     * a header (magic, entry count, and the range of the log it covers) and the entries.
+     */
+    private final class IndexFile {
+        final File logFile;
+        final File file;
+        final RandomAccessFile raf;
+
+        /** The end of the last complete block. **/
+        long length;
+        long indexedLength;
+
+        long[] blockOffsets = new long[8];
+        int[] blockCounts = new int[8];
+        MappedByteBuffer[] blockBuffers = new MappedByteBuffer[8];
+        int blockCount;
+
+        // Entries that haven't been written.
+        long[] keys = new long[1024];
+        long[] locations = new long[1024];
+        int entryCount;
+
+        /**
+         * Creates the index file of a log.
+         */
+        IndexFile(File logFile, File file) throws IOException {
+            this.logFile = logFile;
+            this.file = file;
+            raf = new RandomAccessFile(file, "rw");
+            raf.setLength(0);
+            raf.writeInt(MAGIC);
+            raf.writeUTF(logFile.getPath());
+            raf.writeInt(tags.length);
+            for (int tag : tags)
+                raf.writeInt(tag);
+            length = raf.getFilePointer();
+        }
+
+        /**
+         * Opens an existing index file, and cuts off any block that isn't complete.
+         */
+        IndexFile(File file) throws IOException {
+            this.file = file;
+            raf = new RandomAccessFile(file, "rw");
+            try {
+                if (raf.length() < 4 || raf.readInt() != MAGIC)
+                    throw new IOException(file + " is not a log index");
+                logFile = new File(raf.readUTF());
+                final int[] fileTags = new int[raf.readInt()];
+                for (int i = 0; i < fileTags.length; i++)
+                    fileTags[i] = raf.readInt();
+                if (!Arrays.equals(fileTags, tags))
+                    throw new IOException(file + " indexes tags " + Arrays.toString(fileTags)
+                            + ", delete it to index " + Arrays.toString(tags));
+                length = raf.getFilePointer();
+                final long fileLength = raf.length();
+                while (length + BLOCK_HEADER_SIZE <= fileLength) {
+                    raf.seek(length);
+                    final int magic = raf.readInt();
+                    final int count = raf.readInt();
+                    final long from = raf.readLong();
+                    final long to = raf.readLong();
+                    if (magic != BLOCK_MAGIC || count < 0 || from != indexedLength || to < from
+                            || length + BLOCK_HEADER_SIZE + (long) count * ENTRY_SIZE > fileLength)
+                        break;
+                    addBlock(length, count, map(length, count));
+                    length += BLOCK_HEADER_SIZE + (long) count * ENTRY_SIZE;
+                    indexedLength = to;
+                }
+                if (length < fileLength) {
+                    log.warn("Removing the incomplete end of " + file);
+                    raf.setLength(length);
+                }
+            } catch (IOException e) {
+                raf.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Adds a block that has been written, with its entries mapped for lookups.   Called with the
+         * write lock held, except when the file is opened.
+         */
+        private void addBlock(long offset, int count, MappedByteBuffer entries) {
+            if (blockCount == blockOffsets.length) {
+                long[] offsets = new long[blockCount * 2];
+                System.arraycopy(blockOffsets, 0, offsets, 0, blockCount);
+                blockOffsets = offsets;
+                int[] counts = new int[blockCount * 2];
+                System.arraycopy(blockCounts, 0, counts, 0, blockCount);
+                blockCounts = counts;
+                MappedByteBuffer[] buffers = new MappedByteBuffer[blockCount * 2];
+                System.arraycopy(blockBuffers, 0, buffers, 0, blockCount);
+                blockBuffers = buffers;
+            }
+            blockOffsets[blockCount] = offset;
+            blockCounts[blockCount] = count;
+            blockBuffers[blockCount] = entries;
+            blockCount++;
+        }
+
+        /**
+         * @return the entries of a block, mapped
+         */
+        private MappedByteBuffer map(long offset, int count) throws IOException {
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, offset + BLOCK_HEADER_SIZE,
+                    (long) count * ENTRY_SIZE);
+        }
+
+        /**
+         * Indexes the log from the end of the last complete message indexed.
+         * @return the number of messages indexed
+         */
+        long update() throws IOException {
+            final RandomAccessFile in = new RandomAccessFile(logFile, "r");
+            try {
+                final FileChannel channel = in.getChannel();
+                final long size = channel.size();
+                if (size < indexedLength) {
+                    log.warn(logFile + " is shorter than the index of it, leaving it");
+                    return 0;
+                }
+                if (size > MAX_POSITION)
+                    throw new IOException(logFile + " is too large to index");
+                final MessageDecoder decoder = new MessageDecoder(dictionary);
+                decoder.setLazy(true);
+                final MessageFramer framer = new MessageFramer();
+                long messages = 0;
+                long indexed = indexedLength;
+                long pos = indexedLength;
+                scan:
+                while (pos < size) {
+                    // One byte before, to see what is in front of a BeginString.
+                    final long mapStart = Math.max(0, pos - 1);
+                    final long mapEnd = Math.min(size, pos + REGION_SIZE + MAX_MESSAGE_LENGTH);
+                    final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                            mapStart, mapEnd - mapStart);
+                    final int limit = (int) (Math.min(size, pos + REGION_SIZE) - mapStart);
+                    int i = (int) (pos - mapStart);
+                    while (true) {
+                        final int start = MessageFramer.next(buffer, i, limit);
+                        if (start < 0)
+                            break;
+                        final int length = framer.frame(buffer, start);
+                        if (length < 0) {
+                            // Skip it, unless it could still be being written: near the end, with no
+                            // complete message after it.   The end of the log is in the buffer then.
+                            if (mapStart + start + MAX_MESSAGE_LENGTH >= size) {
+                                final int next = nextComplete(framer, buffer, start + 2, limit);
+                                if (next < 0)
+                                    break scan;
+                                i = next;
+                            } else {
+                                i = start + 2;
+                            }
+                            continue;
+                        }
+                        i = start + length;
+                        indexed = mapStart + i;
+                        messages++;
+                        addEntries(decoder, buffer, start, length, mapStart + start);
+                        if (entryCount >= MAX_ENTRIES_PER_UPDATE)
+                            writeBlock(indexed);
+                    }
+                    pos = mapStart + Math.max(i, limit);
+                }
+                if (indexed > indexedLength)
+                    writeBlock(indexed);
+                return messages;
+            } finally {
+                in.close();
+            }
+        }
+
+        /**
+         * @return the start of the first message from an index that frames, or -1
+         */
+        private int nextComplete(MessageFramer framer, ByteBuffer buffer, int from, int limit) {
+            for (int start = MessageFramer.next(buffer, from, limit); start >= 0;
+                 start = MessageFramer.next(buffer, start + 2, limit)) {
+                if (framer.frame(buffer, start) >= 0)
+                    return start;
+            }
+            return -1;
+        }
+
+        private void addEntries(MessageDecoder decoder, ByteBuffer buffer, int start, int length, long position) {
+            final DecodedMessage msg;
+            try {
+                msg = decoder.decode(buffer, start, length);
+            } catch (MessageFormatException e) {
+                return;
+            }
+            final long location = (position << LENGTH_BITS) | length;
+            for (int i = 0; i < msg.getFieldCount(); i++) {
+                final int tag = msg.getTag(i);
+                if (!isIndexed(tag))
+                    continue;
+                if (entryCount == keys.length) {
+                    keys = grow(keys, entryCount * 2);
+                    locations = grow(locations, entryCount * 2);
+                }
+                keys[entryCount] = key(tag, buffer, msg.getValueOffset(i), msg.getValueLength(i));
+                locations[entryCount] = location;
+                entryCount++;
+            }
+        }
+
+        /**
+         * Sorts the entries and writes them as a block, then merges the last blocks if they are
+         * about the same size.   The block is written after the others, so lookups only wait while
+         * it is added.
+         * @param to the end of the range of the log the block covers
+         */
+        private void writeBlock(long to) throws IOException {
+            if (entryCount == 0 && blockCount > 0) {
+                // Nothing to add, e.g. just heartbeats: the last block covers the range.
+                raf.seek(blockOffsets[blockCount - 1] + 16);
+                raf.writeLong(to);
+                lock.writeLock().lock();
+                try {
+                    indexedLength = to;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                return;
+            }
+            sort(keys, locations, 0, entryCount);
+            final FileChannel channel = raf.getChannel();
+            final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            buffer.putInt(BLOCK_MAGIC).putInt(entryCount).putLong(indexedLength).putLong(to);
+            long pos = length;
+            for (int i = 0; i < entryCount; i++) {
+                if (buffer.remaining() < ENTRY_SIZE)
+                    pos += write(channel, buffer, pos);
+                buffer.putLong(keys[i]).putLong(locations[i]);
+            }
+            pos += write(channel, buffer, pos);
+            final MappedByteBuffer entries = map(length, entryCount);
+            lock.writeLock().lock();
+            try {
+                addBlock(length, entryCount, entries);
+                indexedLength = to;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            length = pos;
+            entryCount = 0;
+            if (keys.length > 1024) {
+                keys = new long[1024];
+                locations = new long[1024];
+            }
+            merge();
+        }
+
+        private int write(FileChannel channel, ByteBuffer buffer, long pos) throws IOException {
+            buffer.flip();
+            final int n = buffer.remaining();
+            while (buffer.hasRemaining())
+                channel.write(buffer, pos + n - buffer.remaining());
+            buffer.clear();
+            return n;
+        }
+
+        /**
+         * Merges the last blocks, while the last is at least half the size of the one before it.
+         * The merged block is written to a temporary file, then replaces the blocks, which lookups
+         * wait for.
+         */
+        private void merge() throws IOException {
+            long total = blockCounts[blockCount - 1];
+            int first = blockCount - 1;
+            while (first > 0 && total * 2 >= blockCounts[first - 1]
+                    && total + blockCounts[first - 1] <= MAX_BLOCK_ENTRIES)
+                total += blockCounts[--first];
+            if (first == blockCount - 1)
+                return;
+            final int merged = blockCount - first;
+            final ByteBuffer[] sources = new ByteBuffer[merged];
+            final int[] next = new int[merged];
+            for (int b = 0; b < merged; b++)
+                sources[b] = blockBuffers[first + b];
+            raf.seek(blockOffsets[first] + 8);
+            final long from = raf.readLong();
+            final File tmp = new File(file.getPath() + ".tmp");
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024));
+            try {
+                out.writeInt(BLOCK_MAGIC);
+                out.writeInt((int) total);
+                out.writeLong(from);
+                out.writeLong(indexedLength);
+                for (long n = 0; n < total; n++) {
+                    // The smallest key of the blocks, which are sorted.
+                    int min = -1;
+                    long minKey = 0;
+                    for (int b = 0; b < merged; b++) {
+                        if (next[b] < blockCounts[first + b]) {
+                            final long k = sources[b].getLong(next[b] * ENTRY_SIZE);
+                            if (min < 0 || k < minKey) {
+                                min = b;
+                                minKey = k;
+                            }
+                        }
+                    }
+                    out.writeLong(minKey);
+                    out.writeLong(sources[min].getLong(next[min]++ * ENTRY_SIZE + 8));
+                }
+            } finally {
+                out.close();
+            }
+            // Replace the blocks with the merged one.
+            final long offset = blockOffsets[first];
+            lock.writeLock().lock();
+            try {
+                // The file can't be cut back under the mappings (on Windows), and nothing reads them now.
+                for (int b = first; b < blockCount; b++)
+                    unmap(blockBuffers[b]);
+                blockCount = first;
+                Arrays.fill(blockBuffers, first, blockBuffers.length, null);
+                raf.setLength(offset);
+                final RandomAccessFile in = new RandomAccessFile(tmp, "r");
+                try {
+                    final FileChannel channel = raf.getChannel();
+                    final long size = in.length();
+                    long copied = 0;
+                    while (copied < size)
+                        copied += channel.transferFrom(in.getChannel().position(copied), offset + copied, size - copied);
+                } finally {
+                    in.close();
+                }
+                addBlock(offset, (int) total, map(offset, (int) total));
+            } finally {
+                lock.writeLock().unlock();
+            }
+            if (!tmp.delete())
+                log.warn("Unable to delete " + tmp);
+            length = offset + BLOCK_HEADER_SIZE + total * ENTRY_SIZE;
+        }
+
+        /**
+         * Called with the read lock held.
+         * @return the locations of the entries with any of the keys, sorted by position, without
+         *         duplicates
+         */
+        long[] find(long[] keys) {
+            long[] found = new long[0];
+            int count = 0;
+            for (int b = 0; b < blockCount; b++) {
+                final ByteBuffer entries = blockBuffers[b];
+                for (long key : keys) {
+                    // The first entry with the key.
+                    int lo = 0;
+                    int hi = blockCounts[b];
+                    while (lo < hi) {
+                        final int mid = (lo + hi) >>> 1;
+                        if (entries.getLong(mid * ENTRY_SIZE) < key)
+                            lo = mid + 1;
+                        else
+                            hi = mid;
+                    }
+                    for (int i = lo; i < blockCounts[b] && entries.getLong(i * ENTRY_SIZE) == key; i++) {
+                        if (count == found.length)
+                            found = grow(found, Math.max(8, count * 2));
+                        found[count++] = entries.getLong(i * ENTRY_SIZE + 8);
+                    }
+                }
+            }
+            Arrays.sort(found, 0, count);
+            int distinct = 0;
+            for (int i = 0; i < count; i++) {
+                if (distinct == 0 || found[i] != found[distinct - 1])
+                    found[distinct++] = found[i];
+            }
+            return distinct == found.length ? found : grow(found, distinct);
+        }
+
+        void close() {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                log.warn("Unable to close " + file + " due to " + e);
+            }
+        }
+    }
+
+    private static class IndexThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "log-index-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
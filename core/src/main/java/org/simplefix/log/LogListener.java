@@ -0,0 +1,21 @@
+package org.simplefix.log;
+
+import org.simplefix.message.DecodedMessage;
+
+import java.io.File;
+
+/**
+ * Receives the messages a {@link LogScanner} finds.   The chunks of the log are scanned in parallel,
+ * but the matches are handed over on the thread that called scan(), in file order, so a listener
+ * doesn't need to be thread safe.
+ */
+public interface LogListener {
+    /**
+     * A message matched the filter.
+     * @param file     the log file
+     * @param position the offset of the message in the file
+     * @param msg      the message, decoded in full (with its repeating groups).   It is only valid
+     *                 until this returns.
+     */
+    void onMessage(File file, long position, DecodedMessage msg);
+}
@@ -0,0 +1,301 @@
+package org.simplefix.log;
+
+import org.simplefix.dictionary.Dictionary;
+import org.simplefix.message.DecodedMessage;
+import org.simplefix.message.MessageDecoder;
+import org.simplefix.message.MessageFormatException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Searches FIX logs, e.g. a day of messages for a session, on all cores.
+ * <br>
+ * Each file is memory mapped in chunks, and the chunks are scanned in parallel.   A chunk owns the
+ * messages that start in it: the scan of a chunk starts at the first BeginString ("8=FIX" after
+ * something that isn't a digit, so SOH, a newline or a log line prefix) and carries on past the end of
+ * the chunk to finish its last message.   The messages are framed with their BodyLength, so the body
+ * of a message is never searched for the next one, and the MsgType (which is always the first field of
+ * the body) is checked before anything is decoded.   Only messages of the right type are decoded
+ * (in lazy mode) to check the other conditions of the {@link LogFilter}.   The checksums aren't
+ * checked.
+ * <br>
+ * The matches are decoded again in full, and handed to the {@link LogListener} on the thread that
+ * called scan(), in file order.   A few chunks per thread are scanned ahead of the listener, so
+ * memory use doesn't grow with the size of the log.
+ * <br>
+ * Messages can't be longer than the maximum message length (see
+ * {@link #setMaxMessageLength(int)}), and a message that doesn't end where its BodyLength says
+ * (e.g. the last message of a log that was cut short) is counted as an error and skipped.
+ */
+public class LogScanner implements Closeable {
+    public static final int DEFAULT_CHUNK_SIZE = 32 * 1024 * 1024;
+    public static final int DEFAULT_MAX_MESSAGE_LENGTH = 1024 * 1024;
+
+    private final Dictionary dictionary;
+    private final ExecutorService executor;
+    private final int parallelism;
+    private final boolean ownExecutor;
+
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private int maxMessageLength = DEFAULT_MAX_MESSAGE_LENGTH;
+
+    /**
+     * Scans with a thread for each processor.
+     * @param dictionary the dictionary of the logs
+     */
+    public LogScanner(Dictionary dictionary) {
+        this(dictionary, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param dictionary the dictionary of the logs
+     * @param threads    the number of threads, which are stopped by {@link #close()}
+     */
+    public LogScanner(Dictionary dictionary, int threads) {
+        this(dictionary, Executors.newFixedThreadPool(threads, new ScannerThreadFactory()), threads, true);
+    }
+
+    /**
+     * Scans with an executor that is shared with something else, which is not shut down by
+     * {@link #close()}.
+     * @param dictionary  the dictionary of the logs
+     * @param executor    the executor
+     * @param parallelism the number of threads the executor has for scanning
+     */
+    public LogScanner(Dictionary dictionary, ExecutorService executor, int parallelism) {
+        this(dictionary, executor, parallelism, false);
+    }
+
+    private LogScanner(Dictionary dictionary, ExecutorService executor, int parallelism, boolean ownExecutor) {
+        if (dictionary == null) throw new IllegalArgumentException("dictionary cannot be null!");
+        if (parallelism <= 0) throw new IllegalArgumentException("parallelism must be positive!");
+        this.dictionary = dictionary;
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.ownExecutor = ownExecutor;
+    }
+
+    public Dictionary getDictionary() {
+        return dictionary;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @param chunkSize the size of the chunks the files are split into, which is how much one thread
+     *                  scans at a time
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize <= 0 || (long) chunkSize + maxMessageLength >= Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Invalid chunkSize " + chunkSize);
+        this.chunkSize = chunkSize;
+    }
+
+    public int getMaxMessageLength() {
+        return maxMessageLength;
+    }
+
+    /**
+     * @param maxMessageLength the longest message, which is how far a chunk is mapped past its end
+     */
+    public void setMaxMessageLength(int maxMessageLength) {
+        if (maxMessageLength <= 0 || (long) chunkSize + maxMessageLength >= Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Invalid maxMessageLength " + maxMessageLength);
+        this.maxMessageLength = maxMessageLength;
+    }
+
+    /**
+     * Scans log files for the messages that match a filter.   More than one scan can run at a time.
+     * @param filter   the filter
+     * @param listener gets the matches, in file order, or null to just count them
+     * @param files    the log files, in the order the matches should be reported
+     * @return the totals
+     * @throws IOException if a file can't be mapped
+     */
+    public ScanStats scan(LogFilter filter, LogListener listener, File... files) throws IOException {
+        if (filter == null) throw new IllegalArgumentException("filter cannot be null!");
+        final long start = System.nanoTime();
+        final ScanStats stats = new ScanStats();
+        final MessageDecoder decoder = new MessageDecoder(dictionary);
+        final LinkedList<Future<Chunk>> pending = new LinkedList<Future<Chunk>>();
+        try {
+            for (File file : files) {
+                final RandomAccessFile raf = new RandomAccessFile(file, "r");
+                try {
+                    final FileChannel channel = raf.getChannel();
+                    final long size = channel.size();
+                    stats.add(size, 0, 0, 0);
+                    for (long pos = 0; pos < size; pos += chunkSize) {
+                        // One byte before the chunk, to see what is in front of a BeginString.
+                        final long mapStart = Math.max(0, pos - 1);
+                        final long mapEnd = Math.min(size, pos + chunkSize + maxMessageLength);
+                        final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                                mapStart, mapEnd - mapStart);
+                        final int limit = (int) (Math.min(size, pos + chunkSize) - mapStart);
+                        if (pending.size() == parallelism * 2)
+                            deliver(pending.removeFirst(), decoder, listener, stats);
+                        pending.add(executor.submit(
+                                new Chunk(file, mapStart, buffer, (int) (pos - mapStart), limit, filter)));
+                    }
+                } finally {
+                    // The mappings stay valid after the file is closed.
+                    raf.close();
+                }
+            }
+            while (!pending.isEmpty())
+                deliver(pending.removeFirst(), decoder, listener, stats);
+        } finally {
+            for (Future<Chunk> future : pending)
+                future.cancel(true);
+        }
+        stats.setElapsedNanos(System.nanoTime() - start);
+        return stats;
+    }
+
+    private static void deliver(Future<Chunk> future, MessageDecoder decoder, LogListener listener,
+                                ScanStats stats) throws IOException {
+        final Chunk chunk;
+        try {
+            chunk = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while scanning");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw (RuntimeException) e.getCause();
+        }
+        if (listener == null) {
+            stats.add(0, chunk.messageCount, chunk.matchCount, chunk.errorCount);
+            return;
+        }
+        long matches = 0;
+        long errors = chunk.errorCount;
+        for (int i = 0; i < chunk.matchCount; i++) {
+            final int offset = chunk.offsets[i];
+            final DecodedMessage msg;
+            try {
+                msg = decoder.decode(chunk.buffer, offset, chunk.lengths[i]);
+            } catch (MessageFormatException e) {
+                errors++;
+                continue;
+            }
+            matches++;
+            listener.onMessage(chunk.file, chunk.position + offset, msg);
+        }
+        stats.add(0, chunk.messageCount, matches, errors);
+    }
+
+    /**
+     * Stops the threads, if the scanner made them.
+     */
+    public void close() {
+        if (ownExecutor)
+            executor.shutdownNow();
+    }
+
+    /**
+     * Scans one chunk, on one of the executor threads, and records where the matches are.
+     */
+    private final class Chunk implements Callable<Chunk> {
+        final File file;
+        /** The offset of the buffer in the file. **/
+        final long position;
+        final ByteBuffer buffer;
+        private final int from;
+        private final int limit;
+        private final LogFilter filter;
+
+        int[] offsets = new int[16];
+        int[] lengths = new int[16];
+        int matchCount;
+        long messageCount;
+        long errorCount;
+
+        Chunk(File file, long position, ByteBuffer buffer, int from, int limit, LogFilter filter) {
+            this.file = file;
+            this.position = position;
+            this.buffer = buffer;
+            this.from = from;
+            this.limit = limit;
+            this.filter = filter;
+        }
+
+        public Chunk call() {
+            MessageDecoder decoder = null;
+            if (filter.hasFieldConditions()) {
+                decoder = new MessageDecoder(dictionary);
+                decoder.setLazy(true);
+            }
+            final MessageFramer framer = new MessageFramer();
+            int pos = from;
+            while (true) {
+                final int start = MessageFramer.next(buffer, pos, limit);
+                if (start < 0)
+                    break;
+                final int length = framer.frame(buffer, start);
+                if (length < 0) {
+                    errorCount++;
+                    pos = start + 2;
+                    continue;
+                }
+                messageCount++;
+                pos = start + length;
+                if (!filter.matchesType(buffer, framer.getTypeOffset(), framer.getTypeLength()))
+                    continue;
+                if (decoder != null) {
+                    try {
+                        if (!filter.matches(decoder.decode(buffer, start, length)))
+                            continue;
+                    } catch (MessageFormatException e) {
+                        errorCount++;
+                        continue;
+                    }
+                }
+                addMatch(start, length);
+            }
+            return this;
+        }
+
+        private void addMatch(int offset, int length) {
+            if (matchCount == offsets.length) {
+                int[] o = new int[matchCount * 2];
+                System.arraycopy(offsets, 0, o, 0, matchCount);
+                offsets = o;
+                int[] l = new int[matchCount * 2];
+                System.arraycopy(lengths, 0, l, 0, matchCount);
+                lengths = l;
+            }
+            offsets[matchCount] = offset;
+            lengths[matchCount] = length;
+            matchCount++;
+        }
+    }
+
+    private static class ScannerThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "log-scanner-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
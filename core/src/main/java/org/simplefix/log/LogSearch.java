@@ -0,0 +1,122 @@
+package org.simplefix.log;
+
+import org.simplefix.dictionary.DictionaryRegistry;
+import org.simplefix.message.DecodedMessage;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line tool that searches FIX logs with a {@link LogScanner}, and prints the matches with
+ * field names.
+ * <br>
+ * Usage: LogSearch [options] &lt;log file&gt;...
+ * <pre>
+ *   -dictionary FIX44          the bundled dictionary of the logs (default FIX44)
+ *   -type D                    MsgType, repeat for more than one
+ *   -tag 11=ORD1               a tag value, repeat for more than one (a tag repeated is either value)
+ *   -from 20130127-09:30:00    SendingTime at or after (UTC)
+ *   -to 20130127-10:00:00      SendingTime before (UTC)
+ *   -threads 8                 scanning threads (default one per processor)
+ *   -line                      one line per message, instead of one line per field
+ *   -count                     only print the totals
+ * </pre>
+ * The totals go to stderr.
+ */
+public class LogSearch {
+    public static void main(String[] args) throws IOException {
+        String dictionaryName = "FIX44";
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean line = false;
+        boolean count = false;
+        long from = Long.MIN_VALUE;
+        long to = Long.MAX_VALUE;
+        final LogFilter filter = new LogFilter();
+        final List<File> files = new ArrayList<File>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                final String arg = args[i];
+                if (arg.equals("-dictionary"))
+                    dictionaryName = args[++i];
+                else if (arg.equals("-type"))
+                    filter.addMsgType(args[++i]);
+                else if (arg.equals("-tag")) {
+                    final String tagValue = args[++i];
+                    final int eq = tagValue.indexOf('=');
+                    if (eq < 0)
+                        throw new IllegalArgumentException("Expected tag=value: " + tagValue);
+                    filter.addTagValue(Integer.parseInt(tagValue.substring(0, eq)), tagValue.substring(eq + 1));
+                } else if (arg.equals("-from"))
+                    from = parseTime(args[++i]);
+                else if (arg.equals("-to"))
+                    to = parseTime(args[++i]);
+                else if (arg.equals("-threads"))
+                    threads = Integer.parseInt(args[++i]);
+                else if (arg.equals("-line"))
+                    line = true;
+                else if (arg.equals("-count"))
+                    count = true;
+                else if (arg.startsWith("-"))
+                    throw new IllegalArgumentException("Unknown option " + arg);
+                else
+                    files.add(new File(arg));
+            }
+            if (from != Long.MIN_VALUE || to != Long.MAX_VALUE)
+                filter.setTimeRange(from, to);
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage());
+            files.clear();
+        }
+        if (files.isEmpty()) {
+            System.err.println("Usage: LogSearch [-dictionary FIX44] [-type D] [-tag 11=ORD1] "
+                    + "[-from 20130127-09:30:00] [-to 20130127-10:00:00] [-threads n] [-line] [-count] <log file>...");
+            System.exit(1);
+        }
+
+        final DictionaryRegistry registry = new DictionaryRegistry();
+        registry.loadBundled(dictionaryName);
+        final LogScanner scanner = new LogScanner(registry.getDictionaries().iterator().next(), threads);
+        final Writer out = new BufferedWriter(new OutputStreamWriter(System.out, "ISO-8859-1"), 64 * 1024);
+        final boolean oneLine = line;
+        try {
+            final ScanStats stats = scanner.scan(filter, count ? null : new LogListener() {
+                private final StringBuilder sb = new StringBuilder();
+
+                public void onMessage(File file, long position, DecodedMessage msg) {
+                    sb.setLength(0);
+                    sb.append(file.getName()).append(':').append(position).append(oneLine ? " " : "\n");
+                    if (oneLine)
+                        MessageRenderer.renderLine(msg, sb);
+                    else
+                        MessageRenderer.render(msg, sb);
+                    sb.append('\n');
+                    try {
+                        out.append(sb);
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Unable to write output due to " + e, e);
+                    }
+                }
+            }, files.toArray(new File[files.size()]));
+            out.flush();
+            System.err.println(stats);
+        } finally {
+            scanner.close();
+        }
+    }
+
+    private static long parseTime(String s) {
+        final byte[] bytes = new byte[s.length()];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) s.charAt(i);
+        final long millis = DecodedMessage.parseUtcTimestamp(ByteBuffer.wrap(bytes), 0, bytes.length);
+        if (millis == Long.MIN_VALUE)
+            throw new IllegalArgumentException("Expected YYYYMMDD-HH:MM:SS[.sss]: " + s);
+        return millis;
+    }
+}
@@ -0,0 +1,97 @@
+package org.simplefix.log;
+
+import org.simplefix.message.MessageDecoder;
+import org.simplefix.util.ByteScanner;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Finds the messages in a mapped log.   A message starts at "8=FIX" after something that isn't a
+ * digit (SOH, a newline or a log line prefix), and is framed with its BodyLength, so the body of a
+ * message is never searched for the next one.
+ * <br>
+ * Not thread safe: the MsgType of the last message framed is kept in the framer.
+ */
+final class MessageFramer {
+    /** "10=nnn" and SOH. **/
+    private static final int CHECK_SUM_LENGTH = 7;
+
+    /** "8=FIXT.1.1" and SOH, with room to spare. **/
+    private static final int MAX_BEGIN_STRING_LENGTH = 16;
+
+    private int typeOffset;
+    private int typeLength;
+
+    /**
+     * @param buffer the buffer.  Index zero is the start of the file, otherwise the byte in front of
+     *               from must be in the buffer too.
+     * @param from   where to start looking
+     * @param limit  the end of the range a message may start in
+     * @return the index of the next BeginString that starts before the limit, or -1
+     */
+    static int next(ByteBuffer buffer, int from, int limit) {
+        final int end = buffer.limit();
+        for (int i = from; i < limit; i++) {
+            i = ByteScanner.indexOf(buffer, i, limit, (byte) '8');
+            if (i < 0)
+                return -1;
+            if (i + 5 <= end && buffer.get(i + 1) == '=' && buffer.get(i + 2) == 'F'
+                    && buffer.get(i + 3) == 'I' && buffer.get(i + 4) == 'X'
+                    && (i == 0 || buffer.get(i - 1) < '0' || buffer.get(i - 1) > '9'))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Checks the BeginString, BodyLength, MsgType and where the CheckSum is.   The checksum itself
+     * isn't checked.
+     * @param buffer the buffer
+     * @param start  the index of the BeginString
+     * @return the length of the message, or -1 if it isn't one (or doesn't end before the buffer does)
+     */
+    int frame(ByteBuffer buffer, int start) {
+        final int end = buffer.limit();
+        final int soh = ByteScanner.indexOf(buffer, start + 2,
+                Math.min(end, start + MAX_BEGIN_STRING_LENGTH), MessageDecoder.SOH);
+        if (soh < 0 || soh + 3 >= end || buffer.get(soh + 1) != '9' || buffer.get(soh + 2) != '=')
+            return -1;
+        // At most 8 digits.
+        final int digitsEnd = Math.min(end, soh + 12);
+        int pos = soh + 3;
+        int bodyLength = 0;
+        while (pos < digitsEnd && buffer.get(pos) != MessageDecoder.SOH) {
+            final byte b = buffer.get(pos++);
+            if (b < '0' || b > '9')
+                return -1;
+            bodyLength = bodyLength * 10 + (b - '0');
+        }
+        if (pos == soh + 3 || pos == digitsEnd)
+            return -1;
+        final int bodyStart = pos + 1;
+        final int checkSum = bodyStart + bodyLength;
+        if (checkSum + CHECK_SUM_LENGTH > end || buffer.get(checkSum) != '1' || buffer.get(checkSum + 1) != '0'
+                || buffer.get(checkSum + 2) != '=' || buffer.get(checkSum + 6) != MessageDecoder.SOH)
+            return -1;
+        if (bodyStart + 3 >= checkSum || buffer.get(bodyStart) != '3' || buffer.get(bodyStart + 1) != '5'
+                || buffer.get(bodyStart + 2) != '=')
+            return -1;
+        final int typeEnd = ByteScanner.indexOf(buffer, bodyStart + 3, checkSum, MessageDecoder.SOH);
+        if (typeEnd < 0)
+            return -1;
+        typeOffset = bodyStart + 3;
+        typeLength = typeEnd - typeOffset;
+        return checkSum + CHECK_SUM_LENGTH - start;
+    }
+
+    /**
+     * @return the index of the MsgType value of the last message framed
+     */
+    int getTypeOffset() {
+        return typeOffset;
+    }
+
+    int getTypeLength() {
+        return typeLength;
+    }
+}
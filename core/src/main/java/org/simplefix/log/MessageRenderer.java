@@ -0,0 +1,72 @@
+package org.simplefix.log;
+
+import org.simplefix.dictionary.FieldDef;
+import org.simplefix.message.DecodedMessage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Renders decoded messages for people, with the field names and enumerated value descriptions from
+ * the dictionary the message was decoded with, e.g. "Side(54)=1 [BUY]".   Tags that aren't in the
+ * dictionary are rendered as they are, e.g. "5001=X".
+ * <br>
+ * The multi-line form puts one field on each line, indented by the depth of its repeating group, so
+ * the instances of a group (and groups within groups) can be told apart.   That needs a message that
+ * was decoded in full, not in lazy mode.
+ */
+public class MessageRenderer {
+    private static final String INDENT = "  ";
+
+    private MessageRenderer() {
+    }
+
+    /**
+     * Renders the message with one field on each line, indented by group depth.   The first field of
+     * each group instance is marked with a '-'.
+     * @param msg the message
+     * @param sb  the builder to append to.  Each line ends with a newline.
+     */
+    public static void render(DecodedMessage msg, StringBuilder sb) {
+        for (int i = 0; i < msg.getFieldCount(); i++) {
+            final int depth = msg.getGroup(i) == null ? 0 : msg.getGroup(i).getDepth();
+            for (int d = 1; d < depth; d++)
+                sb.append(INDENT);
+            if (depth > 0)
+                sb.append(msg.getTag(i) == msg.getGroup(i).getDelimiterTag() ? "- " : INDENT);
+            appendField(msg, i, sb);
+            sb.append('\n');
+        }
+    }
+
+    /**
+     * Renders the message on one line, with the fields separated by " | ".
+     * @param msg the message
+     * @param sb  the builder to append to
+     */
+    public static void renderLine(DecodedMessage msg, StringBuilder sb) {
+        for (int i = 0; i < msg.getFieldCount(); i++) {
+            if (i > 0)
+                sb.append(" | ");
+            appendField(msg, i, sb);
+        }
+    }
+
+    private static void appendField(DecodedMessage msg, int index, StringBuilder sb) {
+        final FieldDef fieldDef = msg.getFieldDef(index);
+        if (fieldDef != null)
+            sb.append(fieldDef.getName()).append('(').append(fieldDef.getTag()).append(")=");
+        else
+            sb.append(msg.getTag(index)).append('=');
+        final ByteBuffer buffer = msg.getBuffer();
+        final int offset = msg.getValueOffset(index);
+        final int end = offset + msg.getValueLength(index);
+        for (int i = offset; i < end; i++) {
+            final int b = buffer.get(i) & 0xFF;
+            // Data fields may have anything in them.
+            sb.append(b < ' ' || b == 0x7F ? '.' : (char) b);
+        }
+        final int ordinal = msg.getEnumOrdinal(index);
+        if (ordinal >= 0 && fieldDef.getEnumValues().getDescription(ordinal) != null)
+            sb.append(" [").append(fieldDef.getEnumValues().getDescription(ordinal)).append(']');
+    }
+}
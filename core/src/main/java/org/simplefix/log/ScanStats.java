@@ -0,0 +1,66 @@
+package org.simplefix.log;
+
+/**
+ * The totals of a {@link LogScanner} scan.
+ */
+public class ScanStats {
+    private long bytes;
+    private long messageCount;
+    private long matchCount;
+    private long errorCount;
+    private long elapsedNanos;
+
+    void add(long bytes, long messageCount, long matchCount, long errorCount) {
+        this.bytes += bytes;
+        this.messageCount += messageCount;
+        this.matchCount += matchCount;
+        this.errorCount += errorCount;
+    }
+
+    void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return the size of the files
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the number of messages found, matching or not
+     */
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    public long getMatchCount() {
+        return matchCount;
+    }
+
+    /**
+     * @return the number of messages that were skipped because they were truncated or malformed
+     */
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return the scan rate, in megabytes (10^6 bytes) per second
+     */
+    public double getMegabytesPerSecond() {
+        return elapsedNanos == 0 ? 0 : bytes * 1000.0 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "bytes=" + bytes + " messages=" + messageCount + " matches=" + matchCount
+                + " errors=" + errorCount + " ms=" + elapsedNanos / 1000000
+                + " MB/s=" + Math.round(getMegabytesPerSecond());
+    }
+}
@@ -0,0 +1,628 @@
+package org.simplefix.message;
+
+import org.simplefix.dictionary.Dictionary;
+import org.simplefix.dictionary.FieldDef;
+import org.simplefix.dictionary.MessageLayout;
+import org.simplefix.dictionary.ValueType;
+import org.simplefix.dictionary.MessageType;
+import org.simplefix.util.Decimal;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A flyweight view of a decoded FIX message.  The field values are not copied, only the tag,
+ * value offset and value length of each field are recorded in primitive arrays that are re-used
+ * from one message to the next.
+ * <br>
+ * The view is only valid as long as the underlying buffer is not modified.
+ * <br>
+ * Each field also records the repeating group it is in (from the {@link MessageLayout} of the
+ * message type) and which instance of the group.  NumInGroup fields record where their group ends,
+ * so a whole group can be skipped without looking at its fields.
+ * <br>
+ * Values are only converted when a getter asks for them, straight from the ASCII bytes.   The typed
+ * getters ({@link #getInt(int)}, {@link #getLong(int)}, {@link #getDecimal(int)},
+ * {@link #getEnumOrdinal(int)} and {@link #getString(int)}) keep the result, so reading the same field
+ * again doesn't parse it again.   Prices, quantities and amounts ({@link ValueType#DECIMAL}) are read
+ * as fixed point {@link Decimal}s, which are exact and don't allocate.   A message decoded in lazy mode (see
+ * {@link MessageDecoder#setLazy(boolean)}) only has the tags and value positions: it has no group
+ * information, and the message type layout is looked up the first time it is needed.
+ */
+public class DecodedMessage {
+    private static final int DEFAULT_CAPACITY = 64;
+
+    // Which typed values have been cached for a field.
+    private static final byte CACHED_NUMBER = 1;
+    private static final byte CACHED_ORDINAL = 2;
+    private static final byte CACHED_DECIMAL = 4;
+
+    private ByteBuffer buffer;
+    private int offset;
+    private int length;
+
+    private int fieldCount;
+    private int[] tags;
+    private int[] valueOffsets;
+    private int[] valueLengths;
+    private FieldDef[] fieldDefs;
+    private MessageLayout.Entry[] entries;
+    private MessageLayout.Group[] groups;
+    private int[] instances;
+    private int[] groupEnds;
+    private int[] groupInstanceCounts;
+
+    // Typed values, converted on demand.
+    private byte[] cached;
+    private long[] numbers;
+    private long[] decimals;
+    private int[] ordinals;
+    private String[] strings;
+
+    private int msgTypeIndex;
+    private MessageLayout layout;
+    /** Set in lazy mode, to find the layout when it is asked for. **/
+    private Dictionary lazyDictionary;
+
+    public DecodedMessage() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the initial number of fields.  The arrays will grow if a larger message is
+     *                 decoded, and will then stay at that size.
+     */
+    public DecodedMessage(int capacity) {
+        tags = new int[capacity];
+        valueOffsets = new int[capacity];
+        valueLengths = new int[capacity];
+        fieldDefs = new FieldDef[capacity];
+        entries = new MessageLayout.Entry[capacity];
+        groups = new MessageLayout.Group[capacity];
+        instances = new int[capacity];
+        groupEnds = new int[capacity];
+        groupInstanceCounts = new int[capacity];
+        cached = new byte[capacity];
+        numbers = new long[capacity];
+        decimals = new long[capacity];
+        ordinals = new int[capacity];
+        strings = new String[capacity];
+        msgTypeIndex = -1;
+    }
+
+    void reset(ByteBuffer buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+        // Clear the field defs and groups so we don't hold on to an old dictionary.
+        for (int i = 0; i < fieldCount; i++) {
+            fieldDefs[i] = null;
+            entries[i] = null;
+            groups[i] = null;
+            cached[i] = 0;
+            strings[i] = null;
+        }
+        fieldCount = 0;
+        msgTypeIndex = -1;
+        layout = null;
+        lazyDictionary = null;
+    }
+
+    void setLayout(MessageLayout layout) {
+        this.layout = layout;
+    }
+
+    /**
+     * Marks the message as decoded in lazy mode.
+     * @param dictionary the dictionary to find the layout in, when it is asked for
+     */
+    void setLazy(Dictionary dictionary) {
+        this.lazyDictionary = dictionary;
+    }
+
+    void addField(int tag, FieldDef fieldDef, int valueOffset, int valueLength,
+                  MessageLayout.Entry entry, MessageLayout.Group group, int instance) {
+        if (fieldCount == tags.length)
+            grow();
+        tags[fieldCount] = tag;
+        fieldDefs[fieldCount] = fieldDef;
+        valueOffsets[fieldCount] = valueOffset;
+        valueLengths[fieldCount] = valueLength;
+        entries[fieldCount] = entry;
+        groups[fieldCount] = group;
+        instances[fieldCount] = instance;
+        groupEnds[fieldCount] = -1;
+        groupInstanceCounts[fieldCount] = 0;
+        if (tag == 35 && msgTypeIndex < 0)
+            msgTypeIndex = fieldCount;
+        fieldCount++;
+    }
+
+    /**
+     * Records the end of a repeating group.
+     * @param countIndex     the index of the NumInGroup field
+     * @param end            the index of the first field after the group
+     * @param instanceCount  the number of instances of the group that were found
+     */
+    void endGroup(int countIndex, int end, int instanceCount) {
+        groupEnds[countIndex] = end;
+        groupInstanceCounts[countIndex] = instanceCount;
+    }
+
+    private void grow() {
+        int capacity = tags.length * 2;
+        tags = copyOf(tags, capacity);
+        valueOffsets = copyOf(valueOffsets, capacity);
+        valueLengths = copyOf(valueLengths, capacity);
+        instances = copyOf(instances, capacity);
+        groupEnds = copyOf(groupEnds, capacity);
+        groupInstanceCounts = copyOf(groupInstanceCounts, capacity);
+        ordinals = copyOf(ordinals, capacity);
+        byte[] c = new byte[capacity];
+        System.arraycopy(cached, 0, c, 0, fieldCount);
+        cached = c;
+        long[] n = new long[capacity];
+        System.arraycopy(numbers, 0, n, 0, fieldCount);
+        numbers = n;
+        long[] d = new long[capacity];
+        System.arraycopy(decimals, 0, d, 0, fieldCount);
+        decimals = d;
+        String[] s = new String[capacity];
+        System.arraycopy(strings, 0, s, 0, fieldCount);
+        strings = s;
+        FieldDef[] defs = new FieldDef[capacity];
+        System.arraycopy(fieldDefs, 0, defs, 0, fieldCount);
+        fieldDefs = defs;
+        MessageLayout.Entry[] e = new MessageLayout.Entry[capacity];
+        System.arraycopy(entries, 0, e, 0, fieldCount);
+        entries = e;
+        MessageLayout.Group[] g = new MessageLayout.Group[capacity];
+        System.arraycopy(groups, 0, g, 0, fieldCount);
+        groups = g;
+    }
+
+    private static int[] copyOf(int[] a, int capacity) {
+        int[] copy = new int[capacity];
+        System.arraycopy(a, 0, copy, 0, a.length);
+        return copy;
+    }
+
+    /**
+     * @return the buffer containing the message
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return the offset of the start of the message in the buffer
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the length of the message in bytes
+     */
+    public int getLength() {
+        return length;
+    }
+
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    public int getTag(int index) {
+        return tags[index];
+    }
+
+    /**
+     * @param index the field index
+     * @return the field definition, or null if the tag is not in the dictionary
+     */
+    public FieldDef getFieldDef(int index) {
+        return fieldDefs[index];
+    }
+
+    /**
+     * @param index the field index
+     * @return the absolute offset of the value in the buffer
+     */
+    public int getValueOffset(int index) {
+        return valueOffsets[index];
+    }
+
+    public int getValueLength(int index) {
+        return valueLengths[index];
+    }
+
+    /**
+     * @return the index of the MsgType (35) field, or -1 if there isn't one
+     */
+    public int getMsgTypeIndex() {
+        return msgTypeIndex;
+    }
+
+    /**
+     * @return true if the message was decoded in lazy mode, so it has no group information
+     */
+    public boolean isLazy() {
+        return lazyDictionary != null;
+    }
+
+    /**
+     * @return the layout used to decode the message, which is the dictionary's default layout if
+     *         the message type is not known.
+     */
+    public MessageLayout getLayout() {
+        if (layout == null && lazyDictionary != null) {
+            MessageLayout typeLayout = msgTypeIndex < 0 ? null : lazyDictionary.getLayout(
+                    buffer, valueOffsets[msgTypeIndex], valueLengths[msgTypeIndex]);
+            layout = typeLayout != null ? typeLayout : lazyDictionary.getDefaultLayout();
+        }
+        return layout;
+    }
+
+    /**
+     * @return the message type, or null if it is not in the dictionary
+     */
+    public MessageType getMessageType() {
+        final MessageLayout l = getLayout();
+        return l != null ? l.getMessageType() : null;
+    }
+
+    /**
+     * @param index the field index
+     * @return the layout entry of the field, or null if the field isn't in the message type (or not in
+     *         the group it was found in, or the message was decoded in lazy mode)
+     */
+    public MessageLayout.Entry getEntry(int index) {
+        return entries[index];
+    }
+
+    /**
+     * @param index the field index
+     * @return the repeating group the field is in, or null if it is at the top level (or the
+     *         message was decoded in lazy mode)
+     */
+    public MessageLayout.Group getGroup(int index) {
+        return groups[index];
+    }
+
+    /**
+     * @param index the field index
+     * @return which instance of its group the field is in, starting at zero.   This is -1 if
+     *         the field came before the first delimiter of the group.
+     */
+    public int getGroupInstance(int index) {
+        return instances[index];
+    }
+
+    /**
+     * @param index the index of a NumInGroup field
+     * @return the index of the first field after the group, or -1 if the field isn't a NumInGroup
+     *         (or the message was decoded in lazy mode)
+     */
+    public int getGroupEnd(int index) {
+        return groupEnds[index];
+    }
+
+    /**
+     * @param index the index of a NumInGroup field
+     * @return the number of instances of the group in the message, which may not be the same as the
+     *         value of the NumInGroup field if the message is invalid
+     */
+    public int getGroupInstanceCount(int index) {
+        return groupInstanceCounts[index];
+    }
+
+    /**
+     * @param tag the tag
+     * @return the index of the first field with the tag, or -1 if not found
+     */
+    public int indexOf(int tag) {
+        return indexOf(tag, 0);
+    }
+
+    /**
+     * @param tag       the tag
+     * @param fromIndex the field index to start searching from
+     * @return the index of the next field with the tag, or -1 if not found
+     */
+    public int indexOf(int tag, int fromIndex) {
+        for (int i = fromIndex; i < fieldCount; i++) {
+            if (tags[i] == tag)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Compares a field value with the given bytes, without copying.
+     * @param index the field index
+     * @param bytes the expected value
+     * @return true if the value is equal
+     */
+    public boolean valueEquals(int index, byte[] bytes) {
+        int len = valueLengths[index];
+        if (len != bytes.length)
+            return false;
+        int pos = valueOffsets[index];
+        for (int i = 0; i < len; i++) {
+            if (buffer.get(pos + i) != bytes[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Parses an integer field value (e.g. MsgSeqNum, HeartBtInt) in place.
+     * @param index the field index
+     * @return the value
+     * @throws MessageFormatException if the value is not an integer
+     */
+    public int getInt(int index) throws MessageFormatException {
+        final long value = getLong(index);
+        if (value != (int) value)
+            throw new MessageFormatException("Integer value out of range for tag " + tags[index]);
+        return (int) value;
+    }
+
+    /**
+     * Parses an integer field value (e.g. OrderQty, a SeqNum) in place.
+     * @param index the field index
+     * @return the value
+     * @throws MessageFormatException if the value is not an integer, or has more than 18 digits
+     */
+    public long getLong(int index) throws MessageFormatException {
+        if ((cached[index] & CACHED_NUMBER) != 0)
+            return numbers[index];
+        final int len = valueLengths[index];
+        final int pos = valueOffsets[index];
+        final boolean negative = len > 0 && buffer.get(pos) == '-';
+        int i = negative ? 1 : 0;
+        if (len == i || len - i > 18)
+            throw new MessageFormatException("Invalid integer value for tag " + tags[index]);
+        long value = 0;
+        for (; i < len; i++) {
+            final byte b = buffer.get(pos + i);
+            if (b < '0' || b > '9')
+                throw new MessageFormatException("Invalid integer value for tag " + tags[index]);
+            value = value * 10 + (b - '0');
+        }
+        value = negative ? -value : value;
+        numbers[index] = value;
+        cached[index] |= CACHED_NUMBER;
+        return value;
+    }
+
+    /**
+     * Parses a fixed point value (e.g. Price, OrderQty, CumQty) in place, without rounding.
+     * @param index the field index
+     * @return the value as a {@link Decimal}
+     * @throws MessageFormatException if the value is not a decimal, has more than 18 decimal places, or
+     *         has too many digits
+     */
+    public long getDecimal(int index) throws MessageFormatException {
+        if ((cached[index] & CACHED_DECIMAL) != 0)
+            return decimals[index];
+        final long value;
+        try {
+            value = Decimal.parse(buffer, valueOffsets[index], valueLengths[index]);
+        } catch (NumberFormatException e) {
+            throw new MessageFormatException(e.getMessage() + " for tag " + tags[index], e);
+        }
+        decimals[index] = value;
+        cached[index] |= CACHED_DECIMAL;
+        return value;
+    }
+
+    /**
+     * Parses a decimal value as a double, via {@link #getDecimal(int)}, so it is the nearest double to
+     * the value in the message (see {@link Decimal#toDouble(long)}).
+     * @param index the field index
+     * @return the value
+     * @throws MessageFormatException if the value is not a decimal
+     */
+    public double getDouble(int index) throws MessageFormatException {
+        return Decimal.toDouble(getDecimal(index));
+    }
+
+    /**
+     * @param index the field index
+     * @return the value of a char field (e.g. Side, OrdStatus)
+     * @throws MessageFormatException if the value is not one character
+     */
+    public char getChar(int index) throws MessageFormatException {
+        if (valueLengths[index] != 1)
+            throw new MessageFormatException("Invalid char value for tag " + tags[index]);
+        return (char) (buffer.get(valueOffsets[index]) & 0xFF);
+    }
+
+    /**
+     * @param index the field index
+     * @return the value of a boolean field (e.g. PossDupFlag), Y or N
+     * @throws MessageFormatException if the value is not Y or N
+     */
+    public boolean getBoolean(int index) throws MessageFormatException {
+        if (valueLengths[index] == 1) {
+            final byte b = buffer.get(valueOffsets[index]);
+            if (b == 'Y')
+                return true;
+            if (b == 'N')
+                return false;
+        }
+        throw new MessageFormatException("Invalid boolean value for tag " + tags[index]);
+    }
+
+    /**
+     * Parses a UTCTimestamp (e.g. SendingTime, TransactTime) in place.
+     * @param index the field index
+     * @return the time, in milliseconds since the epoch
+     * @throws MessageFormatException if the value is not a timestamp
+     * @see #parseUtcTimestamp(ByteBuffer, int, int)
+     */
+    public long getUtcTimestamp(int index) throws MessageFormatException {
+        final long millis = parseUtcTimestamp(buffer, valueOffsets[index], valueLengths[index]);
+        if (millis == Long.MIN_VALUE)
+            throw new MessageFormatException("Invalid timestamp value for tag " + tags[index]);
+        return millis;
+    }
+
+    /**
+     * Parses a UTCTimestamp, YYYYMMDD-HH:MM:SS with optional fractional seconds, which are truncated
+     * to milliseconds.   This is the inverse of {@link MessageEncoder#addUtcTimestamp(int, long)}.
+     * @param buffer the buffer (heap or direct)
+     * @param offset absolute offset of the value
+     * @param length length of the value
+     * @return the time, in milliseconds since the epoch, or Long.MIN_VALUE if it isn't a timestamp
+     */
+    public static long parseUtcTimestamp(ByteBuffer buffer, int offset, int length) {
+        if (length < 17 || buffer.get(offset + 8) != '-' || buffer.get(offset + 11) != ':'
+                || buffer.get(offset + 14) != ':')
+            return Long.MIN_VALUE;
+        final int year = digits(buffer, offset, 4);
+        final int month = digits(buffer, offset + 4, 2);
+        final int day = digits(buffer, offset + 6, 2);
+        final int hour = digits(buffer, offset + 9, 2);
+        final int minute = digits(buffer, offset + 12, 2);
+        final int second = digits(buffer, offset + 15, 2);
+        if (year < 1 || month < 1 || month > 12 || day < 1 || day > 31
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 60)
+            return Long.MIN_VALUE;
+        int millis = 0;
+        if (length > 17) {
+            if (length == 18 || buffer.get(offset + 17) != '.')
+                return Long.MIN_VALUE;
+            for (int i = 18; i < length; i++) {
+                final byte b = buffer.get(offset + i);
+                if (b < '0' || b > '9')
+                    return Long.MIN_VALUE;
+                if (i < 21)
+                    millis = millis * 10 + (b - '0');
+            }
+            for (int i = length; i < 21; i++)
+                millis *= 10;
+        }
+        // Days since the epoch from the civil date, see http://howardhinnant.github.io/date_algorithms.html
+        final int y = month <= 2 ? year - 1 : year;
+        final int era = y / 400;
+        final int yoe = y - era * 400;
+        final int doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        final int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        final long days = era * 146097L + doe - 719468;
+        return days * 86400000L + hour * 3600000L + minute * 60000L + second * 1000L + millis;
+    }
+
+    /**
+     * @return the value of the decimal digits, or -1 if there is something else
+     */
+    private static int digits(ByteBuffer buffer, int offset, int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            final byte b = buffer.get(i);
+            if (b < '0' || b > '9')
+                return -1;
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Looks up an enumerated value (e.g. Side, OrdType) in the dictionary, without allocating.
+     * @param index the field index
+     * @return the ordinal of the value in {@link FieldDef#getEnumValues()}, or -1 if the field isn't
+     *         in the dictionary or the value isn't one of its enumerated values
+     */
+    public int getEnumOrdinal(int index) {
+        if ((cached[index] & CACHED_ORDINAL) != 0)
+            return ordinals[index];
+        final FieldDef fieldDef = fieldDefs[index];
+        final int ordinal = fieldDef == null ? -1
+                : fieldDef.getEnumValues().ordinal(buffer, valueOffsets[index], valueLengths[index]);
+        ordinals[index] = ordinal;
+        cached[index] |= CACHED_ORDINAL;
+        return ordinal;
+    }
+
+    /**
+     * Copies the field value into the given array.
+     * @param index     the field index
+     * @param dst       the destination array
+     * @param dstOffset the offset in the destination array
+     * @return the number of bytes copied
+     */
+    public int getBytes(int index, byte[] dst, int dstOffset) {
+        int len = valueLengths[index];
+        int pos = valueOffsets[index];
+        for (int i = 0; i < len; i++)
+            dst[dstOffset + i] = buffer.get(pos + i);
+        return len;
+    }
+
+    /**
+     * Copies the message into another buffer, and its fields into another DecodedMessage, without
+     * decoding it again, e.g. to keep the message after its buffer is re-used.   Doesn't allocate
+     * once the target is big enough.
+     * @param dst    the buffer to copy the bytes to, starting at index 0.  It must have room for
+     *               {@link #getLength()} bytes.
+     * @param target the message to copy the fields to, which will then refer to dst
+     */
+    public void copyTo(ByteBuffer dst, DecodedMessage target) {
+        if (dst.capacity() < length)
+            throw new IllegalArgumentException("No room for " + length + " bytes");
+        if (buffer.hasArray() && dst.hasArray()) {
+            System.arraycopy(buffer.array(), buffer.arrayOffset() + offset, dst.array(), dst.arrayOffset(), length);
+        } else {
+            for (int i = 0; i < length; i++)
+                dst.put(i, buffer.get(offset + i));
+        }
+        target.reset(dst, 0, length);
+        while (target.tags.length < fieldCount)
+            target.grow();
+        System.arraycopy(tags, 0, target.tags, 0, fieldCount);
+        for (int i = 0; i < fieldCount; i++)
+            target.valueOffsets[i] = valueOffsets[i] - offset;
+        System.arraycopy(valueLengths, 0, target.valueLengths, 0, fieldCount);
+        System.arraycopy(fieldDefs, 0, target.fieldDefs, 0, fieldCount);
+        System.arraycopy(entries, 0, target.entries, 0, fieldCount);
+        System.arraycopy(groups, 0, target.groups, 0, fieldCount);
+        System.arraycopy(instances, 0, target.instances, 0, fieldCount);
+        System.arraycopy(groupEnds, 0, target.groupEnds, 0, fieldCount);
+        System.arraycopy(groupInstanceCounts, 0, target.groupInstanceCounts, 0, fieldCount);
+        target.fieldCount = fieldCount;
+        target.msgTypeIndex = msgTypeIndex;
+        target.layout = layout;
+        target.lazyDictionary = lazyDictionary;
+    }
+
+    /**
+     * Returns the field value as a string.  NOTE: This allocates the first time it is called for a
+     * field, so avoid it in the critical path.
+     * @param index the field index
+     * @return the value
+     */
+    public String getString(int index) {
+        String s = strings[index];
+        if (s != null)
+            return s;
+        int len = valueLengths[index];
+        int pos = valueOffsets[index];
+        char[] chars = new char[len];
+        for (int i = 0; i < len; i++)
+            chars[i] = (char) (buffer.get(pos + i) & 0xFF);
+        s = new String(chars);
+        strings[index] = s;
+        return s;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("DecodedMessage{");
+        for (int i = 0; i < fieldCount; i++) {
+            if (i > 0)
+                sb.append('|');
+            sb.append(tags[i]).append('=').append(getString(i));
+        }
+        return sb.append('}').toString();
+    }
+}
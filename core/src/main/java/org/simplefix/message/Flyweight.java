@@ -0,0 +1,56 @@
+package org.simplefix.message;
+
+/**
+ * Base class of the message and group flyweights made by the
+ * {@link org.simplefix.codegen.FlyweightGenerator}.   A flyweight wraps a {@link DecodedMessage} and
+ * finds its fields once, recording the index of each field in a slot.   The slot of a field is the
+ * index of its {@link org.simplefix.dictionary.MessageLayout.Entry}, so the generated accessors read
+ * their field with one array load.
+ * <br>
+ * The helpers are final, and the loops are in the generated classes, so the JIT can inline all of it.
+ */
+public abstract class Flyweight {
+    protected DecodedMessage msg;
+
+    /** The field index of each field, or -1 if it isn't there. **/
+    protected final int[] slots;
+
+    protected Flyweight(int slotCount) {
+        slots = new int[slotCount];
+    }
+
+    /**
+     * @return the wrapped message, for access to fields by index
+     */
+    public DecodedMessage getMessage() {
+        return msg;
+    }
+
+    protected final void clearSlots() {
+        for (int i = 0; i < slots.length; i++)
+            slots[i] = -1;
+    }
+
+    protected final boolean has(int slot) {
+        return slots[slot] >= 0;
+    }
+
+    /**
+     * @return the field index of the field in the slot
+     * @throws MessageFormatException if the field isn't there
+     */
+    protected final int required(int slot, int tag) throws MessageFormatException {
+        final int index = slots[slot];
+        if (index < 0)
+            throw new MessageFormatException("Required tag missing: " + tag);
+        return index;
+    }
+
+    /**
+     * @return the index of the field after the one at index, skipping the repeating group it starts
+     */
+    protected final int skip(int index) {
+        final int end = msg.getGroupEnd(index);
+        return end > index ? end : index + 1;
+    }
+}
@@ -0,0 +1,56 @@
+package org.simplefix.message;
+
+/**
+ * Base class of the generated repeating group flyweights.   A group flyweight iterates over the
+ * instances of one group in a message: each call to the generated next() finds the fields of the next
+ * instance.
+ * <br>
+ * Groups need the group information of a message decoded in full, not in lazy mode.
+ */
+public abstract class GroupFlyweight extends Flyweight {
+    /** The index of the first field of the next instance. **/
+    protected int next;
+
+    /** The index of the first field after the group. **/
+    protected int end;
+
+    private int size;
+
+    protected GroupFlyweight(int slotCount) {
+        super(slotCount);
+    }
+
+    /**
+     * Starts iterating over a group.
+     * @param msg        the message
+     * @param countIndex the index of the NumInGroup field, or -1 if the group isn't in the message
+     */
+    public final void wrap(DecodedMessage msg, int countIndex) {
+        if (msg.isLazy())
+            throw new IllegalStateException("Groups need a message that was not decoded in lazy mode");
+        this.msg = msg;
+        clearSlots();
+        if (countIndex < 0) {
+            size = 0;
+            next = end = 0;
+        } else {
+            size = msg.getGroupInstanceCount(countIndex);
+            next = countIndex + 1;
+            end = msg.getGroupEnd(countIndex);
+        }
+    }
+
+    /**
+     * @return the number of instances of the group in the message
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if there is another instance, for next() to move to
+     */
+    public boolean hasNext() {
+        return next < end;
+    }
+}
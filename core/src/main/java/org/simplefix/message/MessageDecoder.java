@@ -0,0 +1,311 @@
+package org.simplefix.message;
+
+import org.simplefix.dictionary.Dictionary;
+import org.simplefix.dictionary.FieldDef;
+import org.simplefix.dictionary.MessageLayout;
+import org.simplefix.dictionary.ReloadableDictionary;
+import org.simplefix.util.ByteScanner;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes FIX messages in place, using a dictionary to resolve tags.   The tag=value&lt;SOH&gt;
+ * pairs are walked without copying and recorded in a re-usable {@link DecodedMessage}, so
+ * decoding doesn't allocate once the message arrays have grown to fit.
+ * <br>
+ * Repeating groups are tracked with the {@link MessageLayout} of the message type, which places
+ * each field with one lookup by tag.   A field that isn't in the layout (e.g. a user defined tag)
+ * stays in the current group.
+ * <br>
+ * In lazy mode (see {@link #setLazy(boolean)}) the decoder only records where each field is, and
+ * doesn't place the fields in groups.   That suits routers and drop copy listeners, which read a few
+ * fields (MsgType, ClOrdID, Symbol, Side, OrderQty) of messages with many more.
+ * <br>
+ * A decoder made with a {@link ReloadableDictionary} reads the current dictionary once per message,
+ * so a dictionary that is reloaded applies from the next message on.
+ * <br>
+ * Not thread safe, use one decoder per thread (or per session).
+ */
+public class MessageDecoder {
+    /** The FIX field delimiter. **/
+    public static final byte SOH = 0x01;
+
+    private static final int MAX_TAG = 99999999;
+
+    /** The dictionary, if it can't be reloaded. **/
+    private final Dictionary dictionary;
+
+    private final ReloadableDictionary reloadable;
+
+    private final DecodedMessage message;
+
+    private boolean lazy;
+
+    /**
+     * A cached wrapper for the last byte array that was decoded.   Frames from the same read
+     * share the same array, so this saves creating a wrapper for every message.
+     */
+    private ByteBuffer wrapper;
+
+    // The groups that are open while decoding, outermost first.
+    private MessageLayout.Group[] groupStack = new MessageLayout.Group[8];
+    private int[] instanceStack = new int[8];
+    private int[] countIndexStack = new int[8];
+    private int depth;
+
+    public MessageDecoder(Dictionary dictionary) {
+        if (dictionary == null) throw new IllegalArgumentException("dictionary cannot be null!");
+        this.dictionary = dictionary;
+        this.reloadable = null;
+        this.message = new DecodedMessage();
+    }
+
+    /**
+     * @param dictionary a dictionary that can be replaced while decoding
+     */
+    public MessageDecoder(ReloadableDictionary dictionary) {
+        if (dictionary == null) throw new IllegalArgumentException("dictionary cannot be null!");
+        this.dictionary = null;
+        this.reloadable = dictionary;
+        this.message = new DecodedMessage();
+    }
+
+    /**
+     * @return the dictionary the next message will be decoded with
+     */
+    public Dictionary getDictionary() {
+        return reloadable == null ? dictionary : reloadable.get();
+    }
+
+    /**
+     * @param lazy true to only record the tag and value position of each field.   The message type
+     *             layout is then found when the message is asked for it, and the messages have no
+     *             group information.
+     */
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    /**
+     * Decodes the message into the decoder's own re-usable message.
+     * @param bytes  the array containing the message
+     * @param offset offset of the message in the array
+     * @param length length of the message
+     * @return the decoded message, which is only valid until the next call to decode()
+     * @throws MessageFormatException if the message is not well formed
+     */
+    public DecodedMessage decode(byte[] bytes, int offset, int length) throws MessageFormatException {
+        if (wrapper == null || !wrapper.hasArray() || wrapper.array() != bytes)
+            wrapper = ByteBuffer.wrap(bytes);
+        decode(wrapper, offset, length, message);
+        return message;
+    }
+
+    /**
+     * Decodes the message into the decoder's own re-usable message.
+     * @param buffer the buffer containing the message (heap or direct)
+     * @param offset absolute offset of the message in the buffer
+     * @param length length of the message
+     * @return the decoded message, which is only valid until the next call to decode()
+     * @throws MessageFormatException if the message is not well formed
+     */
+    public DecodedMessage decode(ByteBuffer buffer, int offset, int length) throws MessageFormatException {
+        decode(buffer, offset, length, message);
+        return message;
+    }
+
+    /**
+     * Decodes the message into the given message.
+     * @param buffer the buffer containing the message (heap or direct)
+     * @param offset absolute offset of the message in the buffer
+     * @param length length of the message
+     * @param msg    the message to decode into
+     * @throws MessageFormatException if the message is not well formed
+     */
+    public void decode(ByteBuffer buffer, int offset, int length, DecodedMessage msg)
+            throws MessageFormatException {
+        msg.reset(buffer, offset, length);
+        // The whole message is decoded with the same dictionary, even if it is reloaded meanwhile.
+        final Dictionary dictionary = getDictionary();
+        if (lazy) {
+            decodeLazy(dictionary, buffer, offset, length, msg);
+            return;
+        }
+        MessageLayout layout = dictionary.getDefaultLayout();
+        msg.setLayout(layout);
+        depth = 0;
+        final int end = offset + length;
+        int pos = offset;
+        while (pos < end) {
+            // Tag
+            final int tagStart = pos;
+            final long parsed = tag(buffer, offset, end, tagStart);
+            final int tag = (int) parsed;
+
+            // Value
+            final FieldDef fieldDef = dictionary.getFieldDef(tag);
+            final int valueStart = (int) (parsed >>> 32);
+            final int valueEnd = valueEnd(buffer, offset, end, tagStart, valueStart, tag, fieldDef, msg);
+
+            // Place the field in its repeating group.
+            final int index = msg.getFieldCount();
+            final MessageLayout.Entry entry = findEntry(layout, tag);
+            if (entry != null) {
+                final int entryDepth = entry.getDepth();
+                while (depth > entryDepth)
+                    endGroup(msg, index);
+                if (entryDepth > 0 && tag == groupStack[entryDepth - 1].getDelimiterTag())
+                    instanceStack[entryDepth - 1]++;
+            }
+            if (depth == 0)
+                msg.addField(tag, fieldDef, valueStart, valueEnd - valueStart, entry, null, 0);
+            else
+                msg.addField(tag, fieldDef, valueStart, valueEnd - valueStart,
+                        entry, groupStack[depth - 1], instanceStack[depth - 1]);
+            if (entry != null && entry.getNestedGroup() != null)
+                startGroup(entry.getNestedGroup(), index);
+
+            if (index == msg.getMsgTypeIndex()) {
+                MessageLayout typeLayout = dictionary.getLayout(buffer, valueStart, valueEnd - valueStart);
+                if (typeLayout != null) {
+                    layout = typeLayout;
+                    msg.setLayout(layout);
+                }
+            }
+            pos = valueEnd + 1;
+        }
+        while (depth > 0)
+            endGroup(msg, msg.getFieldCount());
+    }
+
+    /**
+     * Records the tag and value position of each field, and nothing else.
+     */
+    private void decodeLazy(Dictionary dictionary, ByteBuffer buffer, int offset, int length,
+                            DecodedMessage msg) throws MessageFormatException {
+        msg.setLazy(dictionary);
+        final int end = offset + length;
+        int pos = offset;
+        while (pos < end) {
+            final int tagStart = pos;
+            final long parsed = tag(buffer, offset, end, tagStart);
+            final int tag = (int) parsed;
+            final int valueStart = (int) (parsed >>> 32);
+            // The field def is still needed to find data fields.
+            final FieldDef fieldDef = dictionary.getFieldDef(tag);
+            final int valueEnd = valueEnd(buffer, offset, end, tagStart, valueStart, tag, fieldDef, msg);
+            msg.addField(tag, fieldDef, valueStart, valueEnd - valueStart, null, null, 0);
+            pos = valueEnd + 1;
+        }
+    }
+
+    /**
+     * Parses the tag of the field starting at tagStart, up to and including the '='.
+     * @return the tag in the low 32 bits, and the start of the value in the high 32 bits
+     */
+    private static long tag(ByteBuffer buffer, int offset, int end, int tagStart) throws MessageFormatException {
+        int pos = tagStart;
+        int tag = 0;
+        byte b;
+        while (true) {
+            if (pos == end)
+                throw new MessageFormatException("Truncated tag at offset " + (tagStart - offset));
+            b = buffer.get(pos++);
+            if (b == '=')
+                break;
+            if (b < '0' || b > '9' || tag > MAX_TAG)
+                throw new MessageFormatException("Invalid tag at offset " + (tagStart - offset));
+            tag = tag * 10 + (b - '0');
+        }
+        if (pos - 1 == tagStart)
+            throw new MessageFormatException("Empty tag at offset " + (tagStart - offset));
+        return (long) pos << 32 | tag;
+    }
+
+    /**
+     * @return the position of the SOH at the end of the value
+     */
+    private static int valueEnd(ByteBuffer buffer, int offset, int end, int tagStart, int valueStart,
+                                int tag, FieldDef fieldDef, DecodedMessage msg) throws MessageFormatException {
+        if (fieldDef != null && fieldDef.isData()) {
+            int dataLength = previousLength(msg);
+            if (dataLength >= 0) {
+                final int valueEnd = valueStart + dataLength;
+                if (valueEnd >= end || buffer.get(valueEnd) != SOH)
+                    throw new MessageFormatException("Data field " + tag + " at offset "
+                            + (tagStart - offset) + " does not match length " + dataLength);
+                return valueEnd;
+            }
+        }
+        final int valueEnd = ByteScanner.indexOf(buffer, valueStart, end, SOH);
+        if (valueEnd < 0)
+            throw new MessageFormatException("Unterminated field " + tag + " at offset "
+                    + (tagStart - offset));
+        return valueEnd;
+    }
+
+    /**
+     * @return the entry for the tag in the current group or one of the enclosing groups (the
+     *         innermost, if there is more than one), or null
+     */
+    private MessageLayout.Entry findEntry(MessageLayout layout, int tag) {
+        MessageLayout.Entry found = null;
+        for (MessageLayout.Entry e = layout.getEntry(tag); e != null; e = e.getNext()) {
+            final int d = e.getDepth();
+            if (d <= depth && (d == 0 || groupStack[d - 1] == e.getGroup())
+                    && (found == null || d > found.getDepth()))
+                found = e;
+        }
+        return found;
+    }
+
+    private void startGroup(MessageLayout.Group group, int countIndex) {
+        if (depth == groupStack.length) {
+            MessageLayout.Group[] groups = new MessageLayout.Group[depth * 2];
+            System.arraycopy(groupStack, 0, groups, 0, depth);
+            groupStack = groups;
+            int[] instances = new int[depth * 2];
+            System.arraycopy(instanceStack, 0, instances, 0, depth);
+            instanceStack = instances;
+            int[] counts = new int[depth * 2];
+            System.arraycopy(countIndexStack, 0, counts, 0, depth);
+            countIndexStack = counts;
+        }
+        groupStack[depth] = group;
+        instanceStack[depth] = -1;
+        countIndexStack[depth] = countIndex;
+        depth++;
+    }
+
+    private void endGroup(DecodedMessage msg, int end) {
+        depth--;
+        msg.endGroup(countIndexStack[depth], end, instanceStack[depth] + 1);
+        groupStack[depth] = null;
+    }
+
+    /**
+     * @return the value of the previous field, if it is a length, or -1
+     */
+    private static int previousLength(DecodedMessage msg) {
+        int index = msg.getFieldCount() - 1;
+        if (index < 0)
+            return -1;
+        final ByteBuffer buffer = msg.getBuffer();
+        final int start = msg.getValueOffset(index);
+        final int len = msg.getValueLength(index);
+        if (len == 0 || len > 9)
+            return -1;
+        int value = 0;
+        for (int i = start; i < start + len; i++) {
+            byte b = buffer.get(i);
+            if (b < '0' || b > '9')
+                return -1;
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+}
@@ -0,0 +1,385 @@
+package org.simplefix.message;
+
+import org.simplefix.dictionary.Dictionary;
+import org.simplefix.dictionary.FieldDef;
+import org.simplefix.dictionary.MessageType;
+import org.simplefix.dictionary.ReloadableDictionary;
+import org.simplefix.util.ByteScanner;
+import org.simplefix.util.Decimal;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import static org.simplefix.message.MessageDecoder.SOH;
+
+/**
+ * Encodes FIX messages directly into a re-usable buffer (heap or direct).   Tags are written from the
+ * "tag=" prefixes that the dictionary computes up front, and numbers, fixed point decimals and
+ * timestamps are formatted straight into the buffer, so encoding doesn't allocate.
+ * <br>
+ * Usage:
+ * <pre>
+ * encoder.begin(buffer, messageType);
+ * encoder.add(49, "CLIENT");
+ * encoder.add(34, seqNum);
+ * ...
+ * int length = encoder.finish();
+ * </pre>
+ * The message is written at the position of the buffer when {@link #begin(ByteBuffer, MessageType)} is
+ * called, and the position is moved past the message by {@link #finish()}, so several messages can be
+ * encoded one after the other into the same buffer.   Room for the BeginString and BodyLength is
+ * reserved at the start, and filled in by finish() once the length of the body is known, along with
+ * the CheckSum.   The BodyLength is given as many digits as the last message's had, so the body is
+ * only moved when the number of digits changes.
+ * <br>
+ * An encoder made with a {@link ReloadableDictionary} reads the current dictionary once per message,
+ * so a dictionary that is reloaded applies from the next message on.
+ * <br>
+ * Not thread safe, use one encoder per thread (or per session).
+ */
+public class MessageEncoder {
+    public static final int BEGIN_STRING = 8;
+    public static final int BODY_LENGTH = 9;
+    public static final int MSG_TYPE = 35;
+    public static final int CHECK_SUM = 10;
+
+    /** The digits reserved for the first body length, which fits most messages. **/
+    private static final int DEFAULT_BODY_LENGTH_DIGITS = 3;
+
+    /** "10=nnn" + SOH **/
+    private static final int CHECK_SUM_LENGTH = 7;
+
+    private static final byte[] BODY_LENGTH_PREFIX = {'9', '='};
+    private static final byte[] MSG_TYPE_PREFIX = {'3', '5', '='};
+    private static final byte[] CHECK_SUM_PREFIX = {'1', '0', '='};
+
+    /** The dictionary of the message being encoded. **/
+    private Dictionary dictionary;
+
+    private final ReloadableDictionary reloadable;
+
+    /** "8=" BeginString SOH **/
+    private final byte[] beginString;
+
+    /** "8=" BeginString SOH "9=" SOH, the header without the BodyLength digits. **/
+    private final int headerLength;
+
+    /** The number of digits reserved for the BodyLength. **/
+    private int bodyLengthDigits = DEFAULT_BODY_LENGTH_DIGITS;
+
+    private ByteBuffer buffer;
+    private int start;
+    private int bodyStart;
+    private int pos;
+
+    /**
+     * @param dictionary  the dictionary, used for the tag prefixes
+     * @param beginString the BeginString of every message, e.g. "FIX.4.4"
+     */
+    public MessageEncoder(Dictionary dictionary, String beginString) {
+        this(dictionary, null, beginString);
+    }
+
+    /**
+     * @param dictionary  a dictionary that can be replaced while encoding
+     * @param beginString the BeginString of every message, e.g. "FIX.4.4"
+     */
+    public MessageEncoder(ReloadableDictionary dictionary, String beginString) {
+        this(dictionary == null ? null : dictionary.get(), dictionary, beginString);
+    }
+
+    private MessageEncoder(Dictionary dictionary, ReloadableDictionary reloadable, String beginString) {
+        if (dictionary == null) throw new IllegalArgumentException("dictionary cannot be null!");
+        if (beginString == null || beginString.length() == 0)
+            throw new IllegalArgumentException("beginString cannot be empty!");
+        this.dictionary = dictionary;
+        this.reloadable = reloadable;
+        String prefix = BEGIN_STRING + "=" + beginString + (char) SOH;
+        this.beginString = new byte[prefix.length()];
+        for (int i = 0; i < prefix.length(); i++)
+            this.beginString[i] = (byte) prefix.charAt(i);
+        this.headerLength = this.beginString.length + BODY_LENGTH_PREFIX.length + 1;
+    }
+
+    /**
+     * @return the dictionary the next message will be encoded with
+     */
+    public Dictionary getDictionary() {
+        return reloadable == null ? dictionary : reloadable.get();
+    }
+
+    /**
+     * Starts a message at the current position of the buffer, and writes the MsgType.
+     * @param buffer      the buffer to write into
+     * @param messageType the message type
+     */
+    public void begin(ByteBuffer buffer, MessageType messageType) {
+        begin(buffer, messageType.getMsgTypeBytes());
+    }
+
+    /**
+     * Starts a message at the current position of the buffer, and writes the MsgType.
+     * @param buffer  the buffer to write into
+     * @param msgType the MsgType as ASCII bytes
+     */
+    public void begin(ByteBuffer buffer, byte[] msgType) {
+        if (buffer == null) throw new IllegalArgumentException("buffer cannot be null!");
+        this.buffer = buffer;
+        if (reloadable != null)
+            dictionary = reloadable.get();
+        start = buffer.position();
+        bodyStart = start + headerLength + bodyLengthDigits;
+        pos = bodyStart;
+        ensure(MSG_TYPE_PREFIX.length + msgType.length + 1);
+        put(MSG_TYPE_PREFIX);
+        put(msgType);
+        buffer.put(pos++, SOH);
+    }
+
+    public void add(int tag, long value) {
+        writeTag(tag);
+        writeDecimal(value, 0);
+        endField();
+    }
+
+    /**
+     * Adds a fixed point value, e.g. mantissa 12345 with scale 2 is written as "123.45".
+     * @param tag      the tag
+     * @param mantissa the unscaled value
+     * @param scale    the number of digits after the decimal point, 0 to 18
+     */
+    public void addDecimal(int tag, long mantissa, int scale) {
+        if (scale < 0 || scale > Decimal.MAX_SCALE)
+            throw new IllegalArgumentException("Invalid scale " + scale);
+        writeTag(tag);
+        writeDecimal(mantissa, scale);
+        endField();
+    }
+
+    /**
+     * Adds a fixed point value, e.g. one read with {@link DecodedMessage#getDecimal(int)}.
+     * @param tag     the tag
+     * @param decimal the value, see {@link Decimal}
+     */
+    public void addDecimal(int tag, long decimal) {
+        writeTag(tag);
+        writeDecimal(Decimal.mantissa(decimal), Decimal.scale(decimal));
+        endField();
+    }
+
+    public void add(int tag, boolean value) {
+        add(tag, value ? 'Y' : 'N');
+    }
+
+    public void add(int tag, char value) {
+        writeTag(tag);
+        ensure(1);
+        buffer.put(pos++, (byte) value);
+        endField();
+    }
+
+    /**
+     * Adds a value, one byte per character.  Only use this for ASCII values.
+     * @param tag   the tag
+     * @param value the value
+     */
+    public void add(int tag, CharSequence value) {
+        writeTag(tag);
+        final int length = value.length();
+        ensure(length);
+        for (int i = 0; i < length; i++)
+            buffer.put(pos++, (byte) value.charAt(i));
+        endField();
+    }
+
+    public void add(int tag, byte[] value) {
+        add(tag, value, 0, value.length);
+    }
+
+    public void add(int tag, byte[] value, int offset, int length) {
+        writeTag(tag);
+        ensure(length);
+        for (int i = offset; i < offset + length; i++)
+            buffer.put(pos++, value[i]);
+        endField();
+    }
+
+    /**
+     * Adds a value copied from a buffer, e.g. a field of a decoded message.
+     * @param tag    the tag
+     * @param src    the buffer
+     * @param offset the offset of the value in the buffer
+     * @param length the length of the value
+     */
+    public void add(int tag, ByteBuffer src, int offset, int length) {
+        writeTag(tag);
+        ensure(length);
+        for (int i = offset; i < offset + length; i++)
+            buffer.put(pos++, src.get(i));
+        endField();
+    }
+
+    /**
+     * Adds a UTCTimestamp, with milliseconds: YYYYMMDD-HH:MM:SS.sss
+     * @param tag    the tag
+     * @param millis the time, in milliseconds since the epoch
+     */
+    public void addUtcTimestamp(int tag, long millis) {
+        writeTag(tag);
+        ensure(21);
+        long days = millis / 86400000L;
+        int millisOfDay = (int) (millis % 86400000L);
+        if (millisOfDay < 0) {
+            days--;
+            millisOfDay += 86400000;
+        }
+        // Civil date from days since the epoch, see http://howardhinnant.github.io/date_algorithms.html
+        final long z = days + 719468;
+        final long era = (z >= 0 ? z : z - 146096) / 146097;
+        final int doe = (int) (z - era * 146097);
+        final int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        final int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        final int mp = (5 * doy + 2) / 153;
+        final int day = doy - (153 * mp + 2) / 5 + 1;
+        final int month = mp < 10 ? mp + 3 : mp - 9;
+        final int year = (int) (yoe + era * 400) + (month <= 2 ? 1 : 0);
+        writeDigits(year, 4);
+        writeDigits(month, 2);
+        writeDigits(day, 2);
+        buffer.put(pos++, (byte) '-');
+        writeDigits(millisOfDay / 3600000, 2);
+        buffer.put(pos++, (byte) ':');
+        writeDigits(millisOfDay / 60000 % 60, 2);
+        buffer.put(pos++, (byte) ':');
+        writeDigits(millisOfDay / 1000 % 60, 2);
+        buffer.put(pos++, (byte) '.');
+        writeDigits(millisOfDay % 1000, 3);
+        endField();
+    }
+
+    /**
+     * Completes the message by filling in the BeginString and BodyLength, and adding the CheckSum.
+     * The position of the buffer is moved to the end of the message.
+     * @return the length of the message, which starts at the buffer position that was passed to begin()
+     * @throws BufferOverflowException if there isn't room for the CheckSum
+     */
+    public int finish() throws BufferOverflowException {
+        if (buffer == null) throw new IllegalStateException("No message, call begin() first");
+        final int bodyLength = pos - bodyStart;
+        final int digits = digitCount(-bodyLength);
+        final int end = start + headerLength + digits + bodyLength;
+        if (digits != bodyLengthDigits) {
+            if (end + CHECK_SUM_LENGTH > buffer.limit())
+                throw new BufferOverflowException();
+            moveBody(start + headerLength + digits, bodyLength);
+            // The next message is likely to be about the same size.
+            bodyLengthDigits = digits;
+        }
+
+        pos = start;
+        put(beginString);
+        put(BODY_LENGTH_PREFIX);
+        writeDecimal(bodyLength, 0);
+        buffer.put(pos++, SOH);
+
+        pos = end;
+        ensure(CHECK_SUM_LENGTH);
+        final int checksum = ByteScanner.sum(buffer, start, end) & 0xFF;
+        put(CHECK_SUM_PREFIX);
+        writeDigits(checksum, 3);
+        buffer.put(pos++, SOH);
+
+        buffer.position(pos);
+        final ByteBuffer b = buffer;
+        buffer = null;
+        return b.position() - start;
+    }
+
+    private void moveBody(int to, int length) {
+        if (buffer.hasArray()) {
+            final int offset = buffer.arrayOffset();
+            System.arraycopy(buffer.array(), offset + bodyStart, buffer.array(), offset + to, length);
+        } else if (to < bodyStart) {
+            for (int i = 0; i < length; i++)
+                buffer.put(to + i, buffer.get(bodyStart + i));
+        } else {
+            for (int i = length - 1; i >= 0; i--)
+                buffer.put(to + i, buffer.get(bodyStart + i));
+        }
+    }
+
+    private void writeTag(int tag) {
+        if (buffer == null) throw new IllegalStateException("No message, call begin() first");
+        if (tag <= 0) throw new IllegalArgumentException("Invalid tag " + tag);
+        final FieldDef fieldDef = dictionary.getFieldDef(tag);
+        if (fieldDef != null) {
+            final byte[] prefix = fieldDef.getTagPrefix();
+            ensure(prefix.length);
+            put(prefix);
+        } else {
+            writeDecimal(tag, 0);
+            ensure(1);
+            buffer.put(pos++, (byte) '=');
+        }
+    }
+
+    private void endField() {
+        ensure(1);
+        buffer.put(pos++, SOH);
+    }
+
+    /**
+     * Writes a number, with a decimal point before the last 'scale' digits.
+     */
+    private void writeDecimal(long value, int scale) {
+        // Work with the negative value, so Long.MIN_VALUE doesn't overflow.
+        long v = value < 0 ? value : -value;
+        final int width = Math.max(digitCount(v), scale + 1);
+        final int length = (value < 0 ? 1 : 0) + width + (scale > 0 ? 1 : 0);
+        ensure(length);
+        int p = pos + length;
+        for (int i = 0; i < width; i++) {
+            if (i == scale && scale > 0)
+                buffer.put(--p, (byte) '.');
+            buffer.put(--p, (byte) ('0' - v % 10));
+            v /= 10;
+        }
+        if (value < 0)
+            buffer.put(--p, (byte) '-');
+        pos += length;
+    }
+
+    /**
+     * Writes a non-negative number as exactly 'width' digits, with leading zeros.
+     */
+    private void writeDigits(int value, int width) {
+        for (int p = pos + width - 1; p >= pos; p--) {
+            buffer.put(p, (byte) ('0' + value % 10));
+            value /= 10;
+        }
+        pos += width;
+    }
+
+    /**
+     * @param v a negative (or zero) number
+     * @return the number of digits in -v
+     */
+    private static int digitCount(long v) {
+        int count = 1;
+        while (v <= -10) {
+            v /= 10;
+            count++;
+        }
+        return count;
+    }
+
+    private void put(byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++)
+            buffer.put(pos++, bytes[i]);
+    }
+
+    private void ensure(int length) {
+        if (pos + length > buffer.limit())
+            throw new BufferOverflowException();
+    }
+}
@@ -0,0 +1,14 @@
+package org.simplefix.message;
+
+/**
+ * Thrown when a FIX message cannot be decoded.
+ */
+public class MessageFormatException extends RuntimeException {
+    public MessageFormatException(String message) {
+        super(message);
+    }
+
+    public MessageFormatException(String msg, Exception e) {
+        super(msg, e);
+    }
+}
@@ -0,0 +1,249 @@
+package org.simplefix.message;
+
+import org.slf4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * A pool of {@link PooledMessage}s, so keeping messages beyond their handler doesn't make garbage.
+ * Once the pool has warmed up, copying a message into a pooled one and releasing it doesn't
+ * allocate.
+ * <br>
+ * Each pool has one owner thread (e.g. the I/O thread of a session), which is the only thread that
+ * may acquire from it.   Messages can be released on any thread: the free list is a lock-free stack
+ * that any thread can push onto, and only the owner pops from, so it has no ABA problem.
+ * <br>
+ * Sizing: the pool starts with initialSize messages, and makes more when it runs out.   When they
+ * come back, at most maxPooled are kept, and messages whose buffer grew past maxBufferCapacity
+ * are dropped, so a burst of messages (or of large messages) doesn't keep its memory forever.
+ * <br>
+ * In leak detection mode (for tests), the pool records where each message was acquired, checks
+ * that only the owner thread acquires, and {@link #checkForLeaks()} fails if any message hasn't
+ * been released.
+ */
+public class MessagePool {
+    private static final Logger log = getLogger(MessagePool.class);
+
+    public static final int DEFAULT_BUFFER_CAPACITY = 1024;
+    public static final int DEFAULT_MAX_BUFFER_CAPACITY = 64 * 1024;
+
+    private final int maxPooled;
+    private final int bufferCapacity;
+    private final int maxBufferCapacity;
+
+    private final AtomicReference<PooledMessage> head = new AtomicReference<PooledMessage>();
+    private final AtomicInteger pooled = new AtomicInteger();
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicLong discarded = new AtomicLong();
+    private long created;
+
+    private volatile boolean leakDetection;
+    private Thread owner;
+    private final Map<PooledMessage, Throwable> acquired =
+            Collections.synchronizedMap(new IdentityHashMap<PooledMessage, Throwable>());
+
+    /**
+     * @param initialSize the number of messages to make now
+     * @param maxPooled   the most messages to keep when they are released
+     */
+    public MessagePool(int initialSize, int maxPooled) {
+        this(initialSize, maxPooled, DEFAULT_BUFFER_CAPACITY, DEFAULT_MAX_BUFFER_CAPACITY);
+    }
+
+    /**
+     * @param initialSize       the number of messages to make now
+     * @param maxPooled         the most messages to keep when they are released
+     * @param bufferCapacity    the initial size of the buffer of each message, which grows for larger messages
+     * @param maxBufferCapacity messages whose buffer grew larger than this are not kept
+     */
+    public MessagePool(int initialSize, int maxPooled, int bufferCapacity, int maxBufferCapacity) {
+        if (initialSize < 0 || maxPooled < initialSize)
+            throw new IllegalArgumentException("Invalid sizes: initialSize " + initialSize + ", maxPooled " + maxPooled);
+        if (bufferCapacity <= 0 || maxBufferCapacity < bufferCapacity)
+            throw new IllegalArgumentException("Invalid buffer capacities: " + bufferCapacity + ", " + maxBufferCapacity);
+        this.maxPooled = maxPooled;
+        this.bufferCapacity = bufferCapacity;
+        this.maxBufferCapacity = maxBufferCapacity;
+        for (int i = 0; i < initialSize; i++) {
+            push(new PooledMessage(this, bufferCapacity));
+            pooled.incrementAndGet();
+            created++;
+        }
+    }
+
+    /**
+     * Turns leak detection on or off.   It records a stack trace for every message, so only use it
+     * in tests.
+     */
+    public void setLeakDetection(boolean leakDetection) {
+        this.leakDetection = leakDetection;
+        if (!leakDetection)
+            acquired.clear();
+    }
+
+    public boolean isLeakDetection() {
+        return leakDetection;
+    }
+
+    /**
+     * Copies a message into a pooled message, e.g. to keep it after the handler returns.   Must be
+     * called on the owner thread.
+     * @param msg the message
+     * @return the copy, with one reference
+     */
+    public PooledMessage copyOf(DecodedMessage msg) {
+        final PooledMessage pooledMessage = acquire();
+        pooledMessage.copy(msg);
+        return pooledMessage;
+    }
+
+    /**
+     * Copies a raw message into a pooled message, and decodes it.   Must be called on the owner thread.
+     * @param buffer  the buffer containing the message
+     * @param offset  absolute offset of the message in the buffer
+     * @param length  length of the message
+     * @param decoder the decoder to use
+     * @return the decoded copy, with one reference
+     * @throws MessageFormatException if the message is not well formed, in which case the pooled
+     *                                message has already been released
+     */
+    public PooledMessage decode(ByteBuffer buffer, int offset, int length, MessageDecoder decoder)
+            throws MessageFormatException {
+        final PooledMessage pooledMessage = acquire();
+        try {
+            pooledMessage.decode(buffer, offset, length, decoder);
+        } catch (MessageFormatException e) {
+            pooledMessage.release();
+            throw e;
+        }
+        return pooledMessage;
+    }
+
+    private PooledMessage acquire() {
+        final boolean tracking = leakDetection;
+        if (tracking)
+            checkOwner();
+        PooledMessage m;
+        while (true) {
+            m = head.get();
+            if (m == null)
+                break;
+            // Only the owner pops, so m.next can't change under us.
+            if (head.compareAndSet(m, m.next)) {
+                pooled.decrementAndGet();
+                break;
+            }
+        }
+        if (m == null) {
+            m = new PooledMessage(this, bufferCapacity);
+            created++;
+        }
+        m.next = null;
+        m.acquired();
+        outstanding.incrementAndGet();
+        if (tracking) {
+            m.acquiredAt = new Throwable("Message acquired here");
+            acquired.put(m, m.acquiredAt);
+        }
+        return m;
+    }
+
+    private void checkOwner() {
+        final Thread current = Thread.currentThread();
+        if (owner == null)
+            owner = current;
+        else if (owner != current)
+            throw new IllegalStateException("Pool is owned by " + owner.getName() + ", not " + current.getName());
+    }
+
+    /**
+     * Takes back a message whose last reference was released.
+     */
+    void recycle(PooledMessage m) {
+        outstanding.decrementAndGet();
+        if (m.acquiredAt != null) {
+            acquired.remove(m);
+            m.acquiredAt = null;
+        }
+        if (m.getBuffer().capacity() > maxBufferCapacity) {
+            discarded.incrementAndGet();
+            return;
+        }
+        if (pooled.incrementAndGet() > maxPooled) {
+            pooled.decrementAndGet();
+            discarded.incrementAndGet();
+            return;
+        }
+        push(m);
+    }
+
+    private void push(PooledMessage m) {
+        PooledMessage h;
+        do {
+            h = head.get();
+            m.next = h;
+        } while (!head.compareAndSet(h, m));
+    }
+
+    /**
+     * @return the number of messages waiting to be re-used
+     */
+    public int getPooledCount() {
+        return pooled.get();
+    }
+
+    /**
+     * @return the number of messages that have been acquired and not released
+     */
+    public int getOutstandingCount() {
+        return outstanding.get();
+    }
+
+    /**
+     * @return the number of messages made, including the initial ones.  Read on the owner thread.
+     */
+    public long getCreatedCount() {
+        return created;
+    }
+
+    /**
+     * @return the number of released messages that were dropped, because the pool was full or their
+     *         buffer had grown too large
+     */
+    public long getDiscardedCount() {
+        return discarded.get();
+    }
+
+    /**
+     * @return where each message that hasn't been released was acquired, in leak detection mode
+     */
+    public List<Throwable> getLeaks() {
+        synchronized (acquired) {
+            return new ArrayList<Throwable>(acquired.values());
+        }
+    }
+
+    /**
+     * Checks that every message acquired in leak detection mode has been released, e.g. at the end
+     * of a test.
+     * @throws IllegalStateException if some haven't, with where the first one was acquired as the cause
+     */
+    public void checkForLeaks() throws IllegalStateException {
+        final List<Throwable> leaks = getLeaks();
+        if (leaks.isEmpty())
+            return;
+        for (Throwable leak : leaks)
+            log.warn("Message not released", leak);
+        throw new IllegalStateException(leaks.size() + " messages were not released", leaks.get(0));
+    }
+}
@@ -0,0 +1,221 @@
+package org.simplefix.message;
+
+import org.simplefix.dictionary.MessageLayout;
+import org.simplefix.dictionary.TagIndex;
+
+/**
+ * Validates decoded messages against the dictionary: required fields, fields that are not defined for
+ * the message type, duplicate fields, repeating group structure and NumInGroup counts.
+ * <br>
+ * Each field of the message already has its {@link MessageLayout.Entry} from decoding, so validation
+ * just sets a bit per field and then compares the bits with the required bitsets that the layout
+ * compiled from the dictionary, a word at a time.   Nothing is allocated once the bitset has grown to
+ * fit the largest message type.
+ * <br>
+ * Validation stops at the first problem, which is available from {@link #getRejectReason()} and
+ * {@link #getRefTagID()}, for the Reject message.
+ * <br>
+ * Not thread safe, use one validator per thread (or per session).
+ */
+public class MessageValidator {
+    private boolean allowUserDefinedFields = true;
+
+    private MessageLayout layout;
+
+    /** The entries that have been seen, indexed by entry index. **/
+    private long[] seen = new long[16];
+
+    // The groups that are open, outermost first, and the instance of each.
+    private MessageLayout.Group[] groupStack = new MessageLayout.Group[8];
+    private int[] instanceStack = new int[8];
+    private int depth;
+
+    private RejectReason rejectReason;
+    private int refTagID;
+    private int fieldIndex;
+
+    /**
+     * @param allowUserDefinedFields if true (the default), user defined fields (tags 5000 and up) are
+     *                               allowed in any message, even if the dictionary doesn't define them
+     */
+    public void setAllowUserDefinedFields(boolean allowUserDefinedFields) {
+        this.allowUserDefinedFields = allowUserDefinedFields;
+    }
+
+    /**
+     * @param msg the decoded message, which must not have been decoded in lazy mode, as that doesn't
+     *            place the fields in their groups
+     * @return true if the message is valid, false if not (see {@link #getRejectReason()})
+     */
+    public boolean validate(DecodedMessage msg) {
+        if (msg.isLazy())
+            throw new IllegalArgumentException("Validation needs a message that was not decoded in lazy mode");
+        rejectReason = null;
+        refTagID = 0;
+        fieldIndex = -1;
+        layout = msg.getLayout();
+        if (layout == null)
+            throw new IllegalArgumentException("The message has not been decoded");
+        if (layout.getMessageType() == null) {
+            final int index = msg.getMsgTypeIndex();
+            return index < 0 ? reject(RejectReason.REQUIRED_TAG_MISSING, 35, -1)
+                    : reject(RejectReason.INVALID_MSG_TYPE, 35, index);
+        }
+        final int words = MessageLayout.words(layout.getEntryCount());
+        if (seen.length < words)
+            seen = new long[Math.max(words, seen.length * 2)];
+        else
+            clearBits(0, words << 6);
+        depth = 0;
+
+        final int fieldCount = msg.getFieldCount();
+        for (int i = 0; i < fieldCount; i++) {
+            final int tag = msg.getTag(i);
+            if (msg.getValueLength(i) == 0)
+                return reject(RejectReason.TAG_SPECIFIED_WITHOUT_A_VALUE, tag, i);
+
+            // Close the groups this field is outside of, and open the group it is in.
+            final MessageLayout.Group group = msg.getGroup(i);
+            final int groupDepth = group == null ? 0 : group.getDepth();
+            while (depth > groupDepth || (depth > 0 && depth == groupDepth && groupStack[depth - 1] != group)) {
+                if (!endInstance(groupStack[depth - 1]))
+                    return false;
+                depth--;
+            }
+            final int instance = msg.getGroupInstance(i);
+            if (groupDepth > depth) {
+                push(group, instance);
+            } else if (groupDepth > 0 && instance != instanceStack[depth - 1]) {
+                if (!endInstance(group))
+                    return false;
+                instanceStack[depth - 1] = instance;
+            }
+
+            final MessageLayout.Entry entry = msg.getEntry(i);
+            if (entry == null) {
+                final boolean userDefined = allowUserDefinedFields && tag > TagIndex.MAX_DENSE_TAG;
+                if (msg.getFieldDef(i) == null && !userDefined)
+                    return reject(RejectReason.INVALID_TAG_NUMBER, tag, i);
+                if (layout.getEntry(tag) != null)
+                    return reject(RejectReason.REPEATING_GROUP_FIELDS_OUT_OF_ORDER, tag, i);
+                if (!userDefined)
+                    return reject(RejectReason.TAG_NOT_DEFINED_FOR_MESSAGE_TYPE, tag, i);
+                continue;
+            }
+            if (groupDepth > 0 && instance < 0)
+                return reject(RejectReason.REPEATING_GROUP_FIELDS_OUT_OF_ORDER, tag, i);
+            final int bit = entry.getIndex();
+            if ((seen[bit >>> 6] & (1L << bit)) != 0)
+                return reject(RejectReason.TAG_APPEARS_MORE_THAN_ONCE, tag, i);
+            seen[bit >>> 6] |= 1L << bit;
+            if (entry.getNestedGroup() != null && numInGroup(msg, i) != msg.getGroupInstanceCount(i))
+                return reject(RejectReason.INCORRECT_NUM_IN_GROUP_COUNT, tag, i);
+        }
+        while (depth > 0) {
+            if (!endInstance(groupStack[depth - 1]))
+                return false;
+            depth--;
+        }
+        return checkRequired(layout.getRequired(), 0);
+    }
+
+    /**
+     * @return the reason the last message was not valid, or null if it was
+     */
+    public RejectReason getRejectReason() {
+        return rejectReason;
+    }
+
+    /**
+     * @return the tag that caused the last message to be rejected, or zero
+     */
+    public int getRefTagID() {
+        return refTagID;
+    }
+
+    /**
+     * @return the index of the field that caused the last message to be rejected, or -1 if there is
+     *         no such field (e.g. a required field is missing)
+     */
+    public int getFieldIndex() {
+        return fieldIndex;
+    }
+
+    private void push(MessageLayout.Group group, int instance) {
+        if (depth == groupStack.length) {
+            MessageLayout.Group[] groups = new MessageLayout.Group[depth * 2];
+            System.arraycopy(groupStack, 0, groups, 0, depth);
+            groupStack = groups;
+            int[] instances = new int[depth * 2];
+            System.arraycopy(instanceStack, 0, instances, 0, depth);
+            instanceStack = instances;
+        }
+        groupStack[depth] = group;
+        instanceStack[depth] = instance;
+        depth++;
+    }
+
+    /**
+     * Checks the required fields of a group instance, then clears the bits of the group so the next
+     * instance starts afresh.
+     */
+    private boolean endInstance(MessageLayout.Group group) {
+        if (!checkRequired(group.getRequired(), group.getFirstWord()))
+            return false;
+        clearBits(group.getFirstEntry(), group.getEndEntry());
+        return true;
+    }
+
+    private boolean checkRequired(long[] required, int firstWord) {
+        for (int w = 0; w < required.length; w++) {
+            final long missing = required[w] & ~seen[firstWord + w];
+            if (missing != 0) {
+                final int index = ((firstWord + w) << 6) + Long.numberOfTrailingZeros(missing);
+                return reject(RejectReason.REQUIRED_TAG_MISSING, layout.getEntryByIndex(index).getTag(), -1);
+            }
+        }
+        return true;
+    }
+
+    private void clearBits(int from, int to) {
+        if (from >= to)
+            return;
+        final int first = from >>> 6;
+        final int last = (to - 1) >>> 6;
+        final long firstMask = -1L << from;
+        final long lastMask = -1L >>> -to;
+        if (first == last) {
+            seen[first] &= ~(firstMask & lastMask);
+            return;
+        }
+        seen[first] &= ~firstMask;
+        for (int w = first + 1; w < last; w++)
+            seen[w] = 0;
+        seen[last] &= ~lastMask;
+    }
+
+    /**
+     * @return the value of a NumInGroup field, or -1 if it isn't a number
+     */
+    private static int numInGroup(DecodedMessage msg, int index) {
+        final int start = msg.getValueOffset(index);
+        final int end = start + msg.getValueLength(index);
+        if (end - start > 9)
+            return -1;
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            byte b = msg.getBuffer().get(i);
+            if (b < '0' || b > '9')
+                return -1;
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+
+    private boolean reject(RejectReason reason, int tag, int index) {
+        rejectReason = reason;
+        refTagID = tag;
+        fieldIndex = index;
+        return false;
+    }
+}
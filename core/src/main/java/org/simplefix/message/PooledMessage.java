@@ -0,0 +1,117 @@
+package org.simplefix.message;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A decoded message with its own copy of the bytes, from a {@link MessagePool}, for keeping a message
+ * after the handler that received it returns (e.g. queueing it, or handing it to another thread).
+ * <br>
+ * Pooled messages are reference counted: the message starts with one reference, each extra holder
+ * calls {@link #retain()}, and every holder calls {@link #release()} when it is done.   The last
+ * release returns the message to its pool, to be re-used, so it must not be touched after that.
+ */
+public final class PooledMessage {
+    private final MessagePool pool;
+    private final DecodedMessage message = new DecodedMessage();
+    private final AtomicInteger refCount = new AtomicInteger();
+    private ByteBuffer buffer;
+
+    /** The next message in the pool's free list. **/
+    PooledMessage next;
+
+    /** Where the message was acquired, in leak detection mode. **/
+    Throwable acquiredAt;
+
+    PooledMessage(MessagePool pool, int capacity) {
+        this.pool = pool;
+        this.buffer = ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * @return the decoded message, which refers to the bytes in {@link #getBuffer()}
+     * @throws IllegalStateException if the message has been released
+     */
+    public DecodedMessage getMessage() throws IllegalStateException {
+        if (refCount.get() <= 0)
+            throw new IllegalStateException("Message was released");
+        return message;
+    }
+
+    /**
+     * @return the buffer with the bytes of the message, from index 0
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public int refCount() {
+        return refCount.get();
+    }
+
+    /**
+     * Adds a reference, for another holder of the message.
+     * @return this
+     * @throws IllegalStateException if the message has already been released
+     */
+    public PooledMessage retain() throws IllegalStateException {
+        while (true) {
+            final int count = refCount.get();
+            if (count <= 0)
+                throw new IllegalStateException("Message was released");
+            if (refCount.compareAndSet(count, count + 1))
+                return this;
+        }
+    }
+
+    /**
+     * Removes a reference.   Can be called from any thread.
+     * @return true if that was the last reference, and the message went back to its pool
+     * @throws IllegalStateException if the message has already been released
+     */
+    public boolean release() throws IllegalStateException {
+        while (true) {
+            final int count = refCount.get();
+            if (count <= 0)
+                throw new IllegalStateException("Message was released too many times");
+            if (refCount.compareAndSet(count, count - 1)) {
+                if (count > 1)
+                    return false;
+                pool.recycle(this);
+                return true;
+            }
+        }
+    }
+
+    void acquired() {
+        refCount.set(1);
+    }
+
+    /**
+     * Copies a decoded message into this one.
+     */
+    void copy(DecodedMessage src) {
+        ensureCapacity(src.getLength());
+        src.copyTo(buffer, message);
+    }
+
+    /**
+     * Copies a raw message into this one, and decodes it.
+     */
+    void decode(ByteBuffer src, int offset, int length, MessageDecoder decoder) throws MessageFormatException {
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++)
+            buffer.put(i, src.get(offset + i));
+        decoder.decode(buffer, 0, length, message);
+    }
+
+    private void ensureCapacity(int length) {
+        if (buffer.capacity() < length)
+            buffer = ByteBuffer.allocate(Math.max(length, buffer.capacity() * 2));
+    }
+
+    @Override
+    public String toString() {
+        return "PooledMessage{refCount=" + refCount.get() + ", " + message + '}';
+    }
+}
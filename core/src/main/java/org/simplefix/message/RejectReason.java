@@ -0,0 +1,28 @@
+package org.simplefix.message;
+
+/**
+ * Reasons for rejecting a message, with the FIX SessionRejectReason (373) codes.
+ */
+public enum RejectReason {
+    INVALID_TAG_NUMBER(0),
+    REQUIRED_TAG_MISSING(1),
+    TAG_NOT_DEFINED_FOR_MESSAGE_TYPE(2),
+    TAG_SPECIFIED_WITHOUT_A_VALUE(4),
+    INVALID_MSG_TYPE(11),
+    TAG_APPEARS_MORE_THAN_ONCE(13),
+    REPEATING_GROUP_FIELDS_OUT_OF_ORDER(15),
+    INCORRECT_NUM_IN_GROUP_COUNT(16);
+
+    private final int code;
+
+    RejectReason(int code) {
+        this.code = code;
+    }
+
+    /**
+     * @return the SessionRejectReason (373) value
+     */
+    public int getCode() {
+        return code;
+    }
+}
@@ -0,0 +1,186 @@
+package org.simplefix.metrics;
+
+/**
+ * A latency histogram with HDR style buckets: values are grouped by their highest bit, and each
+ * group is split into linear sub-buckets, so the relative error is the same (at most 1/32, about 3%,
+ * with the default 6 bits) from nanoseconds to seconds.   Recording a value is a few shifts and an
+ * increment, and never allocates.
+ * <br>
+ * Not thread safe: record from one thread.   Other threads may read it (e.g. for JMX) without
+ * locking, and may see it a few values behind; use {@link #copy()} for a consistent view.
+ */
+public class Histogram {
+    /** 32 sub-buckets per power of two, about 8K per histogram. **/
+    public static final int DEFAULT_SUB_BUCKET_BITS = 6;
+
+    /** About 68 seconds, in nanoseconds. **/
+    public static final long DEFAULT_HIGHEST_TRACKABLE_VALUE = 1L << 36;
+
+    private final int subBucketBits;
+    private final long subBucketMask;
+    private final long highestTrackableValue;
+    private final long[] counts;
+
+    private long totalCount;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    public Histogram() {
+        this(DEFAULT_SUB_BUCKET_BITS, DEFAULT_HIGHEST_TRACKABLE_VALUE);
+    }
+
+    /**
+     * @param subBucketBits         the precision: values are kept to within 1 part in 2^(bits - 1)
+     * @param highestTrackableValue the largest value.  Larger values are counted as this.
+     */
+    public Histogram(int subBucketBits, long highestTrackableValue) {
+        if (subBucketBits < 1 || subBucketBits > 16)
+            throw new IllegalArgumentException("Invalid subBucketBits " + subBucketBits);
+        if (highestTrackableValue < 1)
+            throw new IllegalArgumentException("Invalid highestTrackableValue " + highestTrackableValue);
+        this.subBucketBits = subBucketBits;
+        this.subBucketMask = (1L << subBucketBits) - 1;
+        this.highestTrackableValue = highestTrackableValue;
+        this.counts = new long[index(highestTrackableValue) + 1];
+    }
+
+    /**
+     * Records a value, e.g. a latency in nanoseconds.   Negative values are counted as zero.
+     */
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        else if (value > highestTrackableValue)
+            value = highestTrackableValue;
+        counts[index(value)]++;
+        totalCount++;
+        sum += value;
+        if (value < min)
+            min = value;
+        if (value > max)
+            max = value;
+    }
+
+    /**
+     * The bucket of a value: values below 2^bits have a bucket each, and above that each power of
+     * two has 2^(bits - 1) buckets.
+     */
+    private int index(long value) {
+        final int shift = 64 - Long.numberOfLeadingZeros(value | subBucketMask) - subBucketBits;
+        return (shift << (subBucketBits - 1)) + (int) (value >>> shift);
+    }
+
+    /**
+     * @return the largest value that goes in the bucket
+     */
+    private long highestEquivalentValue(int index) {
+        final int shift = Math.max(0, (index >> (subBucketBits - 1)) - 1);
+        final long lowest = (long) (index - (shift << (subBucketBits - 1))) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * @return the smallest value recorded, or 0 if there are none
+     */
+    public long getMin() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return totalCount == 0 ? 0 : (double) sum / totalCount;
+    }
+
+    /**
+     * @param percentile e.g. 99.9
+     * @return the value that the given percentage of the values are at or below, to the precision of
+     *         the histogram, or 0 if there are none
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("Invalid percentile " + percentile);
+        long count = 0;
+        for (long c : counts)
+            count += c;
+        if (count == 0)
+            return 0;
+        final long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target)
+                return Math.min(highestEquivalentValue(i), max);
+        }
+        return max;
+    }
+
+    /**
+     * @return the number of values recorded between low and high, inclusive, to the precision of the
+     *         histogram
+     */
+    public long getCountBetween(long low, long high) {
+        long count = 0;
+        final int last = index(Math.min(Math.max(high, 0), highestTrackableValue));
+        for (int i = index(Math.min(Math.max(low, 0), highestTrackableValue)); i <= last; i++)
+            count += counts[i];
+        return count;
+    }
+
+    /**
+     * Adds the values recorded by another histogram with the same precision and range, e.g. to
+     * combine sessions.
+     */
+    public void add(Histogram other) {
+        if (other.subBucketBits != subBucketBits || other.counts.length != counts.length)
+            throw new IllegalArgumentException("Histograms have different buckets");
+        for (int i = 0; i < counts.length; i++)
+            counts[i] += other.counts[i];
+        totalCount += other.totalCount;
+        sum += other.sum;
+        if (other.totalCount > 0) {
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+    }
+
+    /**
+     * @return a copy, with a total count that matches the buckets
+     */
+    public Histogram copy() {
+        final Histogram copy = new Histogram(subBucketBits, highestTrackableValue);
+        long count = 0;
+        for (int i = 0; i < counts.length; i++) {
+            copy.counts[i] = counts[i];
+            count += counts[i];
+        }
+        copy.totalCount = count;
+        copy.sum = sum;
+        copy.min = min;
+        copy.max = max;
+        return copy;
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length; i++)
+            counts[i] = 0;
+        totalCount = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + totalCount + " mean=" + Math.round(getMean())
+                + " p50=" + getValueAtPercentile(50) + " p99=" + getValueAtPercentile(99)
+                + " p99.9=" + getValueAtPercentile(99.9) + " max=" + max;
+    }
+}
@@ -0,0 +1,180 @@
+package org.simplefix.metrics;
+
+import org.slf4j.Logger;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Publishes each session as an MBean, e.g. "org.simplefix:type=Session,name=FIX.4.4:SENDER-&gt;TARGET".
+ * The attributes are named by message type, e.g. "D.received", "D.receivedBytes" and
+ * "D.decode.p99" (latencies are in nanoseconds), and are read from the live metrics when they
+ * are asked for.   The "reset" operation clears the metrics of the session.
+ */
+public class JmxMetricsSink implements MetricsSink {
+    private static final Logger log = getLogger(JmxMetricsSink.class);
+
+    public static final String DEFAULT_DOMAIN = "org.simplefix";
+
+    private static final String[] COUNTERS = {"received", "receivedBytes", "sent", "sentBytes"};
+    private static final String[] STATISTICS = {"count", "mean", "p50", "p99", "p99.9", "max"};
+    private static final Stage[] STAGES = Stage.values();
+
+    private final MBeanServer server;
+    private final String domain;
+
+    /**
+     * Publishes to the platform MBean server.
+     */
+    public JmxMetricsSink() {
+        this(ManagementFactory.getPlatformMBeanServer(), DEFAULT_DOMAIN);
+    }
+
+    public JmxMetricsSink(MBeanServer server, String domain) {
+        this.server = server;
+        this.domain = domain;
+    }
+
+    /**
+     * @return the name of the MBean of a session
+     */
+    public ObjectName getObjectName(SessionMetrics metrics) {
+        try {
+            return new ObjectName(domain + ":type=Session,name=" + ObjectName.quote(metrics.getName()));
+        } catch (JMException e) {
+            throw new IllegalArgumentException("Invalid name " + metrics.getName(), e);
+        }
+    }
+
+    public void added(SessionMetrics metrics) {
+        try {
+            server.registerMBean(new SessionMBean(metrics), getObjectName(metrics));
+        } catch (JMException e) {
+            // Monitoring shouldn't stop the session.
+            log.warn("Unable to register " + metrics + ": " + e);
+        }
+    }
+
+    public void removed(SessionMetrics metrics) {
+        try {
+            server.unregisterMBean(getObjectName(metrics));
+        } catch (JMException e) {
+            log.warn("Unable to unregister " + metrics + ": " + e);
+        }
+    }
+
+    /**
+     * The attributes come and go with the message types, so this is a dynamic MBean.
+     */
+    private static class SessionMBean implements DynamicMBean {
+        private final SessionMetrics metrics;
+
+        private SessionMBean(SessionMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            final int dot = attribute.indexOf('.');
+            final MessageMetrics type = dot > 0 ? metrics.get(attribute.substring(0, dot)) : null;
+            if (type == null)
+                throw new AttributeNotFoundException(attribute);
+            final String name = attribute.substring(dot + 1);
+            if (name.equals("received"))
+                return type.getReceived();
+            if (name.equals("receivedBytes"))
+                return type.getReceivedBytes();
+            if (name.equals("sent"))
+                return type.getSent();
+            if (name.equals("sentBytes"))
+                return type.getSentBytes();
+            for (Stage stage : STAGES) {
+                final String prefix = stage.name().toLowerCase() + '.';
+                if (!name.startsWith(prefix))
+                    continue;
+                final Histogram latency = type.getLatency(stage);
+                final String statistic = name.substring(prefix.length());
+                if (statistic.equals("count"))
+                    return latency.getTotalCount();
+                if (statistic.equals("mean"))
+                    return latency.getMean();
+                if (statistic.equals("p50"))
+                    return latency.getValueAtPercentile(50);
+                if (statistic.equals("p99"))
+                    return latency.getValueAtPercentile(99);
+                if (statistic.equals("p99.9"))
+                    return latency.getValueAtPercentile(99.9);
+                if (statistic.equals("max"))
+                    return latency.getMax();
+            }
+            throw new AttributeNotFoundException(attribute);
+        }
+
+        public AttributeList getAttributes(String[] attributes) {
+            final AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                try {
+                    list.add(new Attribute(attribute, getAttribute(attribute)));
+                } catch (AttributeNotFoundException ignored) {
+                    // Left out, as the interface says.
+                }
+            }
+            return list;
+        }
+
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException(attribute.getName() + " is read only");
+        }
+
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            if (!"reset".equals(actionName))
+                throw new ReflectionException(new NoSuchMethodException(actionName));
+            // Not atomic with the I/O thread, so a value being recorded at the time may survive.
+            for (MessageMetrics type : metrics.getMessageTypes())
+                type.reset();
+            return null;
+        }
+
+        public MBeanInfo getMBeanInfo() {
+            final List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+            for (MessageMetrics type : metrics.getMessageTypes()) {
+                final String msgType = type.getMsgType();
+                for (String counter : COUNTERS)
+                    attributes.add(attribute(msgType + '.' + counter, "long", "Messages of type " + msgType));
+                for (Stage stage : STAGES) {
+                    final String prefix = msgType + '.' + stage.name().toLowerCase() + '.';
+                    for (String statistic : STATISTICS) {
+                        attributes.add(attribute(prefix + statistic, statistic.equals("mean") ? "double" : "long",
+                                statistic.equals("count") ? "Samples" : "Latency in nanoseconds"));
+                    }
+                }
+            }
+            final MBeanOperationInfo reset = new MBeanOperationInfo("reset", "Clears the metrics",
+                    null, "void", MBeanOperationInfo.ACTION);
+            return new MBeanInfo(SessionMBean.class.getName(), "Metrics of " + metrics.getName(),
+                    attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null,
+                    new MBeanOperationInfo[]{reset}, null);
+        }
+
+        private static MBeanAttributeInfo attribute(String name, String type, String description) {
+            return new MBeanAttributeInfo(name, type, description, true, false, false);
+        }
+    }
+}
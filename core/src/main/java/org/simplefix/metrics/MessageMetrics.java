@@ -0,0 +1,129 @@
+package org.simplefix.metrics;
+
+/**
+ * The counters and latency histograms of one message type in one session.
+ * <br>
+ * Like {@link Histogram}, these are recorded by one thread (the I/O thread of the session) without
+ * locking, and other threads may read them a few values behind.   The histogram of a stage (about
+ * 8K) is allocated when the stage is first recorded, as most types only go through some of them:
+ * a session records the handler for the types it receives, and encoding for the types it sends.
+ */
+public class MessageMetrics {
+    private static final Stage[] STAGES = Stage.values();
+
+    private final String msgType;
+    private final Histogram[] latencies;
+
+    private long received;
+    private long receivedBytes;
+    private long sent;
+    private long sentBytes;
+
+    /**
+     * @param msgType the MsgType, or {@link SessionMetrics#OTHER}
+     */
+    public MessageMetrics(String msgType) {
+        this.msgType = msgType;
+        this.latencies = new Histogram[STAGES.length];
+    }
+
+    private MessageMetrics(MessageMetrics other) {
+        this.msgType = other.msgType;
+        this.received = other.received;
+        this.receivedBytes = other.receivedBytes;
+        this.sent = other.sent;
+        this.sentBytes = other.sentBytes;
+        this.latencies = new Histogram[STAGES.length];
+        for (int i = 0; i < latencies.length; i++) {
+            final Histogram latency = other.latencies[i];
+            if (latency != null)
+                latencies[i] = latency.copy();
+        }
+    }
+
+    public String getMsgType() {
+        return msgType;
+    }
+
+    /**
+     * Counts an inbound message.
+     * @param bytes the length of the message
+     */
+    public void received(int bytes) {
+        received++;
+        receivedBytes += bytes;
+    }
+
+    /**
+     * Counts an outbound message.
+     * @param bytes the length of the message
+     */
+    public void sent(int bytes) {
+        sent++;
+        sentBytes += bytes;
+    }
+
+    /**
+     * @param stage the stage
+     * @param nanos how long it took, in nanoseconds
+     */
+    public void record(Stage stage, long nanos) {
+        Histogram latency = latencies[stage.ordinal()];
+        if (latency == null)
+            latency = latencies[stage.ordinal()] = new Histogram();
+        latency.record(nanos);
+    }
+
+    public long getReceived() {
+        return received;
+    }
+
+    public long getReceivedBytes() {
+        return receivedBytes;
+    }
+
+    public long getSent() {
+        return sent;
+    }
+
+    public long getSentBytes() {
+        return sentBytes;
+    }
+
+    /**
+     * @return the latencies of the stage, in nanoseconds.   A new, empty histogram if the stage has
+     * not been recorded.
+     */
+    public Histogram getLatency(Stage stage) {
+        final Histogram latency = latencies[stage.ordinal()];
+        return latency != null ? latency : new Histogram();
+    }
+
+    /**
+     * @return a copy, for a snapshot
+     */
+    public MessageMetrics copy() {
+        return new MessageMetrics(this);
+    }
+
+    public void reset() {
+        received = receivedBytes = sent = sentBytes = 0;
+        for (Histogram latency : latencies) {
+            if (latency != null)
+                latency.reset();
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(msgType).append(": received=").append(received).append(" (").append(receivedBytes)
+                .append(" bytes) sent=").append(sent).append(" (").append(sentBytes).append(" bytes)");
+        for (Stage stage : STAGES) {
+            final Histogram latency = latencies[stage.ordinal()];
+            if (latency != null && latency.getTotalCount() > 0)
+                sb.append("\n  ").append(stage.name().toLowerCase()).append(" ns: ").append(latency);
+        }
+        return sb.toString();
+    }
+}
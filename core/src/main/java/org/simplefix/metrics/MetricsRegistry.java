@@ -0,0 +1,81 @@
+package org.simplefix.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The metrics of all the sessions of an application, and the sinks that publish them.
+ * <br>
+ * <pre>
+ * MetricsRegistry registry = new MetricsRegistry();
+ * registry.addSink(new JmxMetricsSink());
+ * SessionMetrics metrics = new SessionMetrics(session.getSessionID().toString(), dictionary);
+ * session.setMetrics(metrics);
+ * registry.add(metrics);
+ * </pre>
+ * Thread safe.
+ */
+public class MetricsRegistry {
+    private final Map<String, SessionMetrics> sessions = new ConcurrentHashMap<String, SessionMetrics>();
+    private final List<MetricsSink> sinks = new CopyOnWriteArrayList<MetricsSink>();
+
+    /**
+     * Adds a sink, and tells it about the sessions already in the registry.
+     */
+    public synchronized void addSink(MetricsSink sink) {
+        sinks.add(sink);
+        for (SessionMetrics metrics : sessions.values())
+            sink.added(metrics);
+    }
+
+    /**
+     * Removes a sink, and tells it to remove the sessions.
+     */
+    public synchronized void removeSink(MetricsSink sink) {
+        if (!sinks.remove(sink))
+            return;
+        for (SessionMetrics metrics : sessions.values())
+            sink.removed(metrics);
+    }
+
+    /**
+     * Adds a session.
+     * @throws IllegalArgumentException if there is already a session with the same name
+     */
+    public synchronized void add(SessionMetrics metrics) {
+        if (sessions.containsKey(metrics.getName()))
+            throw new IllegalArgumentException("Already have metrics for " + metrics.getName());
+        sessions.put(metrics.getName(), metrics);
+        for (MetricsSink sink : sinks)
+            sink.added(metrics);
+    }
+
+    public synchronized void remove(SessionMetrics metrics) {
+        if (sessions.get(metrics.getName()) != metrics)
+            return;
+        sessions.remove(metrics.getName());
+        for (MetricsSink sink : sinks)
+            sink.removed(metrics);
+    }
+
+    /**
+     * @param name the name of the session
+     * @return the metrics of the session, or null if it isn't in the registry
+     */
+    public SessionMetrics get(String name) {
+        return sessions.get(name);
+    }
+
+    /**
+     * @return a snapshot of each session
+     */
+    public List<MetricsSnapshot> snapshot() {
+        final List<MetricsSnapshot> snapshots = new ArrayList<MetricsSnapshot>();
+        for (SessionMetrics metrics : sessions.values())
+            snapshots.add(metrics.snapshot());
+        return snapshots;
+    }
+}
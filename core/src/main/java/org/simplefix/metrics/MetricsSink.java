@@ -0,0 +1,17 @@
+package org.simplefix.metrics;
+
+/**
+ * Publishes the metrics of the sessions in a {@link MetricsRegistry}, e.g. over JMX.   Sinks read
+ * the live metrics when they are asked for them, so the sessions don't do anything extra.
+ */
+public interface MetricsSink {
+    /**
+     * A session was added to the registry.
+     */
+    void added(SessionMetrics metrics);
+
+    /**
+     * A session was removed from the registry.
+     */
+    void removed(SessionMetrics metrics);
+}
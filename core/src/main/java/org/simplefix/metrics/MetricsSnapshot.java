@@ -0,0 +1,58 @@
+package org.simplefix.metrics;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A copy of the metrics of one session at a point in time, e.g. to log, or to diff with an earlier
+ * snapshot.
+ */
+public class MetricsSnapshot {
+    private final String name;
+    private final long timeMillis;
+    private final List<MessageMetrics> messageTypes;
+
+    MetricsSnapshot(String name, long timeMillis, List<MessageMetrics> messageTypes) {
+        this.name = name;
+        this.timeMillis = timeMillis;
+        this.messageTypes = Collections.unmodifiableList(messageTypes);
+    }
+
+    /**
+     * @return the name of the session
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return when the snapshot was taken
+     */
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public List<MessageMetrics> getMessageTypes() {
+        return messageTypes;
+    }
+
+    /**
+     * @param msgType the MsgType
+     * @return the metrics of the message type, or null if it hadn't been seen
+     */
+    public MessageMetrics get(String msgType) {
+        for (MessageMetrics metrics : messageTypes) {
+            if (metrics.getMsgType().equals(msgType))
+                return metrics;
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder(name);
+        for (MessageMetrics metrics : messageTypes)
+            sb.append('\n').append(metrics);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,172 @@
+package org.simplefix.metrics;
+
+import org.simplefix.dictionary.Dictionary;
+import org.simplefix.dictionary.MessageType;
+import org.simplefix.dictionary.TagIndex;
+import org.simplefix.message.DecodedMessage;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The metrics of one session, by message type.   Give it to the {@code Session}
+ * (and the decoder) to record, and add it to a {@link MetricsRegistry} to publish it.
+ * <br>
+ * Message types are found by their MsgType bytes packed into an int, like
+ * {@link org.simplefix.dictionary.Dictionary#getLayout(java.nio.ByteBuffer, int, int)}, so finding
+ * the metrics of a message doesn't allocate once its type has been seen.   Only the message types of
+ * the session's dictionary get an entry of their own, as the MsgTypes come from the counterparty:
+ * MsgTypes that aren't in the dictionary, MsgTypes longer than four characters, and messages without
+ * a MsgType, share the {@link #OTHER} entry.
+ * <br>
+ * Record from one thread, the I/O thread of the session.   Other threads can read it at any time.
+ */
+public class SessionMetrics {
+    /** The message type of the entry for unusual MsgTypes. **/
+    public static final String OTHER = "other";
+
+    private final String name;
+
+    /** The MsgTypes of the dictionary, by their packed bytes. **/
+    private final TagIndex<String> known = new TagIndex<String>();
+
+    /** Only used by the recording thread. **/
+    private final TagIndex<MessageMetrics> byPackedType = new TagIndex<MessageMetrics>();
+    private MessageMetrics other;
+
+    /** For other threads, added to when a new message type is seen. **/
+    private final List<MessageMetrics> messageTypes = new CopyOnWriteArrayList<MessageMetrics>();
+
+    /**
+     * @param name       the name of the session, e.g. the SessionID
+     * @param dictionary the dictionary of the session, for the message types to keep apart
+     */
+    public SessionMetrics(String name, Dictionary dictionary) {
+        if (name == null) throw new IllegalArgumentException("name cannot be null!");
+        if (dictionary == null) throw new IllegalArgumentException("dictionary cannot be null!");
+        this.name = name;
+        for (MessageType messageType : dictionary.getMessageTypes()) {
+            final int packed = pack(messageType.getMsgTypeBytes());
+            if (packed > 0)
+                known.put(packed, messageType.getMsgType());
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param msgType the MsgType as ASCII bytes
+     * @return the metrics of the message type
+     */
+    public MessageMetrics forType(byte[] msgType) {
+        final int packed = pack(msgType);
+        if (packed < 0)
+            return other();
+        final MessageMetrics metrics = byPackedType.get(packed);
+        return metrics != null ? metrics : add(packed);
+    }
+
+    /**
+     * @param buffer the buffer
+     * @param offset absolute offset of the MsgType value
+     * @param length length of the MsgType value
+     * @return the metrics of the message type
+     */
+    public MessageMetrics forType(ByteBuffer buffer, int offset, int length) {
+        if (length <= 0 || length > 4)
+            return other();
+        int packed = 0;
+        for (int i = offset; i < offset + length; i++) {
+            final byte b = buffer.get(i);
+            if (b <= 0)
+                return other();
+            packed = (packed << 8) | b;
+        }
+        final MessageMetrics metrics = byPackedType.get(packed);
+        return metrics != null ? metrics : add(packed);
+    }
+
+    /**
+     * @return the metrics of the type of a decoded message
+     */
+    public MessageMetrics forMessage(DecodedMessage msg) {
+        final int index = msg.getMsgTypeIndex();
+        if (index < 0)
+            return other();
+        return forType(msg.getBuffer(), msg.getValueOffset(index), msg.getValueLength(index));
+    }
+
+    /**
+     * @return the bytes packed into an int, or -1 if they won't fit (more than four bytes, or not ASCII)
+     */
+    private static int pack(byte[] bytes) {
+        if (bytes.length == 0 || bytes.length > 4)
+            return -1;
+        int packed = 0;
+        for (byte b : bytes) {
+            if (b <= 0)
+                return -1;
+            packed = (packed << 8) | b;
+        }
+        return packed;
+    }
+
+    /**
+     * Adds the entry for a message type the first time it is seen, if it is in the dictionary.
+     */
+    private MessageMetrics add(int packed) {
+        final String msgType = known.get(packed);
+        if (msgType == null)
+            return other();
+        final MessageMetrics metrics = new MessageMetrics(msgType);
+        byPackedType.put(packed, metrics);
+        messageTypes.add(metrics);
+        return metrics;
+    }
+
+    private MessageMetrics other() {
+        if (other == null) {
+            other = new MessageMetrics(OTHER);
+            messageTypes.add(other);
+        }
+        return other;
+    }
+
+    /**
+     * @return the message types seen so far, in the order they were seen
+     */
+    public List<MessageMetrics> getMessageTypes() {
+        return messageTypes;
+    }
+
+    /**
+     * @param msgType the MsgType
+     * @return the metrics of the message type, or null if it hasn't been seen
+     */
+    public MessageMetrics get(String msgType) {
+        for (MessageMetrics metrics : messageTypes) {
+            if (metrics.getMsgType().equals(msgType))
+                return metrics;
+        }
+        return null;
+    }
+
+    /**
+     * @return a copy of the metrics so far
+     */
+    public MetricsSnapshot snapshot() {
+        final List<MessageMetrics> copies = new ArrayList<MessageMetrics>(messageTypes.size());
+        for (MessageMetrics metrics : messageTypes)
+            copies.add(metrics.copy());
+        return new MetricsSnapshot(name, System.currentTimeMillis(), copies);
+    }
+
+    @Override
+    public String toString() {
+        return "SessionMetrics{" + name + '}';
+    }
+}
@@ -0,0 +1,18 @@
+package org.simplefix.metrics;
+
+/**
+ * The stages of handling a message that have a latency histogram.
+ */
+public enum Stage {
+    /** Decoding an inbound message. **/
+    DECODE,
+
+    /** Validating an inbound message against the dictionary. **/
+    VALIDATE,
+
+    /** The application handling an inbound message. **/
+    HANDLER,
+
+    /** Encoding an outbound message, from begin to end. **/
+    ENCODE,
+}
@@ -0,0 +1,11 @@
+package org.simplefix.ring;
+
+/**
+ * Spins without giving up the CPU.  The lowest latency, as long as the consumer has a core of its
+ * own (e.g. the process is pinned with taskset / isolcpus).
+ */
+public class BusySpinWaitStrategy implements WaitStrategy {
+    public int idle(int idleCount) {
+        return idleCount < Integer.MAX_VALUE ? idleCount + 1 : idleCount;
+    }
+}
@@ -0,0 +1,8 @@
+package org.simplefix.ring;
+
+/**
+ * Creates the entries of a {@link RingBuffer}, once, when the ring is created.
+ */
+public interface EventFactory<E> {
+    E newInstance();
+}
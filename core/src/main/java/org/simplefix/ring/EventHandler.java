@@ -0,0 +1,13 @@
+package org.simplefix.ring;
+
+/**
+ * Handles the entries of a {@link RingBuffer} on the consumer thread.
+ */
+public interface EventHandler<E> {
+    /**
+     * @param event      the entry, which is re-used once this returns
+     * @param sequence   the sequence number of the entry
+     * @param endOfBatch true if this is the last entry available right now, e.g. to flush
+     */
+    void onEvent(E event, long sequence, boolean endOfBatch);
+}
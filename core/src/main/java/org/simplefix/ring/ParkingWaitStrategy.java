@@ -0,0 +1,35 @@
+package org.simplefix.ring;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Spins, then yields, then parks for a short time on each call.   Uses almost no CPU when the ring
+ * stays empty, at the cost of the park time in latency for the first message after a quiet spell.
+ */
+public class ParkingWaitStrategy implements WaitStrategy {
+    public static final int DEFAULT_SPINS = 100;
+    public static final int DEFAULT_YIELDS = 100;
+    public static final long DEFAULT_PARK_NANOS = 50000;
+
+    private final int spins;
+    private final int yields;
+    private final long parkNanos;
+
+    public ParkingWaitStrategy() {
+        this(DEFAULT_SPINS, DEFAULT_YIELDS, DEFAULT_PARK_NANOS);
+    }
+
+    public ParkingWaitStrategy(int spins, int yields, long parkNanos) {
+        this.spins = spins;
+        this.yields = yields;
+        this.parkNanos = parkNanos;
+    }
+
+    public int idle(int idleCount) {
+        if (idleCount >= spins + yields)
+            LockSupport.parkNanos(parkNanos);
+        else if (idleCount >= spins)
+            Thread.yield();
+        return idleCount < Integer.MAX_VALUE ? idleCount + 1 : idleCount;
+    }
+}
@@ -0,0 +1,189 @@
+package org.simplefix.ring;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A bounded, pre-allocated ring of entries for handing work from producer threads (e.g. Netty I/O
+ * threads) to one consumer thread, without locks and without allocating.
+ * <br>
+ * A producer claims a sequence number, fills in the entry for it and publishes it:
+ * <pre>
+ * long seq = ring.next();
+ * MyEntry entry = ring.get(seq);
+ * ... copy the data into the entry ...
+ * ring.publish(seq);
+ * </pre>
+ * The consumer calls {@link #poll(EventHandler, int)} (usually via a {@link RingConsumer}), which
+ * hands it every entry published so far, in order.   Entries are re-used once the consumer has
+ * moved past them, and producers wait (or {@link #tryNext()} fails) when the ring is full, so a
+ * slow consumer pushes back on the producers instead of growing a queue.
+ * <br>
+ * The single producer ring is for one producer thread, which can then publish with an ordered
+ * write and no compare-and-set.   The multi producer ring claims with compare-and-set, and each
+ * entry has a flag saying which lap of the ring it was published on, so the consumer can tell
+ * which entries are ready when producers finish out of order.
+ */
+public class RingBuffer<E> {
+    private final Object[] entries;
+    private final int size;
+    private final int mask;
+    private final int shift;
+    private final boolean multiProducer;
+
+    /** The last published sequence (single producer), or the last claimed one (multi producer). **/
+    private final Sequence cursor = new Sequence(-1);
+
+    /** The last sequence the consumer has finished with. **/
+    private final Sequence consumed = new Sequence(-1);
+
+    /** Multi producer: the lap each entry was last published on. **/
+    private final AtomicIntegerArray published;
+
+    // Single producer state, only touched by the producer thread.
+    private long nextValue = -1;
+    private long cachedConsumed = -1;
+
+    private RingBuffer(EventFactory<E> factory, int size, boolean multiProducer) {
+        if (size <= 0 || Integer.bitCount(size) != 1)
+            throw new IllegalArgumentException("size must be a power of two: " + size);
+        this.entries = new Object[size];
+        for (int i = 0; i < size; i++)
+            entries[i] = factory.newInstance();
+        this.size = size;
+        this.mask = size - 1;
+        this.shift = Integer.numberOfTrailingZeros(size);
+        this.multiProducer = multiProducer;
+        if (multiProducer) {
+            published = new AtomicIntegerArray(size);
+            for (int i = 0; i < size; i++)
+                published.set(i, -1);
+        } else {
+            published = null;
+        }
+    }
+
+    /**
+     * @param factory creates the entries
+     * @param size    the number of entries, a power of two
+     * @return a ring for one producer thread
+     */
+    public static <E> RingBuffer<E> createSingleProducer(EventFactory<E> factory, int size) {
+        return new RingBuffer<E>(factory, size, false);
+    }
+
+    /**
+     * @param factory creates the entries
+     * @param size    the number of entries, a power of two
+     * @return a ring for any number of producer threads
+     */
+    public static <E> RingBuffer<E> createMultiProducer(EventFactory<E> factory, int size) {
+        return new RingBuffer<E>(factory, size, true);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public boolean isMultiProducer() {
+        return multiProducer;
+    }
+
+    /**
+     * Claims the next entry, waiting (spinning and yielding) while the ring is full.
+     * @return the sequence number of the entry
+     */
+    public long next() {
+        long seq;
+        int tries = 0;
+        while ((seq = tryNext()) < 0) {
+            if (++tries > 100)
+                Thread.yield();
+        }
+        return seq;
+    }
+
+    /**
+     * Claims the next entry, if there is room.
+     * @return the sequence number of the entry, or -1 if the ring is full
+     */
+    public long tryNext() {
+        if (!multiProducer) {
+            final long next = nextValue + 1;
+            final long wrapPoint = next - size;
+            if (wrapPoint > cachedConsumed) {
+                cachedConsumed = consumed.get();
+                if (wrapPoint > cachedConsumed)
+                    return -1;
+            }
+            nextValue = next;
+            return next;
+        }
+        while (true) {
+            final long current = cursor.get();
+            final long next = current + 1;
+            if (next - size > consumed.get())
+                return -1;
+            if (cursor.compareAndSet(current, next))
+                return next;
+        }
+    }
+
+    /**
+     * @param sequence a claimed or published sequence number
+     * @return the entry for the sequence number
+     */
+    @SuppressWarnings("unchecked")
+    public E get(long sequence) {
+        return (E) entries[(int) sequence & mask];
+    }
+
+    /**
+     * Makes a claimed entry visible to the consumer.
+     * @param sequence the sequence number from {@link #next()} or {@link #tryNext()}
+     */
+    public void publish(long sequence) {
+        if (multiProducer)
+            published.lazySet((int) sequence & mask, (int) (sequence >>> shift));
+        else
+            cursor.setOrdered(sequence);
+    }
+
+    /**
+     * @return the number of entries published and not yet consumed (approximate while producers
+     *         and the consumer are running)
+     */
+    public long getBacklog() {
+        return Math.max(0, cursor.get() - consumed.get());
+    }
+
+    /**
+     * Hands the entries published so far to a handler.   There must only be one consumer thread.
+     * @param handler the handler
+     * @param limit   the most entries to handle in one call
+     * @return the number of entries handled
+     */
+    public int poll(EventHandler<? super E> handler, int limit) {
+        final long first = consumed.get() + 1;
+        long last = Math.min(cursor.get(), first + limit - 1);
+        if (multiProducer) {
+            // Claimed isn't published: stop at the first entry that isn't ready yet.
+            for (long seq = first; seq <= last; seq++) {
+                if (published.get((int) seq & mask) != (int) (seq >>> shift)) {
+                    last = seq - 1;
+                    break;
+                }
+            }
+        }
+        if (last < first)
+            return 0;
+        long seq = first;
+        try {
+            for (; seq <= last; seq++)
+                handler.onEvent(get(seq), seq, seq == last);
+        } finally {
+            // If the handler throws, the entry it failed on is skipped.
+            consumed.setOrdered(Math.min(seq, last));
+        }
+        return (int) (last - first + 1);
+    }
+}
@@ -0,0 +1,70 @@
+package org.simplefix.ring;
+
+import org.slf4j.Logger;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * The consumer loop for a {@link RingBuffer}: run it on a dedicated thread, and it hands each entry
+ * to the handler as soon as it is published, using the wait strategy when the ring is empty.
+ * <br>
+ * Exceptions thrown by the handler are logged, and the entry is skipped.
+ */
+public class RingConsumer<E> implements Runnable {
+    private static final Logger log = getLogger(RingConsumer.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    private final RingBuffer<E> ring;
+    private final EventHandler<? super E> handler;
+    private final WaitStrategy waitStrategy;
+    private final int batchSize;
+    private volatile boolean running = true;
+
+    public RingConsumer(RingBuffer<E> ring, EventHandler<? super E> handler, WaitStrategy waitStrategy) {
+        this(ring, handler, waitStrategy, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param batchSize the most entries to handle before checking for {@link #halt()}
+     */
+    public RingConsumer(RingBuffer<E> ring, EventHandler<? super E> handler, WaitStrategy waitStrategy,
+                        int batchSize) {
+        if (ring == null || handler == null || waitStrategy == null)
+            throw new IllegalArgumentException("ring, handler and waitStrategy are required!");
+        this.ring = ring;
+        this.handler = handler;
+        this.waitStrategy = waitStrategy;
+        this.batchSize = batchSize;
+    }
+
+    public void run() {
+        int idleCount = 0;
+        while (running)
+            idleCount = poll() > 0 ? 0 : waitStrategy.idle(idleCount);
+        // Finish what was published before the halt.
+        while (poll() > 0) {
+            // Keep going.
+        }
+    }
+
+    private int poll() {
+        try {
+            return ring.poll(handler, batchSize);
+        } catch (RuntimeException e) {
+            log.error("Unexpected: " + e, e);
+            return 1;
+        }
+    }
+
+    /**
+     * Stops the loop, once the entries already published have been handled.
+     */
+    public void halt() {
+        running = false;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+}
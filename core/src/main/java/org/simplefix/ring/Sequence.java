@@ -0,0 +1,46 @@
+package org.simplefix.ring;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * A sequence number shared between threads, padded so that it has a cache line to itself and
+ * doesn't slow down the threads writing the fields next to it (false sharing).
+ */
+public class Sequence {
+    private static final AtomicLongFieldUpdater<Sequence> UPDATER =
+            AtomicLongFieldUpdater.newUpdater(Sequence.class, "value");
+
+    // Padding on each side of the value.  The fields are protected so they aren't optimized away.
+    protected long p1, p2, p3, p4, p5, p6, p7;
+    private volatile long value;
+    protected long p9, p10, p11, p12, p13, p14, p15;
+
+    public Sequence(long initialValue) {
+        this.value = initialValue;
+    }
+
+    public long get() {
+        return value;
+    }
+
+    public void set(long value) {
+        this.value = value;
+    }
+
+    /**
+     * Sets the value without a full fence: other threads see it soon, in order with the writes
+     * before it, which is all a publisher needs.
+     */
+    public void setOrdered(long value) {
+        UPDATER.lazySet(this, value);
+    }
+
+    public boolean compareAndSet(long expected, long value) {
+        return UPDATER.compareAndSet(this, expected, value);
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(value);
+    }
+}
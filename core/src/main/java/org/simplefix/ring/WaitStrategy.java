@@ -0,0 +1,14 @@
+package org.simplefix.ring;
+
+/**
+ * What a consumer does when the ring is empty.  The choice trades latency against CPU: spinning
+ * reacts fastest but uses a whole core, parking hands the core back to the operating system.
+ */
+public interface WaitStrategy {
+    /**
+     * Waits a little.
+     * @param idleCount the number of times in a row the ring has been empty, zero the first time
+     * @return the idle count for the next call
+     */
+    int idle(int idleCount);
+}
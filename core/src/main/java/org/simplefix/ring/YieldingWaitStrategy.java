@@ -0,0 +1,25 @@
+package org.simplefix.ring;
+
+/**
+ * Spins for a while, then yields the CPU on each call.  Low latency, and other threads still get
+ * to run when there are more threads than cores.
+ */
+public class YieldingWaitStrategy implements WaitStrategy {
+    public static final int DEFAULT_SPINS = 100;
+
+    private final int spins;
+
+    public YieldingWaitStrategy() {
+        this(DEFAULT_SPINS);
+    }
+
+    public YieldingWaitStrategy(int spins) {
+        this.spins = spins;
+    }
+
+    public int idle(int idleCount) {
+        if (idleCount >= spins)
+            Thread.yield();
+        return idleCount < Integer.MAX_VALUE ? idleCount + 1 : idleCount;
+    }
+}
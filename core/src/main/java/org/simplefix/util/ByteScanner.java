@@ -0,0 +1,151 @@
+package org.simplefix.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Finds delimiters and sums bytes a word (8 bytes) at a time, using SWAR ("SIMD within a register")
+ * tricks instead of testing one byte at a time.
+ * <br>
+ * Words are read with {@link ByteBuffer#getLong(int)}, in the buffer's own byte order: the order only
+ * decides which end of the word holds the first byte.   For direct (and memory mapped) buffers that is
+ * a single load.   For heap buffers it is only a single load from Java 9 on: before that, a heap
+ * buffer's getLong() builds the word a byte at a time, so scanning a heap buffer a word at a time is
+ * no faster than a byte loop on Java 5 to 8 (without sun.misc.Unsafe, which this class doesn't use).
+ * <br>
+ * The byte[] methods scan a byte at a time, so they don't allocate a wrapper on every call.   Callers
+ * on a hot path should wrap the array once, keep the wrapper, and pass it.
+ */
+public final class ByteScanner {
+    /** Words that can be added to the checksum lanes before they have to be folded. **/
+    public static final int MAX_LANE_WORDS = 128;
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOW_SEVEN_BITS = 0x7F7F7F7F7F7F7F7FL;
+    private static final long EVEN_BYTES = 0x00FF00FF00FF00FFL;
+
+    private ByteScanner() {
+    }
+
+    /**
+     * @param bytes the array
+     * @param from  first index to search (inclusive)
+     * @param to    last index to search (exclusive)
+     * @param value the byte to find
+     * @return the index of the first occurrence of the value, or -1 if not found
+     */
+    public static int indexOf(byte[] bytes, int from, int to, byte value) {
+        checkRange(from, to, bytes.length);
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == value)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @param buffer the buffer (heap or direct), the position and limit are not changed
+     * @param from   first absolute index to search (inclusive)
+     * @param to     last absolute index to search (exclusive)
+     * @param value  the byte to find
+     * @return the index of the first occurrence of the value, or -1 if not found
+     */
+    public static int indexOf(ByteBuffer buffer, int from, int to, byte value) {
+        checkRange(from, to, buffer.limit());
+        final long pattern = (value & 0xFFL) * ONES;
+        final boolean littleEndian = buffer.order() == ByteOrder.LITTLE_ENDIAN;
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long found = zeroBytes(buffer.getLong(i) ^ pattern);
+            if (found != 0)
+                return i + firstByte(found, littleEndian);
+        }
+        for (; i < to; i++) {
+            if (buffer.get(i) == value)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @param bytes the array
+     * @param from  first index (inclusive)
+     * @param to    last index (exclusive)
+     * @return the sum of the bytes, as unsigned values.  The FIX checksum is this modulo 256.
+     */
+    public static int sum(byte[] bytes, int from, int to) {
+        checkRange(from, to, bytes.length);
+        int sum = 0;
+        for (int i = from; i < to; i++)
+            sum += bytes[i] & 0xFF;
+        return sum;
+    }
+
+    /**
+     * @param buffer the buffer (heap or direct), the position and limit are not changed
+     * @param from   first absolute index (inclusive)
+     * @param to     last absolute index (exclusive)
+     * @return the sum of the bytes, as unsigned values.  The FIX checksum is this modulo 256.
+     */
+    public static int sum(ByteBuffer buffer, int from, int to) {
+        checkRange(from, to, buffer.limit());
+        int sum = 0;
+        long lanes = 0;
+        int words = 0;
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            // The order of the bytes in the word doesn't matter for a sum.
+            lanes = addLanes(lanes, buffer.getLong(i));
+            if (++words == MAX_LANE_WORDS) {
+                sum += foldLanes(lanes);
+                lanes = 0;
+                words = 0;
+            }
+        }
+        sum += foldLanes(lanes);
+        for (; i < to; i++)
+            sum += buffer.get(i) & 0xFF;
+        return sum;
+    }
+
+    /**
+     * Adds the bytes of a word to four 16 bit lanes.   Each word adds at most 510 to a lane, so
+     * up to {@link #MAX_LANE_WORDS} words can be added before the lanes must be folded.
+     * @param lanes the lanes
+     * @param word  eight bytes, in any order
+     * @return the new lanes
+     */
+    public static long addLanes(long lanes, long word) {
+        return lanes + (word & EVEN_BYTES) + ((word >>> 8) & EVEN_BYTES);
+    }
+
+    /**
+     * @param lanes the lanes from {@link #addLanes(long, long)}
+     * @return the total of the four lanes
+     */
+    public static int foldLanes(long lanes) {
+        return (int) ((lanes & 0xFFFF) + ((lanes >>> 16) & 0xFFFF) + ((lanes >>> 32) & 0xFFFF) + (lanes >>> 48));
+    }
+
+    /**
+     * @return a word with the high bit set in exactly the bytes of x that are zero.   Unlike the
+     * usual (x - 0x01..) &amp; ~x &amp; 0x80.. trick, this has no false positives above a zero
+     * byte, so it works for either byte order.
+     */
+    private static long zeroBytes(long x) {
+        long y = (x & LOW_SEVEN_BITS) + LOW_SEVEN_BITS;
+        return ~(y | x | LOW_SEVEN_BITS);
+    }
+
+    /**
+     * @return the index, in memory order, of the first byte flagged by {@link #zeroBytes(long)}
+     */
+    private static int firstByte(long found, boolean littleEndian) {
+        return (littleEndian ? Long.numberOfTrailingZeros(found) : Long.numberOfLeadingZeros(found)) >>> 3;
+    }
+
+    private static void checkRange(int from, int to, int length) {
+        if (from < 0 || to > length || from > to)
+            throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") out of bounds for length " + length);
+    }
+}
@@ -0,0 +1,192 @@
+package org.simplefix.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed point decimals packed into a long, for prices, quantities and amounts.   The mantissa is
+ * in the top 59 bits and the scale (the number of digits after the decimal point, 0 to 18) in the
+ * bottom 5, so a decimal can be passed around and stored without allocating, and converted exactly.
+ * <br>
+ * For example, "123.45" is mantissa 12345 with scale 2.   The same number with a different scale
+ * (e.g. "123.450") is a different long, so use {@link #compare(long, long)} to compare values.
+ */
+public class Decimal {
+    public static final int MAX_SCALE = 18;
+
+    /** The largest mantissa that fits, which is more than 17 digits. **/
+    public static final long MAX_MANTISSA = (1L << 58) - 1;
+    public static final long MIN_MANTISSA = -MAX_MANTISSA;
+
+    public static final long ZERO = 0;
+
+    private static final int SCALE_BITS = 5;
+    private static final long SCALE_MASK = (1 << SCALE_BITS) - 1;
+
+    private static final long[] POWERS_OF_TEN = new long[MAX_SCALE + 1];
+
+    static {
+        long p = 1;
+        for (int i = 0; i <= MAX_SCALE; i++) {
+            POWERS_OF_TEN[i] = p;
+            p *= 10;
+        }
+    }
+
+    private Decimal() {
+    }
+
+    /**
+     * @param mantissa the unscaled value, between {@link #MIN_MANTISSA} and {@link #MAX_MANTISSA}
+     * @param scale    the number of digits after the decimal point, 0 to 18
+     * @return the packed decimal
+     */
+    public static long pack(long mantissa, int scale) {
+        if (scale < 0 || scale > MAX_SCALE)
+            throw new IllegalArgumentException("Invalid scale " + scale);
+        if (mantissa > MAX_MANTISSA || mantissa < MIN_MANTISSA)
+            throw new IllegalArgumentException("Mantissa out of range " + mantissa);
+        return (mantissa << SCALE_BITS) | scale;
+    }
+
+    public static long mantissa(long decimal) {
+        return decimal >> SCALE_BITS;
+    }
+
+    public static int scale(long decimal) {
+        return (int) (decimal & SCALE_MASK);
+    }
+
+    /**
+     * Changes the scale, e.g. to the tick size of an instrument.
+     * @param decimal the decimal
+     * @param scale   the new scale
+     * @return the decimal with the new scale
+     * @throws ArithmeticException if digits would be lost, or the mantissa would be out of range
+     */
+    public static long rescale(long decimal, int scale) throws ArithmeticException {
+        final int from = scale(decimal);
+        long mantissa = mantissa(decimal);
+        if (scale < 0 || scale > MAX_SCALE)
+            throw new IllegalArgumentException("Invalid scale " + scale);
+        if (scale < from) {
+            final long p = POWERS_OF_TEN[from - scale];
+            if (mantissa % p != 0)
+                throw new ArithmeticException(toString(decimal) + " has more than " + scale + " decimal places");
+            mantissa /= p;
+        } else if (scale > from) {
+            final long p = POWERS_OF_TEN[scale - from];
+            if (mantissa > MAX_MANTISSA / p || mantissa < MIN_MANTISSA / p)
+                throw new ArithmeticException(toString(decimal) + " out of range with scale " + scale);
+            mantissa *= p;
+        }
+        return (mantissa << SCALE_BITS) | scale;
+    }
+
+    /**
+     * Compares the values of two decimals, which may have different scales.
+     * @return negative, zero or positive if a is less than, equal to or greater than b
+     */
+    public static int compare(long a, long b) {
+        final int scaleA = scale(a);
+        final int scaleB = scale(b);
+        long ma = mantissa(a);
+        long mb = mantissa(b);
+        if (scaleA != scaleB) {
+            // Scale down the one with more decimal places, and compare the remainder if the rest is equal.
+            final boolean aFiner = scaleA > scaleB;
+            final long p = POWERS_OF_TEN[aFiner ? scaleA - scaleB : scaleB - scaleA];
+            final long fine = aFiner ? ma : mb;
+            final long whole = fine / p;
+            final long rest = fine % p;
+            final long coarse = aFiner ? mb : ma;
+            int c = whole < coarse ? -1 : (whole > coarse ? 1 : (rest < 0 ? -1 : (rest > 0 ? 1 : 0)));
+            return aFiner ? c : -c;
+        }
+        return ma < mb ? -1 : (ma > mb ? 1 : 0);
+    }
+
+    /**
+     * @return the nearest double to the decimal, if the mantissa is at most 2^53 (about 16 digits),
+     *         otherwise within one ulp of it
+     */
+    public static double toDouble(long decimal) {
+        // The powers of ten are exact, and so is a mantissa up to 2^53, in which case the division is
+        // correctly rounded.   A larger mantissa is rounded first, so the result can be one ulp off.
+        return (double) mantissa(decimal) / POWERS_OF_TEN[scale(decimal)];
+    }
+
+    /**
+     * NOTE: This allocates, use it for logging and tests.
+     * @return the decimal as it would be written in a FIX message, e.g. "-0.05"
+     */
+    public static String toString(long decimal) {
+        final long mantissa = mantissa(decimal);
+        final int scale = scale(decimal);
+        final StringBuilder sb = new StringBuilder(24);
+        sb.append(Math.abs(mantissa));
+        while (sb.length() <= scale)
+            sb.insert(0, '0');
+        if (scale > 0)
+            sb.insert(sb.length() - scale, '.');
+        if (mantissa < 0)
+            sb.insert(0, '-');
+        return sb.toString();
+    }
+
+    /**
+     * Parses a decimal, e.g. for configuration and tests.   Decoded messages parse their values in
+     * place, see {@link org.simplefix.message.DecodedMessage#getDecimal(int)}.
+     * @param s the string, e.g. "123.45"
+     * @return the packed decimal
+     * @throws NumberFormatException if the string isn't a decimal that fits
+     */
+    public static long parse(CharSequence s) throws NumberFormatException {
+        final int len = s.length();
+        final byte[] bytes = new byte[len];
+        for (int i = 0; i < len; i++) {
+            final char c = s.charAt(i);
+            bytes[i] = c < 0x80 ? (byte) c : (byte) '?';
+        }
+        return parse(ByteBuffer.wrap(bytes), 0, len);
+    }
+
+    /**
+     * Parses the ASCII digits of a decimal in place, without allocating unless it is invalid.
+     * @param buffer the buffer, which isn't changed
+     * @param offset the index of the first byte
+     * @param length the number of bytes
+     * @return the packed decimal
+     * @throws NumberFormatException if the bytes aren't a decimal that fits
+     */
+    public static long parse(ByteBuffer buffer, int offset, int length) throws NumberFormatException {
+        final boolean negative = length > 0 && buffer.get(offset) == '-';
+        long mantissa = 0;
+        int scale = -1;
+        int digits = 0;
+        for (int i = negative ? 1 : 0; i < length; i++) {
+            final byte b = buffer.get(offset + i);
+            if (b == '.' && scale < 0) {
+                scale = 0;
+                continue;
+            }
+            if (b < '0' || b > '9')
+                throw new NumberFormatException("Invalid decimal " + ascii(buffer, offset, length));
+            mantissa = mantissa * 10 + (b - '0');
+            if (mantissa > MAX_MANTISSA)
+                throw new NumberFormatException("Decimal out of range " + ascii(buffer, offset, length));
+            if (scale >= 0)
+                scale++;
+            digits++;
+        }
+        if (digits == 0 || scale > MAX_SCALE)
+            throw new NumberFormatException("Invalid decimal " + ascii(buffer, offset, length));
+        return pack(negative ? -mantissa : mantissa, scale < 0 ? 0 : scale);
+    }
+
+    private static String ascii(ByteBuffer buffer, int offset, int length) {
+        final StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++)
+            sb.append((char) (buffer.get(offset + i) & 0xFF));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,46 @@
+package org.simplefix.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * Helpers for memory mapped files.
+ */
+public final class MappedBuffers {
+    private MappedBuffers() {
+    }
+
+    /**
+     * Releases a mapping now, rather than when it is garbage collected, so the file can be deleted or
+     * truncated (Windows won't do either to a mapped file).   There is no API for this, so it is best
+     * effort.   The buffer must not be used again: reading it would crash the JVM.
+     * @param buffer the mapping, or null
+     */
+    public static void unmap(MappedByteBuffer buffer) {
+        if (buffer == null)
+            return;
+        try {
+            // Java 9 and later.
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            invokeCleaner.invoke(field.get(null), buffer);
+            return;
+        } catch (Throwable ignore) {
+            // Not available.
+        }
+        try {
+            // Java 8 and earlier.
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null)
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+        } catch (Throwable ignore) {
+            // Left to the garbage collector.
+        }
+    }
+}
@@ -6,7 +6,11 @@ import org.simplefix.dictionary.xml.DictionaryParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.net.URL;
+import java.util.Iterator;
 
 import static junit.framework.Assert.*;
 
@@ -43,10 +47,136 @@ public class DataDictionaryParserTest {
         log.info("heartbeat message type=" + heartbeat);
     }
 
+    @Test
+    public void componentsAndGroups() throws Exception {
+        URL resource = Thread.currentThread().getContextClassLoader().getResource("FIX44.xml");
+        Dictionary dictionary = DictionaryParser.parseXML(resource);
+
+        // The header has the NoHops group, the trailer has the CheckSum.
+        assertEquals(27, dictionary.getHeader().getNumberOfTags());
+        assertEquals(3, dictionary.getTrailer().getNumberOfTags());
+
+        // NewOrderSingle: the Instrument component is flattened into the message, and the Parties
+        // component is the NoPartyIDs group, which has the nested NoPartySubIDs group.
+        MessageType order = dictionary.getMessageType("D");
+        FieldRef symbol = null;
+        FieldRef noPartyIDs = null;
+        for (Iterator<FieldRef> i = order.fieldRefs(); i.hasNext(); ) {
+            FieldRef ref = i.next();
+            if (ref.getFieldDef().getTag() == 55)
+                symbol = ref;
+            else if (ref.getFieldDef().getTag() == 453)
+                noPartyIDs = ref;
+        }
+        assertNotNull(symbol);
+        assertTrue(symbol.isRequired());
+        assertNull(symbol.getGroup());
+        assertNotNull(noPartyIDs);
+        RepeatingGroupDef parties = noPartyIDs.getGroup();
+        assertEquals(448, parties.getDelimiter().getFieldDef().getTag());
+        assertEquals(453, parties.getCountField().getTag());
+        FieldRef noPartySubIDs = null;
+        for (Iterator<FieldRef> i = parties.fieldRefs(); i.hasNext(); ) {
+            FieldRef ref = i.next();
+            if (ref.getFieldDef().getTag() == 802)
+                noPartySubIDs = ref;
+        }
+        assertNotNull(noPartySubIDs);
+        assertEquals(523, noPartySubIDs.getGroup().getDelimiter().getFieldDef().getTag());
+
+        // The layout places the nested group fields with one lookup.
+        MessageLayout layout = dictionary.getLayout("D");
+        MessageLayout.Entry partySubID = layout.getEntry(523);
+        assertEquals(2, partySubID.getDepth());
+        assertEquals(0, partySubID.getPosition());
+        assertEquals(802, partySubID.getGroup().getCountEntry().getTag());
+        assertEquals(453, partySubID.getGroup().getParent().getCountEntry().getTag());
+        assertEquals(0, layout.getEntry(8).getDepth());
+        assertEquals(0, layout.getEntry(8).getPosition());
+        assertNull(layout.getEntry(5450));
+    }
+
     @Test(expected = DictionaryParseException.class)
     public void checkDupField() throws Exception {
         URL resource = Thread.currentThread().getContextClassLoader().getResource("FIX44-bad1.xml");
         log.info("NOTE: There will be an ERROR level log message here.   PLEASE IGNORE.");
         DictionaryParser.parseXML(resource);
     }
+
+    private static final String NEW_ORDER_SINGLE =
+            "    <message name=\"NewOrderSingle\" msgtype=\"D\" msgcat=\"app\">\n%s    </message>\n";
+
+    /**
+     * A small dictionary, one element per line: the messages start at line 9, and the extra
+     * fields at line 16 when there are no messages or components.
+     */
+    private static String dictionary(String messages, String components, String fields) {
+        return "<fix major=\"4\" minor=\"4\">\n"
+                + "  <header>\n    <field name=\"BeginString\" required=\"Y\"/>\n  </header>\n"
+                + "  <trailer>\n    <field name=\"CheckSum\" required=\"Y\"/>\n  </trailer>\n"
+                + "  <messages>\n" + messages + "  </messages>\n"
+                + "  <components>\n" + components + "  </components>\n"
+                + "  <fields>\n    <field number=\"8\" name=\"BeginString\" type=\"STRING\"/>\n"
+                + "    <field number=\"10\" name=\"CheckSum\" type=\"STRING\"/>\n"
+                + "    <field number=\"11\" name=\"ClOrdID\" type=\"STRING\"/>\n"
+                + fields + "  </fields>\n</fix>\n";
+    }
+
+    private static void assertParseError(String expected, String xml) throws IOException {
+        File file = File.createTempFile("dictionary", ".xml");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(xml.getBytes("UTF-8"));
+            } finally {
+                out.close();
+            }
+            DictionaryParser.parseXML(file.toURI().toURL());
+            fail("Expected: " + expected);
+        } catch (DictionaryParseException e) {
+            assertEquals(expected, e.getMessage());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void duplicates() throws Exception {
+        assertParseError("Duplicate field 'ClOrdID'  at line 16, column 54",
+                dictionary("", "", "    <field number=\"12\" name=\"ClOrdID\" type=\"STRING\"/>\n"));
+        assertParseError("Duplicate tag '11' at  at line 16, column 54",
+                dictionary("", "", "    <field number=\"11\" name=\"OtherID\" type=\"STRING\"/>\n"));
+        assertParseError("Duplicate message type 'D'  at line 11, column 61",
+                dictionary(String.format(NEW_ORDER_SINGLE, "") + String.format(NEW_ORDER_SINGLE, ""), "", ""));
+        assertParseError("Field 'ClOrdID' already referenced!  at line 11, column 43",
+                dictionary(String.format(NEW_ORDER_SINGLE, "      <field name=\"ClOrdID\" required=\"Y\"/>\n"
+                        + "      <field name=\"ClOrdID\" required=\"N\"/>\n"), "", ""));
+    }
+
+    @Test
+    public void undefined() throws Exception {
+        assertParseError("Undefined field 'Symbol'  at line 10, column 42",
+                dictionary(String.format(NEW_ORDER_SINGLE, "      <field name=\"Symbol\" required=\"Y\"/>\n"), "", ""));
+        assertParseError("Undefined component 'Instrument'  at line 10, column 50",
+                dictionary(String.format(NEW_ORDER_SINGLE, "      <component name=\"Instrument\" required=\"Y\"/>\n"),
+                        "", ""));
+    }
+
+    @Test
+    public void circular() throws Exception {
+        assertParseError("Circular reference to component 'A'  at line 18, column 41",
+                dictionary(String.format(NEW_ORDER_SINGLE, "      <component name=\"A\" required=\"Y\"/>\n"),
+                        "    <component name=\"A\">\n      <component name=\"B\" required=\"Y\"/>\n    </component>\n"
+                                + "    <component name=\"B\">\n      <component name=\"A\" required=\"Y\"/>\n"
+                                + "    </component>\n", ""));
+    }
+
+    @Test
+    public void missingAttributes() throws Exception {
+        assertParseError("Required attribute 'name' missing on <field number='12' type='STRING'> at line 16, column 39",
+                dictionary("", "", "    <field number=\"12\" type=\"STRING\"/>\n"));
+        assertParseError("Required attribute 'msgtype' missing on <message msgcat='app' name='NewOrderSingle'>"
+                + " at line 9, column 49",
+                dictionary("    <message name=\"NewOrderSingle\" msgcat=\"app\">\n    </message>\n", "", ""));
+    }
 }
@@ -0,0 +1,85 @@
+package org.simplefix.dictionary.test;
+
+import org.junit.Test;
+import org.simplefix.dictionary.Dictionary;
+import org.simplefix.dictionary.DictionaryParseException;
+import org.simplefix.dictionary.DictionaryRegistry;
+import org.simplefix.message.DecodedMessage;
+import org.simplefix.message.MessageDecoder;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test loading and finding dictionaries by version and ApplVerID.
+ */
+public class DictionaryRegistryTest {
+
+    @Test
+    public void versions() {
+        DictionaryRegistry registry = new DictionaryRegistry();
+        registry.loadBundled("FIX42", "FIX44");
+        Dictionary fix44 = registry.get("FIX.4.4");
+        assertNotNull(fix44);
+        assertEquals("FIX.4.4", fix44.getVersion());
+        assertSame(fix44, registry.get("FIX.4.4"));
+        assertEquals("FIX.4.2", registry.get("FIX.4.2").getVersion());
+        assertNull(registry.get("FIX.4.3"));
+        assertEquals(2, registry.getDictionaries().size());
+    }
+
+    @Test
+    public void fixt() {
+        DictionaryRegistry registry = new DictionaryRegistry();
+        registry.loadBundled("FIXT11", "FIX50", "FIX44");
+        Dictionary transport = registry.get(DictionaryRegistry.FIXT_1_1);
+        assertEquals("FIXT.1.1", transport.getVersion());
+        assertEquals("FIX.5.0", registry.get("FIX.5.0").getVersion());
+
+        // ApplVerID 7 is FIX.5.0, over the FIXT.1.1 transport.
+        Dictionary fix50 = registry.getByApplVerID("7");
+        assertEquals("FIX.5.0", fix50.getVersion());
+        assertSame(transport.getHeader(), fix50.getHeader());
+        assertNotNull(fix50.getMessageType("A"));
+        assertNotNull(fix50.getMessageType("D"));
+        assertSame(fix50, registry.getByApplVerID(ByteBuffer.wrap("7".getBytes()), 0, 1));
+        assertNotNull(registry.getByApplVerID("6"));
+        assertNull(registry.getByApplVerID("9"));
+        assertNull(registry.getByApplVerID("77"));
+
+        // Adding a dictionary keeps the composed dictionaries that haven't changed.
+        registry.loadBundled("FIX42");
+        assertSame(fix50, registry.getByApplVerID("7"));
+        assertNotNull(registry.getByApplVerID("4"));
+    }
+
+    @Test
+    public void decodeWithApplVerID() throws Exception {
+        DictionaryRegistry registry = new DictionaryRegistry();
+        registry.loadBundled("FIXT11", "FIX50");
+        Dictionary transport = registry.get(DictionaryRegistry.FIXT_1_1);
+        String s = "8=FIXT.1.1\u00019=20\u000135=D\u00011128=7\u000111=ORD1\u000110=000\u0001";
+        ByteBuffer buffer = ByteBuffer.wrap(s.getBytes());
+
+        // Find the ApplVerID with the transport, then decode the message with the application.
+        DecodedMessage msg = new MessageDecoder(transport).decode(buffer, 0, buffer.limit());
+        int index = msg.indexOf(1128);
+        Dictionary application = registry.getByApplVerID(msg.getBuffer(), msg.getValueOffset(index),
+                msg.getValueLength(index));
+        msg = new MessageDecoder(application).decode(buffer, 0, buffer.limit());
+        assertEquals("D", msg.getMessageType().getMsgType());
+    }
+
+    @Test(expected = DictionaryParseException.class)
+    public void missing() {
+        new DictionaryRegistry().loadBundled("FIX44", "FIX99");
+    }
+
+    @Test
+    public void load() {
+        DictionaryRegistry registry = new DictionaryRegistry();
+        registry.load(Thread.currentThread().getContextClassLoader().getResource("FIX44.xml"));
+        assertEquals("FIX.4.4", registry.get("FIX.4.4").getVersion());
+    }
+}
@@ -0,0 +1,119 @@
+package org.simplefix.dictionary.test;
+
+import org.junit.Test;
+import org.simplefix.dictionary.*;
+import org.simplefix.dictionary.snapshot.DictionarySnapshot;
+import org.simplefix.dictionary.xml.DictionaryParser;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.util.Iterator;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the binary dictionary snapshots.
+ */
+public class DictionarySnapshotTest {
+
+    private static URL fix44() {
+        return Thread.currentThread().getContextClassLoader().getResource("FIX44.xml");
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        File file = File.createTempFile("FIX44", DictionarySnapshot.EXTENSION);
+        file.deleteOnExit();
+        Dictionary parsed = DictionarySnapshot.compile(fix44(), file);
+        Dictionary loaded = DictionarySnapshot.load(file, fix44());
+        assertSameDictionary(parsed, loaded);
+    }
+
+    @Test
+    public void bundledSnapshot() {
+        URL snapshot = DictionarySnapshot.getSnapshotResource("FIX44");
+        assertNotNull("The build should compile the bundled dictionaries", snapshot);
+        Dictionary loaded = DictionarySnapshot.load(snapshot, null);
+        assertSameDictionary(DictionaryParser.parseXML(fix44()), loaded);
+    }
+
+    /**
+     * DictionaryRegistry.loadBundled() checks the snapshot against the XML resource, and parses the XML
+     * if the snapshot is stale.
+     */
+    @Test
+    public void bundledSnapshotIsCurrent() {
+        Dictionary loaded = DictionarySnapshot.load(DictionarySnapshot.getSnapshotResource("FIX44"), fix44());
+        assertEquals("FIX.4.4", loaded.getVersion());
+    }
+
+    @Test(expected = DictionaryParseException.class)
+    public void stale() throws Exception {
+        File file = File.createTempFile("FIX44", DictionarySnapshot.EXTENSION);
+        file.deleteOnExit();
+        Dictionary dictionary = DictionaryParser.parseXML(fix44());
+        DictionarySnapshot.write(dictionary, DictionarySnapshot.sourceChecksum(fix44()) + 1, file);
+        DictionarySnapshot.load(file, fix44());
+    }
+
+    @Test(expected = DictionaryParseException.class)
+    public void corrupt() throws Exception {
+        File file = File.createTempFile("FIX44", DictionarySnapshot.EXTENSION);
+        file.deleteOnExit();
+        DictionarySnapshot.compile(fix44(), file);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(raf.length() / 2);
+            int b = raf.read();
+            raf.seek(raf.length() / 2);
+            raf.write(b ^ 0xFF);
+        } finally {
+            raf.close();
+        }
+        DictionarySnapshot.load(file, null);
+    }
+
+    @Test
+    public void loadOrParseFallsBack() throws Exception {
+        File file = File.createTempFile("FIX44", DictionarySnapshot.EXTENSION);
+        file.deleteOnExit();
+        Dictionary dictionary = DictionaryParser.parseXML(fix44());
+        DictionarySnapshot.write(dictionary, 0, file);
+        Dictionary loaded = DictionarySnapshot.loadOrParse(file.toURI().toURL(), fix44());
+        assertSameDictionary(dictionary, loaded);
+    }
+
+    static void assertSameDictionary(Dictionary expected, Dictionary actual) {
+        assertEquals(expected.getVersion(), actual.getVersion());
+        assertEquals(expected.getFieldDefs().size(), actual.getFieldDefs().size());
+        for (FieldDef fieldDef : expected.getFieldDefs()) {
+            FieldDef other = actual.getFieldDef(fieldDef.getTag());
+            assertEquals(fieldDef.toString(), other.toString());
+            assertSame(other, actual.getFieldDef(fieldDef.getName()));
+        }
+        assertSameRefs(expected.getHeader(), actual.getHeader());
+        assertSameRefs(expected.getTrailer(), actual.getTrailer());
+        assertEquals(expected.getMessageTypes().size(), actual.getMessageTypes().size());
+        for (MessageType messageType : expected.getMessageTypes()) {
+            MessageType other = actual.getMessageType(messageType.getMsgType());
+            assertEquals(messageType.getName(), other.getName());
+            assertEquals(messageType.isApplicationMessage(), other.isApplicationMessage());
+            assertSameRefs(messageType, other);
+        }
+    }
+
+    private static void assertSameRefs(FieldRefGroup expected, FieldRefGroup actual) {
+        assertEquals(expected.getNumberOfTags(), actual.getNumberOfTags());
+        Iterator<FieldRef> refs = actual.fieldRefs();
+        for (Iterator<FieldRef> i = expected.fieldRefs(); i.hasNext(); ) {
+            FieldRef ref = i.next();
+            FieldRef otherRef = refs.next();
+            assertEquals(ref, otherRef);
+            assertEquals(ref.isRequired(), otherRef.isRequired());
+            assertEquals(ref.getGroup() != null, otherRef.getGroup() != null);
+            if (ref.getGroup() != null)
+                assertSameRefs(ref.getGroup(), otherRef.getGroup());
+        }
+    }
+}
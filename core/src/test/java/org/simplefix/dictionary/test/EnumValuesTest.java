@@ -0,0 +1,77 @@
+package org.simplefix.dictionary.test;
+
+import org.junit.Test;
+import org.simplefix.dictionary.Dictionary;
+import org.simplefix.dictionary.EnumValues;
+import org.simplefix.dictionary.FieldDef;
+import org.simplefix.dictionary.xml.DictionaryParser;
+
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test lookups of enumerated values from raw bytes.
+ */
+public class EnumValuesTest {
+
+    private static int ordinal(EnumValues values, String s) {
+        byte[] bytes = ("xx" + s + "\u0001").getBytes();
+        int ordinal = values.ordinal(bytes, 2, s.length());
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes);
+        assertEquals(ordinal, values.ordinal(direct, 2, s.length()));
+        return ordinal;
+    }
+
+    @Test
+    public void lookup() {
+        Map<String, String> map = new LinkedHashMap<String, String>();
+        map.put("1", "BUY");
+        map.put("2", "SELL");
+        map.put("AB", "TWO_CHARS");
+        map.put("CORP", "CORPORATE_BOND");
+        map.put("CUSTOMDATE", "LONGER_THAN_A_LONG");
+        map.put("CUSTOMDATX", "SAME_PREFIX");
+        EnumValues values = new EnumValues(map);
+        assertEquals(6, values.size());
+        int i = 0;
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            assertEquals(i, ordinal(values, entry.getKey()));
+            assertEquals(entry.getKey(), values.getValue(i));
+            assertEquals(entry.getValue(), values.getDescription(i));
+            i++;
+        }
+        assertEquals(-1, ordinal(values, ""));
+        assertEquals(-1, ordinal(values, "3"));
+        assertEquals(-1, ordinal(values, "A"));
+        assertEquals(-1, ordinal(values, "ABC"));
+        assertEquals(-1, ordinal(values, "CUSTOMDAT"));
+        assertEquals(-1, ordinal(values, "CUSTOMDATEX"));
+        assertEquals(-1, ordinal(values, "\u00ff"));
+        assertEquals(-1, ordinal(EnumValues.EMPTY, "1"));
+        assertEquals(-1, ordinal(EnumValues.EMPTY, "AB"));
+    }
+
+    @Test
+    public void wholeDictionary() {
+        URL resource = Thread.currentThread().getContextClassLoader().getResource("FIX44.xml");
+        Dictionary dictionary = DictionaryParser.parseXML(resource);
+        int count = 0;
+        for (FieldDef fieldDef : dictionary.getFieldDefs()) {
+            EnumValues values = fieldDef.getEnumValues();
+            assertEquals(fieldDef.getValues().size(), values.size());
+            int i = 0;
+            for (String value : fieldDef.getValues().keySet()) {
+                assertEquals(fieldDef.getName() + "=" + value, i++, ordinal(values, value));
+                count++;
+            }
+        }
+        assertTrue(count > 1000);
+        EnumValues side = dictionary.getFieldDef("Side").getEnumValues();
+        assertEquals("BUY", side.getDescription(ordinal(side, "1")));
+    }
+}
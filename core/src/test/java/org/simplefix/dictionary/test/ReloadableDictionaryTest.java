@@ -0,0 +1,151 @@
+package org.simplefix.dictionary.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.simplefix.dictionary.Dictionary;
+import org.simplefix.dictionary.DictionaryParseException;
+import org.simplefix.dictionary.ReloadableDictionary;
+import org.simplefix.message.DecodedMessage;
+import org.simplefix.message.MessageDecoder;
+import org.simplefix.message.MessageEncoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test replacing a dictionary while messages are being decoded with it.
+ */
+public class ReloadableDictionaryTest {
+    private static final String ORDER = "8=FIX.4.4\u00019=27\u000135=D\u000111=ORD1\u00015001=X\u000155=IBM\u000110=000\u0001";
+
+    private URL source;
+    private File custom;
+    private File fix42;
+    private File bad;
+
+    @Before
+    public void writeDictionaries() throws IOException {
+        source = Thread.currentThread().getContextClassLoader().getResource("FIX44.xml");
+        String xml = read(source);
+        custom = write(xml.replace("<fields>",
+                "<fields>\n    <field number=\"5001\" name=\"CustomTag\" type=\"STRING\"/>"));
+        fix42 = write(xml.replace("<fix major=\"4\" minor=\"4\">", "<fix major=\"4\" minor=\"2\">"));
+        bad = write(xml.substring(0, xml.length() / 2));
+    }
+
+    @After
+    public void deleteDictionaries() {
+        custom.delete();
+        fix42.delete();
+        bad.delete();
+    }
+
+    private static String read(URL url) throws IOException {
+        InputStream in = url.openStream();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            for (int n; (n = in.read(buf)) > 0; )
+                out.write(buf, 0, n);
+            return out.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    private static File write(String xml) throws IOException {
+        File file = File.createTempFile("dictionary", ".xml");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(xml.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static DecodedMessage decode(MessageDecoder decoder) {
+        ByteBuffer buffer = ByteBuffer.wrap(ORDER.getBytes());
+        return decoder.decode(buffer, 0, buffer.limit());
+    }
+
+    @Test
+    public void reload() throws Exception {
+        ReloadableDictionary dictionary = new ReloadableDictionary(source);
+        Dictionary old = dictionary.get();
+        MessageDecoder decoder = new MessageDecoder(dictionary);
+        MessageDecoder lazyDecoder = new MessageDecoder(dictionary);
+        lazyDecoder.setLazy(true);
+        MessageEncoder encoder = new MessageEncoder(dictionary, "FIX.4.4");
+        DecodedMessage msg = decode(decoder);
+        assertNull(msg.getFieldDef(msg.indexOf(5001)));
+        DecodedMessage inFlight = decode(lazyDecoder);
+
+        Dictionary reloaded = dictionary.reload(custom.toURI().toURL()).get();
+        assertSame(reloaded, dictionary.get());
+        assertNotSame(old, reloaded);
+        assertSame(reloaded, decoder.getDictionary());
+        assertSame(reloaded, encoder.getDictionary());
+        msg = decode(decoder);
+        assertEquals("CustomTag", msg.getFieldDef(msg.indexOf(5001)).getName());
+        assertSame(reloaded.getLayout("D"), msg.getLayout());
+
+        // The message decoded before the reload still uses the old dictionary.
+        assertNull(inFlight.getFieldDef(inFlight.indexOf(5001)));
+        assertSame(old.getLayout("D"), inFlight.getLayout());
+
+        // Again, from the same file.
+        assertNotSame(reloaded, dictionary.reload().get());
+        assertNotNull(dictionary.get().getFieldDef(5001));
+        dictionary.close();
+    }
+
+    @Test
+    public void failed() throws Exception {
+        ReloadableDictionary dictionary = new ReloadableDictionary(source);
+        Dictionary old = dictionary.get();
+        try {
+            dictionary.reload(bad.toURI().toURL()).get();
+            fail("Not a dictionary");
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof DictionaryParseException);
+        }
+        try {
+            dictionary.reload(fix42.toURI().toURL()).get();
+            fail("Different version");
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof DictionaryParseException);
+        }
+        assertSame(old, dictionary.get());
+    }
+
+    @Test
+    public void closed() throws Exception {
+        ReloadableDictionary dictionary = new ReloadableDictionary(source);
+        Future<Dictionary> reload = dictionary.reload(custom.toURI().toURL());
+        dictionary.close();
+        assertNotNull("Reloads asked for before the close finish", reload.get().getFieldDef(5001));
+        try {
+            dictionary.reload();
+            fail("Closed");
+        } catch (IllegalStateException expected) {
+        }
+        assertSame(reload.get(), dictionary.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void noSource() {
+        Dictionary dictionary = new ReloadableDictionary(source).get();
+        new ReloadableDictionary(dictionary).reload();
+    }
+}
@@ -0,0 +1,55 @@
+package org.simplefix.dictionary.test;
+
+import org.junit.Test;
+import org.simplefix.dictionary.TagIndex;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the dense / open addressing tag index.
+ */
+public class TagIndexTest {
+
+    @Test
+    public void denseAndSparse() {
+        TagIndex<String> index = new TagIndex<String>(100);
+        assertNull(index.put(1, "Account"));
+        assertNull(index.put(956, "LegTimeUnit"));   // Grows the dense array.
+        assertNull(index.put(5450, "custom"));
+        assertEquals("Account", index.get(1));
+        assertEquals("LegTimeUnit", index.get(956));
+        assertEquals("custom", index.get(5450));
+        assertEquals(3, index.size());
+
+        assertNull(index.get(2));
+        assertNull(index.get(5451));
+        assertNull(index.get(0));
+        assertNull(index.get(-1));
+        assertNull(index.get(Integer.MAX_VALUE));
+
+        assertEquals("Account", index.put(1, "Account2"));
+        assertEquals("custom", index.put(5450, "custom2"));
+        assertEquals(3, index.size());
+        assertEquals("custom2", index.get(5450));
+    }
+
+    @Test
+    public void manyUserDefinedTags() {
+        TagIndex<Integer> index = new TagIndex<Integer>();
+        for (int tag = 5000; tag < 30000; tag += 7)
+            index.put(tag, tag);
+        for (int tag = 5000; tag < 30000; tag++) {
+            Integer value = index.get(tag);
+            if ((tag - 5000) % 7 == 0)
+                assertEquals(tag, value.intValue());
+            else
+                assertNull(value);
+        }
+        assertTrue(index.containsKey(9995 - (9995 - 5000) % 7));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidTag() {
+        new TagIndex<String>().put(0, "zero");
+    }
+}
@@ -0,0 +1,162 @@
+package org.simplefix.journal.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.simplefix.journal.Journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the memory mapped journal: appends, lookups, segment roll over, recovery and reset.
+ */
+public class JournalTest {
+    private File directory;
+    private Journal journal;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("journal", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdirs());
+    }
+
+    @After
+    public void deleteDirectory() {
+        if (journal != null)
+            journal.close();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files)
+                file.delete();
+        }
+        directory.delete();
+    }
+
+    private static String message(int seqNum) {
+        StringBuilder sb = new StringBuilder("message ").append(seqNum).append(' ');
+        for (int i = 0; i < seqNum % 7; i++)
+            sb.append("padding ");
+        return sb.toString();
+    }
+
+    private void append(int seqNum, String s) {
+        ByteBuffer buffer = ByteBuffer.wrap(("xx" + s).getBytes());
+        journal.append(seqNum, buffer, 2, s.length());
+    }
+
+    private String get(int seqNum) {
+        ByteBuffer buffer = journal.get(seqNum);
+        if (buffer == null)
+            return null;
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new String(bytes);
+    }
+
+    private int count(String suffix) {
+        int count = 0;
+        for (String name : directory.list())
+            count += name.endsWith(suffix) ? 1 : 0;
+        return count;
+    }
+
+    @Test
+    public void appendAndGet() {
+        journal = new Journal(directory, "session");
+        assertEquals(0, journal.getLastSeqNum());
+        assertNull(journal.get(1));
+        for (int i = 1; i <= 100; i++)
+            append(i, message(i));
+        assertEquals(100, journal.getLastSeqNum());
+        for (int i = 1; i <= 100; i++)
+            assertEquals(message(i), get(i));
+        assertNull(journal.get(0));
+        assertNull(journal.get(101));
+    }
+
+    @Test
+    public void gaps() {
+        journal = new Journal(directory, "session");
+        append(1, "one");
+        append(5, "five");
+        assertNull(get(2));
+        assertNull(get(4));
+        assertEquals("five", get(5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notAfterLast() {
+        journal = new Journal(directory, "session");
+        append(2, "two");
+        append(2, "two again");
+    }
+
+    @Test
+    public void rollOver() {
+        // Small segments and index files, so both roll over many times.
+        journal = new Journal(directory, "session", 256, 10);
+        for (int i = 1; i <= 200; i++)
+            append(i, message(i));
+        assertTrue(count(".log") > 10);
+        assertEquals(20, count(".idx"));
+        for (int i = 1; i <= 200; i++)
+            assertEquals(message(i), get(i));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooLong() {
+        journal = new Journal(directory, "session", 16, 10);
+        append(1, "longer than sixteen bytes");
+    }
+
+    @Test
+    public void recover() {
+        journal = new Journal(directory, "session", 256, 10);
+        for (int i = 1; i <= 55; i++)
+            append(i, message(i));
+        journal.close();
+
+        journal = new Journal(directory, "session", 256, 10);
+        assertEquals(55, journal.getLastSeqNum());
+        assertEquals(message(55), get(55));
+        append(56, message(56));
+        for (int i = 1; i <= 56; i++)
+            assertEquals(message(i), get(i));
+
+        // An index file that ends with a gap.
+        append(70, message(70));
+        journal.close();
+        journal = new Journal(directory, "session", 256, 10);
+        assertEquals(70, journal.getLastSeqNum());
+        assertNull(get(65));
+        assertEquals(message(70), get(70));
+    }
+
+    @Test
+    public void reset() {
+        journal = new Journal(directory, "session", 256, 10);
+        for (int i = 1; i <= 50; i++)
+            append(i, message(i));
+        journal.reset();
+        assertEquals(0, journal.getLastSeqNum());
+        assertEquals(0, directory.list().length);
+        assertNull(get(1));
+        append(1, "again");
+        assertEquals("again", get(1));
+        journal.close();
+        journal = new Journal(directory, "session", 256, 10);
+        assertEquals(1, journal.getLastSeqNum());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closed() {
+        journal = new Journal(directory, "session");
+        journal.close();
+        journal.get(1);
+    }
+}
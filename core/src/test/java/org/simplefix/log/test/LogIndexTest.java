@@ -0,0 +1,273 @@
+package org.simplefix.log.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.simplefix.dictionary.Dictionary;
+import org.simplefix.dictionary.xml.DictionaryParser;
+import org.simplefix.log.LogIndex;
+import org.simplefix.log.LogListener;
+import org.simplefix.message.DecodedMessage;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.simplefix.test.FixMessages.fix;
+
+/**
+ * Test the log index: lookups by tag, incremental updates, merging blocks, and opening it again.
+ */
+public class LogIndexTest {
+    private static Dictionary dictionary;
+
+    private File directory;
+    private File indexDirectory;
+    private LogIndex index;
+
+    @BeforeClass
+    public static void parseDictionary() {
+        URL resource = Thread.currentThread().getContextClassLoader().getResource("FIX44.xml");
+        dictionary = DictionaryParser.parseXML(resource);
+    }
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("logs", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdirs());
+        indexDirectory = new File(directory, "index");
+        index = new LogIndex(indexDirectory, dictionary);
+    }
+
+    @After
+    public void deleteDirectory() {
+        index.close();
+        delete(directory);
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File f : files)
+                delete(f);
+        }
+        file.delete();
+    }
+
+    /**
+     * Adds the BeginString, BodyLength and CheckSum fields to a message body, where '|' is SOH.
+     */
+    private static String order(int i) {
+        return fix("35=D|49=CLIENT|56=BROKER|34=" + i + "|11=ORD" + i + "|55=IBM|54=1|38=100|40=1|") + "\n";
+    }
+
+    /** An order, its fill, a replace and the fill of the replacement. **/
+    private static final String LIFECYCLE =
+            fix("35=D|34=1|11=A1|55=IBM|54=1|38=100|40=1|") + "\n"
+                    + fix("35=8|34=2|11=A1|37=O1|17=E1|150=0|39=0|55=IBM|54=1|") + "\n"
+                    + fix("35=G|34=3|11=A2|41=A1|55=IBM|54=1|38=200|40=1|") + "\n"
+                    + fix("35=8|34=4|11=A2|41=A1|37=O1|17=E2|150=5|39=0|55=IBM|54=1|") + "\n";
+
+    private File write(String name, String s, boolean append) throws IOException {
+        File file = new File(directory, name);
+        FileOutputStream out = new FileOutputStream(file, append);
+        try {
+            out.write(s.getBytes("ISO-8859-1"));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static class Collector implements LogListener {
+        final List<String> found = new ArrayList<String>();
+
+        public void onMessage(File file, long position, DecodedMessage msg) {
+            found.add(file.getName() + ":" + msg.getString(msg.indexOf(35)) + msg.getString(msg.indexOf(34)));
+        }
+    }
+
+    private String find(int tag, String value) throws IOException {
+        Collector collector = new Collector();
+        assertEquals(index.find(tag, value, collector), collector.found.size());
+        return collector.found.toString();
+    }
+
+    private String find(String value) throws IOException {
+        Collector collector = new Collector();
+        assertEquals(index.find(value, collector), collector.found.size());
+        return collector.found.toString();
+    }
+
+    @Test
+    public void lookups() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 100; i < 1100; i++)
+            sb.append(order(i));
+        File log = write("FIX.20130127.log", order(5) + LIFECYCLE + sb, false);
+        index.add(log);
+        index.add(log);
+        assertEquals(1005, index.update());
+        assertEquals("up to the last newline", log.length() - 1, index.getIndexedLength(log));
+        assertEquals(0, index.update());
+
+        assertEquals("[FIX.20130127.log:D1, FIX.20130127.log:82]", find(11, "A1"));
+        assertEquals("[FIX.20130127.log:G3, FIX.20130127.log:84]", find(41, "A1"));
+        assertEquals("[FIX.20130127.log:D1, FIX.20130127.log:82, FIX.20130127.log:G3, FIX.20130127.log:84]",
+                find("A1"));
+        assertEquals("[FIX.20130127.log:82, FIX.20130127.log:84]", find(37, "O1"));
+        assertEquals("[FIX.20130127.log:84]", find(17, "E2"));
+        assertEquals("[FIX.20130127.log:D777]", find(11, "ORD777"));
+        assertEquals("[]", find(11, "ORD7"));
+        assertEquals("[]", find(37, "A1"));
+        try {
+            index.find(55, "IBM", null);
+            fail("Symbol isn't indexed");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    /**
+     * Updates are synchronized on the index, and lookups don't wait for them.
+     */
+    @Test
+    public void lookupDuringUpdate() throws Exception {
+        File log = write("FIX.20130127.log", LIFECYCLE, false);
+        index.add(log);
+        assertEquals(4, index.update());
+        final List<String> found = new ArrayList<String>();
+        Thread lookup = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    found.add(find(11, "A1"));
+                } catch (IOException e) {
+                    found.add(e.toString());
+                }
+            }
+        };
+        synchronized (index) {
+            lookup.start();
+            lookup.join(5000);
+            assertFalse("The lookup waited for the update", lookup.isAlive());
+        }
+        assertEquals("[[FIX.20130127.log:D1, FIX.20130127.log:82]]", found.toString());
+    }
+
+    /**
+     * A message cut off by a crash, near the end of a log, with whole messages after it (the log
+     * starts a new line when it is opened again).
+     */
+    @Test
+    public void tornMessage() throws IOException {
+        String torn = order(2);
+        File log = write("FIX.20130127.log", order(1) + torn.substring(0, torn.length() / 2) + "\n" + order(3) + order(4), false);
+        index.add(log);
+        assertEquals(3, index.update());
+        assertEquals(log.length() - 1, index.getIndexedLength(log));
+        assertEquals("[FIX.20130127.log:D3]", find(11, "ORD3"));
+        assertEquals("[FIX.20130127.log:D4]", find(11, "ORD4"));
+        assertEquals("[]", find(11, "ORD2"));
+
+        // Until the log grows again, a message cut off at the end could still be being written.
+        write(log.getName(), torn.substring(0, torn.length() / 2), true);
+        assertEquals(0, index.update());
+    }
+
+    @Test
+    public void incremental() throws IOException {
+        File log = write("FIX.20130127.log", LIFECYCLE, false);
+        index.add(log);
+        assertEquals(4, index.update());
+
+        // The last message is still being written.
+        String next = order(1000);
+        write(log.getName(), order(999) + next.substring(0, 20), true);
+        long end = log.length() - 21;
+        assertEquals(1, index.update());
+        assertEquals(end, index.getIndexedLength(log));
+        assertEquals("[]", find(11, "ORD1000"));
+        write(log.getName(), next.substring(20), true);
+        assertEquals(1, index.update());
+        assertEquals("[FIX.20130127.log:D1000]", find(11, "ORD1000"));
+
+        // Many small updates are merged into a few blocks.
+        for (int i = 0; i < 40; i++) {
+            write(log.getName(), order(i) + fix("35=0|34=" + i + "|") + "\n", true);
+            assertEquals(2, index.update());
+        }
+        for (int i = 0; i < 40; i++)
+            assertEquals("[FIX.20130127.log:D" + i + "]", find(11, "ORD" + i));
+        File indexFile = indexDirectory.listFiles()[0];
+        // 8 entries for the lifecycle, 42 orders.
+        long overhead = indexFile.length() - 50 * 16;
+        assertTrue("overhead " + overhead, overhead < 200 + 8 * 24);
+
+        // Nothing to index, but the index moves on.
+        write(log.getName(), fix("35=0|34=41|") + "\n", true);
+        assertEquals(1, index.update());
+        assertEquals(indexFile.length(), overhead + 50 * 16);
+        index.close();
+        index = new LogIndex(indexDirectory, dictionary);
+        assertEquals(log.length() - 1, index.getIndexedLength(log));
+        assertEquals("[FIX.20130127.log:D39]", find(11, "ORD39"));
+    }
+
+    @Test
+    public void rolled() throws IOException {
+        File second = write("FIX.20130128.log", order(2) + LIFECYCLE, false);
+        File first = write("FIX.20130127.log", LIFECYCLE + order(1), false);
+        index.add(second);
+        index.add(first);
+        assertEquals(10, index.update());
+        assertEquals("[FIX.20130127.log:D1, FIX.20130127.log:82, FIX.20130128.log:D1, FIX.20130128.log:82]",
+                find(11, "A1"));
+
+        // Opened again, the logs are found from the index files.
+        index.close();
+        index = new LogIndex(indexDirectory, dictionary);
+        assertEquals(2, index.getLogs().size());
+        assertEquals(first.getAbsoluteFile(), index.getLogs().get(0));
+        assertEquals(0, index.update());
+        assertEquals("[FIX.20130128.log:D2]", find(11, "ORD2"));
+        index.close();
+
+        try {
+            index = new LogIndex(indexDirectory, dictionary, 11);
+            fail("Different tags");
+        } catch (IOException expected) {
+        }
+        index = new LogIndex(indexDirectory, dictionary);
+    }
+
+    @Test
+    public void incompleteBlock() throws IOException {
+        File log = write("FIX.20130127.log", LIFECYCLE, false);
+        index.add(log);
+        assertEquals(4, index.update());
+        write(log.getName(), order(1), true);
+        assertEquals(1, index.update());
+        index.close();
+
+        // A block that was being written when the process stopped.
+        File indexFile = indexDirectory.listFiles()[0];
+        long length = indexFile.length();
+        FileOutputStream out = new FileOutputStream(indexFile, true);
+        try {
+            out.write(new byte[]{0x42, 0x4c, 0x4b, 0x31, 0, 0, 0, 5, 0, 0});
+        } finally {
+            out.close();
+        }
+        index = new LogIndex(indexDirectory, dictionary);
+        assertEquals(length, indexFile.length());
+        assertEquals("up to the last newline", log.length() - 1, index.getIndexedLength(log));
+        assertEquals("[FIX.20130127.log:D1]", find(11, "ORD1"));
+        assertEquals("[FIX.20130127.log:G3, FIX.20130127.log:84]", find(41, "A1"));
+    }
+}
@@ -0,0 +1,201 @@
+package org.simplefix.log.test;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.simplefix.dictionary.Dictionary;
+import org.simplefix.dictionary.xml.DictionaryParser;
+import org.simplefix.log.LogFilter;
+import org.simplefix.log.LogListener;
+import org.simplefix.log.LogScanner;
+import org.simplefix.log.MessageRenderer;
+import org.simplefix.log.ScanStats;
+import org.simplefix.message.DecodedMessage;
+import org.simplefix.message.MessageDecoder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.simplefix.test.FixMessages.fix;
+
+/**
+ * Test the parallel log scanner: chunk boundaries, filters, file order and rendering.
+ */
+public class LogScannerTest {
+    private static final int MESSAGES = 200;
+
+    /** 2013-01-27 09:30:00 UTC. **/
+    private static final long START = 1359279000000L;
+
+    private static Dictionary dictionary;
+    private static File log;
+
+    private LogScanner scanner;
+
+    @BeforeClass
+    public static void writeLog() throws IOException {
+        URL resource = Thread.currentThread().getContextClassLoader().getResource("FIX44.xml");
+        dictionary = DictionaryParser.parseXML(resource);
+        log = File.createTempFile("fix", ".log");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < MESSAGES; i++) {
+            // Every other message is on a line of its own, with a prefix.
+            if (i % 2 == 1)
+                sb.append(i).append(" 20130127-09:30:00.000 <- ");
+            sb.append(message(i));
+            if (i % 2 == 1)
+                sb.append('\n');
+        }
+        // Cut short.
+        String last = message(MESSAGES);
+        sb.append(last.substring(0, last.length() / 2));
+        FileOutputStream out = new FileOutputStream(log);
+        try {
+            out.write(sb.toString().getBytes("ISO-8859-1"));
+        } finally {
+            out.close();
+        }
+    }
+
+    @AfterClass
+    public static void deleteLog() {
+        log.delete();
+    }
+
+    @After
+    public void closeScanner() {
+        if (scanner != null)
+            scanner.close();
+    }
+
+    /**
+     * Every fourth message is an ExecutionReport, the rest are orders, and every tenth order has two
+     * parties.   The messages are a second apart.
+     */
+    private static String message(int i) {
+        StringBuilder body = new StringBuilder();
+        body.append("35=").append(i % 4 == 0 ? "8" : "D").append("|49=CLIENT|56=BROKER|34=").append(i + 1)
+                .append("|52=").append(timestamp(START + i * 1000L)).append("|11=ORD").append(i).append('|');
+        if (i % 4 != 0 && i % 10 == 0)
+            body.append("453=2|448=P1|447=D|452=1|448=P").append(i).append("|447=D|452=3|");
+        body.append("55=IBM|54=1|38=100|40=1|");
+        return fix(body.toString());
+    }
+
+    private static String timestamp(long millis) {
+        long seconds = millis / 1000 - START / 1000;
+        return String.format("20130127-09:%02d:%02d.000", 30 + seconds / 60, seconds % 60);
+    }
+
+    private static class Collector implements LogListener {
+        final List<String> clOrdIDs = new ArrayList<String>();
+        final List<Long> positions = new ArrayList<Long>();
+        final StringBuilder rendered = new StringBuilder();
+
+        public void onMessage(File file, long position, DecodedMessage msg) {
+            assertEquals(log, file);
+            clOrdIDs.add(msg.getString(msg.indexOf(11)));
+            positions.add(position);
+            MessageRenderer.render(msg, rendered);
+        }
+    }
+
+    private Collector scan(LogFilter filter, int chunkSize) throws IOException {
+        if (scanner != null)
+            scanner.close();
+        scanner = new LogScanner(dictionary, 4);
+        scanner.setChunkSize(chunkSize);
+        scanner.setMaxMessageLength(1024);
+        Collector collector = new Collector();
+        ScanStats stats = scanner.scan(filter, collector, log);
+        assertEquals(log.length(), stats.getBytes());
+        assertEquals(MESSAGES, stats.getMessageCount());
+        assertEquals(1, stats.getErrorCount());
+        assertEquals(collector.clOrdIDs.size(), stats.getMatchCount());
+        return collector;
+    }
+
+    @Test
+    public void everyMessage() throws IOException {
+        for (int chunkSize : new int[]{7, 100, 4096, LogScanner.DEFAULT_CHUNK_SIZE}) {
+            Collector collector = scan(new LogFilter(), chunkSize);
+            assertEquals(MESSAGES, collector.clOrdIDs.size());
+            RandomAccessFile raf = new RandomAccessFile(log, "r");
+            try {
+                for (int i = 0; i < MESSAGES; i++) {
+                    assertEquals("chunk size " + chunkSize, "ORD" + i, collector.clOrdIDs.get(i));
+                    byte[] bytes = new byte[9];
+                    raf.seek(collector.positions.get(i));
+                    raf.readFully(bytes);
+                    assertEquals("8=FIX.4.4", new String(bytes, "ISO-8859-1"));
+                }
+            } finally {
+                raf.close();
+            }
+        }
+    }
+
+    @Test
+    public void msgTypes() throws IOException {
+        LogFilter filter = new LogFilter();
+        filter.addMsgType("8");
+        Collector collector = scan(filter, 100);
+        assertEquals(MESSAGES / 4, collector.clOrdIDs.size());
+        assertEquals("ORD4", collector.clOrdIDs.get(1));
+    }
+
+    @Test
+    public void tagValues() throws IOException {
+        LogFilter filter = new LogFilter();
+        filter.addTagValue(11, "ORD5");
+        filter.addTagValue(11, "ORD6");
+        filter.addTagValue(11, "ORD8");
+        filter.addMsgType("D");
+        assertEquals("[ORD5, ORD6]", scan(filter, 100).clOrdIDs.toString());
+
+        // In a repeating group.
+        filter = new LogFilter();
+        filter.addTagValue(448, "P30");
+        assertEquals("[ORD30]", scan(filter, 100).clOrdIDs.toString());
+        filter.addTagValue(55, "MSFT");
+        assertEquals("[]", scan(filter, 100).clOrdIDs.toString());
+    }
+
+    @Test
+    public void timeRange() throws IOException {
+        LogFilter filter = new LogFilter();
+        filter.setTimeRange(START + 10000, START + 20000);
+        List<String> clOrdIDs = scan(filter, 100).clOrdIDs;
+        assertEquals(10, clOrdIDs.size());
+        assertEquals("ORD10", clOrdIDs.get(0));
+        assertEquals("ORD19", clOrdIDs.get(9));
+    }
+
+    @Test
+    public void render() throws IOException {
+        LogFilter filter = new LogFilter();
+        filter.addTagValue(11, "ORD10");
+        String rendered = scan(filter, 4096).rendered.toString();
+        assertTrue(rendered, rendered.startsWith("BeginString(8)=FIX.4.4\nBodyLength(9)="));
+        assertTrue(rendered, rendered.contains("\nMsgType(35)=D [ORDER_SINGLE]\n"));
+        assertTrue(rendered, rendered.contains("\nSendingTime(52)=20130127-09:30:10.000\n"));
+        assertTrue(rendered, rendered.contains("\nNoPartyIDs(453)=2\n- PartyID(448)=P1\n"
+                + "  PartyIDSource(447)=D [PROPRIETARY_CUSTOM_CODE]\n  PartyRole(452)=1 [EXECUTING_FIRM]\n"
+                + "- PartyID(448)=P10\n"));
+        assertTrue(rendered, rendered.contains("\nSide(54)=1 [BUY]\n"));
+
+        byte[] bytes = message(1).getBytes("ISO-8859-1");
+        StringBuilder sb = new StringBuilder();
+        MessageRenderer.renderLine(new MessageDecoder(dictionary).decode(bytes, 0, bytes.length), sb);
+        assertTrue(sb.toString(), sb.toString().startsWith("BeginString(8)=FIX.4.4 | BodyLength(9)="));
+        assertTrue(sb.toString(), sb.toString().endsWith(" | OrdType(40)=1 [MARKET] | CheckSum(10)="
+                + message(1).substring(bytes.length - 4, bytes.length - 1)));
+    }
+}
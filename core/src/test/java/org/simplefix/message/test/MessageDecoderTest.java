@@ -0,0 +1,272 @@
+package org.simplefix.message.test;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.simplefix.dictionary.Dictionary;
+import org.simplefix.dictionary.ValueType;
+import org.simplefix.dictionary.xml.DictionaryParser;
+import org.simplefix.message.DecodedMessage;
+import org.simplefix.message.MessageDecoder;
+import org.simplefix.message.MessageFormatException;
+import org.simplefix.util.Decimal;
+
+import java.net.URL;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the flyweight message decoder.
+ */
+public class MessageDecoderTest {
+    private static Dictionary dictionary;
+
+    @BeforeClass
+    public static void parseDictionary() {
+        URL resource = Thread.currentThread().getContextClassLoader().getResource("FIX44.xml");
+        dictionary = DictionaryParser.parseXML(resource);
+    }
+
+    static byte[] fix(String s) {
+        return s.replace('|', '\u0001').getBytes();
+    }
+
+    @Test
+    public void decodeHeartbeat() {
+        byte[] bytes = fix("8=FIX.4.4|9=55|35=0|49=SENDER|56=TARGET|34=12|52=20130112-09:30:00.000|10=123|");
+        MessageDecoder decoder = new MessageDecoder(dictionary);
+        DecodedMessage msg = decoder.decode(bytes, 0, bytes.length);
+        assertEquals(8, msg.getFieldCount());
+        assertEquals(8, msg.getTag(0));
+        assertEquals("FIX.4.4", msg.getString(0));
+        assertEquals(2, msg.getMsgTypeIndex());
+        assertTrue(msg.valueEquals(msg.getMsgTypeIndex(), "0".getBytes()));
+        assertEquals(dictionary.getFieldDef("SenderCompID"), msg.getFieldDef(3));
+        int seqNum = msg.indexOf(34);
+        assertEquals("12", msg.getString(seqNum));
+        assertEquals(12, msg.getInt(seqNum));
+        assertEquals(-1, msg.indexOf(112));
+    }
+
+    @Test
+    public void decodeEnums() {
+        byte[] bytes = fix("8=FIX.4.4|9=5|35=D|11=ORD1|55=IBM|54=2|40=Z|59=0|10=000|");
+        DecodedMessage msg = new MessageDecoder(dictionary).decode(bytes, 0, bytes.length);
+        int side = msg.indexOf(54);
+        assertEquals("SELL", dictionary.getFieldDef(54).getEnumValues().getDescription(msg.getEnumOrdinal(side)));
+        assertEquals(-1, msg.getEnumOrdinal(msg.indexOf(40)));
+        assertEquals(-1, msg.getEnumOrdinal(msg.indexOf(11)));
+        assertEquals("D", dictionary.getFieldDef(35).getEnumValues().getValue(msg.getEnumOrdinal(2)));
+    }
+
+    @Test
+    public void decodeInPlace() {
+        byte[] bytes = fix("junk8=FIX.4.4|9=5|35=0|10=123|junk");
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes);
+        MessageDecoder decoder = new MessageDecoder(dictionary);
+        DecodedMessage msg = decoder.decode(direct, 4, bytes.length - 8);
+        assertEquals(4, msg.getFieldCount());
+        assertSame(direct, msg.getBuffer());
+        assertEquals(4 + 2, msg.getValueOffset(0));
+        assertEquals("123", msg.getString(3));
+    }
+
+    @Test
+    public void decodeDataField() {
+        // SecureData contains a SOH, so it must be read using the length in SecureDataLen.
+        byte[] bytes = fix("8=FIX.4.4|9=5|35=0|90=5|91=ab|cd|10=123|");
+        DecodedMessage msg = new MessageDecoder(dictionary).decode(bytes, 0, bytes.length);
+        assertEquals(6, msg.getFieldCount());
+        assertEquals(91, msg.getTag(4));
+        assertEquals(5, msg.getValueLength(4));
+        assertEquals(10, msg.getTag(5));
+    }
+
+    @Test
+    public void reuseAndGrow() {
+        MessageDecoder decoder = new MessageDecoder(dictionary);
+        StringBuilder sb = new StringBuilder("8=FIX.4.4|9=5|35=0|");
+        for (int i = 0; i < 200; i++)
+            sb.append("58=text").append(i).append('|');
+        byte[] big = fix(sb.append("10=000|").toString());
+        assertEquals(204, decoder.decode(big, 0, big.length).getFieldCount());
+        byte[] small = fix("8=FIX.4.4|9=5|35=0|10=000|");
+        DecodedMessage msg = decoder.decode(small, 0, small.length);
+        assertEquals(4, msg.getFieldCount());
+        assertEquals(2, msg.getMsgTypeIndex());
+    }
+
+    @Test
+    public void decodeGroups() {
+        byte[] bytes = fix("8=FIX.4.4|9=5|35=W|49=A|56=B|34=1|52=20130118-09:00:00.000|55=EUR/USD|"
+                + "268=2|269=0|270=1.30|271=100|269=1|270=1.31|271=200|10=000|");
+        MessageDecoder decoder = new MessageDecoder(dictionary);
+        DecodedMessage msg = decoder.decode(bytes, 0, bytes.length);
+        assertSame(dictionary.getMessageType("W"), msg.getMessageType());
+        int count = msg.indexOf(268);
+        assertNull(msg.getGroup(count));
+        assertEquals(2, msg.getGroupInstanceCount(count));
+        assertEquals(msg.indexOf(10), msg.getGroupEnd(count));
+        int second = msg.indexOf(269, count + 2);
+        assertEquals(1, msg.getGroup(second).getDepth());
+        assertEquals(268, msg.getGroup(second).getCountEntry().getTag());
+        assertEquals(0, msg.getGroupInstance(count + 1));
+        assertEquals(1, msg.getGroupInstance(second));
+        assertEquals(1, msg.getGroupInstance(second + 2));
+        assertNull(msg.getGroup(msg.indexOf(10)));
+        assertEquals(-1, msg.getGroupEnd(msg.indexOf(55)));
+    }
+
+    @Test
+    public void decodeNestedGroups() {
+        byte[] bytes = fix("8=FIX.4.4|9=5|35=D|11=ORD1|453=2|448=P1|447=D|452=1|802=2|523=S1|803=1|523=S2|803=2|"
+                + "448=P2|447=D|452=3|5450=custom|55=IBM|54=1|10=000|");
+        DecodedMessage msg = new MessageDecoder(dictionary).decode(bytes, 0, bytes.length);
+        int parties = msg.indexOf(453);
+        int subIDs = msg.indexOf(802);
+        assertEquals(2, msg.getGroupInstanceCount(parties));
+        assertEquals(2, msg.getGroupInstanceCount(subIDs));
+        assertEquals(msg.indexOf(448, subIDs), msg.getGroupEnd(subIDs));
+        assertEquals(msg.indexOf(55), msg.getGroupEnd(parties));
+        int subID2 = msg.indexOf(523, subIDs + 2);
+        assertEquals(2, msg.getGroup(subID2).getDepth());
+        assertEquals(1, msg.getGroupInstance(subID2));
+        // The user defined tag stays in the current group.
+        int custom = msg.indexOf(5450);
+        assertEquals(453, msg.getGroup(custom).getCountEntry().getTag());
+        assertEquals(1, msg.getGroupInstance(custom));
+        assertNull(msg.getGroup(msg.indexOf(55)));
+    }
+
+    @Test
+    public void decodeLazy() {
+        byte[] bytes = fix("8=FIX.4.4|9=5|35=W|49=A|56=B|34=1|90=5|91=ab|cd|55=EUR/USD|"
+                + "268=2|269=0|270=1.30|271=100|269=1|270=1.31|271=200|10=000|");
+        MessageDecoder decoder = new MessageDecoder(dictionary);
+        decoder.setLazy(true);
+        DecodedMessage msg = decoder.decode(bytes, 0, bytes.length);
+        assertTrue(msg.isLazy());
+        assertEquals(17, msg.getFieldCount());
+        assertEquals(2, msg.getMsgTypeIndex());
+        assertEquals(5, msg.getValueLength(msg.indexOf(91)));
+        assertEquals("EUR/USD", msg.getString(msg.indexOf(55)));
+        assertEquals(dictionary.getFieldDef(55), msg.getFieldDef(msg.indexOf(55)));
+        // No group information, but the layout is found when asked for.
+        int count = msg.indexOf(268);
+        assertEquals(-1, msg.getGroupEnd(count));
+        assertNull(msg.getGroup(count + 1));
+        assertSame(dictionary.getMessageType("W"), msg.getMessageType());
+
+        // Back to full decoding.
+        decoder.setLazy(false);
+        msg = decoder.decode(bytes, 0, bytes.length);
+        assertFalse(msg.isLazy());
+        assertEquals(msg.indexOf(10), msg.getGroupEnd(msg.indexOf(268)));
+    }
+
+    @Test
+    public void cachedValues() {
+        byte[] bytes = fix("8=FIX.4.4|9=5|35=D|11=ORD1|55=IBM|54=2|38=12345678901|10=000|");
+        MessageDecoder decoder = new MessageDecoder(dictionary);
+        decoder.setLazy(true);
+        DecodedMessage msg = decoder.decode(bytes, 0, bytes.length);
+        int qty = msg.indexOf(38);
+        assertEquals(12345678901L, msg.getLong(qty));
+        assertEquals(12345678901L, msg.getLong(qty));
+        try {
+            msg.getInt(qty);
+            fail("Expected out of range");
+        } catch (MessageFormatException expected) {
+        }
+        int symbol = msg.indexOf(55);
+        assertSame(msg.getString(symbol), msg.getString(symbol));
+        int side = msg.indexOf(54);
+        assertEquals(msg.getEnumOrdinal(side), msg.getEnumOrdinal(side));
+        assertEquals("SELL", dictionary.getFieldDef(54).getEnumValues().getDescription(msg.getEnumOrdinal(side)));
+
+        // The cached values don't survive the next message.
+        byte[] next = fix("8=FIX.4.4|9=5|35=D|11=ORD2|55=MSFT|54=1|38=-7|10=000|");
+        msg = decoder.decode(next, 0, next.length);
+        assertEquals("MSFT", msg.getString(symbol));
+        assertEquals(-7, msg.getInt(qty));
+        assertEquals("BUY", dictionary.getFieldDef(54).getEnumValues().getDescription(msg.getEnumOrdinal(side)));
+    }
+
+    @Test
+    public void typedValues() {
+        byte[] bytes = fix("8=FIX.4.4|9=5|35=8|54=1|43=Y|97=N|44=195.25|38=10000|31=-.5|32=7.|6=0.000000000000000001|10=000|");
+        DecodedMessage msg = new MessageDecoder(dictionary).decode(bytes, 0, bytes.length);
+        assertSame(ValueType.DECIMAL, msg.getFieldDef(msg.indexOf(44)).getValueType());
+        assertSame(ValueType.DECIMAL, msg.getFieldDef(msg.indexOf(38)).getValueType());
+        assertEquals('1', msg.getChar(msg.indexOf(54)));
+        assertTrue(msg.getBoolean(msg.indexOf(43)));
+        assertFalse(msg.getBoolean(msg.indexOf(97)));
+
+        long price = msg.getDecimal(msg.indexOf(44));
+        assertEquals(19525, Decimal.mantissa(price));
+        assertEquals(2, Decimal.scale(price));
+        assertEquals(195.25, msg.getDouble(msg.indexOf(44)), 0);
+        assertEquals(Decimal.pack(10000, 0), msg.getDecimal(msg.indexOf(38)));
+        assertEquals(10000, msg.getLong(msg.indexOf(38)));
+        assertEquals(Decimal.pack(-5, 1), msg.getDecimal(msg.indexOf(31)));
+        assertEquals(Decimal.pack(7, 0), msg.getDecimal(msg.indexOf(32)));
+        assertEquals(Decimal.pack(1, 18), msg.getDecimal(msg.indexOf(6)));
+
+        assertInvalid(msg, msg.indexOf(8), "getChar");
+        assertInvalid(msg, msg.indexOf(54), "getBoolean");
+        assertInvalid(msg, msg.indexOf(8), "getDecimal");
+        assertInvalid(msg, msg.indexOf(44), "getLong");
+    }
+
+    @Test
+    public void invalidDecimals() {
+        byte[] bytes = fix("8=FIX.4.4|9=5|35=8|44=|31=-|32=.|6=1.2.3|151=1e5|14=288230376151711744|"
+                + "1=0.0000000000000000001|10=000|");
+        DecodedMessage msg = new MessageDecoder(dictionary).decode(bytes, 0, bytes.length);
+        for (int i = 3; i < msg.getFieldCount() - 1; i++)
+            assertInvalid(msg, i, "getDecimal");
+    }
+
+    @Test
+    public void timestamps() {
+        byte[] bytes = fix("8=FIX.4.4|9=5|35=8|52=20130117-14:00:00|60=20120229-23:59:59.999|"
+                + "122=19991231-00:00:00.123456|42=20130117-14:00|126=20131317-14:00:00|"
+                + "168=20130117 14:00:00|432=20130117-14:00:00.|10=000|");
+        DecodedMessage msg = new MessageDecoder(dictionary).decode(bytes, 0, bytes.length);
+        assertEquals(1358431200000L, msg.getUtcTimestamp(msg.indexOf(52)));
+        assertEquals(1330559999999L, msg.getUtcTimestamp(msg.indexOf(60)));
+        assertEquals(946598400123L, msg.getUtcTimestamp(msg.indexOf(122)));
+        for (int i = 6; i < msg.getFieldCount() - 1; i++)
+            assertInvalid(msg, i, "getUtcTimestamp");
+    }
+
+    private static void assertInvalid(DecodedMessage msg, int index, String getter) {
+        try {
+            if (getter.equals("getChar"))
+                msg.getChar(index);
+            else if (getter.equals("getBoolean"))
+                msg.getBoolean(index);
+            else if (getter.equals("getLong"))
+                msg.getLong(index);
+            else if (getter.equals("getUtcTimestamp"))
+                msg.getUtcTimestamp(index);
+            else
+                msg.getDecimal(index);
+            fail(getter + " of tag " + msg.getTag(index) + " should have failed");
+        } catch (MessageFormatException expected) {
+        }
+    }
+
+    @Test(expected = MessageFormatException.class)
+    public void badTag() {
+        byte[] bytes = fix("8=FIX.4.4|9x=5|");
+        new MessageDecoder(dictionary).decode(bytes, 0, bytes.length);
+    }
+
+    @Test(expected = MessageFormatException.class)
+    public void unterminated() {
+        byte[] bytes = fix("8=FIX.4.4|9=5");
+        new MessageDecoder(dictionary).decode(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,136 @@
+package org.simplefix.message.test;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.simplefix.dictionary.Dictionary;
+import org.simplefix.dictionary.xml.DictionaryParser;
+import org.simplefix.message.DecodedMessage;
+import org.simplefix.message.MessageDecoder;
+import org.simplefix.message.MessageEncoder;
+import org.simplefix.util.Decimal;
+
+import java.net.URL;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+import static org.simplefix.test.FixMessages.fix;
+
+/**
+ * Test the message encoder.
+ */
+public class MessageEncoderTest {
+    private static Dictionary dictionary;
+
+    @BeforeClass
+    public static void parseDictionary() {
+        URL resource = Thread.currentThread().getContextClassLoader().getResource("FIX44.xml");
+        dictionary = DictionaryParser.parseXML(resource);
+    }
+
+    static String toString(ByteBuffer buffer, int offset, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = offset; i < offset + length; i++)
+            sb.append((char) buffer.get(i));
+        return sb.toString();
+    }
+
+    private static int encodeHeartbeat(MessageEncoder encoder, ByteBuffer buffer, int seqNum) {
+        encoder.begin(buffer, dictionary.getMessageType("0"));
+        encoder.add(49, "CLIENT");
+        encoder.add(56, "SERVER");
+        encoder.add(34, seqNum);
+        encoder.addUtcTimestamp(52, 1358071200000L);
+        return encoder.finish();
+    }
+
+    @Test
+    public void encodeHeartbeat() {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        MessageEncoder encoder = new MessageEncoder(dictionary, "FIX.4.4");
+        int length = encodeHeartbeat(encoder, buffer, 1);
+        assertEquals(length, buffer.position());
+        assertEquals(fix("35=0|49=CLIENT|56=SERVER|34=1|52=20130113-10:00:00.000|"),
+                toString(buffer, 0, length));
+    }
+
+    @Test
+    public void encodeBackToBackDirect() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(256);
+        buffer.position(3);
+        MessageEncoder encoder = new MessageEncoder(dictionary, "FIX.4.4");
+        int first = encodeHeartbeat(encoder, buffer, 9);
+        int second = encodeHeartbeat(encoder, buffer, 10);
+        assertEquals(3 + first + second, buffer.position());
+        assertEquals(fix("35=0|49=CLIENT|56=SERVER|34=9|52=20130113-10:00:00.000|")
+                + fix("35=0|49=CLIENT|56=SERVER|34=10|52=20130113-10:00:00.000|"),
+                toString(buffer, 3, first + second));
+
+        DecodedMessage msg = new MessageDecoder(dictionary).decode(buffer, 3 + first, second);
+        assertEquals("10", msg.getString(msg.indexOf(34)));
+    }
+
+    @Test
+    public void values() {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        MessageEncoder encoder = new MessageEncoder(dictionary, "FIX.4.4");
+        encoder.begin(buffer, "D".getBytes());
+        encoder.addDecimal(44, 12345, 2);
+        encoder.addDecimal(38, 5, 3);
+        encoder.addDecimal(99, -42, 1);
+        encoder.add(9999, Long.MIN_VALUE);
+        encoder.add(54, '1');
+        encoder.add(43, true);
+        encoder.add(58, "abc".getBytes());
+        encoder.addUtcTimestamp(60, -1);
+        int length = encoder.finish();
+        assertEquals(fix("35=D|44=123.45|38=0.005|99=-4.2|9999=-9223372036854775808|54=1|43=Y|58=abc|"
+                + "60=19691231-23:59:59.999|"), toString(buffer, 0, length));
+    }
+
+    @Test
+    public void decimalRoundTrip() {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        MessageEncoder encoder = new MessageEncoder(dictionary, "FIX.4.4");
+        encoder.begin(buffer, "8".getBytes());
+        encoder.addDecimal(44, Decimal.parse("195.250"));
+        encoder.addDecimal(31, Decimal.pack(-5, 2));
+        int length = encoder.finish();
+        assertEquals(fix("35=8|44=195.250|31=-0.05|"), toString(buffer, 0, length));
+
+        DecodedMessage msg = new MessageDecoder(dictionary).decode(buffer, 0, length);
+        assertEquals(Decimal.parse("195.250"), msg.getDecimal(msg.indexOf(44)));
+        assertEquals(Decimal.pack(-5, 2), msg.getDecimal(msg.indexOf(31)));
+    }
+
+    @Test
+    public void bodyLengthDigits() {
+        bodyLengthDigits(ByteBuffer.allocate(4096));
+        bodyLengthDigits(ByteBuffer.allocateDirect(4096));
+    }
+
+    /**
+     * Bodies whose BodyLength has fewer, more, then the same number of digits as the last one.
+     */
+    private static void bodyLengthDigits(ByteBuffer buffer) {
+        MessageEncoder encoder = new MessageEncoder(dictionary, "FIX.4.4");
+        StringBuilder expected = new StringBuilder();
+        String[] texts = {"short", "", "a longer text, with more than a hundred bytes in the body of the message "
+                + "as a whole, so the BodyLength has three digits", "also short", "x", "y"};
+        for (String text : texts) {
+            encoder.begin(buffer, "0".getBytes());
+            encoder.add(58, text);
+            encoder.finish();
+            expected.append(fix("35=0|58=" + text + "|"));
+        }
+        assertEquals(expected.toString(), toString(buffer, 0, buffer.position()));
+    }
+
+    @Test(expected = BufferOverflowException.class)
+    public void overflow() {
+        ByteBuffer buffer = ByteBuffer.allocate(40);
+        MessageEncoder encoder = new MessageEncoder(dictionary, "FIX.4.4");
+        encoder.begin(buffer, "0".getBytes());
+        encoder.add(58, "this text does not fit in the buffer");
+    }
+}
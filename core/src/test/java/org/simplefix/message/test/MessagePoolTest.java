@@ -0,0 +1,198 @@
+package org.simplefix.message.test;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.simplefix.dictionary.Dictionary;
+import org.simplefix.dictionary.xml.DictionaryParser;
+import org.simplefix.message.DecodedMessage;
+import org.simplefix.message.MessageDecoder;
+import org.simplefix.message.MessageFormatException;
+import org.simplefix.message.MessagePool;
+import org.simplefix.message.PooledMessage;
+
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the pooled, reference counted messages.
+ */
+public class MessagePoolTest {
+    private static Dictionary dictionary;
+
+    private static final String ORDER = "8=FIX.4.4|9=5|35=D|49=CLIENT|56=BROKER|11=ORD1|"
+            + "453=2|448=P1|447=D|452=1|448=P2|447=D|452=3|55=IBM|54=1|38=100|40=1|10=000|";
+
+    @BeforeClass
+    public static void parseDictionary() {
+        URL resource = Thread.currentThread().getContextClassLoader().getResource("FIX44.xml");
+        dictionary = DictionaryParser.parseXML(resource);
+    }
+
+    private static byte[] fix(String s) {
+        return s.replace('|', '\u0001').getBytes();
+    }
+
+    @Test
+    public void copyOutlivesTheDecoder() {
+        MessageDecoder decoder = new MessageDecoder(dictionary);
+        MessagePool pool = new MessagePool(1, 4);
+        // Decode at an offset in a direct buffer, to check the offsets are moved.
+        byte[] bytes = fix(ORDER);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 10);
+        for (int i = 0; i < bytes.length; i++)
+            direct.put(10 + i, bytes[i]);
+        DecodedMessage original = decoder.decode(direct, 10, bytes.length);
+        assertEquals(2, original.getInt(original.indexOf(453)));
+        PooledMessage copy = pool.copyOf(original);
+        byte[] other = fix("8=FIX.4.4|9=5|35=0|49=CLIENT|56=BROKER|10=000|");
+        decoder.decode(other, 0, other.length);
+
+        DecodedMessage msg = copy.getMessage();
+        assertEquals(0, msg.getOffset());
+        assertEquals(bytes.length, msg.getLength());
+        assertEquals("D", msg.getString(msg.getMsgTypeIndex()));
+        assertEquals("ORD1", msg.getString(msg.indexOf(11)));
+        assertEquals("IBM", msg.getString(msg.indexOf(55)));
+        assertEquals(100, msg.getInt(msg.indexOf(38)));
+        int parties = msg.indexOf(453);
+        assertEquals(2, msg.getGroupInstanceCount(parties));
+        assertEquals(msg.indexOf(55), msg.getGroupEnd(parties));
+        assertEquals(1, msg.getGroupInstance(msg.indexOf(448, parties + 2)));
+        assertEquals(dictionary.getMessageType("D"), msg.getMessageType());
+        assertTrue(copy.release());
+    }
+
+    @Test
+    public void referenceCounting() {
+        MessagePool pool = new MessagePool(0, 4);
+        byte[] bytes = fix(ORDER);
+        PooledMessage msg = pool.decode(ByteBuffer.wrap(bytes), 0, bytes.length, new MessageDecoder(dictionary));
+        assertEquals(1, msg.refCount());
+        assertSame(msg, msg.retain());
+        assertEquals(1, pool.getOutstandingCount());
+        assertFalse(msg.release());
+        assertEquals("ORD1", msg.getMessage().getString(msg.getMessage().indexOf(11)));
+        assertTrue(msg.release());
+        assertEquals(0, pool.getOutstandingCount());
+        assertEquals(1, pool.getPooledCount());
+        try {
+            msg.getMessage();
+            fail("Released");
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            msg.release();
+            fail("Released twice");
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            msg.retain();
+            fail("Retained after release");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void reuseWithoutAllocating() {
+        MessagePool pool = new MessagePool(2, 2);
+        DecodedMessage original = new MessageDecoder(dictionary).decode(fix(ORDER), 0, fix(ORDER).length);
+        PooledMessage first = pool.copyOf(original);
+        first.release();
+        for (int i = 0; i < 100; i++) {
+            PooledMessage a = pool.copyOf(original);
+            PooledMessage b = pool.copyOf(original);
+            a.release();
+            b.release();
+        }
+        assertEquals(2, pool.getCreatedCount());
+        assertEquals(0, pool.getDiscardedCount());
+        assertSame(first, pool.copyOf(original));
+    }
+
+    @Test
+    public void boundedUnderBursts() {
+        MessagePool pool = new MessagePool(1, 3, 64, 256);
+        DecodedMessage original = new MessageDecoder(dictionary).decode(fix(ORDER), 0, fix(ORDER).length);
+        PooledMessage[] burst = new PooledMessage[10];
+        for (int i = 0; i < burst.length; i++)
+            burst[i] = pool.copyOf(original);
+        assertEquals(10, pool.getCreatedCount());
+        for (PooledMessage msg : burst)
+            msg.release();
+        assertEquals(3, pool.getPooledCount());
+        assertEquals(7, pool.getDiscardedCount());
+
+        // A message whose buffer grew too large isn't kept.
+        StringBuilder big = new StringBuilder("8=FIX.4.4|9=5|35=B|148=");
+        for (int i = 0; i < 300; i++)
+            big.append('x');
+        byte[] bytes = fix(big.append("|10=000|").toString());
+        PooledMessage news = pool.copyOf(new MessageDecoder(dictionary).decode(bytes, 0, bytes.length));
+        assertEquals(2, pool.getPooledCount());
+        news.release();
+        assertEquals(2, pool.getPooledCount());
+        assertEquals(8, pool.getDiscardedCount());
+    }
+
+    @Test
+    public void invalidMessageIsReleased() {
+        MessagePool pool = new MessagePool(1, 1);
+        byte[] bytes = fix("8=FIX.4.4|9=5|35=D|XX=1|10=000|");
+        try {
+            pool.decode(ByteBuffer.wrap(bytes), 0, bytes.length, new MessageDecoder(dictionary));
+            fail("Invalid tag");
+        } catch (MessageFormatException expected) {
+        }
+        assertEquals(0, pool.getOutstandingCount());
+        assertEquals(1, pool.getPooledCount());
+    }
+
+    @Test
+    public void leakDetection() throws Exception {
+        final MessagePool pool = new MessagePool(1, 4);
+        pool.setLeakDetection(true);
+        DecodedMessage original = new MessageDecoder(dictionary).decode(fix(ORDER), 0, fix(ORDER).length);
+        final PooledMessage released = pool.copyOf(original);
+        PooledMessage leaked = pool.copyOf(original);
+
+        // Released on another thread, which is fine.
+        Thread other = new Thread() {
+            public void run() {
+                released.release();
+            }
+        };
+        other.start();
+        other.join();
+        assertEquals(1, pool.getLeaks().size());
+        try {
+            pool.checkForLeaks();
+            fail("Leaked");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().startsWith("1 messages"));
+            assertNotNull(expected.getCause());
+        }
+
+        // Only the owner thread may acquire.
+        final AtomicReference<Exception> error = new AtomicReference<Exception>();
+        final DecodedMessage copy = original;
+        Thread stranger = new Thread() {
+            public void run() {
+                try {
+                    pool.copyOf(copy);
+                } catch (IllegalStateException e) {
+                    error.set(e);
+                }
+            }
+        };
+        stranger.start();
+        stranger.join();
+        assertNotNull(error.get());
+        assertEquals(1, pool.getOutstandingCount());
+
+        leaked.release();
+        pool.checkForLeaks();
+    }
+}
@@ -0,0 +1,111 @@
+package org.simplefix.message.test;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.simplefix.dictionary.Dictionary;
+import org.simplefix.dictionary.xml.DictionaryParser;
+import org.simplefix.message.DecodedMessage;
+import org.simplefix.message.MessageDecoder;
+import org.simplefix.message.MessageValidator;
+import org.simplefix.message.RejectReason;
+
+import java.net.URL;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test validation of decoded messages against the dictionary.
+ */
+public class MessageValidatorTest {
+    private static final String HEADER = "8=FIX.4.4|9=5|35=W|49=A|56=B|34=1|52=20130118-09:00:00.000|";
+
+    private static Dictionary dictionary;
+
+    private final MessageDecoder decoder = new MessageDecoder(dictionary);
+    private final MessageValidator validator = new MessageValidator();
+
+    @BeforeClass
+    public static void parseDictionary() {
+        URL resource = Thread.currentThread().getContextClassLoader().getResource("FIX44.xml");
+        dictionary = DictionaryParser.parseXML(resource);
+    }
+
+    private DecodedMessage decode(String s) {
+        byte[] bytes = MessageDecoderTest.fix(s);
+        return decoder.decode(bytes, 0, bytes.length);
+    }
+
+    private void assertValid(String s) {
+        DecodedMessage msg = decode(s);
+        assertTrue(validator.getRejectReason() + " " + validator.getRefTagID(), validator.validate(msg));
+        assertNull(validator.getRejectReason());
+    }
+
+    private void assertInvalid(String s, RejectReason reason, int refTagID) {
+        DecodedMessage msg = decode(s);
+        assertFalse(validator.validate(msg));
+        assertEquals(reason, validator.getRejectReason());
+        assertEquals(refTagID, validator.getRefTagID());
+    }
+
+    @Test
+    public void valid() {
+        assertValid(HEADER.replace("35=W", "35=0") + "10=000|");
+        assertValid(HEADER + "55=EUR/USD|268=2|269=0|270=1.30|271=100|269=1|270=1.31|10=000|");
+        // The validator is re-used, so the bits from the last message must not leak into the next.
+        assertValid(HEADER + "55=EUR/USD|268=1|269=0|10=000|");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void lazy() {
+        byte[] bytes = MessageDecoderTest.fix(HEADER.replace("35=W", "35=0") + "10=000|");
+        MessageDecoder lazyDecoder = new MessageDecoder(dictionary);
+        lazyDecoder.setLazy(true);
+        validator.validate(lazyDecoder.decode(bytes, 0, bytes.length));
+    }
+
+    @Test
+    public void requiredFields() {
+        assertInvalid("8=FIX.4.4|9=5|35=0|49=A|34=1|52=20130118-09:00:00.000|10=000|",
+                RejectReason.REQUIRED_TAG_MISSING, 56);
+        assertEquals(-1, validator.getFieldIndex());
+        assertInvalid(HEADER + "55=EUR/USD|268=1|269=0|", RejectReason.REQUIRED_TAG_MISSING, 10);
+    }
+
+    @Test
+    public void requiredInGroup() {
+        // ListSeqNo is required in each instance of NoOrders, not just the first.
+        String list = HEADER.replace("35=W", "35=E") + "66=L1|394=1|68=2|73=2|";
+        assertValid(list + "11=A|67=1|55=IBM|54=1|11=B|67=2|55=IBM|54=2|10=000|");
+        assertInvalid(list + "11=A|67=1|55=IBM|54=1|11=B|55=IBM|54=2|10=000|", RejectReason.REQUIRED_TAG_MISSING, 67);
+        assertInvalid(list + "11=A|55=IBM|54=1|11=B|67=2|55=IBM|54=2|10=000|", RejectReason.REQUIRED_TAG_MISSING, 67);
+    }
+
+    @Test
+    public void undefinedFields() {
+        assertInvalid(HEADER + "55=EUR/USD|268=1|269=0|4999=x|10=000|", RejectReason.INVALID_TAG_NUMBER, 4999);
+        assertEquals(10, validator.getFieldIndex());
+        assertInvalid(HEADER + "55=EUR/USD|11=ORD1|268=1|269=0|10=000|",
+                RejectReason.TAG_NOT_DEFINED_FOR_MESSAGE_TYPE, 11);
+        assertValid(HEADER + "55=EUR/USD|268=1|269=0|5001=x|10=000|");
+        validator.setAllowUserDefinedFields(false);
+        assertInvalid(HEADER + "55=EUR/USD|268=1|269=0|5001=x|10=000|", RejectReason.INVALID_TAG_NUMBER, 5001);
+    }
+
+    @Test
+    public void structure() {
+        assertInvalid(HEADER + "55=EUR/USD|55=EUR/USD|268=1|269=0|10=000|", RejectReason.TAG_APPEARS_MORE_THAN_ONCE, 55);
+        assertInvalid(HEADER + "55=EUR/USD|268=1|269=0|270=1.30|270=1.31|10=000|",
+                RejectReason.TAG_APPEARS_MORE_THAN_ONCE, 270);
+        assertInvalid(HEADER + "55=EUR/USD|268=1|270=1.30|269=0|10=000|",
+                RejectReason.REPEATING_GROUP_FIELDS_OUT_OF_ORDER, 270);
+        assertInvalid(HEADER + "55=EUR/USD|268=3|269=0|269=1|10=000|", RejectReason.INCORRECT_NUM_IN_GROUP_COUNT, 268);
+        assertInvalid(HEADER + "55=|268=1|269=0|10=000|", RejectReason.TAG_SPECIFIED_WITHOUT_A_VALUE, 55);
+    }
+
+    @Test
+    public void msgType() {
+        assertInvalid(HEADER.replace("35=W", "35=ZZ") + "10=000|", RejectReason.INVALID_MSG_TYPE, 35);
+        assertEquals(2, validator.getFieldIndex());
+    }
+}
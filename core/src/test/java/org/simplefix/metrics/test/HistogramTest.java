@@ -0,0 +1,90 @@
+package org.simplefix.metrics.test;
+
+import org.junit.Test;
+import org.simplefix.metrics.Histogram;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the latency histogram.
+ */
+public class HistogramTest {
+    @Test
+    public void empty() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getTotalCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(99), 0);
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 64; i++)
+            histogram.record(i);
+        assertEquals(64, histogram.getTotalCount());
+        assertEquals(1, histogram.getMin());
+        assertEquals(64, histogram.getMax());
+        assertEquals(32, histogram.getValueAtPercentile(50));
+        assertEquals(64, histogram.getValueAtPercentile(100));
+        assertEquals(32.5, histogram.getMean(), 0.001);
+        assertEquals(10, histogram.getCountBetween(11, 20));
+    }
+
+    @Test
+    public void percentilesWithinPrecision() {
+        Histogram histogram = new Histogram();
+        Random random = new Random(42);
+        long[] values = new long[100000];
+        for (int i = 0; i < values.length; i++) {
+            // Log-normal-ish: mostly microseconds, with a tail into milliseconds.
+            values[i] = (long) Math.exp(7 + random.nextGaussian() * 1.5);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        for (double percentile : new double[]{10, 50, 90, 99, 99.9, 99.99}) {
+            long expected = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long actual = histogram.getValueAtPercentile(percentile);
+            assertTrue(percentile + ": " + actual + " vs " + expected,
+                    actual >= expected && actual <= expected + expected / 32 + 1);
+        }
+        assertEquals(values[values.length - 1], histogram.getMax());
+        assertEquals(values[0], histogram.getMin());
+    }
+
+    @Test
+    public void clampsOutOfRange() {
+        Histogram histogram = new Histogram(6, 1000);
+        histogram.record(-5);
+        histogram.record(5000);
+        assertEquals(2, histogram.getTotalCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(1000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void copyAddAndReset() {
+        Histogram a = new Histogram();
+        Histogram b = new Histogram();
+        for (int i = 0; i < 100; i++) {
+            a.record(100);
+            b.record(10000);
+        }
+        Histogram sum = a.copy();
+        sum.add(b);
+        assertEquals(200, sum.getTotalCount());
+        assertEquals(100, sum.getMin());
+        assertEquals(10000, sum.getMax());
+        assertEquals(100, sum.getValueAtPercentile(50), 100 / 32);
+        assertTrue(sum.getValueAtPercentile(51) >= 10000);
+        assertEquals(100, a.getTotalCount());
+        a.reset();
+        assertEquals(0, a.getTotalCount());
+        assertEquals(0, a.getValueAtPercentile(50));
+    }
+}
@@ -0,0 +1,125 @@
+package org.simplefix.metrics.test;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.simplefix.dictionary.Dictionary;
+import org.simplefix.dictionary.xml.DictionaryParser;
+import org.simplefix.metrics.JmxMetricsSink;
+import org.simplefix.metrics.MessageMetrics;
+import org.simplefix.metrics.MetricsRegistry;
+import org.simplefix.metrics.MetricsSnapshot;
+import org.simplefix.metrics.SessionMetrics;
+import org.simplefix.metrics.Stage;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the session metrics, registry and JMX sink.
+ */
+public class MetricsTest {
+    private static Dictionary dictionary;
+
+    @BeforeClass
+    public static void parseDictionary() {
+        URL resource = Thread.currentThread().getContextClassLoader().getResource("FIX44.xml");
+        dictionary = DictionaryParser.parseXML(resource);
+    }
+
+    @Test
+    public void byMessageType() {
+        SessionMetrics metrics = new SessionMetrics("S1", dictionary);
+        MessageMetrics order = metrics.forType("D".getBytes());
+        assertSame(order, metrics.forType("D".getBytes()));
+        assertSame(order, metrics.forType(ByteBuffer.wrap("35=D".getBytes()), 3, 1));
+        MessageMetrics ae = metrics.forType(ByteBuffer.wrap("AE".getBytes()), 0, 2);
+        assertEquals("AE", ae.getMsgType());
+        assertSame(ae, metrics.forType("AE".getBytes()));
+        MessageMetrics other = metrics.forType("LONGER".getBytes());
+        assertEquals(SessionMetrics.OTHER, other.getMsgType());
+        assertSame(other, metrics.forType(new byte[0]));
+        // Not in the dictionary, so a counterparty can't add entries.
+        assertSame(other, metrics.forType("ZZ".getBytes()));
+        assertSame(other, metrics.forType(ByteBuffer.wrap("35=U9".getBytes()), 3, 2));
+        assertEquals(3, metrics.getMessageTypes().size());
+        assertSame(ae, metrics.get("AE"));
+        assertNull(metrics.get("8"));
+    }
+
+    @Test
+    public void snapshot() {
+        SessionMetrics metrics = new SessionMetrics("S1", dictionary);
+        MessageMetrics order = metrics.forType("D".getBytes());
+        order.received(120);
+        order.received(130);
+        order.record(Stage.DECODE, 500);
+        order.record(Stage.DECODE, 700);
+        MetricsSnapshot snapshot = metrics.snapshot();
+        order.received(100);
+        order.record(Stage.DECODE, 900);
+
+        assertEquals("S1", snapshot.getName());
+        MessageMetrics copy = snapshot.get("D");
+        assertEquals(2, copy.getReceived());
+        assertEquals(250, copy.getReceivedBytes());
+        assertEquals(2, copy.getLatency(Stage.DECODE).getTotalCount());
+        assertEquals(700, copy.getLatency(Stage.DECODE).getMax());
+        assertEquals(0, copy.getLatency(Stage.HANDLER).getTotalCount());
+        assertEquals(3, order.getReceived());
+    }
+
+    @Test
+    public void registryAndJmx() throws Exception {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        JmxMetricsSink sink = new JmxMetricsSink(server, "test");
+        MetricsRegistry registry = new MetricsRegistry();
+        SessionMetrics s1 = new SessionMetrics("FIX.4.4:A->B", dictionary);
+        registry.add(s1);
+        registry.addSink(sink);
+        SessionMetrics s2 = new SessionMetrics("FIX.4.4:A->C", dictionary);
+        registry.add(s2);
+        try {
+            registry.add(new SessionMetrics("FIX.4.4:A->C", dictionary));
+            fail("Duplicate name");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        MessageMetrics order = s1.forType("D".getBytes());
+        order.sent(200);
+        order.record(Stage.ENCODE, 1000);
+        ObjectName name = sink.getObjectName(s1);
+        assertTrue(server.isRegistered(name));
+        assertTrue(server.isRegistered(sink.getObjectName(s2)));
+        assertEquals(1L, server.getAttribute(name, "D.sent"));
+        assertEquals(200L, server.getAttribute(name, "D.sentBytes"));
+        assertEquals(1L, server.getAttribute(name, "D.encode.count"));
+        assertEquals(1000L, server.getAttribute(name, "D.encode.p99.9"));
+        assertEquals(1000.0, server.getAttribute(name, "D.encode.mean"));
+        assertEquals(4 + 4 * 6, server.getMBeanInfo(name).getAttributes().length);
+
+        List<MetricsSnapshot> snapshots = registry.snapshot();
+        assertEquals(2, snapshots.size());
+
+        server.invoke(name, "reset", null, null);
+        assertEquals(0L, server.getAttribute(name, "D.sent"));
+        try {
+            server.invoke(name, "stop", null, null);
+            fail("No such operation");
+        } catch (ReflectionException expected) {
+            assertTrue(expected.getCause() instanceof NoSuchMethodException);
+        }
+
+        registry.remove(s1);
+        assertFalse(server.isRegistered(name));
+        assertNull(registry.get(s1.getName()));
+        registry.removeSink(sink);
+        assertFalse(server.isRegistered(sink.getObjectName(s2)));
+    }
+}
@@ -0,0 +1,176 @@
+package org.simplefix.ring.test;
+
+import org.junit.Test;
+import org.simplefix.ring.BusySpinWaitStrategy;
+import org.simplefix.ring.EventFactory;
+import org.simplefix.ring.EventHandler;
+import org.simplefix.ring.ParkingWaitStrategy;
+import org.simplefix.ring.RingBuffer;
+import org.simplefix.ring.RingConsumer;
+import org.simplefix.ring.WaitStrategy;
+import org.simplefix.ring.YieldingWaitStrategy;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the ring buffer with one and several producer threads.
+ */
+public class RingBufferTest {
+
+    static class Entry {
+        int producer;
+        long value;
+    }
+
+    static final EventFactory<Entry> FACTORY = new EventFactory<Entry>() {
+        public Entry newInstance() {
+            return new Entry();
+        }
+    };
+
+    /**
+     * Checks that each producer's values arrive in order, and counts them.
+     */
+    static class OrderCheck implements EventHandler<Entry> {
+        final long[] last;
+        volatile long count;
+        volatile String error;
+
+        OrderCheck(int producers) {
+            last = new long[producers];
+        }
+
+        public void onEvent(Entry entry, long sequence, boolean endOfBatch) {
+            if (entry.value != last[entry.producer] + 1 && error == null)
+                error = "producer " + entry.producer + " sent " + entry.value + " after " + last[entry.producer];
+            last[entry.producer] = entry.value;
+            count++;
+        }
+    }
+
+    private static Thread producer(final RingBuffer<Entry> ring, final int producer, final int count) {
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                for (int i = 1; i <= count; i++) {
+                    long seq = ring.next();
+                    Entry entry = ring.get(seq);
+                    entry.producer = producer;
+                    entry.value = i;
+                    ring.publish(seq);
+                }
+            }
+        }, "producer-" + producer);
+        thread.start();
+        return thread;
+    }
+
+    private static void run(RingBuffer<Entry> ring, int producers, int count, WaitStrategy waitStrategy)
+            throws InterruptedException {
+        OrderCheck check = new OrderCheck(producers);
+        RingConsumer<Entry> consumer = new RingConsumer<Entry>(ring, check, waitStrategy);
+        Thread consumerThread = new Thread(consumer, "consumer");
+        consumerThread.start();
+        Thread[] threads = new Thread[producers];
+        for (int i = 0; i < producers; i++)
+            threads[i] = producer(ring, i, count);
+        for (Thread thread : threads)
+            thread.join();
+        consumer.halt();
+        consumerThread.join();
+        assertNull(check.error, check.error);
+        assertEquals((long) producers * count, check.count);
+        for (int i = 0; i < producers; i++)
+            assertEquals(count, check.last[i]);
+        assertEquals(0, ring.getBacklog());
+    }
+
+    @Test
+    public void singleProducer() throws InterruptedException {
+        run(RingBuffer.createSingleProducer(FACTORY, 64), 1, 100000, new BusySpinWaitStrategy());
+    }
+
+    @Test
+    public void multiProducer() throws InterruptedException {
+        run(RingBuffer.createMultiProducer(FACTORY, 64), 4, 50000, new YieldingWaitStrategy());
+    }
+
+    @Test
+    public void parking() throws InterruptedException {
+        run(RingBuffer.createMultiProducer(FACTORY, 16), 2, 10000, new ParkingWaitStrategy());
+    }
+
+    @Test
+    public void full() {
+        full(RingBuffer.createSingleProducer(FACTORY, 4));
+        full(RingBuffer.createMultiProducer(FACTORY, 4));
+    }
+
+    private static void full(RingBuffer<Entry> ring) {
+        for (int i = 0; i < 4; i++) {
+            long seq = ring.tryNext();
+            assertEquals(i, seq);
+            ring.get(seq).value = i;
+            ring.publish(seq);
+        }
+        assertEquals(-1, ring.tryNext());
+        assertEquals(4, ring.getBacklog());
+
+        OrderCheck check = new OrderCheck(1);
+        check.last[0] = -1;
+        assertEquals(2, ring.poll(check, 2));
+        assertEquals(4, ring.tryNext());
+        assertEquals(5, ring.tryNext());
+        assertEquals(-1, ring.tryNext());
+        // The same entries are re-used.
+        assertSame(ring.get(0), ring.get(4));
+    }
+
+    @Test
+    public void unpublished() {
+        RingBuffer<Entry> ring = RingBuffer.createMultiProducer(FACTORY, 8);
+        long a = ring.next();
+        long b = ring.next();
+        ring.get(b).value = 1;
+        ring.publish(b);
+        OrderCheck check = new OrderCheck(1);
+        // The second entry is published, but not the first, so neither can be consumed yet.
+        assertEquals(0, ring.poll(check, 10));
+        ring.publish(a);
+        check.last[0] = -1;
+        ring.get(a).value = 0;
+        assertEquals(2, ring.poll(check, 10));
+        assertNull(check.error);
+    }
+
+    @Test
+    public void handlerException() {
+        RingBuffer<Entry> ring = RingBuffer.createSingleProducer(FACTORY, 8);
+        for (int i = 1; i <= 3; i++) {
+            long seq = ring.next();
+            ring.get(seq).value = i;
+            ring.publish(seq);
+        }
+        final StringBuilder handled = new StringBuilder();
+        EventHandler<Entry> handler = new EventHandler<Entry>() {
+            public void onEvent(Entry entry, long sequence, boolean endOfBatch) {
+                if (entry.value == 2)
+                    throw new IllegalStateException("bad entry");
+                handled.append(entry.value);
+            }
+        };
+        try {
+            ring.poll(handler, 10);
+            fail("Expected an exception");
+        } catch (IllegalStateException e) {
+            assertEquals("bad entry", e.getMessage());
+        }
+        // The entry that failed is skipped.
+        assertEquals(1, ring.poll(handler, 10));
+        assertEquals("13", handled.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notPowerOfTwo() {
+        RingBuffer.createSingleProducer(FACTORY, 12);
+    }
+}
@@ -0,0 +1,23 @@
+package org.simplefix.test;
+
+/**
+ * Builds FIX 4.4 messages for tests, shared with the other modules through the core test jar.
+ */
+public final class FixMessages {
+
+    private FixMessages() {
+    }
+
+    /**
+     * @param body the fields after BodyLength, separated by '|' rather than SOH
+     * @return the message with its BeginString, BodyLength and CheckSum
+     */
+    public static String fix(String body) {
+        body = body.replace('|', '\u0001');
+        String s = "8=FIX.4.4\u00019=" + body.length() + "\u0001" + body;
+        int sum = 0;
+        for (int i = 0; i < s.length(); i++)
+            sum += s.charAt(i);
+        return s + "10=" + Integer.toString((sum & 0xFF) + 1000).substring(1) + "\u0001";
+    }
+}
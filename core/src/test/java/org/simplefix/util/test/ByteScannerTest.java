@@ -0,0 +1,103 @@
+package org.simplefix.util.test;
+
+import org.junit.Test;
+import org.simplefix.util.ByteScanner;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the word at a time scanner against plain loops.
+ */
+public class ByteScannerTest {
+
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    /** The kinds of buffer that take different paths through the scanner. **/
+    private static ByteBuffer[] buffers(byte[] bytes) {
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).clear();
+        ByteBuffer padded = ByteBuffer.allocate(bytes.length + 3);
+        padded.position(3);
+        ByteBuffer slice = padded.slice();
+        slice.put(bytes).clear();
+        return new ByteBuffer[]{
+                ByteBuffer.wrap(bytes),
+                slice,
+                direct,
+                ByteBuffer.wrap(bytes).asReadOnlyBuffer(),
+                ByteBuffer.wrap(bytes).asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN)
+        };
+    }
+
+    private static void set(byte[] bytes, ByteBuffer[] buffers, int index, byte value) {
+        bytes[index] = value;
+        for (ByteBuffer buffer : buffers) {
+            if (!buffer.isReadOnly())
+                buffer.put(index, value);
+        }
+    }
+
+    @Test
+    public void indexOf() {
+        byte[] bytes = new byte[40];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) ('a' + i % 26);
+        ByteBuffer[] buffers = buffers(bytes);
+        for (int soh = 0; soh < bytes.length; soh++) {
+            set(bytes, buffers, soh, (byte) 1);
+            for (int from = 0; from < bytes.length; from++) {
+                int expected = soh >= from ? soh : -1;
+                assertEquals(expected, ByteScanner.indexOf(bytes, from, bytes.length, (byte) 1));
+                for (ByteBuffer buffer : buffers)
+                    assertEquals(buffer.toString(), expected, ByteScanner.indexOf(buffer, from, bytes.length, (byte) 1));
+            }
+            assertEquals(-1, ByteScanner.indexOf(bytes, 0, soh, (byte) 1));
+            set(bytes, buffers, soh, (byte) ('a' + soh % 26));
+        }
+    }
+
+    @Test
+    public void indexOfHighBytes() {
+        // 0x81 and 0x80 next to each other catch the false positives of the simpler zero byte test.
+        byte[] bytes = {(byte) 0x80, (byte) 0x81, 0x00, (byte) 0xFF, 0x01, (byte) 0x81, 0, 0, (byte) 0x81};
+        for (ByteBuffer buffer : buffers(bytes)) {
+            assertEquals(1, ByteScanner.indexOf(buffer, 0, bytes.length, (byte) 0x81));
+            assertEquals(5, ByteScanner.indexOf(buffer, 2, bytes.length, (byte) 0x81));
+            assertEquals(8, ByteScanner.indexOf(buffer, 6, bytes.length, (byte) 0x81));
+            assertEquals(4, ByteScanner.indexOf(buffer, 0, bytes.length, (byte) 0x01));
+        }
+    }
+
+    @Test
+    public void sum() {
+        byte[] bytes = randomBytes(5000, 42);
+        byte[] ones = new byte[5000];
+        java.util.Arrays.fill(ones, (byte) 0xFF);
+        for (byte[] b : new byte[][]{bytes, ones}) {
+            ByteBuffer[] buffers = buffers(b);
+            for (int from = 0; from < 20; from++) {
+                for (int to = from; to < b.length; to += 97) {
+                    int expected = 0;
+                    for (int i = from; i < to; i++)
+                        expected += b[i] & 0xFF;
+                    assertEquals(expected, ByteScanner.sum(b, from, to));
+                    for (ByteBuffer buffer : buffers)
+                        assertEquals(buffer.toString(), expected, ByteScanner.sum(buffer, from, to));
+                }
+            }
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void outOfBounds() {
+        ByteScanner.indexOf(new byte[10], 0, 11, (byte) 1);
+    }
+}
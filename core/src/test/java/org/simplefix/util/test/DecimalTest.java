@@ -0,0 +1,79 @@
+package org.simplefix.util.test;
+
+import org.junit.Test;
+import org.simplefix.util.Decimal;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test packed decimals against BigDecimal.
+ */
+public class DecimalTest {
+
+    @Test
+    public void packAndParse() {
+        long d = Decimal.pack(-12345, 3);
+        assertEquals(-12345, Decimal.mantissa(d));
+        assertEquals(3, Decimal.scale(d));
+        assertEquals("-12.345", Decimal.toString(d));
+        assertEquals(d, Decimal.parse("-12.345"));
+        assertEquals("0.005", Decimal.toString(Decimal.parse(".005")));
+        assertEquals("7", Decimal.toString(Decimal.parse("7.")));
+        assertEquals(Decimal.MAX_MANTISSA, Decimal.mantissa(Decimal.pack(Decimal.MAX_MANTISSA, 18)));
+        assertEquals(Decimal.MIN_MANTISSA, Decimal.mantissa(Decimal.pack(Decimal.MIN_MANTISSA, 0)));
+        assertEquals(Decimal.ZERO, Decimal.parse("0"));
+        ByteBuffer buffer = ByteBuffer.wrap("44=-12.345\u0001".getBytes());
+        assertEquals(d, Decimal.parse(buffer, 3, 7));
+    }
+
+    @Test
+    public void invalid() {
+        String[] invalid = {"", "-", ".", "1.2.3", "1e5", "+1", "288230376151711744", "0.0000000000000000001"};
+        for (String s : invalid) {
+            try {
+                Decimal.parse(s);
+                fail(s);
+            } catch (NumberFormatException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void rescaleAndCompare() {
+        long price = Decimal.parse("195.25");
+        assertEquals(Decimal.parse("195.2500"), Decimal.rescale(price, 4));
+        assertEquals(Decimal.parse("195.3"), Decimal.rescale(Decimal.parse("195.30"), 1));
+        try {
+            Decimal.rescale(price, 1);
+            fail();
+        } catch (ArithmeticException expected) {
+        }
+        assertEquals(0, Decimal.compare(price, Decimal.parse("195.2500")));
+        assertTrue(Decimal.compare(price, Decimal.parse("195.2501")) < 0);
+        assertTrue(Decimal.compare(Decimal.parse("-0.5"), Decimal.parse("0")) < 0);
+        assertTrue(Decimal.compare(Decimal.parse("-1"), Decimal.parse("-1.5")) > 0);
+    }
+
+    @Test
+    public void random() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            long ma = (random.nextLong() >> 6) / (1 + random.nextInt(1000));
+            long mb = random.nextInt(3) == 0 ? ma : (random.nextLong() >> 6);
+            int sa = random.nextInt(19);
+            int sb = random.nextInt(19);
+            long a = Decimal.pack(ma, sa);
+            long b = Decimal.pack(mb, sb);
+            BigDecimal ba = BigDecimal.valueOf(ma, sa);
+            BigDecimal bb = BigDecimal.valueOf(mb, sb);
+            assertEquals(ba.toPlainString(), Decimal.toString(a));
+            assertEquals(a, Decimal.parse(ba.toPlainString()));
+            assertEquals(ba.compareTo(bb), Integer.signum(Decimal.compare(a, b)));
+            assertEquals(ba.doubleValue(), Decimal.toDouble(a), Math.ulp(ba.doubleValue()));
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package org.simplefix.messages.test;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.simplefix.dictionary.Dictionary;
+import org.simplefix.dictionary.DictionaryRegistry;
+import org.simplefix.message.DecodedMessage;
+import org.simplefix.message.MessageDecoder;
+import org.simplefix.message.MessageFormatException;
+import org.simplefix.messages.fix44.MarketDataIncrementalRefresh;
+import org.simplefix.messages.fix44.NewOrderSingle;
+import org.simplefix.util.Decimal;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the flyweights generated from the FIX 4.4 dictionary.
+ */
+public class FlyweightTest {
+    private static Dictionary dictionary;
+
+    @BeforeClass
+    public static void loadDictionary() {
+        DictionaryRegistry registry = new DictionaryRegistry();
+        registry.loadBundled("FIX44");
+        dictionary = registry.get("FIX.4.4");
+    }
+
+    private static DecodedMessage decode(String s, boolean lazy) {
+        byte[] bytes = s.replace('|', '\u0001').getBytes();
+        MessageDecoder decoder = new MessageDecoder(dictionary);
+        decoder.setLazy(lazy);
+        return decoder.decode(bytes, 0, bytes.length);
+    }
+
+    private static final String ORDER = "8=FIX.4.4|9=5|35=D|49=CLIENT|56=BROKER|34=12|43=Y|11=ORD1|"
+            + "453=2|448=P1|447=D|452=1|802=2|523=S1|803=1|523=S2|803=2|448=P2|447=D|452=3|"
+            + "55=IBM|54=1|38=10000|40=1|10=000|";
+
+    @Test
+    public void message() {
+        NewOrderSingle order = new NewOrderSingle().wrap(decode(ORDER, false));
+        assertEquals("D", NewOrderSingle.TYPE);
+        assertEquals(11, NewOrderSingle.CL_ORD_ID);
+        assertEquals(453, NewOrderSingle.NO_PARTY_IDS);
+        assertEquals("CLIENT", order.getSenderCompID());
+        assertEquals(12, order.getMsgSeqNum());
+        assertTrue(order.getPossDupFlag());
+        assertEquals("ORD1", order.getClOrdID());
+        assertEquals("IBM", order.getSymbol());
+        assertTrue(order.getMessage().valueEquals(order.indexOfSymbol(), "IBM".getBytes()));
+        assertEquals(-1, order.indexOfPrice());
+        assertEquals('1', order.getSide());
+        assertEquals(Decimal.pack(10000, 0), order.getOrderQty());
+        assertFalse(order.hasPrice());
+        try {
+            order.getPrice();
+            fail("Price is missing");
+        } catch (MessageFormatException expected) {
+        }
+    }
+
+    @Test
+    public void groups() {
+        NewOrderSingle order = new NewOrderSingle().wrap(decode(ORDER, false));
+        NewOrderSingle.NoPartyIDs parties = order.getNoPartyIDs();
+        assertEquals(2, parties.size());
+        assertTrue(parties.next());
+        assertEquals("P1", parties.getPartyID());
+        assertEquals(1, parties.getPartyRole());
+        NewOrderSingle.NoPartyIDs.NoPartySubIDs subIDs = parties.getNoPartySubIDs();
+        assertEquals(2, subIDs.size());
+        assertTrue(subIDs.next());
+        assertEquals("S1", subIDs.getPartySubID());
+        assertTrue(subIDs.next());
+        assertEquals("S2", subIDs.getPartySubID());
+        assertFalse(subIDs.next());
+        assertTrue(parties.next());
+        assertEquals("P2", parties.getPartyID());
+        assertEquals(3, parties.getPartyRole());
+        assertEquals(0, parties.getNoPartySubIDs().size());
+        assertFalse(parties.getNoPartySubIDs().next());
+        assertFalse(parties.next());
+        // Missing groups are empty.
+        assertEquals(0, order.getNoAllocs().size());
+        assertFalse(order.getNoAllocs().next());
+    }
+
+    @Test
+    public void marketData() {
+        MarketDataIncrementalRefresh refresh = new MarketDataIncrementalRefresh().wrap(decode(
+                "8=FIX.4.4|9=5|35=X|268=2|279=0|269=0|55=EUR/USD|270=1.3051|271=1000000|"
+                        + "279=0|269=1|55=EUR/USD|270=1.30525|271=2000000|10=000|", false));
+        MarketDataIncrementalRefresh.NoMDEntries entries = refresh.getNoMDEntries();
+        long[] prices = new long[2];
+        for (int i = 0; entries.next(); i++) {
+            assertEquals(i == 0 ? '0' : '1', entries.getMDEntryType());
+            assertEquals("EUR/USD", entries.getSymbol());
+            prices[i] = entries.getMDEntryPx();
+        }
+        assertEquals(Decimal.pack(13051, 4), prices[0]);
+        assertEquals(Decimal.pack(130525, 5), prices[1]);
+    }
+
+    @Test
+    public void lazy() {
+        NewOrderSingle order = new NewOrderSingle().wrap(decode(ORDER, true));
+        assertEquals("ORD1", order.getClOrdID());
+        assertEquals('1', order.getSide());
+        try {
+            order.getNoPartyIDs();
+            fail("Groups need full decoding");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongType() {
+        new MarketDataIncrementalRefresh().wrap(decode(ORDER, false));
+    }
+}
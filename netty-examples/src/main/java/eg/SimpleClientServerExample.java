@@ -10,9 +10,21 @@ import org.jboss.netty.channel.group.ChannelGroupFuture;
 import org.jboss.netty.channel.group.DefaultChannelGroup;
 import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
 import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.simplefix.dictionary.Dictionary;
+import org.simplefix.dictionary.xml.DictionaryParser;
+import org.simplefix.message.DecodedMessage;
+import org.simplefix.message.MessageEncoder;
+import org.simplefix.netty.FixFrameDecoder;
+import org.simplefix.netty.MessageSlot;
+import org.simplefix.netty.RingBufferHandler;
+import org.simplefix.ring.EventHandler;
+import org.simplefix.ring.ParkingWaitStrategy;
+import org.simplefix.ring.RingBuffer;
+import org.simplefix.ring.RingConsumer;
 import org.slf4j.Logger;
 
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.util.concurrent.Executors;
 
 import static org.slf4j.LoggerFactory.*;
@@ -41,26 +53,28 @@ public class SimpleClientServerExample {
             server.channelOpen(e.getChannel());
         }
 
-        @Override
-        public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
-
-            ChannelBuffer buf = (ChannelBuffer) e.getMessage();
-            int readableBytes = buf.readableBytes();
-            if (readableBytes > 0) {
-                log.info("readableBytes=" + readableBytes);
-                byte[] bytes = new byte[readableBytes];
-                buf.getBytes(0, bytes);
-                String s = new String(bytes);
-                log.info("received: >" + s + "<");
-            }
-        }
-
         @Override
         public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) throws Exception {
             logExceptionEventAndClose(e);
         }
     }
 
+    /**
+     * The application logic, on its own thread: the I/O threads hand messages over through the ring.
+     */
+    class ApplicationHandler implements EventHandler<MessageSlot> {
+        public void onEvent(MessageSlot slot, long sequence, boolean endOfBatch) {
+            // The frame decoder split the input, and the ring handler decoded each message in its slot.
+            DecodedMessage msg = slot.getMessage();
+            if (msg == null) {
+                log.error("Invalid message from " + slot.getChannel() + ": " + slot.getError());
+                return;
+            }
+            log.info("received: " + msg.getFieldCount() + " fields, MsgType="
+                    + msg.getString(msg.getMsgTypeIndex()) + " " + msg);
+        }
+    }
+
     private void logExceptionEventAndClose(ExceptionEvent e) {
         final Throwable throwable = e.getCause();
         log.error("Unexpected: " + throwable, throwable);
@@ -72,17 +86,28 @@ public class SimpleClientServerExample {
 
         private final ChannelGroup allChannels = new DefaultChannelGroup("example-server");
         private ChannelFactory factory;
+        private RingConsumer<MessageSlot> consumer;
+        private Thread consumerThread;
 
         void start() {
             log.info("Server.start()");
             final Server me = this; // Remember the 'outer this'.
+            final Dictionary dictionary = DictionaryParser.parseXML(
+                    Thread.currentThread().getContextClassLoader().getResource("FIX44.xml"));
             factory = new NioServerSocketChannelFactory(
                     Executors.newCachedThreadPool(),
                     Executors.newCachedThreadPool());
+            // All the connections share one ring, and one application thread.
+            final RingBuffer<MessageSlot> ring = RingBuffer.createMultiProducer(MessageSlot.FACTORY, 1024);
+            consumer = new RingConsumer<MessageSlot>(ring, new ApplicationHandler(), new ParkingWaitStrategy());
+            consumerThread = new Thread(consumer, "example-application");
+            consumerThread.start();
             ServerBootstrap bootstrap = new ServerBootstrap(factory);
             bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
                 public ChannelPipeline getPipeline() throws Exception {
                     return Channels.pipeline(
+                            new FixFrameDecoder(),
+                            new RingBufferHandler(ring, dictionary),
                             new ServerHandler(me)
                     );
                 }
@@ -100,6 +125,12 @@ public class SimpleClientServerExample {
             future.awaitUninterruptibly();
             log.info("Channels closed.");
             factory.releaseExternalResources();
+            consumer.halt();
+            try {
+                consumerThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
             log.info("Server stopped.");
         }
 
@@ -122,8 +153,15 @@ public class SimpleClientServerExample {
 
     class Client {
 
+        private final MessageEncoder encoder;
+        private final ByteBuffer out = ByteBuffer.allocate(4096);
         private ChannelFactory factory;
         private Channel channel;
+        private int seqNum;
+
+        Client(Dictionary dictionary) {
+            encoder = new MessageEncoder(dictionary, "FIX.4.4");
+        }
 
         public void start() {
             log.info("Client.start()");
@@ -156,11 +194,26 @@ public class SimpleClientServerExample {
             factory.releaseExternalResources();
         }
 
-        public void write(String s) {
+        /**
+         * Encodes the standard header fields of a message, after begin().
+         */
+        void header(String msgType) {
+            encoder.begin(out, msgType.getBytes());
+            encoder.add(49, "CLIENT");
+            encoder.add(56, "SERVER");
+            encoder.add(34, ++seqNum);
+            encoder.addUtcTimestamp(52, System.currentTimeMillis());
+        }
+
+        /**
+         * Writes the messages that have been encoded so far.
+         */
+        public void flush() {
             if (channel.isWritable()) {
-                log.info("Client: writing '" + s + "'...");
-                ChannelBuffer buf = ChannelBuffers.dynamicBuffer(s.length());
-                buf.writeBytes(s.getBytes());
+                out.flip();
+                log.info("Client: writing " + out.remaining() + " bytes...");
+                ChannelBuffer buf = ChannelBuffers.copiedBuffer(out);
+                out.clear();
                 ChannelFuture future = channel.write(buf);
                 log.info("Waiting for write to complete...");
                 future.awaitUninterruptibly();
@@ -177,13 +230,20 @@ public class SimpleClientServerExample {
 
         // Now connect and send some data.
 
-        Client client = new Client();
+        Client client = new Client(DictionaryParser.parseXML(
+                Thread.currentThread().getContextClassLoader().getResource("FIX44.xml")));
         client.start();
 
 
         log.info("go() : processing goes here...");
 
-        client.write("hello world!");
+        // Two messages in one write, the frame decoder will split them.
+        client.header("0");
+        client.encoder.finish();
+        client.header("1");
+        client.encoder.add(112, "TEST");
+        client.encoder.finish();
+        client.flush();
 
         client.stop();
 
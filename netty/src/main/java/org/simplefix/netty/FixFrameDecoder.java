@@ -0,0 +1,207 @@
+package org.simplefix.netty;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.frame.CorruptedFrameException;
+import org.jboss.netty.handler.codec.frame.FrameDecoder;
+import org.jboss.netty.handler.codec.frame.TooLongFrameException;
+import org.simplefix.util.ByteScanner;
+
+import java.nio.ByteBuffer;
+
+import static org.simplefix.message.MessageDecoder.SOH;
+
+/**
+ * Splits a stream of bytes into FIX messages, using the BeginString (8), BodyLength (9) and
+ * CheckSum (10) fields.   Each byte is scanned exactly once: the scan position and running checksum
+ * are kept between calls, so a partial read just picks up where the previous one stopped.
+ * <br>
+ * Frames are passed downstream as slices of the input, not copies, so they are only valid until
+ * the downstream handler returns.   Handlers that keep a frame must copy it.
+ * <br>
+ * This is stateful, so there must be one instance per channel.
+ */
+public class FixFrameDecoder extends FrameDecoder {
+    public static final int DEFAULT_MAX_FRAME_LENGTH = 1024 * 1024;
+
+    /** Longest BeginString field we will accept, e.g. "8=FIXT.1.1&lt;SOH&gt;" is 11 bytes. **/
+    private static final int MAX_BEGIN_STRING_LENGTH = 32;
+
+    /** Longest BodyLength field we will accept ("9=" + digits + SOH). **/
+    private static final int MAX_BODY_LENGTH_LENGTH = 12;
+
+    /** The CheckSum field is always "10=nnn&lt;SOH&gt;". **/
+    private static final int CHECKSUM_LENGTH = 7;
+
+    private static final int BEGIN_STRING = 0;
+    private static final int BODY_LENGTH = 1;
+    private static final int BODY = 2;
+    private static final int CHECKSUM = 3;
+
+    private final int maxFrameLength;
+
+    // Scanning state for the current frame.  Offsets are relative to the start of the frame, so
+    // they stay valid when the cumulation buffer is compacted or replaced.
+    private int state;
+    private int scanned;
+    private int sum;
+    private int fieldStart;
+    private int bodyLength;
+    private int checksumOffset;
+
+    /**
+     * A cached wrapper for the array of the last heap buffer that was summed.   Reads into the same
+     * cumulation buffer share the array, so this saves creating a wrapper for every frame.
+     */
+    private ByteBuffer wrapper;
+
+    public FixFrameDecoder() {
+        this(DEFAULT_MAX_FRAME_LENGTH);
+    }
+
+    public FixFrameDecoder(int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    @Override
+    protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
+        final int start = buffer.readerIndex();
+        final int available = buffer.readableBytes();
+        int pos = scanned;
+        // NOTE: Summing signed bytes gives the same result modulo 256.
+        int sum = this.sum;
+        while (true) {
+            switch (state) {
+                case BEGIN_STRING:
+                    for (; pos < available; pos++) {
+                        byte b = buffer.getByte(start + pos);
+                        sum += b;
+                        if (pos == 0 ? b != '8' : pos == 1 ? b != '=' : pos >= MAX_BEGIN_STRING_LENGTH)
+                            throw corrupt(buffer, "Expected BeginString at offset " + pos);
+                        if (b == SOH) {
+                            pos++;
+                            fieldStart = pos;
+                            bodyLength = 0;
+                            state = BODY_LENGTH;
+                            break;
+                        }
+                    }
+                    break;
+                case BODY_LENGTH:
+                    for (; pos < available; pos++) {
+                        byte b = buffer.getByte(start + pos);
+                        sum += b;
+                        int fieldPos = pos - fieldStart;
+                        if (fieldPos == 0 ? b != '9' : fieldPos == 1 ? b != '=' : fieldPos >= MAX_BODY_LENGTH_LENGTH)
+                            throw corrupt(buffer, "Expected BodyLength at offset " + pos);
+                        if (fieldPos < 2)
+                            continue;
+                        if (b == SOH) {
+                            if (fieldPos == 2)
+                                throw corrupt(buffer, "Empty BodyLength at offset " + pos);
+                            pos++;
+                            checksumOffset = pos + bodyLength;
+                            if (checksumOffset + CHECKSUM_LENGTH > maxFrameLength)
+                                throw tooLong(buffer, checksumOffset + CHECKSUM_LENGTH);
+                            state = BODY;
+                            break;
+                        }
+                        if (b < '0' || b > '9')
+                            throw corrupt(buffer, "Invalid BodyLength at offset " + pos);
+                        bodyLength = bodyLength * 10 + (b - '0');
+                    }
+                    break;
+                case BODY:
+                    final int end = Math.min(available, checksumOffset);
+                    sum += sum(buffer, start + pos, start + end);
+                    pos = end;
+                    if (pos == checksumOffset)
+                        state = CHECKSUM;
+                    break;
+                case CHECKSUM:
+                    if (available < checksumOffset + CHECKSUM_LENGTH)
+                        break;
+                    final int cs = start + checksumOffset;
+                    if (buffer.getByte(cs) != '1' || buffer.getByte(cs + 1) != '0' || buffer.getByte(cs + 2) != '='
+                            || buffer.getByte(cs + 6) != SOH)
+                        throw corrupt(buffer, "Expected CheckSum at offset " + checksumOffset);
+                    int expected = digit(buffer, cs + 3) * 100 + digit(buffer, cs + 4) * 10 + digit(buffer, cs + 5);
+                    if (expected != (sum & 0xFF))
+                        throw corrupt(buffer, "CheckSum mismatch, expected " + expected + " but was " + (sum & 0xFF));
+                    final int frameLength = checksumOffset + CHECKSUM_LENGTH;
+                    reset();
+                    return buffer.readSlice(frameLength);
+                default:
+                    throw new IllegalStateException("Unexpected state " + state);
+            }
+            if (state == CHECKSUM ? available < checksumOffset + CHECKSUM_LENGTH : pos == available) {
+                // Need more data, remember where we got to.
+                scanned = pos;
+                this.sum = sum;
+                return null;
+            }
+        }
+    }
+
+    private void reset() {
+        state = BEGIN_STRING;
+        scanned = 0;
+        sum = 0;
+        fieldStart = 0;
+        bodyLength = 0;
+        checksumOffset = 0;
+    }
+
+    /**
+     * Sums the body a word at a time.   Heap buffers are handed to {@link ByteScanner} through a
+     * wrapper of their array, anything else (e.g. a composite cumulation buffer) is read with getLong().
+     */
+    private int sum(ChannelBuffer buffer, int from, int to) {
+        if (buffer.hasArray()) {
+            final byte[] array = buffer.array();
+            if (wrapper == null || wrapper.array() != array)
+                wrapper = ByteBuffer.wrap(array);
+            final int offset = buffer.arrayOffset();
+            return ByteScanner.sum(wrapper, offset + from, offset + to);
+        }
+        int sum = 0;
+        long lanes = 0;
+        int words = 0;
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            lanes = ByteScanner.addLanes(lanes, buffer.getLong(i));
+            if (++words == ByteScanner.MAX_LANE_WORDS) {
+                sum += ByteScanner.foldLanes(lanes);
+                lanes = 0;
+                words = 0;
+            }
+        }
+        sum += ByteScanner.foldLanes(lanes);
+        for (; i < to; i++)
+            sum += buffer.getByte(i) & 0xFF;
+        return sum;
+    }
+
+    private int digit(ChannelBuffer buffer, int index) throws CorruptedFrameException {
+        byte b = buffer.getByte(index);
+        if (b < '0' || b > '9')
+            throw corrupt(buffer, "Invalid CheckSum");
+        return b - '0';
+    }
+
+    /**
+     * Discards the input and resets the scanner, so the caller can throw the exception.
+     */
+    private CorruptedFrameException corrupt(ChannelBuffer buffer, String message) {
+        reset();
+        buffer.skipBytes(buffer.readableBytes());
+        return new CorruptedFrameException(message);
+    }
+
+    private TooLongFrameException tooLong(ChannelBuffer buffer, int frameLength) {
+        reset();
+        buffer.skipBytes(buffer.readableBytes());
+        return new TooLongFrameException("Frame length " + frameLength + " exceeds " + maxFrameLength);
+    }
+}
@@ -0,0 +1,82 @@
+package org.simplefix.netty;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.oneone.OneToOneDecoder;
+import org.simplefix.dictionary.Dictionary;
+import org.simplefix.dictionary.ReloadableDictionary;
+import org.simplefix.message.DecodedMessage;
+import org.simplefix.message.MessageDecoder;
+import org.simplefix.metrics.MessageMetrics;
+import org.simplefix.metrics.SessionMetrics;
+import org.simplefix.metrics.Stage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes frames from {@link FixFrameDecoder} into a {@link DecodedMessage}, without copying.
+ * The same DecodedMessage is re-used for every frame, so it is only valid until the downstream
+ * handler returns.
+ * <br>
+ * This is stateful, so there must be one instance per channel.
+ */
+public class FixMessageDecoder extends OneToOneDecoder {
+    private final MessageDecoder decoder;
+    private volatile SessionMetrics metrics;
+
+    public FixMessageDecoder(Dictionary dictionary) {
+        this(dictionary, false);
+    }
+
+    /**
+     * @param dictionary the dictionary
+     * @param lazy       true to only record where the fields are (see {@link MessageDecoder#setLazy(boolean)}),
+     *                   for handlers that only read a few fields
+     */
+    public FixMessageDecoder(Dictionary dictionary, boolean lazy) {
+        this.decoder = new MessageDecoder(dictionary);
+        decoder.setLazy(lazy);
+    }
+
+    /**
+     * @param dictionary a dictionary that can be reloaded, which applies from the next frame
+     * @param lazy       true to only record where the fields are (see {@link MessageDecoder#setLazy(boolean)}),
+     *                   for handlers that only read a few fields
+     */
+    public FixMessageDecoder(ReloadableDictionary dictionary, boolean lazy) {
+        this.decoder = new MessageDecoder(dictionary);
+        decoder.setLazy(lazy);
+    }
+
+    /**
+     * Counts the messages and records how long they take to decode, by message type.
+     * @param metrics the metrics of the session, or null to not record
+     */
+    public void setMetrics(SessionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    protected Object decode(ChannelHandlerContext ctx, Channel channel, Object msg) throws Exception {
+        if (!(msg instanceof ChannelBuffer))
+            return msg;
+        ChannelBuffer frame = (ChannelBuffer) msg;
+        final SessionMetrics m = metrics;
+        final long start = m == null ? 0 : System.nanoTime();
+        final DecodedMessage decoded;
+        if (frame.hasArray()) {
+            decoded = decoder.decode(frame.array(), frame.arrayOffset() + frame.readerIndex(), frame.readableBytes());
+        } else {
+            ByteBuffer buffer = frame.toByteBuffer();
+            decoded = decoder.decode(buffer, buffer.position(), buffer.remaining());
+        }
+        if (m != null) {
+            final long nanos = System.nanoTime() - start;
+            final MessageMetrics type = m.forMessage(decoded);
+            type.received(frame.readableBytes());
+            type.record(Stage.DECODE, nanos);
+        }
+        return decoded;
+    }
+}
@@ -0,0 +1,68 @@
+package org.simplefix.netty;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.simplefix.message.DecodedMessage;
+import org.simplefix.message.MessageDecoder;
+import org.simplefix.message.MessageFormatException;
+import org.simplefix.ring.EventFactory;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An entry in the ring between the I/O threads and the application: a copy of one frame, decoded
+ * in place, and the channel it came from.   The buffer and the decoded message are re-used, and
+ * only grow if a larger message arrives.
+ */
+public class MessageSlot {
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    public static final EventFactory<MessageSlot> FACTORY = new EventFactory<MessageSlot>() {
+        public MessageSlot newInstance() {
+            return new MessageSlot();
+        }
+    };
+
+    private ByteBuffer buffer = ByteBuffer.allocate(DEFAULT_CAPACITY);
+    private final DecodedMessage message = new DecodedMessage();
+    private Channel channel;
+    private MessageFormatException error;
+
+    /**
+     * Copies a frame into the slot, and decodes it.
+     */
+    void set(Channel channel, ChannelBuffer frame, MessageDecoder decoder) {
+        this.channel = channel;
+        this.error = null;
+        final int length = frame.readableBytes();
+        if (buffer.capacity() < length)
+            buffer = ByteBuffer.allocate(Math.max(length, buffer.capacity() * 2));
+        frame.getBytes(frame.readerIndex(), buffer.array(), 0, length);
+        try {
+            decoder.decode(buffer, 0, length, message);
+        } catch (MessageFormatException e) {
+            error = e;
+        }
+    }
+
+    /**
+     * @return the channel the message came from, e.g. to reply
+     */
+    public Channel getChannel() {
+        return channel;
+    }
+
+    /**
+     * @return the decoded message, or null if it could not be decoded
+     */
+    public DecodedMessage getMessage() {
+        return error == null ? message : null;
+    }
+
+    /**
+     * @return why the message could not be decoded, or null
+     */
+    public MessageFormatException getError() {
+        return error;
+    }
+}
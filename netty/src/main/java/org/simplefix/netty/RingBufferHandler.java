@@ -0,0 +1,46 @@
+package org.simplefix.netty;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.simplefix.dictionary.Dictionary;
+import org.simplefix.message.MessageDecoder;
+import org.simplefix.ring.RingBuffer;
+
+/**
+ * Hands frames from {@link FixFrameDecoder} to application threads through a {@link RingBuffer},
+ * so slow application logic doesn't hold up the I/O thread.   Each frame is copied into a
+ * pre-allocated {@link MessageSlot} and decoded there, on the I/O thread, then published; the
+ * application consumes the slots with a {@link org.simplefix.ring.RingConsumer}.
+ * <br>
+ * When the ring is full the I/O thread waits for the consumer, which pushes back on the sender via
+ * TCP flow control, rather than queueing without limit.
+ * <br>
+ * One ring can be shared by all the channels, if it is a multi producer ring.   This is stateful
+ * (it has a decoder), so there must be one instance per channel.
+ */
+public class RingBufferHandler extends SimpleChannelUpstreamHandler {
+    private final RingBuffer<MessageSlot> ring;
+    private final MessageDecoder decoder;
+
+    public RingBufferHandler(RingBuffer<MessageSlot> ring, Dictionary dictionary) {
+        if (ring == null) throw new IllegalArgumentException("ring cannot be null!");
+        this.ring = ring;
+        this.decoder = new MessageDecoder(dictionary);
+    }
+
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        if (!(e.getMessage() instanceof ChannelBuffer)) {
+            ctx.sendUpstream(e);
+            return;
+        }
+        final long seq = ring.next();
+        try {
+            ring.get(seq).set(e.getChannel(), (ChannelBuffer) e.getMessage(), decoder);
+        } finally {
+            ring.publish(seq);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.simplefix.netty.test;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.embedder.CodecEmbedderException;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.handler.codec.frame.CorruptedFrameException;
+import org.junit.Test;
+import org.simplefix.netty.FixFrameDecoder;
+
+import static org.junit.Assert.*;
+import static org.simplefix.test.FixMessages.fix;
+
+/**
+ * Test the FIX frame decoder with fragmented and coalesced input.
+ */
+public class FixFrameDecoderTest {
+
+    private static ChannelBuffer buffer(String s) {
+        return ChannelBuffers.wrappedBuffer(s.getBytes());
+    }
+
+    private static String poll(DecoderEmbedder<ChannelBuffer> embedder) {
+        ChannelBuffer frame = embedder.poll();
+        if (frame == null)
+            return null;
+        byte[] bytes = new byte[frame.readableBytes()];
+        frame.getBytes(frame.readerIndex(), bytes);
+        return new String(bytes);
+    }
+
+    @Test
+    public void singleMessage() {
+        String msg = fix("35=0|49=A|56=B|34=1|");
+        DecoderEmbedder<ChannelBuffer> embedder = new DecoderEmbedder<ChannelBuffer>(new FixFrameDecoder());
+        embedder.offer(buffer(msg));
+        assertEquals(msg, poll(embedder));
+        assertNull(poll(embedder));
+    }
+
+    @Test
+    public void coalesced() {
+        String a = fix("35=0|49=A|56=B|34=1|");
+        String b = fix("35=1|49=A|56=B|34=2|112=X|");
+        String c = fix("35=0|49=A|56=B|34=3|");
+        DecoderEmbedder<ChannelBuffer> embedder = new DecoderEmbedder<ChannelBuffer>(new FixFrameDecoder());
+        embedder.offer(buffer(a + b + c));
+        assertEquals(a, poll(embedder));
+        assertEquals(b, poll(embedder));
+        assertEquals(c, poll(embedder));
+        assertNull(poll(embedder));
+    }
+
+    @Test
+    public void fragmented() {
+        String a = fix("35=D|49=A|56=B|34=1|11=ORDER1|55=IBM|54=1|38=100|");
+        String b = fix("35=0|49=A|56=B|34=2|");
+        String all = a + b;
+        // Every possible split point, including in the middle of the header and checksum.
+        for (int split = 1; split < all.length(); split++) {
+            DecoderEmbedder<ChannelBuffer> embedder = new DecoderEmbedder<ChannelBuffer>(new FixFrameDecoder());
+            embedder.offer(buffer(all.substring(0, split)));
+            embedder.offer(buffer(all.substring(split)));
+            assertEquals("split at " + split, a, poll(embedder));
+            assertEquals("split at " + split, b, poll(embedder));
+            assertNull(poll(embedder));
+        }
+        // One byte at a time.
+        DecoderEmbedder<ChannelBuffer> embedder = new DecoderEmbedder<ChannelBuffer>(new FixFrameDecoder());
+        for (int i = 0; i < all.length(); i++)
+            embedder.offer(buffer(all.substring(i, i + 1)));
+        assertEquals(a, poll(embedder));
+        assertEquals(b, poll(embedder));
+    }
+
+    @Test
+    public void badChecksum() {
+        String msg = fix("35=0|49=A|56=B|34=1|");
+        msg = msg.substring(0, msg.length() - 4) + "000\u0001";
+        DecoderEmbedder<ChannelBuffer> embedder = new DecoderEmbedder<ChannelBuffer>(new FixFrameDecoder());
+        try {
+            embedder.offer(buffer(msg));
+            fail("Expected an exception");
+        } catch (CodecEmbedderException e) {
+            assertTrue(e.getCause() instanceof CorruptedFrameException);
+        }
+    }
+
+    @Test
+    public void garbage() {
+        DecoderEmbedder<ChannelBuffer> embedder = new DecoderEmbedder<ChannelBuffer>(new FixFrameDecoder());
+        try {
+            embedder.offer(buffer("hello world!"));
+            fail("Expected an exception");
+        } catch (CodecEmbedderException e) {
+            assertTrue(e.getCause() instanceof CorruptedFrameException);
+        }
+    }
+}
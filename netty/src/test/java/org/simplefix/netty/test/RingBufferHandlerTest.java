@@ -0,0 +1,76 @@
+package org.simplefix.netty.test;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.junit.Test;
+import org.simplefix.dictionary.Dictionary;
+import org.simplefix.dictionary.xml.DictionaryParser;
+import org.simplefix.message.DecodedMessage;
+import org.simplefix.netty.FixFrameDecoder;
+import org.simplefix.netty.MessageSlot;
+import org.simplefix.netty.RingBufferHandler;
+import org.simplefix.ring.EventHandler;
+import org.simplefix.ring.RingBuffer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.simplefix.test.FixMessages.fix;
+
+/**
+ * Test handing decoded messages from the pipeline to the ring.
+ */
+public class RingBufferHandlerTest {
+
+    private static Dictionary dictionary() {
+        return DictionaryParser.parseXML(Thread.currentThread().getContextClassLoader().getResource("FIX44.xml"));
+    }
+
+    @Test
+    public void handOff() {
+        RingBuffer<MessageSlot> ring = RingBuffer.createMultiProducer(MessageSlot.FACTORY, 4);
+        DecoderEmbedder<Object> embedder = new DecoderEmbedder<Object>(
+                new FixFrameDecoder(), new RingBufferHandler(ring, dictionary()));
+        String a = fix("35=0|49=A|56=B|34=1|");
+        String b = fix("35=1|49=A|56=B|34=2|112=TEST|");
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 200; i++)
+            big.append("58=").append(i).append("|");
+        String c = fix("35=0|49=A|56=B|34=3|" + big);
+        ChannelBuffer input = ChannelBuffers.wrappedBuffer((a + b + c).getBytes());
+        embedder.offer(input);
+        // Nothing goes further down the pipeline.
+        assertNull(embedder.poll());
+
+        final List<String> received = new ArrayList<String>();
+        EventHandler<MessageSlot> handler = new EventHandler<MessageSlot>() {
+            public void onEvent(MessageSlot slot, long sequence, boolean endOfBatch) {
+                DecodedMessage msg = slot.getMessage();
+                assertNotNull(slot.getChannel());
+                received.add(msg.getString(msg.getMsgTypeIndex()) + ":" + msg.getFieldCount());
+            }
+        };
+        assertEquals(3, ring.poll(handler, 10));
+        assertEquals("[0:7, 1:8, 0:207]", received.toString());
+    }
+
+    @Test
+    public void invalid() {
+        RingBuffer<MessageSlot> ring = RingBuffer.createSingleProducer(MessageSlot.FACTORY, 4);
+        DecoderEmbedder<Object> embedder = new DecoderEmbedder<Object>(
+                new FixFrameDecoder(), new RingBufferHandler(ring, dictionary()));
+        // A well formed frame with a field that isn't tag=value.
+        String msg = fix("35=0|49=A|56|34=1|");
+        embedder.offer(ChannelBuffers.wrappedBuffer(msg.getBytes()));
+        final List<MessageSlot> slots = new ArrayList<MessageSlot>();
+        assertEquals(1, ring.poll(new EventHandler<MessageSlot>() {
+            public void onEvent(MessageSlot slot, long sequence, boolean endOfBatch) {
+                slots.add(slot);
+            }
+        }, 10));
+        assertNull(slots.get(0).getMessage());
+        assertNotNull(slots.get(0).getError());
+    }
+}
@@ -0,0 +1,779 @@
+package org.simplefix.session;
+
+import org.simplefix.dictionary.Dictionary;
+import org.simplefix.dictionary.MessageType;
+import org.simplefix.dictionary.ReloadableDictionary;
+import org.simplefix.journal.Journal;
+import org.simplefix.message.DecodedMessage;
+import org.simplefix.message.MessageDecoder;
+import org.simplefix.message.MessageEncoder;
+import org.simplefix.message.MessageFormatException;
+import org.simplefix.metrics.MessageMetrics;
+import org.simplefix.metrics.SessionMetrics;
+import org.simplefix.metrics.Stage;
+import org.slf4j.Logger;
+
+import java.nio.ByteBuffer;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * The FIX session layer: logon, logout, sequence numbers, heartbeats, test requests and resend
+ * requests.
+ * <br>
+ * The session is a state machine driven by {@link #connected(Transport)}, {@link #receive(DecodedMessage)},
+ * {@link #timer()} and {@link #disconnected()}, which must all be called on the I/O thread of the
+ * connection, so no locking is needed.   Other threads can use {@link #execute(Runnable)} to get
+ * onto the I/O thread.
+ * <br>
+ * Outbound messages are encoded into one buffer and are not written until {@link #flush()}, which
+ * the transport calls once it has handled a whole read (or timer tick, or task).   All the messages
+ * produced in that turn go out in one write, instead of one write (and one system call) each.
+ * The buffer starts at the maximum message length and doubles, up to the buffer size, when a turn
+ * sends more than fits, so a quiet session doesn't hold a whole batch worth of memory.
+ * <br>
+ * Outbound messages are stored in a {@link Journal}, if there is one, so a ResendRequest can be
+ * answered by resending them with PossDupFlag=Y.   Admin messages (and everything, when there is
+ * no journal) are replaced with a SequenceReset-GapFill.
+ * <br>
+ * With {@link #setMetrics(SessionMetrics)}, the session counts the messages it sends, and records how
+ * long the listener takes to handle each application message and how long each outbound message
+ * takes to encode (from {@link #begin(byte[])} to {@link #end()}).
+ * <br>
+ * A session made with a {@link ReloadableDictionary} encodes, and decodes the messages it resends,
+ * with the current dictionary, so a reload applies from the next message on.   Give the same
+ * ReloadableDictionary to the pipeline (or the acceptor), for the messages the session receives.
+ */
+public class Session {
+    private static final Logger log = getLogger(Session.class);
+
+    public static final int DEFAULT_HEART_BT_INT = 30;
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_MESSAGE_LENGTH = 8 * 1024;
+    public static final long DEFAULT_LOGON_TIMEOUT = 10000;
+    public static final long DEFAULT_LOGOUT_TIMEOUT = 2000;
+
+    // Admin message types.
+    private static final byte HEARTBEAT = '0';
+    private static final byte TEST_REQUEST = '1';
+    private static final byte RESEND_REQUEST = '2';
+    private static final byte SEQUENCE_RESET = '4';
+    private static final byte LOGOUT = '5';
+    private static final byte LOGON = 'A';
+
+    /** The MsgType bytes for each admin message type. **/
+    private static final byte[][] ADMIN_MSG_TYPES = new byte[LOGON + 1][];
+
+    static {
+        for (byte type : new byte[]{HEARTBEAT, TEST_REQUEST, RESEND_REQUEST, SEQUENCE_RESET, LOGOUT, LOGON})
+            ADMIN_MSG_TYPES[type] = new byte[]{type};
+    }
+
+    // Tags.
+    private static final int BEGIN_STRING = 8;
+    private static final int BODY_LENGTH = 9;
+    private static final int BEGIN_SEQ_NO = 7;
+    private static final int END_SEQ_NO = 16;
+    private static final int MSG_SEQ_NUM = 34;
+    private static final int NEW_SEQ_NO = 36;
+    private static final int POSS_DUP_FLAG = 43;
+    private static final int POSS_RESEND = 97;
+    private static final int ORIG_SENDING_TIME = 122;
+    private static final int SENDER_COMP_ID = 49;
+    private static final int SENDING_TIME = 52;
+    private static final int CHECK_SUM = 10;
+    private static final int TARGET_COMP_ID = 56;
+    private static final int TEXT = 58;
+    private static final int ENCRYPT_METHOD = 98;
+    private static final int HEART_BT_INT = 108;
+    private static final int TEST_REQ_ID = 112;
+    private static final int GAP_FILL_FLAG = 123;
+    private static final int RESET_SEQ_NUM_FLAG = 141;
+
+    private final SessionID sessionID;
+    private final boolean initiator;
+    private final SessionListener listener;
+    private final ReloadableDictionary dictionary;
+    private final MessageEncoder encoder;
+    private final byte[] senderCompID;
+    private final byte[] targetCompID;
+    private final int bufferSize;
+    private final int maxMessageLength;
+    private ByteBuffer out;
+
+    private int heartBtInt = DEFAULT_HEART_BT_INT;
+    private long logonTimeout = DEFAULT_LOGON_TIMEOUT;
+    private long logoutTimeout = DEFAULT_LOGOUT_TIMEOUT;
+
+    private Transport transport;
+    private SessionState state = SessionState.DISCONNECTED;
+    private long stateTime;
+    private int nextSenderMsgSeqNum = 1;
+    private int nextTargetMsgSeqNum = 1;
+    private long lastSent;
+    private long lastReceived;
+    private boolean testRequestSent;
+    /** The TestReqID of the last TestRequest, so each one is different. **/
+    private int testReqID;
+    private int resendEnd;
+
+    private Journal journal;
+    private MessageDecoder resendDecoder;
+
+    /** The last MsgType resent that isn't in the dictionary. **/
+    private byte[] resendMsgType;
+    /** The sequence number of the message being encoded, if it is to be journaled. **/
+    private int journalSeqNum;
+
+    private SessionMetrics metrics;
+    private byte[] encodingMsgType;
+    private long encodeStart;
+
+    /**
+     * @param sessionID  the session
+     * @param dictionary the dictionary, used to encode and decode
+     * @param initiator  true if this side connects and sends the first Logon
+     * @param listener   receives session events and application messages
+     */
+    public Session(SessionID sessionID, Dictionary dictionary, boolean initiator, SessionListener listener) {
+        this(sessionID, dictionary, initiator, listener, DEFAULT_BUFFER_SIZE, DEFAULT_MAX_MESSAGE_LENGTH);
+    }
+
+    /**
+     * @param sessionID  the session
+     * @param dictionary a dictionary that can be reloaded, used to encode and decode
+     * @param initiator  true if this side connects and sends the first Logon
+     * @param listener   receives session events and application messages
+     */
+    public Session(SessionID sessionID, ReloadableDictionary dictionary, boolean initiator, SessionListener listener) {
+        this(sessionID, dictionary, initiator, listener, DEFAULT_BUFFER_SIZE, DEFAULT_MAX_MESSAGE_LENGTH);
+    }
+
+    /**
+     * @param bufferSize       the largest size of the outbound buffer, which holds the messages of one
+     *                         batch.   It starts at maxMessageLength and grows as needed.
+     * @param maxMessageLength the longest message that will be sent.  The batch is flushed early if
+     *                         there might not be room for a message this long.
+     */
+    public Session(SessionID sessionID, Dictionary dictionary, boolean initiator, SessionListener listener,
+                   int bufferSize, int maxMessageLength) {
+        this(sessionID, dictionary == null ? null : new ReloadableDictionary(dictionary), initiator, listener,
+                bufferSize, maxMessageLength);
+    }
+
+    /**
+     * @param bufferSize       the largest size of the outbound buffer, which holds the messages of one
+     *                         batch.   It starts at maxMessageLength and grows as needed.
+     * @param maxMessageLength the longest message that will be sent.  The batch is flushed early if
+     *                         there might not be room for a message this long.
+     */
+    public Session(SessionID sessionID, ReloadableDictionary dictionary, boolean initiator, SessionListener listener,
+                   int bufferSize, int maxMessageLength) {
+        if (sessionID == null) throw new IllegalArgumentException("sessionID cannot be null!");
+        if (listener == null) throw new IllegalArgumentException("listener cannot be null!");
+        if (dictionary == null) throw new IllegalArgumentException("dictionary cannot be null!");
+        if (maxMessageLength > bufferSize)
+            throw new IllegalArgumentException("maxMessageLength cannot be larger than bufferSize!");
+        this.sessionID = sessionID;
+        this.initiator = initiator;
+        this.listener = listener;
+        this.dictionary = dictionary;
+        this.encoder = new MessageEncoder(dictionary, sessionID.getBeginString());
+        this.senderCompID = sessionID.getSenderCompID().getBytes();
+        this.targetCompID = sessionID.getTargetCompID().getBytes();
+        this.bufferSize = bufferSize;
+        this.maxMessageLength = maxMessageLength;
+        this.out = ByteBuffer.allocate(maxMessageLength);
+    }
+
+    public SessionID getSessionID() {
+        return sessionID;
+    }
+
+    public boolean isInitiator() {
+        return initiator;
+    }
+
+    public SessionState getState() {
+        return state;
+    }
+
+    public boolean isLoggedOn() {
+        return state == SessionState.ACTIVE;
+    }
+
+    /**
+     * @return the heartbeat interval in seconds.  The acceptor takes this from the Logon.
+     */
+    public int getHeartBtInt() {
+        return heartBtInt;
+    }
+
+    /**
+     * @param heartBtInt the heartbeat interval the initiator asks for, in seconds
+     */
+    public void setHeartBtInt(int heartBtInt) {
+        if (heartBtInt <= 0) throw new IllegalArgumentException("Invalid heartBtInt " + heartBtInt);
+        this.heartBtInt = heartBtInt;
+    }
+
+    public void setLogonTimeout(long millis) {
+        this.logonTimeout = millis;
+    }
+
+    public void setLogoutTimeout(long millis) {
+        this.logoutTimeout = millis;
+    }
+
+    public int getNextSenderMsgSeqNum() {
+        return nextSenderMsgSeqNum;
+    }
+
+    public void setNextSenderMsgSeqNum(int seqNum) {
+        this.nextSenderMsgSeqNum = seqNum;
+    }
+
+    public int getNextTargetMsgSeqNum() {
+        return nextTargetMsgSeqNum;
+    }
+
+    public void setNextTargetMsgSeqNum(int seqNum) {
+        this.nextTargetMsgSeqNum = seqNum;
+    }
+
+    public Journal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Stores outbound messages in a journal, so they can be resent.   If the journal already has
+     * messages (e.g. after a restart), the next outbound sequence number carries on after them.
+     * @param journal the journal, or null to not store messages
+     */
+    public void setJournal(Journal journal) {
+        this.journal = journal;
+        if (journal != null && journal.getLastSeqNum() >= nextSenderMsgSeqNum)
+            nextSenderMsgSeqNum = journal.getLastSeqNum() + 1;
+    }
+
+    public SessionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Records metrics for the session.   Set this before the connection is made: the pipeline gives
+     * the same metrics to the decoder.   Add the metrics to a
+     * {@link org.simplefix.metrics.MetricsRegistry} to publish them.
+     * @param metrics the metrics, or null to not record
+     */
+    public void setMetrics(SessionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the current time in milliseconds, overridden by tests.
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * The connection is up.  The initiator sends its Logon.
+     */
+    public void connected(Transport transport) {
+        if (transport == null) throw new IllegalArgumentException("transport cannot be null!");
+        this.transport = transport;
+        out.clear();
+        final long now = currentTimeMillis();
+        lastReceived = now;
+        testRequestSent = false;
+        resendEnd = 0;
+        if (initiator) {
+            sendLogon(false);
+            setState(SessionState.LOGON_SENT, now);
+        } else {
+            setState(SessionState.AWAITING_LOGON, now);
+        }
+    }
+
+    /**
+     * The connection is gone.
+     */
+    public void disconnected() {
+        final SessionState previous = state;
+        setState(SessionState.DISCONNECTED, currentTimeMillis());
+        transport = null;
+        out.clear();
+        if (previous == SessionState.ACTIVE || previous == SessionState.LOGOUT_SENT)
+            listener.onLogout(this);
+    }
+
+    /**
+     * Handles an inbound message.
+     * @param msg the decoded message, which is only used until this returns
+     */
+    public void receive(DecodedMessage msg) {
+        if (transport == null)
+            return;
+        lastReceived = currentTimeMillis();
+        testRequestSent = false;
+        final int msgTypeIndex = msg.getMsgTypeIndex();
+        if (msgTypeIndex < 0) {
+            log.warn(sessionID + " ignoring a message without a MsgType");
+            return;
+        }
+        // Admin message types are all one character.
+        final byte type = msg.getValueLength(msgTypeIndex) == 1
+                ? msg.getBuffer().get(msg.getValueOffset(msgTypeIndex)) : 0;
+        final boolean awaitingLogon = state == SessionState.AWAITING_LOGON || state == SessionState.LOGON_SENT;
+        if (awaitingLogon && type != LOGON) {
+            disconnect("First message was not a Logon");
+            return;
+        }
+        if (!compIDsMatch(msg)) {
+            logout("CompID problem");
+            disconnect("CompID problem");
+            return;
+        }
+
+        try {
+            process(msg, type, awaitingLogon);
+        } catch (MessageFormatException e) {
+            logout(e.getMessage());
+            disconnect(e.getMessage());
+        }
+    }
+
+    private void process(DecodedMessage msg, byte type, boolean awaitingLogon) throws MessageFormatException {
+        final int seqNum = msg.getInt(required(msg, MSG_SEQ_NUM));
+        if (type == LOGON) {
+            if (!awaitingLogon) {
+                logout("Unexpected Logon");
+                disconnect("Unexpected Logon");
+                return;
+            }
+            onLogon(msg, seqNum);
+        } else if (type == SEQUENCE_RESET && !flag(msg, GAP_FILL_FLAG)) {
+            // Reset mode ignores MsgSeqNum.
+            nextTargetMsgSeqNum = msg.getInt(required(msg, NEW_SEQ_NO));
+            return;
+        }
+
+        if (seqNum > nextTargetMsgSeqNum) {
+            if (resendEnd < nextTargetMsgSeqNum) {
+                resendEnd = seqNum - 1;
+                sendResendRequest(nextTargetMsgSeqNum);
+            }
+            // Answer these now, the other side may be waiting for them before it resends.
+            if (type == RESEND_REQUEST)
+                onResendRequest(msg);
+            else if (type == LOGOUT)
+                onLogout();
+            return;
+        }
+        if (seqNum < nextTargetMsgSeqNum) {
+            if (!flag(msg, POSS_DUP_FLAG)) {
+                final String text = "MsgSeqNum too low, expecting " + nextTargetMsgSeqNum + " but received " + seqNum;
+                logout(text);
+                disconnect(text);
+            }
+            return;
+        }
+        nextTargetMsgSeqNum++;
+
+        switch (type) {
+            case LOGON:
+            case HEARTBEAT:
+                break;
+            case TEST_REQUEST:
+                sendHeartbeat(msg, msg.indexOf(TEST_REQ_ID));
+                break;
+            case RESEND_REQUEST:
+                onResendRequest(msg);
+                break;
+            case SEQUENCE_RESET:
+                final int newSeqNo = msg.getInt(required(msg, NEW_SEQ_NO));
+                if (newSeqNo > nextTargetMsgSeqNum)
+                    nextTargetMsgSeqNum = newSeqNo;
+                break;
+            case LOGOUT:
+                onLogout();
+                break;
+            default:
+                if (state == SessionState.ACTIVE || state == SessionState.LOGOUT_SENT)
+                    handle(msg);
+                break;
+        }
+    }
+
+    private void handle(DecodedMessage msg) {
+        final SessionMetrics m = metrics;
+        if (m == null) {
+            listener.onMessage(this, msg);
+            return;
+        }
+        final long start = System.nanoTime();
+        listener.onMessage(this, msg);
+        m.forMessage(msg).record(Stage.HANDLER, System.nanoTime() - start);
+    }
+
+    /**
+     * Checks the heartbeat, test request and logon / logout timers.   Should be called about once
+     * a second.
+     */
+    public void timer() {
+        if (transport == null)
+            return;
+        final long now = currentTimeMillis();
+        switch (state) {
+            case AWAITING_LOGON:
+            case LOGON_SENT:
+                if (now - stateTime >= logonTimeout)
+                    disconnect("Timed out waiting for Logon");
+                break;
+            case LOGOUT_SENT:
+                if (now - stateTime >= logoutTimeout)
+                    disconnect("Timed out waiting for Logout");
+                break;
+            case ACTIVE:
+                final long interval = heartBtInt * 1000L;
+                if (testRequestSent && now - lastReceived >= interval * 2) {
+                    disconnect("Timed out waiting for heartbeat");
+                    return;
+                }
+                if (!testRequestSent && now - lastReceived >= interval + interval / 5) {
+                    beginAdmin(TEST_REQUEST);
+                    encoder.add(TEST_REQ_ID, ++testReqID);
+                    finish();
+                    testRequestSent = true;
+                }
+                if (now - lastSent >= interval)
+                    sendHeartbeat(null, -1);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Starts an application message, and writes the standard header.   Add the body fields to the
+     * returned encoder and then call {@link #end()}.   Must be called on the I/O thread, e.g. from
+     * the listener or a task passed to {@link #execute(Runnable)}.
+     * @param msgType the MsgType as ASCII bytes
+     * @return the encoder
+     * @throws IllegalStateException if the session is not logged on
+     */
+    public MessageEncoder begin(byte[] msgType) throws IllegalStateException {
+        if (state != SessionState.ACTIVE)
+            throw new IllegalStateException(sessionID + " is not logged on");
+        return begin0(msgType);
+    }
+
+    /**
+     * Finishes the message started by {@link #begin(byte[])}.   It will be written by the next
+     * {@link #flush()}.
+     */
+    public void end() {
+        finish();
+    }
+
+    /**
+     * Writes all the messages encoded since the last flush, in one write.
+     */
+    public void flush() {
+        if (out.position() == 0 || transport == null)
+            return;
+        out.flip();
+        transport.write(out);
+        out.clear();
+    }
+
+    /**
+     * Runs a task on the I/O thread of the session, and flushes the messages it sends.
+     */
+    public void execute(final Runnable task) {
+        final Transport t = transport;
+        if (t == null)
+            throw new IllegalStateException(sessionID + " is not connected");
+        t.execute(new Runnable() {
+            public void run() {
+                task.run();
+                flush();
+            }
+        });
+    }
+
+    /**
+     * Sends a Logout.  The connection is closed when the other side replies, or after the logout
+     * timeout.
+     */
+    public void logout(String text) {
+        if (transport == null || state == SessionState.LOGOUT_SENT)
+            return;
+        beginAdmin(LOGOUT);
+        if (text != null)
+            encoder.add(TEXT, text);
+        finish();
+        if (state == SessionState.ACTIVE)
+            setState(SessionState.LOGOUT_SENT, currentTimeMillis());
+    }
+
+    private void onLogon(DecodedMessage msg, int seqNum) {
+        if (flag(msg, RESET_SEQ_NUM_FLAG)) {
+            nextTargetMsgSeqNum = seqNum;
+            if (!initiator) {
+                nextSenderMsgSeqNum = 1;
+                if (journal != null)
+                    journal.reset();
+            }
+        }
+        if (!initiator) {
+            final int index = required(msg, HEART_BT_INT);
+            final int interval = msg.getInt(index);
+            if (interval <= 0)
+                throw new MessageFormatException("Invalid HeartBtInt " + interval);
+            heartBtInt = interval;
+            sendLogon(flag(msg, RESET_SEQ_NUM_FLAG));
+        }
+        setState(SessionState.ACTIVE, currentTimeMillis());
+        log.info(sessionID + " logged on, HeartBtInt=" + heartBtInt);
+        listener.onLogon(this);
+    }
+
+    private void onLogout() {
+        if (state != SessionState.LOGOUT_SENT)
+            logout(null);
+        disconnect("Logout");
+    }
+
+    private void onResendRequest(DecodedMessage msg) {
+        final int begin = msg.getInt(required(msg, BEGIN_SEQ_NO));
+        int end = msg.getInt(required(msg, END_SEQ_NO));
+        final int last = nextSenderMsgSeqNum - 1;
+        if (end == 0 || end > last)
+            end = last;
+        if (begin <= 0 || begin > end)
+            return;
+        int gapStart = 0;
+        for (int seqNum = begin; seqNum <= end; seqNum++) {
+            final ByteBuffer stored = journal == null ? null : journal.get(seqNum);
+            final DecodedMessage original = stored == null ? null : decodeStored(stored);
+            if (original == null || isAdmin(original)) {
+                if (gapStart == 0)
+                    gapStart = seqNum;
+                continue;
+            }
+            if (gapStart != 0) {
+                sendGapFill(gapStart, seqNum);
+                gapStart = 0;
+            }
+            resend(original, seqNum);
+        }
+        if (gapStart != 0)
+            sendGapFill(gapStart, end + 1);
+    }
+
+    private DecodedMessage decodeStored(ByteBuffer stored) {
+        if (resendDecoder == null)
+            resendDecoder = new MessageDecoder(dictionary);
+        try {
+            return resendDecoder.decode(stored, stored.position(), stored.remaining());
+        } catch (MessageFormatException e) {
+            log.warn(sessionID + " unable to decode a stored message: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static boolean isAdmin(DecodedMessage msg) {
+        final int index = msg.getMsgTypeIndex();
+        if (index < 0 || msg.getValueLength(index) != 1)
+            return false;
+        final byte type = msg.getBuffer().get(msg.getValueOffset(index));
+        return type == LOGON || (type >= HEARTBEAT && type <= LOGOUT);
+    }
+
+    /**
+     * Resends a stored message with PossDupFlag=Y, the original SendingTime and a new SendingTime.
+     */
+    private void resend(DecodedMessage original, int seqNum) {
+        writeHeader(msgTypeOf(original), seqNum);
+        encoder.add(POSS_DUP_FLAG, true);
+        final int sendingTime = original.indexOf(SENDING_TIME);
+        if (sendingTime >= 0)
+            encoder.add(ORIG_SENDING_TIME, original.getBuffer(),
+                    original.getValueOffset(sendingTime), original.getValueLength(sendingTime));
+        final int count = original.getFieldCount();
+        for (int i = 0; i < count; i++) {
+            switch (original.getTag(i)) {
+                case BEGIN_STRING:
+                case BODY_LENGTH:
+                case MessageEncoder.MSG_TYPE:
+                case SENDER_COMP_ID:
+                case TARGET_COMP_ID:
+                case MSG_SEQ_NUM:
+                case SENDING_TIME:
+                case POSS_DUP_FLAG:
+                case POSS_RESEND:
+                case ORIG_SENDING_TIME:
+                case CHECK_SUM:
+                    break;
+                default:
+                    encoder.add(original.getTag(i), original.getBuffer(),
+                            original.getValueOffset(i), original.getValueLength(i));
+                    break;
+            }
+        }
+        finish();
+    }
+
+    /**
+     * @return the MsgType of a stored message, from the dictionary so it isn't copied
+     */
+    private byte[] msgTypeOf(DecodedMessage original) {
+        final MessageType type = original.getMessageType();
+        if (type != null)
+            return type.getMsgTypeBytes();
+        // Not in the dictionary, keep the last one: a resend usually has a few types over and over.
+        final int index = original.getMsgTypeIndex();
+        if (resendMsgType == null || !original.valueEquals(index, resendMsgType)) {
+            resendMsgType = new byte[original.getValueLength(index)];
+            original.getBytes(index, resendMsgType, 0);
+        }
+        return resendMsgType;
+    }
+
+    private void sendGapFill(int seqNum, int newSeqNo) {
+        writeHeader(ADMIN_MSG_TYPES[SEQUENCE_RESET], seqNum);
+        encoder.add(POSS_DUP_FLAG, true);
+        encoder.add(GAP_FILL_FLAG, true);
+        encoder.add(NEW_SEQ_NO, newSeqNo);
+        finish();
+    }
+
+    private void sendLogon(boolean resetSeqNum) {
+        beginAdmin(LOGON);
+        encoder.add(ENCRYPT_METHOD, 0);
+        encoder.add(HEART_BT_INT, heartBtInt);
+        if (resetSeqNum)
+            encoder.add(RESET_SEQ_NUM_FLAG, true);
+        finish();
+    }
+
+    private void sendHeartbeat(DecodedMessage testRequest, int testReqIDIndex) {
+        beginAdmin(HEARTBEAT);
+        if (testReqIDIndex >= 0) {
+            encoder.add(TEST_REQ_ID, testRequest.getBuffer(), testRequest.getValueOffset(testReqIDIndex),
+                    testRequest.getValueLength(testReqIDIndex));
+        }
+        finish();
+    }
+
+    private void sendResendRequest(int beginSeqNo) {
+        beginAdmin(RESEND_REQUEST);
+        encoder.add(BEGIN_SEQ_NO, beginSeqNo);
+        encoder.add(END_SEQ_NO, 0);
+        finish();
+    }
+
+    private void beginAdmin(byte msgType) {
+        begin0(ADMIN_MSG_TYPES[msgType]);
+    }
+
+    private MessageEncoder begin0(byte[] msgType) {
+        if (transport == null)
+            throw new IllegalStateException(sessionID + " is not connected");
+        if (journal != null)
+            journalSeqNum = nextSenderMsgSeqNum;
+        return writeHeader(msgType, nextSenderMsgSeqNum++);
+    }
+
+    /**
+     * Finishes the message being encoded, and stores it in the journal if it is a new message.
+     */
+    private void finish() {
+        final int length = encoder.finish();
+        if (metrics != null && encodingMsgType != null) {
+            final long nanos = System.nanoTime() - encodeStart;
+            final MessageMetrics type = metrics.forType(encodingMsgType);
+            type.record(Stage.ENCODE, nanos);
+            type.sent(length);
+            encodingMsgType = null;
+        }
+        if (journalSeqNum != 0) {
+            final int seqNum = journalSeqNum;
+            journalSeqNum = 0;
+            journal.append(seqNum, out, out.position() - length, length);
+        }
+    }
+
+    private MessageEncoder writeHeader(byte[] msgType, int seqNum) {
+        if (out.remaining() < maxMessageLength) {
+            if (out.capacity() < bufferSize)
+                grow();
+            else
+                flush();
+        }
+        if (metrics != null) {
+            encodingMsgType = msgType;
+            encodeStart = System.nanoTime();
+        }
+        lastSent = currentTimeMillis();
+        encoder.begin(out, msgType);
+        encoder.add(SENDER_COMP_ID, senderCompID);
+        encoder.add(TARGET_COMP_ID, targetCompID);
+        encoder.add(MSG_SEQ_NUM, seqNum);
+        encoder.addUtcTimestamp(SENDING_TIME, lastSent);
+        return encoder;
+    }
+
+    /**
+     * Doubles the outbound buffer, up to the buffer size, keeping the messages not yet flushed.
+     */
+    private void grow() {
+        final ByteBuffer bigger = ByteBuffer.allocate((int) Math.min(2L * out.capacity(), bufferSize));
+        out.flip();
+        bigger.put(out);
+        out = bigger;
+    }
+
+    /**
+     * The other side's SenderCompID must be our TargetCompID, and vice versa.
+     */
+    private boolean compIDsMatch(DecodedMessage msg) {
+        final int sender = msg.indexOf(SENDER_COMP_ID);
+        final int target = msg.indexOf(TARGET_COMP_ID);
+        return sender >= 0 && target >= 0
+                && msg.valueEquals(sender, targetCompID) && msg.valueEquals(target, senderCompID);
+    }
+
+    private static boolean flag(DecodedMessage msg, int tag) {
+        final int index = msg.indexOf(tag);
+        return index >= 0 && msg.getValueLength(index) == 1 && msg.getBuffer().get(msg.getValueOffset(index)) == 'Y';
+    }
+
+    private static int required(DecodedMessage msg, int tag) throws MessageFormatException {
+        final int index = msg.indexOf(tag);
+        if (index < 0)
+            throw new MessageFormatException("Required tag missing: " + tag);
+        return index;
+    }
+
+    private void disconnect(String reason) {
+        log.info(sessionID + " disconnecting: " + reason);
+        final Transport t = transport;
+        if (t != null) {
+            flush();
+            t.disconnect();
+        }
+    }
+
+    private void setState(SessionState state, long now) {
+        this.state = state;
+        this.stateTime = now;
+    }
+
+    @Override
+    public String toString() {
+        return "Session{" + sessionID + ", state=" + state + '}';
+    }
+}
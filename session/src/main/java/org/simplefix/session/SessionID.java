@@ -0,0 +1,55 @@
+package org.simplefix.session;
+
+/**
+ * Identifies a FIX session by its BeginString, SenderCompID and TargetCompID, from our side.
+ */
+public class SessionID {
+    private final String beginString;
+    private final String senderCompID;
+    private final String targetCompID;
+
+    public SessionID(String beginString, String senderCompID, String targetCompID) {
+        if (beginString == null || senderCompID == null || targetCompID == null)
+            throw new IllegalArgumentException("beginString, senderCompID and targetCompID are required!");
+        this.beginString = beginString;
+        this.senderCompID = senderCompID;
+        this.targetCompID = targetCompID;
+    }
+
+    public String getBeginString() {
+        return beginString;
+    }
+
+    public String getSenderCompID() {
+        return senderCompID;
+    }
+
+    public String getTargetCompID() {
+        return targetCompID;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SessionID)) return false;
+
+        SessionID sessionID = (SessionID) o;
+
+        return beginString.equals(sessionID.beginString)
+                && senderCompID.equals(sessionID.senderCompID)
+                && targetCompID.equals(sessionID.targetCompID);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = beginString.hashCode();
+        result = 31 * result + senderCompID.hashCode();
+        result = 31 * result + targetCompID.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return beginString + ":" + senderCompID + "->" + targetCompID;
+    }
+}
@@ -0,0 +1,26 @@
+package org.simplefix.session;
+
+import org.simplefix.message.DecodedMessage;
+
+/**
+ * Receives session events and application messages.   All methods are called on the I/O thread of
+ * the session, so they must not block.
+ */
+public interface SessionListener {
+    /**
+     * The session has logged on.
+     */
+    void onLogon(Session session);
+
+    /**
+     * An application message (or a Reject) was received, in sequence.   The message is only valid
+     * until this returns.  Replies can be sent with {@link Session#begin(byte[])}, and will be
+     * flushed together with any other messages produced while handling the same read.
+     */
+    void onMessage(Session session, DecodedMessage msg);
+
+    /**
+     * The session has logged out or the connection was lost.
+     */
+    void onLogout(Session session);
+}
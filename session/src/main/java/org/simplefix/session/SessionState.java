@@ -0,0 +1,17 @@
+package org.simplefix.session;
+
+/**
+ * The states of a {@link Session}.
+ */
+public enum SessionState {
+    /** No connection. **/
+    DISCONNECTED,
+    /** Connected as the acceptor, waiting for the initiator's Logon. **/
+    AWAITING_LOGON,
+    /** Connected as the initiator, our Logon has been sent. **/
+    LOGON_SENT,
+    /** Logged on, application messages can be sent. **/
+    ACTIVE,
+    /** Our Logout has been sent, waiting for the reply. **/
+    LOGOUT_SENT
+}
@@ -0,0 +1,26 @@
+package org.simplefix.session;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The connection under a {@link Session}, e.g. a Netty channel.
+ */
+public interface Transport {
+    /**
+     * Writes a batch of encoded messages.
+     * @param data the bytes from the position to the limit.  The buffer is re-used once this
+     *             returns, so the transport must copy or finish with it before returning.
+     */
+    void write(ByteBuffer data);
+
+    /**
+     * Runs a task on the I/O thread of the session.
+     */
+    void execute(Runnable task);
+
+    /**
+     * Closes the connection.  The session is told when it is closed via
+     * {@link Session#disconnected()}.
+     */
+    void disconnect();
+}
@@ -0,0 +1,26 @@
+package org.simplefix.session.netty;
+
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.simplefix.session.Session;
+
+/**
+ * Goes at the head of the pipeline, in front of the frame decoder, and flushes the session once
+ * all the messages in a read have been handled.   A read that contains many messages produces one
+ * write for all of the replies.
+ */
+public class FlushHandler extends SimpleChannelUpstreamHandler {
+    private final Session session;
+
+    public FlushHandler(Session session) {
+        this.session = session;
+    }
+
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        // The rest of the pipeline runs in this call, so the whole read has been handled when it returns.
+        ctx.sendUpstream(e);
+        session.flush();
+    }
+}
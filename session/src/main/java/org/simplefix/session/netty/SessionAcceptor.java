@@ -0,0 +1,276 @@
+package org.simplefix.session.netty;
+
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.DirectChannelBufferFactory;
+import org.jboss.netty.channel.*;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.channel.group.DefaultChannelGroup;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+import org.simplefix.dictionary.Dictionary;
+import org.simplefix.dictionary.ReloadableDictionary;
+import org.simplefix.message.DecodedMessage;
+import org.simplefix.netty.FixFrameDecoder;
+import org.simplefix.netty.FixMessageDecoder;
+import org.simplefix.session.Session;
+import org.simplefix.session.SessionID;
+import org.slf4j.Logger;
+
+import java.net.SocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Accepts connections for any number of acceptor sessions on one port.   The connections are
+ * spread over a fixed number of I/O threads (one per core by default), each of which handles many
+ * connections, so the number of threads doesn't grow with the number of sessions.   All the
+ * sessions share one timer.
+ * <br>
+ * A new connection has no session until its Logon arrives: the Logon's CompIDs select the session
+ * (which must have been added with {@link #addSession(Session)}), then the {@link SessionHandler}
+ * for the session takes over the pipeline.   Connections that don't log on within the logon
+ * timeout, or log on to an unknown or already connected session, are closed.
+ * <br>
+ * Buffers come from a {@link DirectChannelBufferFactory}, which slices small buffers out of large
+ * pre-allocated direct buffers, so reads and writes don't allocate a direct buffer each time.
+ */
+public class SessionAcceptor {
+    private static final Logger log = getLogger(SessionAcceptor.class);
+
+    private static final int BEGIN_STRING = 8;
+    private static final int SENDER_COMP_ID = 49;
+    private static final int TARGET_COMP_ID = 56;
+    private static final byte[] LOGON = {'A'};
+
+    private final ReloadableDictionary dictionary;
+    private final int workerCount;
+    private final ConcurrentMap<SessionID, Session> sessions = new ConcurrentHashMap<SessionID, Session>();
+    private final ConcurrentMap<SessionID, Channel> connected = new ConcurrentHashMap<SessionID, Channel>();
+    private final ChannelGroup allChannels = new DefaultChannelGroup("simplefix-acceptor");
+    private final Timer timer = new HashedWheelTimer();
+    private long logonTimeout = Session.DEFAULT_LOGON_TIMEOUT;
+
+    private ChannelFactory factory;
+    private Channel serverChannel;
+
+    /**
+     * An acceptor with one I/O thread per core.
+     * @param dictionary the dictionary, used to encode and decode
+     */
+    public SessionAcceptor(Dictionary dictionary) {
+        this(dictionary, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param dictionary  the dictionary, used to encode and decode
+     * @param workerCount the number of I/O threads
+     */
+    public SessionAcceptor(Dictionary dictionary, int workerCount) {
+        this(new ReloadableDictionary(dictionary), workerCount);
+    }
+
+    /**
+     * @param dictionary  a dictionary that can be reloaded, used to decode.   A reload applies to the
+     *                    connected sessions from their next message.   Make the sessions with the same
+     *                    dictionary, for the messages they send.
+     * @param workerCount the number of I/O threads
+     */
+    public SessionAcceptor(ReloadableDictionary dictionary, int workerCount) {
+        if (dictionary == null) throw new IllegalArgumentException("dictionary cannot be null!");
+        if (workerCount <= 0) throw new IllegalArgumentException("workerCount must be positive!");
+        this.dictionary = dictionary;
+        this.workerCount = workerCount;
+    }
+
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    /**
+     * @param logonTimeout how long a new connection has to send its Logon, in milliseconds
+     */
+    public void setLogonTimeout(long logonTimeout) {
+        this.logonTimeout = logonTimeout;
+    }
+
+    /**
+     * Adds a session that counterparties can log on to.   Sessions can be added and removed while the
+     * acceptor is running.
+     * @param session an acceptor (not initiator) session
+     */
+    public void addSession(Session session) {
+        if (session.isInitiator())
+            throw new IllegalArgumentException(session.getSessionID() + " is an initiator session");
+        if (sessions.putIfAbsent(session.getSessionID(), session) != null)
+            throw new IllegalArgumentException(session.getSessionID() + " has already been added");
+    }
+
+    /**
+     * Removes a session.   If it is connected, it stays connected until the connection closes.
+     * @return the session, or null if there is no such session
+     */
+    public Session removeSession(SessionID sessionID) {
+        return sessions.remove(sessionID);
+    }
+
+    public Session getSession(SessionID sessionID) {
+        return sessions.get(sessionID);
+    }
+
+    /**
+     * @return the number of sessions that have a connection
+     */
+    public int getConnectedCount() {
+        return connected.size();
+    }
+
+    /**
+     * Starts accepting connections.
+     * @param address the address to listen on
+     */
+    public synchronized void bind(SocketAddress address) {
+        if (factory != null)
+            throw new IllegalStateException("Already bound to " + serverChannel.getLocalAddress());
+        // One boss thread accepts, and a fixed number of workers do all the I/O.
+        factory = new NioServerSocketChannelFactory(
+                Executors.newCachedThreadPool(),
+                Executors.newCachedThreadPool(),
+                workerCount);
+        ServerBootstrap bootstrap = new ServerBootstrap(factory);
+        bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+            public ChannelPipeline getPipeline() throws Exception {
+                return Channels.pipeline(
+                        new FixFrameDecoder(),
+                        new FixMessageDecoder(dictionary, false),
+                        new LogonHandler());
+            }
+        });
+        bootstrap.setOption("child.tcpNoDelay", true);
+        bootstrap.setOption("child.keepAlive", true);
+        bootstrap.setOption("child.bufferFactory", DirectChannelBufferFactory.getInstance());
+        serverChannel = bootstrap.bind(address);
+        allChannels.add(serverChannel);
+        log.info("Accepting on " + serverChannel.getLocalAddress() + " with " + workerCount + " I/O threads");
+    }
+
+    /**
+     * @return the address the acceptor is listening on, or null if it isn't bound
+     */
+    public synchronized SocketAddress getLocalAddress() {
+        return serverChannel == null ? null : serverChannel.getLocalAddress();
+    }
+
+    /**
+     * Closes all the connections and stops accepting.   The acceptor can't be bound again.
+     */
+    public synchronized void close() {
+        if (factory == null)
+            return;
+        allChannels.close().awaitUninterruptibly();
+        factory.releaseExternalResources();
+        timer.stop();
+        factory = null;
+        serverChannel = null;
+    }
+
+    /**
+     * Waits for the Logon on a new connection, and hands the connection to its session.
+     */
+    private class LogonHandler extends SimpleChannelUpstreamHandler {
+        private volatile Timeout timeout;
+
+        @Override
+        public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+            final Channel channel = e.getChannel();
+            allChannels.add(channel);
+            timeout = timer.newTimeout(new TimerTask() {
+                public void run(Timeout timeout) throws Exception {
+                    log.info(channel.getRemoteAddress() + " did not log on, closing");
+                    channel.close();
+                }
+            }, logonTimeout, TimeUnit.MILLISECONDS);
+            ctx.sendUpstream(e);
+        }
+
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+            if (!(e.getMessage() instanceof DecodedMessage)) {
+                ctx.sendUpstream(e);
+                return;
+            }
+            final DecodedMessage msg = (DecodedMessage) e.getMessage();
+            final Channel channel = e.getChannel();
+            final int msgType = msg.getMsgTypeIndex();
+            final int beginString = msg.indexOf(BEGIN_STRING);
+            final int sender = msg.indexOf(SENDER_COMP_ID);
+            final int target = msg.indexOf(TARGET_COMP_ID);
+            if (msgType < 0 || !msg.valueEquals(msgType, LOGON) || beginString < 0 || sender < 0 || target < 0) {
+                close(channel, "First message was not a Logon");
+                return;
+            }
+            // Their sender is our target.
+            final SessionID sessionID = new SessionID(msg.getString(beginString),
+                    msg.getString(target), msg.getString(sender));
+            final Session session = sessions.get(sessionID);
+            if (session == null) {
+                close(channel, "Unknown session " + sessionID);
+                return;
+            }
+            if (connected.putIfAbsent(sessionID, channel) != null) {
+                close(channel, sessionID + " is already connected");
+                return;
+            }
+            cancelTimeout();
+
+            final ChannelPipeline pipeline = ctx.getPipeline();
+            final FixMessageDecoder decoder = pipeline.get(FixMessageDecoder.class);
+            if (decoder != null)
+                decoder.setMetrics(session.getMetrics());
+            final SessionHandler handler = new SessionHandler(session, timer);
+            pipeline.replace(this, "session", handler);
+            pipeline.addFirst("flush", new FlushHandler(session));
+            // After the session handler, so the session has seen the disconnect before it can reconnect.
+            pipeline.addLast("release", new SimpleChannelUpstreamHandler() {
+                @Override
+                public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+                    connected.remove(sessionID, e.getChannel());
+                    ctx.sendUpstream(e);
+                }
+            });
+            handler.attach(channel);
+            session.receive(msg);
+            // The read started before the flush handler was added, so flush here.
+            session.flush();
+        }
+
+        @Override
+        public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+            cancelTimeout();
+            ctx.sendUpstream(e);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) throws Exception {
+            close(e.getChannel(), "Unexpected: " + e.getCause());
+        }
+
+        private void cancelTimeout() {
+            final Timeout t = timeout;
+            if (t != null)
+                t.cancel();
+        }
+
+        private void close(Channel channel, String reason) {
+            log.info(channel.getRemoteAddress() + " closing: " + reason);
+            cancelTimeout();
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package org.simplefix.session.netty;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.*;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+import org.simplefix.dictionary.Dictionary;
+import org.simplefix.dictionary.ReloadableDictionary;
+import org.simplefix.message.DecodedMessage;
+import org.simplefix.message.MessageFormatException;
+import org.simplefix.netty.FixFrameDecoder;
+import org.simplefix.netty.FixMessageDecoder;
+import org.simplefix.session.Session;
+import org.simplefix.session.Transport;
+import org.slf4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Runs a {@link Session} on a Netty channel.   Decoded messages, the session timer and tasks from
+ * other threads are all handled on the I/O thread of the channel, so the session needs no locking.
+ * <br>
+ * Use {@link #pipeline(Session, Dictionary, Timer)} to make the whole pipeline:
+ * <pre>
+ * FlushHandler -&gt; FixFrameDecoder -&gt; FixMessageDecoder -&gt; SessionHandler
+ * </pre>
+ * The timer only schedules the ticks, which are handed over to the I/O thread, so one timer
+ * (e.g. a HashedWheelTimer) can be shared by all sessions.
+ */
+public class SessionHandler extends SimpleChannelUpstreamHandler implements Transport {
+    private static final Logger log = getLogger(SessionHandler.class);
+
+    private static final long TICK_MILLIS = 1000;
+
+    private final Session session;
+    private final Timer timer;
+    private volatile Channel channel;
+    private volatile Timeout timeout;
+
+    private final Runnable tick = new Runnable() {
+        public void run() {
+            session.timer();
+            session.flush();
+        }
+    };
+
+    public SessionHandler(Session session, Timer timer) {
+        this.session = session;
+        this.timer = timer;
+    }
+
+    /**
+     * @return a new pipeline for the session
+     */
+    public static ChannelPipeline pipeline(Session session, Dictionary dictionary, Timer timer) {
+        return pipeline(session, new FixMessageDecoder(dictionary), timer);
+    }
+
+    /**
+     * @return a new pipeline for the session, which decodes with the current version of the dictionary
+     */
+    public static ChannelPipeline pipeline(Session session, ReloadableDictionary dictionary, Timer timer) {
+        return pipeline(session, new FixMessageDecoder(dictionary, false), timer);
+    }
+
+    private static ChannelPipeline pipeline(Session session, FixMessageDecoder decoder, Timer timer) {
+        decoder.setMetrics(session.getMetrics());
+        return Channels.pipeline(
+                new FlushHandler(session),
+                new FixFrameDecoder(),
+                decoder,
+                new SessionHandler(session, timer));
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    @Override
+    public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        attach(e.getChannel());
+        ctx.sendUpstream(e);
+    }
+
+    /**
+     * Starts the session on a connected channel, e.g. when the handler is added to the pipeline
+     * after the connection was made.
+     */
+    void attach(Channel channel) {
+        this.channel = channel;
+        session.connected(this);
+        session.flush();
+        schedule();
+    }
+
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        if (e.getMessage() instanceof DecodedMessage)
+            session.receive((DecodedMessage) e.getMessage());
+        else
+            ctx.sendUpstream(e);
+    }
+
+    @Override
+    public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        final Timeout t = timeout;
+        if (t != null)
+            t.cancel();
+        if (channel != null)
+            session.disconnected();
+        channel = null;
+        ctx.sendUpstream(e);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) throws Exception {
+        if (e.getCause() instanceof MessageFormatException) {
+            // A framed message that doesn't decode: drop it, and keep the session up.   Its MsgSeqNum
+            // is not used up, so the next message shows a gap and the session asks for a resend.
+            log.warn(session.getSessionID() + " dropping a message that could not be decoded: "
+                    + e.getCause().getMessage());
+            return;
+        }
+        log.error(session.getSessionID() + " unexpected: " + e.getCause(), e.getCause());
+        e.getChannel().close();
+    }
+
+    public void write(ByteBuffer data) {
+        final Channel c = channel;
+        if (c == null)
+            return;
+        // The channel's buffer factory may pool the buffers (e.g. DirectChannelBufferFactory).
+        final ChannelBuffer buffer = c.getConfig().getBufferFactory().getBuffer(data.remaining());
+        buffer.writeBytes(data.duplicate());
+        Channels.write(c, buffer);
+    }
+
+    public void execute(Runnable task) {
+        final Channel c = channel;
+        if (c == null)
+            throw new IllegalStateException(session.getSessionID() + " is not connected");
+        c.getPipeline().execute(task);
+    }
+
+    public void disconnect() {
+        final Channel c = channel;
+        if (c != null)
+            c.close();
+    }
+
+    private void schedule() {
+        timeout = timer.newTimeout(new TimerTask() {
+            public void run(Timeout timeout) throws Exception {
+                final Channel c = channel;
+                if (c == null || timeout.isCancelled())
+                    return;
+                c.getPipeline().execute(tick);
+                schedule();
+            }
+        }, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+}
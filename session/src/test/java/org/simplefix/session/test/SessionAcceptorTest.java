@@ -0,0 +1,154 @@
+package org.simplefix.session.test;
+
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.channel.*;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.simplefix.dictionary.Dictionary;
+import org.simplefix.dictionary.xml.DictionaryParser;
+import org.simplefix.message.DecodedMessage;
+import org.simplefix.session.Session;
+import org.simplefix.session.SessionID;
+import org.simplefix.session.SessionListener;
+import org.simplefix.session.netty.SessionAcceptor;
+import org.simplefix.session.netty.SessionHandler;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test several initiators logging on to one acceptor.
+ */
+public class SessionAcceptorTest {
+    private static final int CLIENTS = 10;
+
+    private Dictionary dictionary;
+    private HashedWheelTimer timer;
+    private SessionAcceptor acceptor;
+    private ChannelFactory clientFactory;
+
+    private final CountDownLatch logons = new CountDownLatch(CLIENTS * 2);
+    private final CountDownLatch messages = new CountDownLatch(CLIENTS);
+
+    private final SessionListener listener = new SessionListener() {
+        public void onLogon(Session session) {
+            logons.countDown();
+        }
+
+        public void onMessage(Session session, DecodedMessage msg) {
+            messages.countDown();
+        }
+
+        public void onLogout(Session session) {
+        }
+    };
+
+    @Before
+    public void start() {
+        dictionary = DictionaryParser.parseXML(Thread.currentThread().getContextClassLoader().getResource("FIX44.xml"));
+        timer = new HashedWheelTimer();
+        acceptor = new SessionAcceptor(dictionary, 2);
+        acceptor.setLogonTimeout(200);
+        for (int i = 0; i < CLIENTS; i++)
+            acceptor.addSession(new Session(new SessionID("FIX.4.4", "SERVER", "CLIENT" + i), dictionary, false, listener));
+        acceptor.bind(new InetSocketAddress("127.0.0.1", 0));
+        clientFactory = new NioClientSocketChannelFactory(Executors.newCachedThreadPool(), Executors.newCachedThreadPool());
+    }
+
+    @After
+    public void stop() {
+        acceptor.close();
+        clientFactory.releaseExternalResources();
+        timer.stop();
+    }
+
+    private Channel connect(final Session session) {
+        ClientBootstrap client = new ClientBootstrap(clientFactory);
+        client.setPipelineFactory(new ChannelPipelineFactory() {
+            public ChannelPipeline getPipeline() throws Exception {
+                return SessionHandler.pipeline(session, dictionary, timer);
+            }
+        });
+        ChannelFuture future = client.connect(acceptor.getLocalAddress()).awaitUninterruptibly();
+        assertTrue(future.isSuccess());
+        return future.getChannel();
+    }
+
+    @Test
+    public void manySessions() throws Exception {
+        final Session[] clients = new Session[CLIENTS];
+        for (int i = 0; i < CLIENTS; i++) {
+            clients[i] = new Session(new SessionID("FIX.4.4", "CLIENT" + i, "SERVER"), dictionary, true, listener);
+            connect(clients[i]);
+        }
+        assertTrue(logons.await(5, TimeUnit.SECONDS));
+        assertEquals(CLIENTS, acceptor.getConnectedCount());
+        for (int i = 0; i < CLIENTS; i++)
+            assertTrue(acceptor.getSession(new SessionID("FIX.4.4", "SERVER", "CLIENT" + i)).isLoggedOn());
+
+        for (final Session session : clients) {
+            session.execute(new Runnable() {
+                public void run() {
+                    session.begin("D".getBytes()).add(11, "ORD");
+                    session.end();
+                }
+            });
+        }
+        assertTrue(messages.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void unknownSession() {
+        Session session = new Session(new SessionID("FIX.4.4", "STRANGER", "SERVER"), dictionary, true, listener);
+        Channel channel = connect(session);
+        assertTrue(channel.getCloseFuture().awaitUninterruptibly(5000));
+        assertFalse(session.isLoggedOn());
+        assertEquals(0, acceptor.getConnectedCount());
+    }
+
+    @Test
+    public void alreadyConnected() throws Exception {
+        Session first = new Session(new SessionID("FIX.4.4", "CLIENT0", "SERVER"), dictionary, true, listener);
+        Channel a = connect(first);
+        assertTrue(waitFor(first));
+        Session second = new Session(new SessionID("FIX.4.4", "CLIENT0", "SERVER"), dictionary, true, listener);
+        Channel b = connect(second);
+        assertTrue(b.getCloseFuture().awaitUninterruptibly(5000));
+        assertTrue(a.isConnected());
+        assertEquals(1, acceptor.getConnectedCount());
+
+        // Once the first connection has gone, the session can log on again.
+        a.close().awaitUninterruptibly();
+        for (int i = 0; i < 500 && (first.isLoggedOn() || acceptor.getConnectedCount() > 0); i++)
+            Thread.sleep(10);
+        assertEquals(0, acceptor.getConnectedCount());
+        connect(first);
+        assertTrue(waitFor(first));
+    }
+
+    @Test
+    public void logonTimeout() {
+        ClientBootstrap client = new ClientBootstrap(clientFactory);
+        client.setPipelineFactory(new ChannelPipelineFactory() {
+            public ChannelPipeline getPipeline() throws Exception {
+                return Channels.pipeline(new SimpleChannelUpstreamHandler());
+            }
+        });
+        Channel channel = client.connect(acceptor.getLocalAddress()).awaitUninterruptibly().getChannel();
+        // Never sends a Logon.
+        assertTrue(channel.getCloseFuture().awaitUninterruptibly(5000));
+    }
+
+    private static boolean waitFor(Session session) throws InterruptedException {
+        for (int i = 0; i < 500 && !session.isLoggedOn(); i++)
+            Thread.sleep(10);
+        return session.isLoggedOn();
+    }
+}
@@ -0,0 +1,160 @@
+package org.simplefix.session.test;
+
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.*;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.simplefix.dictionary.Dictionary;
+import org.simplefix.dictionary.xml.DictionaryParser;
+import org.simplefix.message.DecodedMessage;
+import org.simplefix.session.Session;
+import org.simplefix.session.SessionID;
+import org.simplefix.session.SessionListener;
+import org.simplefix.session.netty.SessionHandler;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.simplefix.test.FixMessages.fix;
+
+/**
+ * Test an initiator and an acceptor session talking over a loopback connection.
+ */
+public class SessionHandlerTest {
+    private static final int ORDERS = 50;
+
+    private Dictionary dictionary;
+    private HashedWheelTimer timer;
+    private ChannelFactory serverFactory;
+    private ChannelFactory clientFactory;
+    private Channel serverChannel;
+
+    private final CountDownLatch logons = new CountDownLatch(2);
+    private final CountDownLatch orders = new CountDownLatch(ORDERS);
+    private final CountDownLatch logouts = new CountDownLatch(2);
+    private final AtomicInteger clientWrites = new AtomicInteger();
+
+    private final SessionListener listener = new SessionListener() {
+        public void onLogon(Session session) {
+            logons.countDown();
+        }
+
+        public void onMessage(Session session, DecodedMessage msg) {
+            orders.countDown();
+        }
+
+        public void onLogout(Session session) {
+            logouts.countDown();
+        }
+    };
+
+    @Before
+    public void start() {
+        dictionary = DictionaryParser.parseXML(Thread.currentThread().getContextClassLoader().getResource("FIX44.xml"));
+        timer = new HashedWheelTimer();
+        serverFactory = new NioServerSocketChannelFactory(Executors.newCachedThreadPool(), Executors.newCachedThreadPool());
+        ServerBootstrap server = new ServerBootstrap(serverFactory);
+        server.setPipelineFactory(new ChannelPipelineFactory() {
+            public ChannelPipeline getPipeline() throws Exception {
+                Session session = new Session(new SessionID("FIX.4.4", "SERVER", "CLIENT"), dictionary, false, listener);
+                return SessionHandler.pipeline(session, dictionary, timer);
+            }
+        });
+        serverChannel = server.bind(new InetSocketAddress("127.0.0.1", 0));
+        clientFactory = new NioClientSocketChannelFactory(Executors.newCachedThreadPool(), Executors.newCachedThreadPool());
+    }
+
+    @After
+    public void stop() {
+        serverChannel.close().awaitUninterruptibly();
+        serverFactory.releaseExternalResources();
+        clientFactory.releaseExternalResources();
+        timer.stop();
+    }
+
+    private ChannelFuture connect(final Session session) {
+        ClientBootstrap client = new ClientBootstrap(clientFactory);
+        client.setPipelineFactory(new ChannelPipelineFactory() {
+            public ChannelPipeline getPipeline() throws Exception {
+                ChannelPipeline pipeline = SessionHandler.pipeline(session, dictionary, timer);
+                // Count the writes that reach the socket.
+                pipeline.addFirst("count", new SimpleChannelDownstreamHandler() {
+                    @Override
+                    public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+                        clientWrites.incrementAndGet();
+                        super.writeRequested(ctx, e);
+                    }
+                });
+                return pipeline;
+            }
+        });
+        return client.connect(serverChannel.getLocalAddress()).awaitUninterruptibly();
+    }
+
+    @Test
+    public void logonOrdersLogout() throws Exception {
+        final Session session = new Session(new SessionID("FIX.4.4", "CLIENT", "SERVER"), dictionary, true, listener);
+        ChannelFuture future = connect(session);
+        assertTrue(future.isSuccess());
+        assertTrue(logons.await(5, TimeUnit.SECONDS));
+        assertTrue(session.isLoggedOn());
+        assertEquals(1, clientWrites.get());
+
+        // All the orders sent in one task go out in one write.
+        session.execute(new Runnable() {
+            public void run() {
+                for (int i = 0; i < ORDERS; i++) {
+                    session.begin("D".getBytes()).add(11, "ORD" + i);
+                    session.end();
+                }
+            }
+        });
+        assertTrue(orders.await(5, TimeUnit.SECONDS));
+        assertEquals(2, clientWrites.get());
+
+        session.execute(new Runnable() {
+            public void run() {
+                session.logout(null);
+            }
+        });
+        assertTrue(logouts.await(5, TimeUnit.SECONDS));
+        future.getChannel().getCloseFuture().awaitUninterruptibly();
+        assertEquals(ORDERS + 3, session.getNextSenderMsgSeqNum());
+    }
+
+    @Test
+    public void undecodableMessage() throws Exception {
+        final Session session = new Session(new SessionID("FIX.4.4", "CLIENT", "SERVER"), dictionary, true, listener);
+        ChannelFuture future = connect(session);
+        assertTrue(future.isSuccess());
+        assertTrue(logons.await(5, TimeUnit.SECONDS));
+
+        // A well formed frame with a field that isn't tag=value: the server drops it and stays logged on.
+        String bad = fix("35=D|49=CLIENT|56=SERVER|34=2|52=20130121-09:00:00.000|11|");
+        assertTrue(future.getChannel().write(ChannelBuffers.wrappedBuffer(bad.getBytes())).awaitUninterruptibly().isSuccess());
+        session.execute(new Runnable() {
+            public void run() {
+                for (int i = 0; i < ORDERS; i++) {
+                    session.begin("D".getBytes()).add(11, "ORD" + i);
+                    session.end();
+                }
+            }
+        });
+        assertTrue(orders.await(5, TimeUnit.SECONDS));
+        assertTrue(future.getChannel().isConnected());
+        assertEquals(2, logouts.getCount());
+
+        future.getChannel().close().awaitUninterruptibly();
+        assertTrue(logouts.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,430 @@
+package org.simplefix.session.test;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.simplefix.dictionary.Dictionary;
+import org.simplefix.dictionary.xml.DictionaryParser;
+import org.simplefix.journal.Journal;
+import org.simplefix.message.DecodedMessage;
+import org.simplefix.message.MessageDecoder;
+import org.simplefix.message.MessageEncoder;
+import org.simplefix.metrics.MessageMetrics;
+import org.simplefix.metrics.SessionMetrics;
+import org.simplefix.metrics.Stage;
+import org.simplefix.session.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the session state machine, without a connection.
+ */
+public class SessionTest {
+    private static Dictionary dictionary;
+
+    private long now = 1358758800000L;
+    private final List<String> writes = new ArrayList<String>();
+    private final List<String> received = new ArrayList<String>();
+    private final List<String> events = new ArrayList<String>();
+    private boolean disconnected;
+    private Session session;
+
+    private final Transport transport = new Transport() {
+        public void write(ByteBuffer data) {
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            writes.add(new String(bytes).replace('\u0001', '|'));
+        }
+
+        public void execute(Runnable task) {
+            task.run();
+        }
+
+        public void disconnect() {
+            disconnected = true;
+            session.disconnected();
+        }
+    };
+
+    private final SessionListener listener = new SessionListener() {
+        public void onLogon(Session session) {
+            events.add("logon");
+        }
+
+        public void onMessage(Session session, DecodedMessage msg) {
+            received.add(msg.getString(msg.getMsgTypeIndex()));
+        }
+
+        public void onLogout(Session session) {
+            events.add("logout");
+        }
+    };
+
+    @BeforeClass
+    public static void parseDictionary() {
+        URL resource = Thread.currentThread().getContextClassLoader().getResource("FIX44.xml");
+        dictionary = DictionaryParser.parseXML(resource);
+    }
+
+    @Before
+    public void createSession() {
+        session = newSession(false);
+    }
+
+    private Session newSession(boolean initiator) {
+        return new Session(new SessionID("FIX.4.4", "SERVER", "CLIENT"), dictionary, initiator, listener) {
+            @Override
+            protected long currentTimeMillis() {
+                return now;
+            }
+        };
+    }
+
+    private void receive(String body) {
+        byte[] bytes = ("8=FIX.4.4|9=5|" + body + "10=000|").replace('|', '\u0001').getBytes();
+        session.receive(new MessageDecoder(dictionary).decode(bytes, 0, bytes.length));
+        session.flush();
+    }
+
+    private String header(String msgType, int seqNum) {
+        return "35=" + msgType + "|49=CLIENT|56=SERVER|34=" + seqNum + "|52=20130121-09:00:00.000|";
+    }
+
+    private void logon() {
+        session.connected(transport);
+        assertEquals(SessionState.AWAITING_LOGON, session.getState());
+        receive(header("A", 1) + "98=0|108=30|");
+        assertEquals(SessionState.ACTIVE, session.getState());
+        assertEquals(1, writes.size());
+        writes.clear();
+    }
+
+    private String lastWrite() {
+        assertFalse(writes.isEmpty());
+        return writes.get(writes.size() - 1);
+    }
+
+    @Test
+    public void acceptorLogon() {
+        session.connected(transport);
+        receive(header("A", 1) + "98=0|108=15|");
+        assertEquals(SessionState.ACTIVE, session.getState());
+        assertEquals(15, session.getHeartBtInt());
+        assertEquals(1, writes.size());
+        assertTrue(lastWrite(), lastWrite().startsWith("8=FIX.4.4|9="));
+        assertTrue(lastWrite(), lastWrite().contains("|35=A|49=SERVER|56=CLIENT|34=1|"));
+        assertTrue(lastWrite(), lastWrite().contains("|108=15|"));
+        assertEquals("[logon]", events.toString());
+        assertEquals(2, session.getNextTargetMsgSeqNum());
+        assertEquals(2, session.getNextSenderMsgSeqNum());
+    }
+
+    @Test
+    public void initiatorLogon() {
+        session = newSession(true);
+        session.setHeartBtInt(5);
+        session.connected(transport);
+        session.flush();
+        assertEquals(SessionState.LOGON_SENT, session.getState());
+        assertTrue(lastWrite(), lastWrite().contains("|35=A|49=SERVER|56=CLIENT|34=1|"));
+        assertTrue(lastWrite(), lastWrite().contains("|98=0|108=5|"));
+        receive(header("A", 1) + "98=0|108=5|");
+        assertEquals(SessionState.ACTIVE, session.getState());
+        assertEquals(1, writes.size());
+    }
+
+    @Test
+    public void firstMessageNotLogon() {
+        session.connected(transport);
+        receive(header("0", 1));
+        assertTrue(disconnected);
+        assertEquals(SessionState.DISCONNECTED, session.getState());
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void batchedWrites() {
+        logon();
+        MessageEncoder encoder = session.begin("D".getBytes());
+        encoder.add(11, "ORD1");
+        session.end();
+        session.begin("D".getBytes()).add(11, "ORD2");
+        session.end();
+        session.begin("D".getBytes()).add(11, "ORD3");
+        session.end();
+        assertTrue(writes.isEmpty());
+        session.flush();
+        assertEquals(1, writes.size());
+        String batch = lastWrite();
+        assertTrue(batch, batch.contains("|34=2|") && batch.contains("|34=3|") && batch.contains("|34=4|"));
+        assertTrue(batch, batch.indexOf("11=ORD1") < batch.indexOf("11=ORD2"));
+    }
+
+    @Test
+    public void bufferFullFlushesEarly() {
+        session = new Session(new SessionID("FIX.4.4", "SERVER", "CLIENT"), dictionary, false, listener, 1024, 256);
+        logon();
+        for (int i = 0; i < 20; i++) {
+            session.begin("D".getBytes()).add(11, "ORD" + i);
+            session.end();
+        }
+        session.flush();
+        assertTrue(writes.size() > 1);
+        int count = 0;
+        for (String write : writes)
+            count += write.split("\\|35=D\\|").length - 1;
+        assertEquals(20, count);
+    }
+
+    @Test
+    public void bufferGrowsToBufferSize() {
+        session = new Session(new SessionID("FIX.4.4", "SERVER", "CLIENT"), dictionary, false, listener, 8192, 256);
+        logon();
+        for (int i = 0; i < 20; i++) {
+            session.begin("D".getBytes()).add(11, "ORD" + i);
+            session.end();
+        }
+        assertTrue(writes.isEmpty());
+        session.flush();
+        assertEquals(1, writes.size());
+        String batch = lastWrite();
+        assertEquals(batch, 20, batch.split("\\|35=D\\|").length - 1);
+        assertTrue(batch, batch.indexOf("11=ORD0|") < batch.indexOf("11=ORD19|"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void notLoggedOn() {
+        session.connected(transport);
+        session.begin("D".getBytes());
+    }
+
+    @Test
+    public void applicationMessages() {
+        logon();
+        receive(header("D", 2) + "11=ORD1|");
+        receive(header("8", 3) + "37=X|");
+        assertEquals("[D, 8]", received.toString());
+        assertEquals(4, session.getNextTargetMsgSeqNum());
+    }
+
+    @Test
+    public void metrics() {
+        SessionMetrics metrics = new SessionMetrics("test", dictionary);
+        session.setMetrics(metrics);
+        logon();
+        receive(header("D", 2) + "11=ORD1|");
+        session.begin("8".getBytes()).add(11, "ORD1");
+        session.end();
+        session.flush();
+        assertEquals(1, metrics.get("D").getLatency(Stage.HANDLER).getTotalCount());
+        MessageMetrics report = metrics.get("8");
+        assertEquals(1, report.getSent());
+        assertEquals(lastWrite().length(), report.getSentBytes());
+        assertEquals(1, report.getLatency(Stage.ENCODE).getTotalCount());
+        // The Logon reply, admin messages aren't passed to the handler.
+        assertEquals(1, metrics.get("A").getSent());
+        assertEquals(0, metrics.get("A").getLatency(Stage.HANDLER).getTotalCount());
+    }
+
+    @Test
+    public void testRequest() {
+        logon();
+        receive(header("1", 2) + "112=PING-1|");
+        assertTrue(lastWrite(), lastWrite().contains("|35=0|"));
+        assertTrue(lastWrite(), lastWrite().contains("|112=PING-1|"));
+    }
+
+    @Test
+    public void sequenceGap() {
+        logon();
+        receive(header("D", 5) + "11=ORD1|");
+        assertTrue(received.isEmpty());
+        assertTrue(lastWrite(), lastWrite().contains("|35=2|"));
+        assertTrue(lastWrite(), lastWrite().contains("|7=2|16=0|"));
+        // Only one ResendRequest for the gap.
+        receive(header("D", 6) + "11=ORD2|");
+        assertEquals(1, writes.size());
+        // The gap is filled.
+        receive(header("4", 2) + "43=Y|123=Y|36=5|");
+        assertEquals(5, session.getNextTargetMsgSeqNum());
+        receive(header("D", 5) + "43=Y|11=ORD1|");
+        assertEquals("[D]", received.toString());
+    }
+
+    @Test
+    public void sequenceReset() {
+        logon();
+        receive(header("4", 99) + "36=20|");
+        assertEquals(20, session.getNextTargetMsgSeqNum());
+        assertTrue(writes.isEmpty());
+    }
+
+    @Test
+    public void sequenceTooLow() {
+        logon();
+        receive(header("D", 2) + "11=ORD1|");
+        receive(header("D", 2) + "43=Y|11=ORD1|");
+        assertFalse(disconnected);
+        receive(header("D", 2) + "11=ORD1|");
+        assertTrue(lastWrite(), lastWrite().contains("|35=5|"));
+        assertTrue(lastWrite(), lastWrite().contains("58=MsgSeqNum too low, expecting 3 but received 2|"));
+        assertTrue(disconnected);
+        assertEquals("[logon, logout]", events.toString());
+    }
+
+    @Test
+    public void resendRequest() {
+        logon();
+        for (int i = 0; i < 3; i++) {
+            session.begin("D".getBytes()).add(11, "ORD" + i);
+            session.end();
+        }
+        session.flush();
+        writes.clear();
+        receive(header("2", 2) + "7=2|16=0|");
+        assertTrue(lastWrite(), lastWrite().contains("|35=4|49=SERVER|56=CLIENT|34=2|"));
+        assertTrue(lastWrite(), lastWrite().contains("|43=Y|123=Y|36=5|"));
+        assertEquals(5, session.getNextSenderMsgSeqNum());
+    }
+
+    @Test
+    public void resendFromJournal() throws IOException {
+        File directory = File.createTempFile("journal", "");
+        assertTrue(directory.delete());
+        Journal journal = new Journal(directory, "session");
+        try {
+            session.setJournal(journal);
+            logon();
+            for (int i = 2; i <= 4; i++) {
+                session.begin("D".getBytes()).add(11, "ORD" + i);
+                session.end();
+            }
+            now += 30000;
+            session.timer();
+            session.begin("D".getBytes()).add(11, "ORD6");
+            session.end();
+            session.flush();
+            assertEquals(6, journal.getLastSeqNum());
+            writes.clear();
+
+            receive(header("2", 2) + "7=1|16=0|");
+            String resent = lastWrite();
+            String[] messages = resent.split("\\|10=...\\|");
+            assertEquals(resent, 6, messages.length);
+            assertTrue(messages[0], messages[0].contains("|35=4|49=SERVER|56=CLIENT|34=1|"));
+            assertTrue(messages[0], messages[0].contains("|43=Y|123=Y|36=2"));
+            assertTrue(messages[1], messages[1].contains("|35=D|49=SERVER|56=CLIENT|34=2|"));
+            assertTrue(messages[1], messages[1].contains("|43=Y|122=20130121-09:00:00.000|11=ORD2"));
+            assertTrue(messages[3], messages[3].contains("|34=4|") && messages[3].endsWith("|11=ORD4"));
+            assertTrue(messages[4], messages[4].contains("|34=5|") && messages[4].contains("|123=Y|36=6"));
+            assertTrue(messages[5], messages[5].contains("|34=6|") && messages[5].endsWith("|11=ORD6"));
+            assertEquals(7, session.getNextSenderMsgSeqNum());
+
+            // After a restart, the sequence numbers carry on from the journal.
+            journal.close();
+            journal = new Journal(directory, "session");
+            session = newSession(false);
+            session.setJournal(journal);
+            assertEquals(7, session.getNextSenderMsgSeqNum());
+
+            // A Logon with ResetSeqNumFlag=Y starts again.
+            session.connected(transport);
+            receive(header("A", 1) + "98=0|108=30|141=Y|");
+            assertEquals(1, journal.getLastSeqNum());
+            assertEquals(2, session.getNextSenderMsgSeqNum());
+        } finally {
+            journal.reset();
+            journal.close();
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void compIDs() {
+        logon();
+        receive("35=0|49=OTHER|56=SERVER|34=2|52=20130121-09:00:00.000|");
+        assertTrue(lastWrite(), lastWrite().contains("|35=5|"));
+        assertTrue(disconnected);
+    }
+
+    @Test
+    public void heartbeats() {
+        logon();
+        now += 29000;
+        session.timer();
+        session.flush();
+        assertTrue(writes.isEmpty());
+        now += 1000;
+        session.timer();
+        session.flush();
+        assertTrue(lastWrite(), lastWrite().contains("|35=0|"));
+        // Nothing received for 1.2 x HeartBtInt: send a TestRequest.
+        now += 6000;
+        session.timer();
+        session.flush();
+        assertTrue(lastWrite(), lastWrite().contains("|35=1|"));
+        assertTrue(lastWrite(), lastWrite().contains("|112=1|"));
+        int count = writes.size();
+        now += 10000;
+        session.timer();
+        session.flush();
+        assertEquals(count, writes.size());
+        // Nothing for 2 x HeartBtInt: give up.
+        now += 14000;
+        session.timer();
+        assertTrue(disconnected);
+        assertEquals(SessionState.DISCONNECTED, session.getState());
+    }
+
+    @Test
+    public void testReqIDs() {
+        logon();
+        now += 36000;
+        session.timer();
+        session.flush();
+        assertTrue(lastWrite(), lastWrite().contains("|35=1|") && lastWrite().contains("|112=1|"));
+        receive(header("0", 2) + "112=1|");
+        now += 36000;
+        session.timer();
+        session.flush();
+        // Each TestRequest has its own TestReqID.
+        assertTrue(lastWrite(), lastWrite().contains("|35=1|") && lastWrite().contains("|112=2|"));
+    }
+
+    @Test
+    public void logonTimeout() {
+        session.connected(transport);
+        now += Session.DEFAULT_LOGON_TIMEOUT;
+        session.timer();
+        assertTrue(disconnected);
+    }
+
+    @Test
+    public void logout() {
+        logon();
+        session.logout("Bye");
+        session.flush();
+        assertEquals(SessionState.LOGOUT_SENT, session.getState());
+        assertTrue(lastWrite(), lastWrite().contains("|35=5|"));
+        assertTrue(lastWrite(), lastWrite().contains("|58=Bye|"));
+        receive(header("5", 2));
+        assertTrue(disconnected);
+        assertEquals(1, writes.size());
+        assertEquals("[logon, logout]", events.toString());
+    }
+
+    @Test
+    public void logoutFromOtherSide() {
+        logon();
+        receive(header("5", 2));
+        assertTrue(lastWrite(), lastWrite().contains("|35=5|"));
+        assertTrue(disconnected);
+    }
+}